@@ -12,9 +12,11 @@ public class ClientApp {
 
         ClientController clientController = context.getBean(ClientController.class);
         BookController bookController = context.getBean(BookController.class);
-        PurchaseController purchaseController = context.getBean(PurchaseController.class);
+        ClientControllerAsync clientControllerAsync = context.getBean(ClientControllerAsync.class);
+        BookControllerAsync bookControllerAsync = context.getBean(BookControllerAsync.class);
+        PurchaseControllerAsync purchaseControllerAsync = context.getBean(PurchaseControllerAsync.class);
 
-        Console console = new Console(clientController, bookController, purchaseController);
+        Console console = new Console(clientController, bookController, clientControllerAsync, bookControllerAsync, purchaseControllerAsync);
         console.run();
     }
 }
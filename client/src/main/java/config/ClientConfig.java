@@ -1,15 +1,43 @@
 package config;
 
+import controller.BookControllerClientImpl;
+import controller.ClientControllerClientImpl;
+import controller.PurchaseControllerClientImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.core.type.AnnotatedTypeMetadata;
 import org.springframework.remoting.rmi.RmiProxyFactoryBean;
 import service.BookController;
+import service.BookControllerAsync;
 import service.ClientController;
+import service.ClientControllerAsync;
 import service.PurchaseController;
+import service.PurchaseControllerAsync;
+import transport.BinaryProxyFactoryBean;
+import transport.BinaryTransportClient;
+import transport.ExecutorAsyncProxyFactoryBean;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Configuration
 public class ClientConfig {
+    @Autowired
+    private Environment environment;
+
     @Bean
+    @Qualifier("remoteClientController")
+    @Conditional(RmiTransport.class)
     RmiProxyFactoryBean rmiClientProxyFactoryBean() {
         RmiProxyFactoryBean rmiProxyFactoryBean = new RmiProxyFactoryBean();
         rmiProxyFactoryBean.setServiceInterface(ClientController.class);
@@ -18,6 +46,8 @@ public class ClientConfig {
     }
 
     @Bean
+    @Qualifier("remoteBookController")
+    @Conditional(RmiTransport.class)
     RmiProxyFactoryBean rmiBookProxyFactoryBean() {
         RmiProxyFactoryBean rmiProxyFactoryBean = new RmiProxyFactoryBean();
         rmiProxyFactoryBean.setServiceInterface(BookController.class);
@@ -26,6 +56,8 @@ public class ClientConfig {
     }
 
     @Bean
+    @Qualifier("remotePurchaseController")
+    @Conditional(RmiTransport.class)
     RmiProxyFactoryBean rmiPurchaseProxyFactoryBean() {
         RmiProxyFactoryBean rmiProxyFactoryBean = new RmiProxyFactoryBean();
         rmiProxyFactoryBean.setServiceInterface(PurchaseController.class);
@@ -33,4 +65,150 @@ public class ClientConfig {
         return rmiProxyFactoryBean;
     }
 
+    @Bean
+    @Conditional(BinaryTransport.class)
+    BinaryTransportClient binaryTransportClient() {
+        return new BinaryTransportClient(environment.getProperty("bookstore.transport.host", "localhost"),
+                environment.getProperty("bookstore.transport.port", Integer.class, 1100));
+    }
+
+    @Bean
+    @Qualifier("remoteClientController")
+    @Conditional(BinaryTransport.class)
+    BinaryProxyFactoryBean binaryClientProxyFactoryBean() {
+        return binaryProxyFactoryBean(ClientController.class, "ClientController");
+    }
+
+    @Bean
+    @Qualifier("remoteBookController")
+    @Conditional(BinaryTransport.class)
+    BinaryProxyFactoryBean binaryBookProxyFactoryBean() {
+        return binaryProxyFactoryBean(BookController.class, "BookController");
+    }
+
+    @Bean
+    @Qualifier("remotePurchaseController")
+    @Conditional(BinaryTransport.class)
+    BinaryProxyFactoryBean binaryPurchaseProxyFactoryBean() {
+        return binaryProxyFactoryBean(PurchaseController.class, "PurchaseController");
+    }
+
+    private BinaryProxyFactoryBean binaryProxyFactoryBean(Class<?> serviceInterface, String serviceName) {
+        BinaryProxyFactoryBean binaryProxyFactoryBean = new BinaryProxyFactoryBean();
+        binaryProxyFactoryBean.setServiceInterface(serviceInterface);
+        binaryProxyFactoryBean.setServiceName(serviceName);
+        binaryProxyFactoryBean.setTransportClient(binaryTransportClient());
+        return binaryProxyFactoryBean;
+    }
+
+    @Bean
+    @Conditional(BinaryTransport.class)
+    BinaryProxyFactoryBean clientControllerAsync() {
+        return binaryProxyFactoryBean(ClientControllerAsync.class, "ClientController");
+    }
+
+    @Bean
+    @Conditional(BinaryTransport.class)
+    BinaryProxyFactoryBean bookControllerAsync() {
+        return binaryProxyFactoryBean(BookControllerAsync.class, "BookController");
+    }
+
+    @Bean
+    @Conditional(BinaryTransport.class)
+    BinaryProxyFactoryBean purchaseControllerAsync() {
+        return binaryProxyFactoryBean(PurchaseControllerAsync.class, "PurchaseController");
+    }
+
+    /**
+     * The threads the RMI calls of the asynchronous controllers wait on. RMI cannot send a call without waiting for its
+     * response, so over RMI the asynchronous controllers are only a blocking adapter: each call in flight holds one of
+     * bookstore.transport.rmiAsyncThreads threads, and once they are all busy and bookstore.transport.rmiAsyncQueue
+     * calls wait for them, the next calls fail with a RejectedExecutionException instead of queueing without bound.
+     * The binary transport, the default one, sends the calls without holding a thread for each.
+     */
+    @Bean
+    @Conditional(RmiTransport.class)
+    ExecutorService rmiAsyncExecutor() {
+        int threads = environment.getProperty("bookstore.transport.rmiAsyncThreads", Integer.class, 16);
+        int queueCapacity = environment.getProperty("bookstore.transport.rmiAsyncQueue", Integer.class, 64);
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "rmi-async-call-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Bean
+    @Conditional(RmiTransport.class)
+    ExecutorAsyncProxyFactoryBean rmiClientControllerAsync(@Qualifier("remoteClientController") ClientController remoteClientController) {
+        return executorAsyncProxyFactoryBean(ClientControllerAsync.class, remoteClientController);
+    }
+
+    @Bean
+    @Conditional(RmiTransport.class)
+    ExecutorAsyncProxyFactoryBean rmiBookControllerAsync(@Qualifier("remoteBookController") BookController remoteBookController) {
+        return executorAsyncProxyFactoryBean(BookControllerAsync.class, remoteBookController);
+    }
+
+    @Bean
+    @Conditional(RmiTransport.class)
+    ExecutorAsyncProxyFactoryBean rmiPurchaseControllerAsync(@Qualifier("remotePurchaseController") PurchaseController remotePurchaseController) {
+        return executorAsyncProxyFactoryBean(PurchaseControllerAsync.class, remotePurchaseController);
+    }
+
+    private ExecutorAsyncProxyFactoryBean executorAsyncProxyFactoryBean(Class<?> serviceInterface, Object target) {
+        ExecutorAsyncProxyFactoryBean executorAsyncProxyFactoryBean = new ExecutorAsyncProxyFactoryBean();
+        executorAsyncProxyFactoryBean.setServiceInterface(serviceInterface);
+        executorAsyncProxyFactoryBean.setTarget(target);
+        executorAsyncProxyFactoryBean.setExecutor(rmiAsyncExecutor());
+        return executorAsyncProxyFactoryBean;
+    }
+
+    /**
+     * Returns true if the client keeps the lists it gets and only fetches them again once they changed on the server.
+     */
+    private boolean isNearCacheEnabled() {
+        return environment.getProperty("bookstore.client.nearCache", Boolean.class, false);
+    }
+
+    @Bean
+    @Primary
+    ClientController clientController() {
+        return new ClientControllerClientImpl(isNearCacheEnabled());
+    }
+
+    @Bean
+    @Primary
+    BookController bookController() {
+        return new BookControllerClientImpl(isNearCacheEnabled());
+    }
+
+    @Bean
+    @Primary
+    PurchaseController purchaseController() {
+        return new PurchaseControllerClientImpl(isNearCacheEnabled());
+    }
+
+    /**
+     * Matches if bookstore.transport is rmi.
+     */
+    static class RmiTransport implements Condition
+    {
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            return "rmi".equals(context.getEnvironment().getProperty("bookstore.transport", "binary"));
+        }
+    }
+
+    /**
+     * Matches unless bookstore.transport is rmi, the controllers are called through the binary transport by default.
+     */
+    static class BinaryTransport implements Condition
+    {
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            return !"rmi".equals(context.getEnvironment().getProperty("bookstore.transport", "binary"));
+        }
+    }
 }
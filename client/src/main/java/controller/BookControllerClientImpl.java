@@ -4,15 +4,31 @@ import domain.Book;
 import domain.validators.BookstoreException;
 import domain.validators.ValidatorException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import service.BookController;
+import service.ChangeSet;
+import service.VersionedResult;
 
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
 public class BookControllerClientImpl implements BookController {
     @Autowired
+    @Qualifier("remoteBookController")
     private BookController bookController;
+    private NearCachedList<Book> bookList;
+
+    /**
+     * Instantiates a new BookControllerClientImpl.
+     *
+     * @param nearCache whether the book list is kept and only fetched again once it changed on the server
+     */
+    public BookControllerClientImpl(boolean nearCache) {
+        this.bookList = nearCache ? new NearCachedList<>() : null;
+    }
 
     public Optional<Book> addBook(Book book) throws BookstoreException, ValidatorException, SQLException {
         return bookController.addBook(book);
@@ -23,7 +39,17 @@ public class BookControllerClientImpl implements BookController {
     }
 
     public Set<Book> getBookList() throws BookstoreException {
-        return bookController.getBookList();
+        if (bookList == null)
+            return bookController.getBookList();
+        return bookList.get(bookController::getBookListIfModified);
+    }
+
+    public VersionedResult<Set<Book>> getBookListIfModified(String knownVersion) throws BookstoreException {
+        return bookController.getBookListIfModified(knownVersion);
+    }
+
+    public ChangeSet<Integer, Book> getBookChangesSince(long sequenceNumber) throws BookstoreException {
+        return bookController.getBookChangesSince(sequenceNumber);
     }
 
     public Optional<Book> deleteBook(Integer id) throws BookstoreException {
@@ -38,4 +64,17 @@ public class BookControllerClientImpl implements BookController {
     public Optional<Book> findOne(Integer id) throws BookstoreException {
         return bookController.findOne(id);
     }
+
+    public List<Book> addBooks(List<Book> books) throws ValidatorException, BookstoreException, SQLException {
+        return bookController.addBooks(books);
+    }
+
+    public Set<Book> findMany(Collection<Integer> ids) throws BookstoreException {
+        return bookController.findMany(ids);
+    }
+
+    @Override
+    public List<Book> filterRanked(String searchString, int limit) throws BookstoreException {
+        return bookController.filterRanked(searchString, limit);
+    }
 }
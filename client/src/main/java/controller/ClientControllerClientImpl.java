@@ -4,15 +4,31 @@ import domain.Client;
 import domain.validators.BookstoreException;
 import domain.validators.ValidatorException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import service.ChangeSet;
 import service.ClientController;
+import service.VersionedResult;
 
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
 public class ClientControllerClientImpl implements ClientController {
     @Autowired
+    @Qualifier("remoteClientController")
     private ClientController clientController;
+    private NearCachedList<Client> clientList;
+
+    /**
+     * Instantiates a new ClientControllerClientImpl.
+     *
+     * @param nearCache whether the client list is kept and only fetched again once it changed on the server
+     */
+    public ClientControllerClientImpl(boolean nearCache) {
+        this.clientList = nearCache ? new NearCachedList<>() : null;
+    }
 
     public Optional<Client> addClient(Client client) throws BookstoreException, ValidatorException, SQLException {
         return clientController.addClient(client);
@@ -27,7 +43,17 @@ public class ClientControllerClientImpl implements ClientController {
     }
 
     public Set<Client> getClientList() throws BookstoreException {
-        return clientController.getClientList();
+        if (clientList == null)
+            return clientController.getClientList();
+        return clientList.get(clientController::getClientListIfModified);
+    }
+
+    public VersionedResult<Set<Client>> getClientListIfModified(String knownVersion) throws BookstoreException {
+        return clientController.getClientListIfModified(knownVersion);
+    }
+
+    public ChangeSet<Integer, Client> getClientChangesSince(long sequenceNumber) throws BookstoreException {
+        return clientController.getClientChangesSince(sequenceNumber);
     }
 
     public Set<Client> filter(String searchString) throws BookstoreException {
@@ -38,4 +64,17 @@ public class ClientControllerClientImpl implements ClientController {
     public Optional<Client> findOne(Integer id) throws BookstoreException {
         return clientController.findOne(id);
     }
+
+    public List<Client> addClients(List<Client> clients) throws ValidatorException, BookstoreException, SQLException {
+        return clientController.addClients(clients);
+    }
+
+    public Set<Client> findMany(Collection<Integer> ids) throws BookstoreException {
+        return clientController.findMany(ids);
+    }
+
+    @Override
+    public List<Client> filterRanked(String searchString, int limit) throws BookstoreException {
+        return clientController.filterRanked(searchString, limit);
+    }
 }
@@ -0,0 +1,54 @@
+package controller;
+
+import domain.validators.BookstoreException;
+import service.VersionedResult;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * The type NearCachedList.
+ * Keeps the last list of entities received from the server with its version, and asks the server for the list only if
+ * its version changed, so listing an unchanged table again costs a version string instead of every entity.
+ * The kept list is shared by the callers and cannot be modified.
+ *
+ * @param <T> the type of the entities
+ */
+class NearCachedList<T>
+{
+    private volatile CachedList<T> cachedList;
+
+    /**
+     * Returns the current list, the kept one if the server says it did not change.
+     * @param loader asks the server for the list, passing the version of the kept list or null
+     */
+    Set<T> get(Loader<T> loader) throws BookstoreException {
+        CachedList<T> current = cachedList;
+        VersionedResult<Set<T>> result = loader.load(current == null ? null : current.version);
+        if (!result.isModified() && current != null)
+            return current.entities;
+        CachedList<T> loaded = new CachedList<>(result.getVersion(), Collections.unmodifiableSet(result.getValue()));
+        cachedList = loaded;
+        return loaded.entities;
+    }
+
+    /**
+     * A conditional read of the list on the server.
+     */
+    interface Loader<T>
+    {
+        VersionedResult<Set<T>> load(String knownVersion) throws BookstoreException;
+    }
+
+    private static class CachedList<T>
+    {
+        private final String version;
+        private final Set<T> entities;
+
+        CachedList(String version, Set<T> entities)
+        {
+            this.version = version;
+            this.entities = entities;
+        }
+    }
+}
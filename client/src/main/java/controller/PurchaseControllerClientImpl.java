@@ -6,9 +6,15 @@ import domain.Purchase;
 import domain.validators.BookstoreException;
 import domain.validators.ValidatorException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import service.BookRankingMetric;
+import service.ChangeSet;
+import service.ClientRankingMetric;
 import service.PurchaseController;
+import service.VersionedResult;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -16,7 +22,18 @@ import java.util.Set;
 
 public class PurchaseControllerClientImpl implements PurchaseController {
     @Autowired
+    @Qualifier("remotePurchaseController")
     private PurchaseController purchaseController;
+    private NearCachedList<Purchase> purchaseList;
+
+    /**
+     * Instantiates a new PurchaseControllerClientImpl.
+     *
+     * @param nearCache whether the purchase list is kept and only fetched again once it changed on the server
+     */
+    public PurchaseControllerClientImpl(boolean nearCache) {
+        this.purchaseList = nearCache ? new NearCachedList<>() : null;
+    }
 
     public Optional<Purchase> add(Purchase purchase) throws BookstoreException, ValidatorException, SQLException {
         return purchaseController.add(purchase);
@@ -31,7 +48,25 @@ public class PurchaseControllerClientImpl implements PurchaseController {
     }
 
     public Set<Purchase> getPurchaseList() throws BookstoreException {
-        return purchaseController.getPurchaseList();
+        if (purchaseList == null)
+            return purchaseController.getPurchaseList();
+        return purchaseList.get(purchaseController::getPurchaseListIfModified);
+    }
+
+    public VersionedResult<Set<Purchase>> getPurchaseListIfModified(String knownVersion) throws BookstoreException {
+        return purchaseController.getPurchaseListIfModified(knownVersion);
+    }
+
+    public ChangeSet<Integer, Purchase> getPurchaseChangesSince(long sequenceNumber) throws BookstoreException {
+        return purchaseController.getPurchaseChangesSince(sequenceNumber);
+    }
+
+    public List<Purchase> addPurchases(List<Purchase> purchases) throws BookstoreException, ValidatorException, SQLException {
+        return purchaseController.addPurchases(purchases);
+    }
+
+    public Set<Purchase> findMany(Collection<Integer> ids) throws BookstoreException {
+        return purchaseController.findMany(ids);
     }
 
     public List<Map.Entry<Client, Double>> reportTop3ClientsBasedOnMoneySpent() throws BookstoreException {
@@ -41,4 +76,12 @@ public class PurchaseControllerClientImpl implements PurchaseController {
     public List<Map.Entry<Book, Long>> reportTop3BestSellingBooks() throws BookstoreException {
         return purchaseController.reportTop3BestSellingBooks();
     }
+
+    public List<Map.Entry<Client, Double>> reportTopClients(int k, ClientRankingMetric metric) throws BookstoreException {
+        return purchaseController.reportTopClients(k, metric);
+    }
+
+    public List<Map.Entry<Book, Double>> reportTopBooks(int k, BookRankingMetric metric) throws BookstoreException {
+        return purchaseController.reportTopBooks(k, metric);
+    }
 }
@@ -0,0 +1,70 @@
+package transport;
+
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The type BinaryProxyFactoryBean.
+ * Creates a proxy for a service exported by a BinaryServiceExporter, as RmiProxyFactoryBean does for an RMI service:
+ * every call of a method of the service interface is sent through the BinaryTransportClient.
+ * The service interface may also be an asynchronous counterpart of the exported interface, whose methods have the same
+ * names and parameters but return a CompletableFuture: their calls return as soon as they are sent.
+ */
+public class BinaryProxyFactoryBean implements FactoryBean<Object>, InitializingBean
+{
+    private Class<?> serviceInterface;
+    private String serviceName;
+    private BinaryTransportClient transportClient;
+    private Object proxy;
+
+    public void setServiceInterface(Class<?> serviceInterface) {
+        this.serviceInterface = serviceInterface;
+    }
+
+    public void setServiceName(String serviceName) {
+        this.serviceName = serviceName;
+    }
+
+    public void setTransportClient(BinaryTransportClient transportClient) {
+        this.transportClient = transportClient;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (serviceInterface == null || serviceName == null || transportClient == null)
+            throw new IllegalArgumentException("serviceInterface, serviceName and transportClient are required");
+        proxy = Proxy.newProxyInstance(serviceInterface.getClassLoader(), new Class<?>[]{serviceInterface}, (target, method, arguments) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return target == arguments[0];
+                    case "hashCode":
+                        return System.identityHashCode(target);
+                    default:
+                        return "Binary proxy for " + serviceName;
+                }
+            }
+            if (method.getReturnType() == CompletableFuture.class)
+                return transportClient.invokeAsync(serviceName, method, arguments);
+            return transportClient.invoke(serviceName, method, arguments);
+        });
+    }
+
+    @Override
+    public Object getObject() {
+        return proxy;
+    }
+
+    @Override
+    public Class<?> getObjectType() {
+        return serviceInterface;
+    }
+
+    @Override
+    public boolean isSingleton() {
+        return true;
+    }
+}
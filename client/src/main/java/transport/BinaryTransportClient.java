@@ -0,0 +1,221 @@
+package transport;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.remoting.RemoteAccessException;
+import org.springframework.remoting.RemoteConnectFailureException;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The type BinaryTransportClient.
+ * The connection of a client to a BinaryServiceExporter, shared by all the proxies of the client. The calls of every
+ * thread are written to the same connection as they come, each with its own id, and a reader thread hands every
+ * response to the call with its id, so a call never waits for the response to another one.
+ * The connection is opened by the first call and opened again by the next call after it is lost; the calls in
+ * progress when it is lost fail with a RemoteAccessException, as do the calls of an RMI proxy. A response that arrives
+ * whole but cannot be decoded only fails its own call, the connection is kept.
+ */
+public class BinaryTransportClient implements DisposableBean
+{
+    private String host;
+    private int port;
+
+    private final Object connectionLock = new Object();
+    private final Object writeLock = new Object();
+    private volatile SocketChannel channel;
+    private AtomicLong nextCallId = new AtomicLong();
+    private Map<Long, CompletableFuture<BinaryProtocol.Response>> pendingCalls = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a new BinaryTransportClient.
+     *
+     * @param host the host of the server
+     * @param port the port the server exports its services on
+     */
+    public BinaryTransportClient(String host, int port)
+    {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Calls a method of a service and waits for its response.
+     * @param serviceName the name of the service
+     * @param method the called method of the interface of the service
+     * @param arguments the arguments of the call
+     * @return the result of the call
+     * @throws Throwable the exception thrown by the call
+     */
+    public Object invoke(String serviceName, Method method, Object[] arguments) throws Throwable {
+        try {
+            return invokeAsync(serviceName, method, arguments).get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Sends the call of a method of a service without waiting for its response, so the caller can keep many calls in
+     * flight without a thread for each. The future is completed off the reader thread, so the stages depending on it
+     * cannot hold up the responses to the other calls.
+     * @param serviceName the name of the service
+     * @param method the called method of the interface of the service
+     * @param arguments the arguments of the call
+     * @return the future result of the call, completed exceptionally with the exception thrown by the call, or with a
+     *         RemoteAccessException if the call could not be sent or its response could not be received
+     */
+    public CompletableFuture<Object> invokeAsync(String serviceName, Method method, Object[] arguments) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        SocketChannel currentChannel;
+        try {
+            currentChannel = connect();
+        } catch (RemoteAccessException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        long callId = nextCallId.incrementAndGet();
+        CompletableFuture<BinaryProtocol.Response> response = new CompletableFuture<>();
+        pendingCalls.put(callId, response);
+        try {
+            ByteBuffer frame = ByteBuffer.wrap(BinaryProtocol.encodeRequest(callId, serviceName, BinaryProtocol.methodKey(method), arguments));
+            synchronized (writeLock) {
+                while (frame.hasRemaining())
+                    currentChannel.write(frame);
+            }
+        } catch (IOException e) {
+            pendingCalls.remove(callId);
+            disconnect(currentChannel, e);
+            result.completeExceptionally(new RemoteAccessException("Cannot send the call of " + method.getName() + " to " + serviceName, e));
+            return result;
+        }
+
+        response.whenCompleteAsync((received, failure) -> {
+            if (failure instanceof UndecodableResponseException)
+                result.completeExceptionally(new RemoteAccessException("Cannot read the response to the call of " + method.getName() + " to " + serviceName, failure.getCause()));
+            else if (failure != null)
+                result.completeExceptionally(new RemoteAccessException("Lost the connection during the call of " + method.getName() + " to " + serviceName, failure));
+            else if (received.isException())
+                result.completeExceptionally((Throwable) received.getValue());
+            else
+                result.complete(received.getValue());
+        });
+        return result;
+    }
+
+    /**
+     * Returns the open connection, opening it and starting its reader thread if needed.
+     */
+    private SocketChannel connect() {
+        SocketChannel currentChannel = channel;
+        if (currentChannel != null)
+            return currentChannel;
+        synchronized (connectionLock) {
+            if (channel == null) {
+                try {
+                    SocketChannel newChannel = SocketChannel.open(new InetSocketAddress(host, port));
+                    newChannel.socket().setTcpNoDelay(true);
+                    Thread reader = new Thread(() -> readResponses(newChannel), "binary-transport-reader");
+                    reader.setDaemon(true);
+                    channel = newChannel;
+                    reader.start();
+                } catch (IOException e) {
+                    throw new RemoteConnectFailureException("Cannot connect to " + host + ":" + port, e);
+                }
+            }
+            return channel;
+        }
+    }
+
+    /**
+     * Reads the responses of a connection until it is closed. A frame that cannot be read ends the connection, since
+     * the next frames cannot be found any more; a message that is read whole but cannot be decoded only fails its call.
+     */
+    private void readResponses(SocketChannel readChannel) {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        try {
+            while (true) {
+                lengthBuffer.clear();
+                readFully(readChannel, lengthBuffer);
+                int length = lengthBuffer.getInt(0);
+                if (length < 8 || length > BinaryProtocol.MAX_FRAME_LENGTH)
+                    throw new IOException("invalid frame length " + length);
+                ByteBuffer message = ByteBuffer.allocate(length);
+                readFully(readChannel, message);
+
+                long callId = BinaryProtocol.callIdOf(message.array());
+                BinaryProtocol.Response response;
+                try {
+                    response = BinaryProtocol.decodeResponse(message.array());
+                } catch (IOException | ClassNotFoundException e) {
+                    CompletableFuture<BinaryProtocol.Response> pendingCall = pendingCalls.remove(callId);
+                    if (pendingCall != null)
+                        pendingCall.completeExceptionally(new UndecodableResponseException(e));
+                    continue;
+                }
+                CompletableFuture<BinaryProtocol.Response> pendingCall = pendingCalls.remove(callId);
+                if (pendingCall != null)
+                    pendingCall.complete(response);
+            }
+        } catch (IOException e) {
+            disconnect(readChannel, e);
+        }
+    }
+
+    private static void readFully(SocketChannel readChannel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (readChannel.read(buffer) < 0)
+                throw new IOException("connection closed by the server");
+        }
+    }
+
+    /**
+     * Closes a connection and fails the calls waiting on it, unless it was already replaced.
+     */
+    private void disconnect(SocketChannel lostChannel, Exception cause) {
+        synchronized (connectionLock) {
+            if (channel != lostChannel)
+                return;
+            channel = null;
+            try {
+                lostChannel.close();
+            } catch (IOException e) {
+                // the connection is dropped anyway
+            }
+            for (Long callId : pendingCalls.keySet()) {
+                CompletableFuture<BinaryProtocol.Response> pendingCall = pendingCalls.remove(callId);
+                if (pendingCall != null)
+                    pendingCall.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * The failure of a call whose response was received but could not be decoded.
+     */
+    private static class UndecodableResponseException extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        UndecodableResponseException(Exception cause)
+        {
+            super(cause);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        SocketChannel currentChannel = channel;
+        if (currentChannel != null)
+            disconnect(currentChannel, new IOException("client closed"));
+    }
+}
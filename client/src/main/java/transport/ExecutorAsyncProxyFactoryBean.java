@@ -0,0 +1,96 @@
+package transport;
+
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The type ExecutorAsyncProxyFactoryBean.
+ * Creates a proxy for an asynchronous service interface over a blocking implementation of its synchronous counterpart,
+ * for the transports that cannot send a call without waiting for its response, such as RMI: every call runs on the
+ * executor, which bounds the number of calls in flight to its number of threads. A call the executor rejects, because
+ * it is saturated, fails with the RejectedExecutionException.
+ */
+public class ExecutorAsyncProxyFactoryBean implements FactoryBean<Object>, InitializingBean
+{
+    private Class<?> serviceInterface;
+    private Object target;
+    private Executor executor;
+    private Map<Method, Method> targetMethods = new HashMap<>();
+    private Object proxy;
+
+    public void setServiceInterface(Class<?> serviceInterface) {
+        this.serviceInterface = serviceInterface;
+    }
+
+    /**
+     * Sets the blocking implementation, which must have a method with the same name and parameters as every method of
+     * the service interface.
+     */
+    public void setTarget(Object target) {
+        this.target = target;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws NoSuchMethodException {
+        if (serviceInterface == null || target == null || executor == null)
+            throw new IllegalArgumentException("serviceInterface, target and executor are required");
+        for (Method method : serviceInterface.getMethods())
+            targetMethods.put(method, target.getClass().getMethod(method.getName(), method.getParameterTypes()));
+        proxy = Proxy.newProxyInstance(serviceInterface.getClassLoader(), new Class<?>[]{serviceInterface}, (self, method, arguments) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return self == arguments[0];
+                    case "hashCode":
+                        return System.identityHashCode(self);
+                    default:
+                        return "Asynchronous proxy for " + target;
+                }
+            }
+            Method targetMethod = targetMethods.get(method);
+            CompletableFuture<Object> result = new CompletableFuture<>();
+            try {
+                executor.execute(() -> {
+                    try {
+                        result.complete(targetMethod.invoke(target, arguments));
+                    } catch (InvocationTargetException e) {
+                        result.completeExceptionally(e.getCause());
+                    } catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public Object getObject() {
+        return proxy;
+    }
+
+    @Override
+    public Class<?> getObjectType() {
+        return serviceInterface;
+    }
+
+    @Override
+    public boolean isSingleton() {
+        return true;
+    }
+}
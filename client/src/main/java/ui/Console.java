@@ -7,8 +7,10 @@ import domain.Purchase;
 import domain.validators.BookstoreException;
 import domain.validators.ValidatorException;
 import service.BookController;
+import service.BookControllerAsync;
 import service.ClientController;
-import service.PurchaseController;
+import service.ClientControllerAsync;
+import service.PurchaseControllerAsync;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -26,7 +28,9 @@ public class Console
 {
     private ClientController clientController;
     private BookController bookController;
-    private PurchaseController purchaseController;
+    private ClientControllerAsync clientControllerAsync;
+    private BookControllerAsync bookControllerAsync;
+    private PurchaseControllerAsync purchaseControllerAsync;
      /**
      * String representing the text menu that has to be displayed in the console
      */
@@ -35,13 +39,19 @@ public class Console
     /**
      * Instantiates a new Console.
      *
-     * @param clientController instance of class Controller
-     * @param bookController instance of class Controller
+     * @param clientController instance of class Controller, lists the clients
+     * @param bookController instance of class Controller, lists the books
+     * @param clientControllerAsync makes every other client call without blocking a thread while it is in flight
+     * @param bookControllerAsync makes every other book call without blocking a thread while it is in flight
+     * @param purchaseControllerAsync makes the purchase calls without blocking a thread while they are in flight
      */
-    public Console(ClientController clientController, BookController bookController, PurchaseController purchaseController){
+    public Console(ClientController clientController, BookController bookController, ClientControllerAsync clientControllerAsync,
+                   BookControllerAsync bookControllerAsync, PurchaseControllerAsync purchaseControllerAsync){
         this.clientController = clientController;
         this.bookController = bookController;
-        this.purchaseController = purchaseController;
+        this.clientControllerAsync = clientControllerAsync;
+        this.bookControllerAsync = bookControllerAsync;
+        this.purchaseControllerAsync = purchaseControllerAsync;
         this.textMenu = "0. Exit.\n" +
                         "1. Add client.\n" +
                         "2. Add book.\n" +
@@ -153,22 +163,20 @@ public class Console
      * Prints on the screen the top 3 books ordered based sales.
      */
     private void getTop3BestSellingBooks() throws BookstoreException {
-        CompletableFuture.supplyAsync(
-                () ->{
-                    System.out.println("Top 3 books ordered based on sales:");
-                    AtomicInteger rank = new AtomicInteger(1);
-                    StringBuilder output = new StringBuilder("");
-                    try {
-                        this.purchaseController.reportTop3BestSellingBooks().forEach(entry ->{
-                            output.append(rank).append(". ").append(entry.getKey().toString()).append(" sold ").append(entry.getValue().toString()).append(" times.\n");
-                            rank.addAndGet(1);
-                        });
-                    } catch (BookstoreException e) {
-                        e.printStackTrace();
+        this.purchaseControllerAsync.reportTop3BestSellingBooks()
+                .handle((report, exception) -> {
+                    StringBuilder output = new StringBuilder("Top 3 books ordered based on sales:\n");
+                    if (exception != null) {
+                        exception.printStackTrace();
+                        return output;
                     }
+                    AtomicInteger rank = new AtomicInteger(1);
+                    report.forEach(entry ->{
+                        output.append(rank).append(". ").append(entry.getKey().toString()).append(" sold ").append(entry.getValue().toString()).append(" times.\n");
+                        rank.addAndGet(1);
+                    });
                     return output;
-                }
-        )
+                })
                 .thenAcceptAsync(System.out::println);
 
     }
@@ -177,22 +185,20 @@ public class Console
      * Prints on the screen the top 3 clients ordered based on money spent.
      */
     private void getTop3ClientsBasedOnMoneySpent() throws BookstoreException {
-        CompletableFuture.supplyAsync(
-                () ->{
-                    System.out.println("Top 3 clients ordered based on amount of money spent:");
-                    AtomicInteger rank = new AtomicInteger(1);
-                    StringBuilder output = new StringBuilder("");
-                    try {
-                        this.purchaseController.reportTop3ClientsBasedOnMoneySpent().forEach(entry ->{
-                            output.append(rank).append(". ").append(entry.getKey().toString()).append(" spent ").append(entry.getValue().toString());
-                            rank.addAndGet(1);
-                        });
-                    } catch (BookstoreException e) {
-                        e.printStackTrace();
+        this.purchaseControllerAsync.reportTop3ClientsBasedOnMoneySpent()
+                .handle((report, exception) -> {
+                    StringBuilder output = new StringBuilder("Top 3 clients ordered based on amount of money spent:\n");
+                    if (exception != null) {
+                        exception.printStackTrace();
+                        return output;
                     }
+                    AtomicInteger rank = new AtomicInteger(1);
+                    report.forEach(entry ->{
+                        output.append(rank).append(". ").append(entry.getKey().toString()).append(" spent ").append(entry.getValue().toString());
+                        rank.addAndGet(1);
+                    });
                     return output;
-                }
-        )
+                })
                 .thenAcceptAsync(System.out::println);
     }
 
@@ -200,17 +206,12 @@ public class Console
      * Prints on the screen all the purchases.
      */
     private void getPurchases() throws BookstoreException {
-        CompletableFuture.supplyAsync(
-                ()->{
-                    try {
-                        return this.purchaseController.getPurchaseList();
-                    } catch (BookstoreException e) {
-                        e.printStackTrace();
-                    }
+        this.purchaseControllerAsync.getPurchaseList()
+                .thenAcceptAsync(allPurchases -> allPurchases.forEach(System.out::println))
+                .exceptionally(exception -> {
+                    exception.printStackTrace();
                     return null;
-                }
-        )
-                .thenAcceptAsync(allPurchases -> allPurchases.forEach(System.out::println));
+                });
     }
 
     /**
@@ -223,18 +224,12 @@ public class Console
         BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
         String searchString = reader.readLine();
 
-        CompletableFuture.supplyAsync(
-                ()->
-                {
-                    try {
-                        return this.bookController.filter(searchString);
-                    } catch (BookstoreException e) {
-                        e.printStackTrace();
-                    }
+        this.bookControllerAsync.filter(searchString)
+                .thenAcceptAsync(filteredBooks -> filteredBooks.forEach(System.out::println))
+                .exceptionally(exception -> {
+                    exception.printStackTrace();
                     return null;
-                }
-        )
-                .thenAcceptAsync(filteredBooks -> filteredBooks.forEach(System.out::println));
+                });
     }
 
     /**
@@ -256,21 +251,17 @@ public class Console
         Book newBook = new Book(title, author, publisher, publicationYear, price);
         newBook.setId(id);
 
-        CompletableFuture.supplyAsync(
-                () -> {
-                    Optional<Book> optionalBook = Optional.empty();
-                    try {
-                        optionalBook = this.bookController.updateBook(newBook);
-                    } catch (BookstoreException | ValidatorException e) {
-                        e.printStackTrace();
-                        return e.getMessage();
+        this.bookControllerAsync.updateBook(newBook)
+                .handle((optionalBook, exception) -> {
+                    if (exception != null) {
+                        exception.printStackTrace();
+                        return exception.getMessage();
                     }
                     if (!optionalBook.isPresent())
                         return newBook.toString() + " was updated successfully!\n";
                     else
                         return newBook.toString() + " was not updated!\n";
-                }
-        )
+                })
                 .thenAcceptAsync(System.out::println);
     }
 
@@ -284,22 +275,17 @@ public class Console
         BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
         int id = Integer.parseInt(reader.readLine());
 
-        CompletableFuture.supplyAsync(
-                () -> {
-                    Optional<Book> optionalBook = Optional.empty();
-                    try {
-                        optionalBook = this.bookController.deleteBook(id);
-                    } catch (BookstoreException e) {
-                        e.printStackTrace();
-                        return e.getMessage();
+        this.bookControllerAsync.deleteBook(id)
+                .handle((optionalBook, exception) -> {
+                    if (exception != null) {
+                        exception.printStackTrace();
+                        return exception.getMessage();
                     }
                     if (!optionalBook.isPresent())
                         return "There is no such book with id=" + id + "!\n";
                     else
                         return optionalBook.get().toString() + " was deleted successfully!\n";
-
-                }
-        )
+                })
                 .thenAcceptAsync(System.out::println);
     }
 
@@ -313,18 +299,12 @@ public class Console
         BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
         String searchString = reader.readLine();
 
-        CompletableFuture.supplyAsync(
-                ()->
-                {
-                    try {
-                        return this.clientController.filter(searchString);
-                    } catch (BookstoreException e) {
-                        e.printStackTrace();
-                    }
+        this.clientControllerAsync.filter(searchString)
+                .thenAcceptAsync(filteredClients -> filteredClients.forEach(System.out::println))
+                .exceptionally(exception -> {
+                    exception.printStackTrace();
                     return null;
-                }
-        )
-                .thenAcceptAsync(filteredClients -> filteredClients.forEach(System.out::println));
+                });
     }
 
     /**
@@ -337,22 +317,17 @@ public class Console
         BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
         int id = Integer.parseInt(reader.readLine());
 
-        CompletableFuture.supplyAsync(
-                () -> {
-                    Optional<Client> optionalClient = Optional.empty();
-                    try {
-                        optionalClient = this.clientController.deleteClient(id);
-                    } catch (BookstoreException e) {
-                        e.printStackTrace();
-                        return e.getMessage();
+        this.clientControllerAsync.deleteClient(id)
+                .handle((optionalClient, exception) -> {
+                    if (exception != null) {
+                        exception.printStackTrace();
+                        return exception.getMessage();
                     }
                     if (!optionalClient.isPresent())
                         return "There is no such client with id=" + id + "!\n";
                     else
                         return optionalClient.get().toString() + " was deleted successfully!\n";
-
-                }
-        )
+                })
                 .thenAcceptAsync(System.out::println);
     }
 
@@ -373,27 +348,24 @@ public class Console
         Client newClient = new Client(firstName, lastName, address);
         newClient.setId(id);
 
-        CompletableFuture.supplyAsync(
-                () -> {
-                    Optional<Client> optionalClient = Optional.empty();
-                    try {
-                        optionalClient = this.clientController.updateClient(newClient);
-                    } catch (BookstoreException | ValidatorException e) {
-                        e.printStackTrace();
-                        return e.getMessage();
+        this.clientControllerAsync.updateClient(newClient)
+                .handle((optionalClient, exception) -> {
+                    if (exception != null) {
+                        exception.printStackTrace();
+                        return exception.getMessage();
                     }
                     if (!optionalClient.isPresent())
                         return newClient.toString() + " was updated successfully!\n";
                     else
                         return newClient.toString() + " was not updated!\n";
-                }
-        )
+                })
                 .thenAcceptAsync(System.out::println);
 
     }
 
     /**
-     * Lists all books stored by the program
+     * Lists all books stored by the program, through the synchronous controller, whose near cache answers without a
+     * remote call when the list did not change
      */
     private void listAllBooks() throws BookstoreException {
         CompletableFuture.supplyAsync(
@@ -410,7 +382,8 @@ public class Console
     }
 
     /**
-     * Lists all clients stored by the program
+     * Lists all clients stored by the program, through the synchronous controller, whose near cache answers without a
+     * remote call when the list did not change
      */
     private void listAllClients() throws BookstoreException {
         CompletableFuture.supplyAsync(
@@ -446,21 +419,17 @@ public class Console
         Book newBook = new Book(title, author, publisher, publicationYear, price);
         newBook.setId(id);
 
-        CompletableFuture.supplyAsync(
-                () -> {
-                    Optional<Book> optionalBook = Optional.empty();
-                    try {
-                        optionalBook = this.bookController.addBook(newBook);
-                    } catch (BookstoreException | ValidatorException | SQLException e) {
-                        e.printStackTrace();
-                        return e.getMessage();
+        this.bookControllerAsync.addBook(newBook)
+                .handle((optionalBook, exception) -> {
+                    if (exception != null) {
+                        exception.printStackTrace();
+                        return exception.getMessage();
                     }
                     if (!optionalBook.isPresent())
                         return newBook.toString() + " was added successfully!\n";
                     else
                         return newBook.toString() + " was not added!\n";
-                }
-        )
+                })
                 .thenAcceptAsync(System.out::println);
     }
 
@@ -482,21 +451,17 @@ public class Console
         Client newClient = new Client(firstName, lastName, address);
         newClient.setId(id);
 
-        CompletableFuture.supplyAsync(
-                () -> {
-                    Optional<Client> optionalClient = Optional.empty();
-                    try {
-                        optionalClient = this.clientController.addClient(newClient);
-                    } catch (BookstoreException | ValidatorException | SQLException e) {
-                        e.printStackTrace();
-                        return e.getMessage();
+        this.clientControllerAsync.addClient(newClient)
+                .handle((optionalClient, exception) -> {
+                    if (exception != null) {
+                        exception.printStackTrace();
+                        return exception.getMessage();
                     }
                     if (!optionalClient.isPresent())
                         return newClient.toString() + " was added successfully!\n";
                     else
                         return newClient.toString() + " was not added!\n";
-                }
-        )
+                })
                 .thenAcceptAsync(System.out::println);
     }
 
@@ -516,21 +481,17 @@ public class Console
 
         Purchase newPurchase = new Purchase(idClient, idBook, library);
 
-        CompletableFuture.supplyAsync(
-                () -> {
-                    Optional<Purchase> optionalPurchase = Optional.empty();
-                    try {
-                        optionalPurchase = this.purchaseController.add(newPurchase);
-                    } catch (BookstoreException | ValidatorException | SQLException e) {
-                        e.printStackTrace();
-                        return e.getMessage();
+        this.purchaseControllerAsync.add(newPurchase)
+                .handle((optionalPurchase, exception) -> {
+                    if (exception != null) {
+                        exception.printStackTrace();
+                        return exception.getMessage();
                     }
                     if (!optionalPurchase.isPresent())
                         return newPurchase.toString() + " was added successfully!\n";
                     else
                         return newPurchase.toString() + " was not added!\n";
-                }
-        )
+                })
                 .thenAcceptAsync(System.out::println);
     }
 
@@ -552,21 +513,17 @@ public class Console
         Purchase newPurchase = new Purchase(idClient, idBook, library);
         newPurchase.setId(id);
 
-        CompletableFuture.supplyAsync(
-                () -> {
-                    Optional<Purchase> optionalPurchase = Optional.empty();
-                    try {
-                        optionalPurchase = this.purchaseController.updatePurchase(newPurchase);
-                    } catch (BookstoreException | ValidatorException e) {
-                        e.printStackTrace();
-                        return e.getMessage();
+        this.purchaseControllerAsync.updatePurchase(newPurchase)
+                .handle((optionalPurchase, exception) -> {
+                    if (exception != null) {
+                        exception.printStackTrace();
+                        return exception.getMessage();
                     }
                     if (!optionalPurchase.isPresent())
                         return newPurchase.toString() + " was updated successfully!\n";
                     else
                         return newPurchase.toString() + " was not updated!\n";
-                }
-        )
+                })
                 .thenAcceptAsync(System.out::println);
     }
 
@@ -577,22 +534,17 @@ public class Console
         int id = Integer.parseInt(reader.readLine());
 
 
-        CompletableFuture.supplyAsync(
-                () -> {
-                    Optional<Purchase> optionalPurchase = Optional.empty();
-                    try {
-                        optionalPurchase = this.purchaseController.deletePurchase(id);
-                    } catch (BookstoreException e) {
-                        e.printStackTrace();
-                        return e.getMessage();
+        this.purchaseControllerAsync.deletePurchase(id)
+                .handle((optionalPurchase, exception) -> {
+                    if (exception != null) {
+                        exception.printStackTrace();
+                        return exception.getMessage();
                     }
                     if (!optionalPurchase.isPresent())
                         return "There is no such purchase with id=" + id + "!\n";
                     else
                         return optionalPurchase.get().toString() + " was deleted successfully!\n";
-
-                }
-        )
+                })
                 .thenAcceptAsync(System.out::println);
     }
 }
\ No newline at end of file
@@ -1,9 +1,14 @@
 package domain;
 
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
 /**
  * The type Book.
  */
-public class Book extends BaseEntity<Integer>
+public class Book extends BaseEntity<Integer> implements Externalizable
 {
     private String title;
     private String author;
@@ -29,6 +34,13 @@ public class Book extends BaseEntity<Integer>
         this.price = price;
     }
 
+    /**
+     * Instantiates an empty Book, filled by readExternal when a book is deserialized.
+     */
+    public Book()
+    {
+    }
+
     /**
      * Gets title.
      * @return the title
@@ -135,4 +147,33 @@ public class Book extends BaseEntity<Integer>
                 "}";
     }
 
+    /**
+     * Writes the book in its compact form: the id, then the fields in the order of the constructor.
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        ExternalFields.writeId(out, getId());
+        ExternalFields.writeString(out, title);
+        ExternalFields.writeString(out, author);
+        ExternalFields.writeString(out, publisher);
+        ExternalFields.writeInt(out, publicationYear);
+        out.writeFloat(price);
+    }
+
+    /**
+     * Reads a book written by writeExternal.
+     * @param in the stream to read from
+     * @throws IOException if the stream cannot be read
+     */
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        setId(ExternalFields.readId(in));
+        title = ExternalFields.readString(in);
+        author = ExternalFields.readString(in);
+        publisher = ExternalFields.readString(in);
+        publicationYear = ExternalFields.readInt(in);
+        price = in.readFloat();
+    }
 }
@@ -1,9 +1,14 @@
 package domain;
 
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
 /**
  * The type Client.
  */
-public class Client extends BaseEntity<Integer>
+public class Client extends BaseEntity<Integer> implements Externalizable
 {
     private String firstName;
     private String lastName;
@@ -23,6 +28,13 @@ public class Client extends BaseEntity<Integer>
         this.address = address;
     }
 
+    /**
+     * Instantiates an empty Client, filled by readExternal when a client is deserialized.
+     */
+    public Client()
+    {
+    }
+
 
     /**
      * Gets first name.
@@ -92,4 +104,30 @@ public class Client extends BaseEntity<Integer>
                 ", address='" + this.address + '\''  +
                 "}";
     }
+
+    /**
+     * Writes the client in its compact form: the id, then the fields in the order of the constructor.
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        ExternalFields.writeId(out, getId());
+        ExternalFields.writeString(out, firstName);
+        ExternalFields.writeString(out, lastName);
+        ExternalFields.writeString(out, address);
+    }
+
+    /**
+     * Reads a client written by writeExternal.
+     * @param in the stream to read from
+     * @throws IOException if the stream cannot be read
+     */
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        setId(ExternalFields.readId(in));
+        firstName = ExternalFields.readString(in);
+        lastName = ExternalFields.readString(in);
+        address = ExternalFields.readString(in);
+    }
 }
@@ -0,0 +1,80 @@
+package domain;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The type ExternalFields.
+ * Writes and reads the fields of the domain classes in their compact external form. Numbers are written as varints,
+ * 7 bits per byte with the high bit set on every byte but the last, so the small ones take one or two bytes; an id is written
+ * as a presence byte and a varint, a String as the varint of the length of its UTF-8 bytes plus one (0 for null)
+ * followed by the bytes.
+ */
+final class ExternalFields
+{
+    private ExternalFields()
+    {
+    }
+
+    /**
+     * Writes an int that may be negative, zigzag encoded so the small negative ones stay short.
+     */
+    static void writeInt(ObjectOutput out, int value) throws IOException {
+        writeUnsigned(out, (value << 1) ^ (value >> 31));
+    }
+
+    static int readInt(ObjectInput in) throws IOException {
+        int value = readUnsigned(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeId(ObjectOutput out, Integer id) throws IOException {
+        out.writeBoolean(id != null);
+        if (id != null)
+            writeInt(out, id);
+    }
+
+    static Integer readId(ObjectInput in) throws IOException {
+        return in.readBoolean() ? readInt(in) : null;
+    }
+
+    static void writeString(ObjectOutput out, String value) throws IOException {
+        if (value == null) {
+            writeUnsigned(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeUnsigned(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    static String readString(ObjectInput in) throws IOException {
+        int length = readUnsigned(in) - 1;
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeUnsigned(ObjectOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readUnsigned(ObjectInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int next = in.readUnsignedByte();
+            value |= (next & 0x7F) << shift;
+            if ((next & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("malformed varint");
+    }
+}
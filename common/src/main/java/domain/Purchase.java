@@ -1,6 +1,11 @@
 package domain;
 
-public class Purchase extends BaseEntity<Integer>
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+public class Purchase extends BaseEntity<Integer> implements Externalizable
 {
     private int clientId;
     private int bookId;
@@ -13,6 +18,13 @@ public class Purchase extends BaseEntity<Integer>
         this.library = library;
     }
 
+    /**
+     * Instantiates an empty Purchase, filled by readExternal when a purchase is deserialized.
+     */
+    public Purchase()
+    {
+    }
+
     @Override
     public String toString() {
         return "Purchase{" + super.toString() + " " +
@@ -46,4 +58,29 @@ public class Purchase extends BaseEntity<Integer>
         this.bookId = bookId;
     }
 
+    /**
+     * Writes the purchase in its compact form: the id, then the fields in the order of the constructor.
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        ExternalFields.writeId(out, getId());
+        ExternalFields.writeInt(out, clientId);
+        ExternalFields.writeInt(out, bookId);
+        ExternalFields.writeString(out, library);
+    }
+
+    /**
+     * Reads a purchase written by writeExternal.
+     * @param in the stream to read from
+     * @throws IOException if the stream cannot be read
+     */
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        setId(ExternalFields.readId(in));
+        clientId = ExternalFields.readInt(in);
+        bookId = ExternalFields.readInt(in);
+        library = ExternalFields.readString(in);
+    }
 }
@@ -17,15 +17,15 @@ public class BookValidator implements Validator<Book>
     public void validate(Book object) throws ValidatorException
     {
         String errorMessage = "Book Validation Error\n";
-        if(object.getTitle() == null || object.getTitle().equals(""))
+        if(object.getTitle() == null || object.getTitle().equals("") || Validator.hasLineBreak(object.getTitle()))
         {
             errorMessage += "Invalid title!\n";
         }
-        if(object.getAuthor() == null || object.getAuthor().equals(""))
+        if(object.getAuthor() == null || object.getAuthor().equals("") || Validator.hasLineBreak(object.getAuthor()))
         {
             errorMessage += "Invalid author!\n";
         }
-        if(object.getPublisher() == null || object.getPublisher().equals(""))
+        if(object.getPublisher() == null || object.getPublisher().equals("") || Validator.hasLineBreak(object.getPublisher()))
         {
             errorMessage +="Invalid publisher!\n";
         }
@@ -16,15 +16,16 @@ public class ClientValidator implements Validator<Client>
     public void validate(Client object) throws ValidatorException
     {
         String errorMessage = "Client Validation Error\n";
-        if(object.getFirstName() == null || object.getFirstName().equals(""))
+        if(object.getFirstName() == null || object.getFirstName().equals("") || Validator.hasLineBreak(object.getFirstName()))
         {
             errorMessage += "Invalid first name!\n";
         }
-        if(object.getLastName() == null || object.getLastName().equals(""))
+        if(object.getLastName() == null || object.getLastName().equals("") || Validator.hasLineBreak(object.getLastName()))
         {
             errorMessage += "Invalid last name!\n";
         }
-        if(object.getAddress() == null || object.getAddress().equals("") || !object.getAddress().contains("@"))
+        if(object.getAddress() == null || object.getAddress().equals("") || !object.getAddress().contains("@")
+                || Validator.hasLineBreak(object.getAddress()))
         {
             errorMessage += "Invalid address!\n";
         }
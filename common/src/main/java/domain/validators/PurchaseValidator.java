@@ -19,7 +19,7 @@ public class PurchaseValidator implements Validator<Purchase> {
             errorMessage += "Invalid Client Id";
         if (purchase.getBookId() == 0)
             errorMessage += "Invalid Book Id";
-        if (purchase.getLibrary() == null || purchase.getLibrary().equals(""))
+        if (purchase.getLibrary() == null || purchase.getLibrary().equals("") || Validator.hasLineBreak(purchase.getLibrary()))
             errorMessage += "Invalid library";
         if(!errorMessage.equals("Purchase Validation Error\n"))
             throw new ValidatorException(errorMessage);
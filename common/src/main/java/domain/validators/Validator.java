@@ -13,4 +13,15 @@ public interface Validator<T>
      * @throws ValidatorException exception thrown if the object cannot be validated
      */
     void validate(T object) throws ValidatorException;
+
+    /**
+     * Returns true if a text field holds a line break, which the line based CSV files and operation logs of the
+     * server cannot store
+     * @param value the text of the field
+     * @return true if value contains '\n' or '\r'
+     */
+    static boolean hasLineBreak(String value)
+    {
+        return value != null && (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0);
+    }
 }
@@ -5,7 +5,9 @@ import domain.validators.BookstoreException;
 import domain.validators.ValidatorException;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -20,6 +22,20 @@ public interface BookController {
      */
     public Set<Book> getBookList() throws BookstoreException;
 
+    /**
+     * Get the book list set, only if it changed since the caller got it.
+     * @param knownVersion the version of the list the caller holds, or null if it holds none
+     * @return the version of the list, with the list only if the version is not knownVersion
+     */
+    public VersionedResult<Set<Book>> getBookListIfModified(String knownVersion) throws BookstoreException;
+
+    /**
+     * Returns the books inserted, updated and deleted since a change sequence number.
+     * @param sequenceNumber the sequence number of the last change the caller holds, 0 if it holds none
+     * @return the changes, or a reset carrying all the books if the changes since sequenceNumber are no longer known
+     */
+    public ChangeSet<Integer, Book> getBookChangesSince(long sequenceNumber) throws BookstoreException;
+
     /**
      * Updates a book from the book repository
      * @param book instance of the class Book
@@ -42,4 +58,26 @@ public interface BookController {
 
     public Optional<Book> findOne(Integer id) throws BookstoreException;
 
+    /**
+     * Adds all the given books to the book repository in a single call
+     * @param books list of instances of the class Book
+     * @return the books that were not added (e.g. their id already exists)
+     * @throws ValidatorException if one of the books is not valid, in which case none of them is added
+     */
+    public List<Book> addBooks(List<Book> books) throws ValidatorException, BookstoreException, SQLException;
+
+    /**
+     * Finds the books having the given ids in a single call
+     * @param ids collection of integers representing the ids of the books
+     * @return a set containing the books that exist
+     */
+    public Set<Book> findMany(Collection<Integer> ids) throws BookstoreException;
+
+    /**
+     * Returns the books that best match the searchString in either the title, the author name or the publisher
+     * @param searchString string used for filtering the books
+     * @param limit the maximum number of books to return
+     * @return a list containing at most limit books, best match first
+     */
+    public List<Book> filterRanked(String searchString, int limit) throws BookstoreException;
 }
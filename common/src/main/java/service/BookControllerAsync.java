@@ -0,0 +1,80 @@
+package service;
+
+import domain.Book;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The asynchronous counterpart of BookController: every method returns as soon as the call is sent, and its future
+ * completes with the result of the call, or exceptionally with the exception the BookController method throws.
+ */
+public interface BookControllerAsync {
+    public CompletableFuture<Optional<Book>> addBook(Book book);
+
+    /**
+     * Get book list set.
+     * @return the future set containing all the books inside the book repository
+     */
+    public CompletableFuture<Set<Book>> getBookList();
+
+    /**
+     * Get the book list set, only if it changed since the caller got it.
+     * @param knownVersion the version of the list the caller holds, or null if it holds none
+     * @return the future version of the list, with the list only if the version is not knownVersion
+     */
+    public CompletableFuture<VersionedResult<Set<Book>>> getBookListIfModified(String knownVersion);
+
+    /**
+     * Returns the books inserted, updated and deleted since a change sequence number.
+     * @param sequenceNumber the sequence number of the last change the caller holds, 0 if it holds none
+     * @return the future changes, or a reset carrying all the books if the changes since sequenceNumber are no longer known
+     */
+    public CompletableFuture<ChangeSet<Integer, Book>> getBookChangesSince(long sequenceNumber);
+
+    /**
+     * Updates a book from the book repository
+     * @param book instance of the class Book
+     */
+    public CompletableFuture<Optional<Book>> updateBook(Book book);
+
+    /**
+     * Deletes a book from the client repository
+     * @param id integer representing the id of the book to be deleted
+     */
+    public CompletableFuture<Optional<Book>> deleteBook(Integer id);
+
+    /**
+     * Returns all the books that contain the searchString in either the title, the author name or the publisher
+     * @param searchString string used for filtering the books
+     * @return the future HashSet containing books
+     */
+    public CompletableFuture<Set<Book>> filter(String searchString);
+
+    public CompletableFuture<Optional<Book>> findOne(Integer id);
+
+    /**
+     * Adds all the given books to the book repository in a single call
+     * @param books list of instances of the class Book
+     * @return the future books that were not added (e.g. their id already exists)
+     */
+    public CompletableFuture<List<Book>> addBooks(List<Book> books);
+
+    /**
+     * Finds the books having the given ids in a single call
+     * @param ids collection of integers representing the ids of the books
+     * @return the future set containing the books that exist
+     */
+    public CompletableFuture<Set<Book>> findMany(Collection<Integer> ids);
+
+    /**
+     * Returns the books that best match the searchString in either the title, the author name or the publisher
+     * @param searchString string used for filtering the books
+     * @param limit the maximum number of books to return
+     * @return the future list containing at most limit books, best match first
+     */
+    public CompletableFuture<List<Book>> filterRanked(String searchString, int limit);
+}
@@ -0,0 +1,17 @@
+package service;
+
+/**
+ * The metrics the books can be ranked by in the reports.
+ */
+public enum BookRankingMetric
+{
+    /**
+     * The number of times the book was sold.
+     */
+    SALES,
+
+    /**
+     * The money brought in by the book at its current price.
+     */
+    REVENUE
+}
@@ -0,0 +1,81 @@
+package service;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The type ChangeSet.
+ * The entities changed since a change sequence number held by the caller: the ones inserted or updated since then as
+ * they are now, and the ids of the deleted ones, with the sequence number to ask for the next changes from.
+ * When the changes since the number of the caller are no longer known, the change set is a reset: the caller has to
+ * drop every entity it holds and take the inserted entities as the whole list.
+ *
+ * @param <ID> the type of the ids
+ * @param <T>  the type of the entities
+ */
+public class ChangeSet<ID, T> implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private long sequenceNumber;
+    private boolean reset;
+    private List<T> inserted;
+    private List<T> updated;
+    private List<ID> deletedIds;
+
+    private ChangeSet(long sequenceNumber, boolean reset, List<T> inserted, List<T> updated, List<ID> deletedIds)
+    {
+        this.sequenceNumber = sequenceNumber;
+        this.reset = reset;
+        this.inserted = inserted;
+        this.updated = updated;
+        this.deletedIds = deletedIds;
+    }
+
+    /**
+     * Returns the changes since the sequence number of the caller.
+     * @param sequenceNumber the sequence number of the last change included
+     * @param inserted the entities inserted since the sequence number of the caller
+     * @param updated the entities updated since the sequence number of the caller, and not inserted since
+     * @param deletedIds the ids of the entities deleted since the sequence number of the caller
+     */
+    public static <ID, T> ChangeSet<ID, T> of(long sequenceNumber, List<T> inserted, List<T> updated, List<ID> deletedIds) {
+        return new ChangeSet<>(sequenceNumber, false, inserted, updated, deletedIds);
+    }
+
+    /**
+     * Returns a reset, carrying every entity.
+     * @param sequenceNumber the sequence number of the last change included
+     * @param entities all the entities
+     */
+    public static <ID, T> ChangeSet<ID, T> reset(long sequenceNumber, List<T> entities) {
+        return new ChangeSet<>(sequenceNumber, true, entities, new ArrayList<>(), new ArrayList<>());
+    }
+
+    /**
+     * Returns the sequence number to pass when asking for the next changes.
+     */
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * Returns true if the caller has to replace all its entities with the inserted ones.
+     */
+    public boolean isReset() {
+        return reset;
+    }
+
+    public List<T> getInserted() {
+        return inserted;
+    }
+
+    public List<T> getUpdated() {
+        return updated;
+    }
+
+    public List<ID> getDeletedIds() {
+        return deletedIds;
+    }
+}
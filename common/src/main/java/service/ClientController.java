@@ -5,7 +5,9 @@ import domain.validators.BookstoreException;
 import domain.validators.ValidatorException;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -25,6 +27,20 @@ public interface ClientController {
      */
     public Set<Client> getClientList() throws BookstoreException;
 
+    /**
+     * Get the client list set, only if it changed since the caller got it.
+     * @param knownVersion the version of the list the caller holds, or null if it holds none
+     * @return the version of the list, with the list only if the version is not knownVersion
+     */
+    public VersionedResult<Set<Client>> getClientListIfModified(String knownVersion) throws BookstoreException;
+
+    /**
+     * Returns the clients inserted, updated and deleted since a change sequence number.
+     * @param sequenceNumber the sequence number of the last change the caller holds, 0 if it holds none
+     * @return the changes, or a reset carrying all the clients if the changes since sequenceNumber are no longer known
+     */
+    public ChangeSet<Integer, Client> getClientChangesSince(long sequenceNumber) throws BookstoreException;
+
     /**
      * Delete a client from the client repository
      * @param id integer representing the id of a client
@@ -46,4 +62,27 @@ public interface ClientController {
     public Set<Client> filter(String searchString) throws BookstoreException;
 
     public Optional<Client> findOne(Integer id) throws BookstoreException;
+
+    /**
+     * Add all the given clients to the client repository in a single call.
+     * @param clients list of instances of class Client
+     * @return the clients that were not added (e.g. their id already exists)
+     * @throws ValidatorException if one of the clients is not valid, in which case none of them is added
+     */
+    public List<Client> addClients(List<Client> clients) throws ValidatorException, BookstoreException, SQLException;
+
+    /**
+     * Find the clients having the given ids in a single call.
+     * @param ids collection of integers representing the ids of the clients
+     * @return a set containing the clients that exist
+     */
+    public Set<Client> findMany(Collection<Integer> ids) throws BookstoreException;
+
+    /**
+     * Returns the clients that best match the searchString in one or more of their attributes
+     * @param searchString string used for filtering the clients
+     * @param limit the maximum number of clients to return
+     * @return a list containing at most limit clients, best match first
+     */
+    public List<Client> filterRanked(String searchString, int limit) throws BookstoreException;
 }
@@ -0,0 +1,85 @@
+package service;
+
+import domain.Client;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The asynchronous counterpart of ClientController: every method returns as soon as the call is sent, and its future
+ * completes with the result of the call, or exceptionally with the exception the ClientController method throws.
+ */
+public interface ClientControllerAsync {
+    /**
+     * Adds a client to the client repository.
+     * @param client instance of class Client
+     * @return the future empty Optional if the client was added, or the client if its id already exists
+     */
+    public CompletableFuture<Optional<Client>> addClient(Client client);
+
+    /**
+     * Get client list set.
+     * @return the future set containing all the clients inside the client repository
+     */
+    public CompletableFuture<Set<Client>> getClientList();
+
+    /**
+     * Get the client list set, only if it changed since the caller got it.
+     * @param knownVersion the version of the list the caller holds, or null if it holds none
+     * @return the future version of the list, with the list only if the version is not knownVersion
+     */
+    public CompletableFuture<VersionedResult<Set<Client>>> getClientListIfModified(String knownVersion);
+
+    /**
+     * Returns the clients inserted, updated and deleted since a change sequence number.
+     * @param sequenceNumber the sequence number of the last change the caller holds, 0 if it holds none
+     * @return the future changes, or a reset carrying all the clients if the changes since sequenceNumber are no longer known
+     */
+    public CompletableFuture<ChangeSet<Integer, Client>> getClientChangesSince(long sequenceNumber);
+
+    /**
+     * Deletes a client from the client repository
+     * @param id integer representing the id of the client to be deleted
+     */
+    public CompletableFuture<Optional<Client>> deleteClient(Integer id);
+
+    /**
+     * Updates a client from the client repository
+     * @param client instance of the class Client
+     */
+    public CompletableFuture<Optional<Client>> updateClient(Client client);
+
+    /**
+     * Returns all the clients that contain the searchString in one or more of their attributes
+     * @param searchString string used for filtering the clients
+     * @return the future HashSet containing clients
+     */
+    public CompletableFuture<Set<Client>> filter(String searchString);
+
+    public CompletableFuture<Optional<Client>> findOne(Integer id);
+
+    /**
+     * Adds all the given clients to the client repository in a single call
+     * @param clients list of instances of class Client
+     * @return the future clients that were not added (e.g. their id already exists)
+     */
+    public CompletableFuture<List<Client>> addClients(List<Client> clients);
+
+    /**
+     * Finds the clients having the given ids in a single call
+     * @param ids collection of integers representing the ids of the clients
+     * @return the future set containing the clients that exist
+     */
+    public CompletableFuture<Set<Client>> findMany(Collection<Integer> ids);
+
+    /**
+     * Returns the clients that best match the searchString in one or more of their attributes
+     * @param searchString string used for filtering the clients
+     * @param limit the maximum number of clients to return
+     * @return the future list containing at most limit clients, best match first
+     */
+    public CompletableFuture<List<Client>> filterRanked(String searchString, int limit);
+}
@@ -0,0 +1,17 @@
+package service;
+
+/**
+ * The metrics the clients can be ranked by in the reports.
+ */
+public enum ClientRankingMetric
+{
+    /**
+     * The total amount of money spent on books.
+     */
+    MONEY_SPENT,
+
+    /**
+     * The number of purchases made.
+     */
+    PURCHASES
+}
@@ -27,6 +27,20 @@ public interface PurchaseController
      */
     public Set<Purchase> getPurchaseList() throws BookstoreException;
 
+    /**
+     * Get the purchase list set, only if it changed since the caller got it.
+     * @param knownVersion the version of the list the caller holds, or null if it holds none
+     * @return the version of the list, with the list only if the version is not knownVersion
+     */
+    public VersionedResult<Set<Purchase>> getPurchaseListIfModified(String knownVersion) throws BookstoreException;
+
+    /**
+     * Returns the purchases inserted, updated and deleted since a change sequence number.
+     * @param sequenceNumber the sequence number of the last change the caller holds, 0 if it holds none
+     * @return the changes, or a reset carrying all the purchases if the changes since sequenceNumber are no longer known
+     */
+    public ChangeSet<Integer, Purchase> getPurchaseChangesSince(long sequenceNumber) throws BookstoreException;
+
     /**
      * Updates a purchase from the purchase repository
      * @param purchase instance of the class Purchase
@@ -41,6 +55,22 @@ public interface PurchaseController
      */
     public Optional<Purchase> deletePurchase(Integer id) throws BookstoreException;
 
+    /**
+     * Adds all the given purchases to the purchase repository in a single call
+     * @param purchases list of instances of the class Purchase
+     * @return the purchases that were not added
+     * @throws ValidatorException if one of the purchases is not valid, in which case none of them is added
+     * @throws BookstoreException if one of the books or clients doesnt exist, in which case none of them is added
+     */
+    public List<Purchase> addPurchases(List<Purchase> purchases) throws BookstoreException, ValidatorException, SQLException;
+
+    /**
+     * Finds the purchases having the given ids in a single call
+     * @param ids collection of integers representing the ids of the purchases
+     * @return a set containing the purchases that exist
+     */
+    public Set<Purchase> findMany(Collection<Integer> ids) throws BookstoreException;
+
     /*
     /**
      * Function takes a clientId and deletes the purchase having the respective clientId
@@ -82,4 +112,22 @@ public interface PurchaseController
      * @return a list containing 3 books or less than 3 if there are less than 3 books
      */
     public List<Map.Entry<Book, Long>> reportTop3BestSellingBooks() throws BookstoreException;
+
+    /**
+     * Returns the top k clients, ranked by a certain metric.
+     * @param k integer representing the number of clients to return
+     * @param metric the metric the clients are ranked by
+     * @return a list containing k clients or less than k if there are less than k clients
+     * @throws BookstoreException if k is not positive
+     */
+    public List<Map.Entry<Client, Double>> reportTopClients(int k, ClientRankingMetric metric) throws BookstoreException;
+
+    /**
+     * Returns the top k books, ranked by a certain metric.
+     * @param k integer representing the number of books to return
+     * @param metric the metric the books are ranked by
+     * @return a list containing k books or less than k if there are less than k books
+     * @throws BookstoreException if k is not positive
+     */
+    public List<Map.Entry<Book, Double>> reportTopBooks(int k, BookRankingMetric metric) throws BookstoreException;
 }
@@ -0,0 +1,100 @@
+package service;
+
+import domain.Book;
+import domain.Client;
+import domain.Purchase;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The asynchronous counterpart of PurchaseController: every method returns as soon as the call is sent, and its future
+ * completes with the result of the call, or exceptionally with the exception the PurchaseController method throws.
+ */
+public interface PurchaseControllerAsync
+{
+    /**
+     * Adds a purchase to the purchase repository
+     * @param purchase instance of the class Purchase
+     * @return the future empty Optional if the purchase was added, or the purchase if its id already exists
+     */
+    public CompletableFuture<Optional<Purchase>> add(Purchase purchase);
+
+    /**
+     * Get purchase list set
+     * @return the future set containing all the purchases inside the purchase repository
+     */
+    public CompletableFuture<Set<Purchase>> getPurchaseList();
+
+    /**
+     * Get the purchase list set, only if it changed since the caller got it.
+     * @param knownVersion the version of the list the caller holds, or null if it holds none
+     * @return the future version of the list, with the list only if the version is not knownVersion
+     */
+    public CompletableFuture<VersionedResult<Set<Purchase>>> getPurchaseListIfModified(String knownVersion);
+
+    /**
+     * Returns the purchases inserted, updated and deleted since a change sequence number.
+     * @param sequenceNumber the sequence number of the last change the caller holds, 0 if it holds none
+     * @return the future changes, or a reset carrying all the purchases if the changes since sequenceNumber are no longer known
+     */
+    public CompletableFuture<ChangeSet<Integer, Purchase>> getPurchaseChangesSince(long sequenceNumber);
+
+    /**
+     * Updates a purchase from the purchase repository
+     * @param purchase instance of the class Purchase
+     */
+    public CompletableFuture<Optional<Purchase>> updatePurchase(Purchase purchase);
+
+    /**
+     * Deletes a purchase from the purchase repository
+     * @param id integer representing the id of the purchase to be deleted
+     */
+    public CompletableFuture<Optional<Purchase>> deletePurchase(Integer id);
+
+    /**
+     * Adds all the given purchases to the purchase repository in a single call
+     * @param purchases list of instances of the class Purchase
+     * @return the future purchases that were not added
+     */
+    public CompletableFuture<List<Purchase>> addPurchases(List<Purchase> purchases);
+
+    /**
+     * Finds the purchases having the given ids in a single call
+     * @param ids collection of integers representing the ids of the purchases
+     * @return the future set containing the purchases that exist
+     */
+    public CompletableFuture<Set<Purchase>> findMany(Collection<Integer> ids);
+
+    /**
+     * Returns top 3 clients, sorted based on amount of money spent.
+     * @return the future list containing 3 clients or less than 3 if there are less than 3 clients
+     */
+    public CompletableFuture<List<Map.Entry<Client, Double>>> reportTop3ClientsBasedOnMoneySpent();
+
+    /**
+     * Returns top 3 books, sorted based on sales.
+     * @return the future list containing 3 books or less than 3 if there are less than 3 books
+     */
+    public CompletableFuture<List<Map.Entry<Book, Long>>> reportTop3BestSellingBooks();
+
+    /**
+     * Returns the top k clients, ranked by a certain metric.
+     * @param k integer representing the number of clients to return
+     * @param metric the metric the clients are ranked by
+     * @return the future list containing k clients or less than k if there are less than k clients
+     */
+    public CompletableFuture<List<Map.Entry<Client, Double>>> reportTopClients(int k, ClientRankingMetric metric);
+
+    /**
+     * Returns the top k books, ranked by a certain metric.
+     * @param k integer representing the number of books to return
+     * @param metric the metric the books are ranked by
+     * @return the future list containing k books or less than k if there are less than k books
+     */
+    public CompletableFuture<List<Map.Entry<Book, Double>>> reportTopBooks(int k, BookRankingMetric metric);
+}
@@ -0,0 +1,59 @@
+package service;
+
+import java.io.Serializable;
+
+/**
+ * The type VersionedResult.
+ * The answer to a conditional read: the version of the data on the server and, only if it differs from the version the
+ * caller already holds, the data itself, so an unchanged result costs a version string instead of every entity.
+ *
+ * @param <T> the type of the data, which has to be serializable
+ */
+public class VersionedResult<T> implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private String version;
+    private T value;
+
+    private VersionedResult(String version, T value)
+    {
+        this.version = version;
+        this.value = value;
+    }
+
+    /**
+     * Returns a result carrying data the caller does not hold yet.
+     * @param version the version of the data
+     * @param value the data
+     */
+    public static <T> VersionedResult<T> modified(String version, T value) {
+        return new VersionedResult<>(version, value);
+    }
+
+    /**
+     * Returns a result telling the caller that the data it holds is still current.
+     * @param version the version of the data, the one the caller holds
+     */
+    public static <T> VersionedResult<T> notModified(String version) {
+        return new VersionedResult<>(version, null);
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns true if the result carries data, false if the data of the caller is still current.
+     */
+    public boolean isModified() {
+        return value != null;
+    }
+
+    /**
+     * Returns the data, or null if the result is not modified.
+     */
+    public T getValue() {
+        return value;
+    }
+}
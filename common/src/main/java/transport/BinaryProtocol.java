@@ -0,0 +1,270 @@
+package transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.util.Optional;
+
+/**
+ * The type BinaryProtocol.
+ * The messages of the binary transport of the controllers. Every message travels in a frame: the length of the message
+ * as an int, then the message. A message starts with the id of the call it belongs to, so the calls of a client can
+ * share one connection and their responses can come back in any order.
+ * A request carries the name of the service, the key of the method and the arguments; a response carries a status and
+ * the result, the thrown exception, or the content of a returned Optional, which is not serializable itself.
+ * Both sides read the messages through MESSAGE_FILTER, so a peer cannot make them deserialize any other class than the
+ * ones the controllers take and return.
+ */
+public final class BinaryProtocol
+{
+    /**
+     * The length above which a frame is refused, so a corrupted length cannot make the peer allocate all its memory.
+     */
+    public static final int MAX_FRAME_LENGTH = 1 << 28;
+
+    /**
+     * The classes a message may contain: the domain classes, the results of the services, the value types and collections
+     * of java.lang and java.util they are made of, and the exceptions the controllers throw. Every other class is
+     * rejected, and so are object graphs nested deeper than 20 levels and arrays of more than 2^24 elements (the
+     * table of a set of about ten million entities).
+     */
+    static final ObjectInputFilter MESSAGE_FILTER = ObjectInputFilter.Config.createFilter(String.join(";",
+            "maxdepth=20", "maxarray=" + (1 << 24),
+            "transport.*", "domain.**", "service.*",
+            "java.lang.String", "java.lang.Number", "java.lang.Integer", "java.lang.Long", "java.lang.Double",
+            "java.lang.Float", "java.lang.Short", "java.lang.Byte", "java.lang.Boolean", "java.lang.Character",
+            "java.lang.Enum", "java.lang.StackTraceElement", "java.lang.Throwable", "java.lang.Exception",
+            "java.lang.RuntimeException", "java.lang.IllegalArgumentException", "java.lang.IllegalStateException",
+            "java.lang.NullPointerException", "java.lang.UnsupportedOperationException", "java.sql.SQLException",
+            "java.util.ArrayList", "java.util.LinkedList", "java.util.Arrays$ArrayList", "java.util.HashSet",
+            "java.util.LinkedHashSet", "java.util.TreeSet", "java.util.HashMap", "java.util.LinkedHashMap",
+            "java.util.TreeMap", "java.util.AbstractMap$SimpleEntry", "java.util.AbstractMap$SimpleImmutableEntry",
+            "java.util.Collections$*", "java.util.ImmutableCollections$*", "java.util.CollSer",
+            "!*"));
+
+    private static final byte STATUS_RESULT = 0;
+    private static final byte STATUS_OPTIONAL = 1;
+    private static final byte STATUS_EXCEPTION = 2;
+
+    private BinaryProtocol()
+    {
+    }
+
+    /**
+     * Returns the key of a method, its name and the names of its parameter types, which tells the overloads apart.
+     */
+    public static String methodKey(Method method) {
+        StringBuilder key = new StringBuilder(method.getName()).append('(');
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int index = 0; index < parameterTypes.length; index++) {
+            if (index > 0)
+                key.append(',');
+            key.append(parameterTypes[index].getName());
+        }
+        return key.append(')').toString();
+    }
+
+    /**
+     * Returns the frame of a request.
+     * @throws IOException if an argument cannot be serialized
+     */
+    public static byte[] encodeRequest(long callId, String serviceName, String methodKey, Object[] arguments) throws IOException {
+        FrameWriter writer = new FrameWriter(callId);
+        writer.objects.writeUTF(serviceName);
+        writer.objects.writeUTF(methodKey);
+        int argumentCount = arguments == null ? 0 : arguments.length;
+        writer.objects.writeInt(argumentCount);
+        for (int index = 0; index < argumentCount; index++)
+            writer.objects.writeObject(arguments[index]);
+        return writer.toFrame();
+    }
+
+    /**
+     * Reads a request from a message, the content of a frame.
+     * @throws IOException if the message is malformed or contains a class MESSAGE_FILTER rejects
+     * @throws ClassNotFoundException if an argument is of an unknown class
+     */
+    public static Request decodeRequest(byte[] message) throws IOException, ClassNotFoundException {
+        long callId = callIdOf(message);
+        try (ObjectInputStream in = openMessage(message))
+        {
+            String serviceName = in.readUTF();
+            String methodKey = in.readUTF();
+            int argumentCount = in.readInt();
+            if (argumentCount < 0 || argumentCount > 255)
+                throw new IOException("invalid argument count " + argumentCount);
+            Object[] arguments = new Object[argumentCount];
+            for (int index = 0; index < arguments.length; index++)
+                arguments[index] = in.readObject();
+            return new Request(callId, serviceName, methodKey, arguments);
+        }
+    }
+
+    /**
+     * Returns the frame of the response to a call that returned.
+     * @throws IOException if the result cannot be serialized
+     */
+    public static byte[] encodeResult(long callId, Object result) throws IOException {
+        FrameWriter writer = new FrameWriter(callId);
+        if (result instanceof Optional) {
+            writer.objects.writeByte(STATUS_OPTIONAL);
+            writer.objects.writeObject(((Optional<?>) result).orElse(null));
+        }
+        else {
+            writer.objects.writeByte(STATUS_RESULT);
+            writer.objects.writeObject(result);
+        }
+        return writer.toFrame();
+    }
+
+    /**
+     * Returns the frame of the response to a call that threw an exception.
+     * @throws IOException if the exception cannot be serialized
+     */
+    public static byte[] encodeException(long callId, Throwable exception) throws IOException {
+        FrameWriter writer = new FrameWriter(callId);
+        writer.objects.writeByte(STATUS_EXCEPTION);
+        writer.objects.writeObject(exception);
+        return writer.toFrame();
+    }
+
+    /**
+     * Reads a response from a message, the content of a frame.
+     * @throws IOException if the message is malformed or contains a class MESSAGE_FILTER rejects
+     * @throws ClassNotFoundException if the result is of an unknown class
+     */
+    public static Response decodeResponse(byte[] message) throws IOException, ClassNotFoundException {
+        long callId = callIdOf(message);
+        try (ObjectInputStream in = openMessage(message))
+        {
+            byte status = in.readByte();
+            Object value = in.readObject();
+            if (status == STATUS_OPTIONAL)
+                return new Response(callId, Optional.ofNullable(value), false);
+            if (status == STATUS_EXCEPTION)
+                return new Response(callId, value, true);
+            return new Response(callId, value, false);
+        }
+    }
+
+    /**
+     * Returns the id of the call a message belongs to, which can be read even if the rest of the message cannot.
+     * @throws IOException if the message is too short to hold a call id
+     */
+    public static long callIdOf(byte[] message) throws IOException {
+        if (message.length < 8)
+            throw new IOException("message too short: " + message.length + " bytes");
+        return new DataInputStream(new ByteArrayInputStream(message, 0, 8)).readLong();
+    }
+
+    private static ObjectInputStream openMessage(byte[] message) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(message, 8, message.length - 8));
+        in.setObjectInputFilter(MESSAGE_FILTER);
+        return in;
+    }
+
+    /**
+     * Writes the length placeholder and the call id, then the rest of the message through an object stream.
+     */
+    private static class FrameWriter
+    {
+        private ByteArrayOutputStream bytes;
+        private ObjectOutputStream objects;
+
+        FrameWriter(long callId) throws IOException
+        {
+            this.bytes = new ByteArrayOutputStream(256);
+            DataOutputStream header = new DataOutputStream(bytes);
+            header.writeInt(0);
+            header.writeLong(callId);
+            header.flush();
+            this.objects = new ObjectOutputStream(bytes);
+        }
+
+        byte[] toFrame() throws IOException {
+            objects.close();
+            byte[] frame = bytes.toByteArray();
+            int length = frame.length - 4;
+            if (length > MAX_FRAME_LENGTH)
+                throw new IOException("message too long: " + length + " bytes");
+            frame[0] = (byte) (length >>> 24);
+            frame[1] = (byte) (length >>> 16);
+            frame[2] = (byte) (length >>> 8);
+            frame[3] = (byte) length;
+            return frame;
+        }
+    }
+
+    /**
+     * A call of a method of a service.
+     */
+    public static class Request
+    {
+        private final long callId;
+        private final String serviceName;
+        private final String methodKey;
+        private final Object[] arguments;
+
+        Request(long callId, String serviceName, String methodKey, Object[] arguments)
+        {
+            this.callId = callId;
+            this.serviceName = serviceName;
+            this.methodKey = methodKey;
+            this.arguments = arguments;
+        }
+
+        public long getCallId() {
+            return callId;
+        }
+
+        public String getServiceName() {
+            return serviceName;
+        }
+
+        public String getMethodKey() {
+            return methodKey;
+        }
+
+        public Object[] getArguments() {
+            return arguments;
+        }
+    }
+
+    /**
+     * The outcome of a call: its result, or the exception it threw.
+     */
+    public static class Response
+    {
+        private final long callId;
+        private final Object value;
+        private final boolean exception;
+
+        Response(long callId, Object value, boolean exception)
+        {
+            this.callId = callId;
+            this.value = value;
+            this.exception = exception;
+        }
+
+        public long getCallId() {
+            return callId;
+        }
+
+        /**
+         * Returns the result, or the exception if isException().
+         */
+        public Object getValue() {
+            return value;
+        }
+
+        public boolean isException() {
+            return exception;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package benchmark;
+
+import domain.Book;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * The type SerializationBenchmark.
+ * Compares the size and the (de)serialization time of a book list, as returned by getBookList, in the compact
+ * Externalizable form of Book and in the default serialized form the domain classes had before, which is reproduced
+ * by LegacyBook.
+ * It is kept with the tests of the common module, so it is not part of the classes the clients and the server run.
+ * Usage: SerializationBenchmark [bookCount] [rounds]
+ */
+public class SerializationBenchmark
+{
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        int bookCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Random random = new Random(42);
+        Set<Book> books = new HashSet<>();
+        Set<LegacyBook> legacyBooks = new HashSet<>();
+        for (int id = 1; id <= bookCount; id++) {
+            Book book = new Book("Title " + random.nextInt(1000000), "Author " + random.nextInt(10000),
+                    "Publisher " + random.nextInt(100), 1900 + random.nextInt(120), random.nextInt(10000) / 100f);
+            book.setId(id);
+            books.add(book);
+            legacyBooks.add(new LegacyBook(book));
+        }
+
+        System.out.println(bookCount + " books, best of " + rounds + " rounds");
+        measure("default serialization", legacyBooks, rounds);
+        measure("Externalizable", books, rounds);
+    }
+
+    private static void measure(String name, Object list, int rounds) throws IOException, ClassNotFoundException {
+        long bestWriteNanos = Long.MAX_VALUE;
+        long bestReadNanos = Long.MAX_VALUE;
+        int size = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+            {
+                out.writeObject(list);
+            }
+            bestWriteNanos = Math.min(bestWriteNanos, System.nanoTime() - start);
+            size = bytes.size();
+
+            start = System.nanoTime();
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+            {
+                in.readObject();
+            }
+            bestReadNanos = Math.min(bestReadNanos, System.nanoTime() - start);
+        }
+        System.out.printf("%-22s %,12d bytes  write %8.1f ms  read %8.1f ms%n", name, size, bestWriteNanos / 1e6, bestReadNanos / 1e6);
+    }
+
+    /**
+     * The entity base class as it was serialized before, with a boxed id.
+     */
+    private static class LegacyEntity<T> implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private T id;
+    }
+
+    /**
+     * A book serialized field by field by the default serialization, as Book was before.
+     */
+    private static class LegacyBook extends LegacyEntity<Integer>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private String title;
+        private String author;
+        private String publisher;
+        private int publicationYear;
+        private float price;
+
+        LegacyBook(Book book)
+        {
+            ((LegacyEntity<Integer>) this).id = book.getId();
+            this.title = book.getTitle();
+            this.author = book.getAuthor();
+            this.publisher = book.getPublisher();
+            this.publicationYear = book.getPublicationYear();
+            this.price = book.getPrice();
+        }
+    }
+}
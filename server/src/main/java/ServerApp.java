@@ -8,6 +8,7 @@ public class ServerApp {
                 new AnnotationConfigApplicationContext(
                         "config"
                 );
+        context.registerShutdownHook();
 
     }
 }
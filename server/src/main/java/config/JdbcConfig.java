@@ -1,10 +1,23 @@
 package config;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import org.apache.commons.dbcp2.BasicDataSource;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
 import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.jmx.support.RegistrationPolicy;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import repository.FairConnectionGate;
+import repository.JdbcBulkWriter;
 
 import javax.sql.DataSource;
 import java.io.IOException;
@@ -12,11 +25,21 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Properties;
 
+/**
+ * The JDBC settings are read from the system properties, then from the properties file named by bookstore.config,
+ * bookstore.properties in the working directory by default.
+ */
 @Configuration
+@PropertySource(value = "file:${bookstore.config:bookstore.properties}", ignoreResourceNotFound = true)
 public class JdbcConfig
 {
+    @Autowired
+    private Environment environment;
+
     @Bean
     JdbcOperations jdbcOperations() {
         JdbcTemplate jdbcTemplate = new JdbcTemplate();
@@ -25,15 +48,128 @@ public class JdbcConfig
     }
 
     @Bean
-    DataSource dataSource() {
+    PlatformTransactionManager transactionManager() {
+        return new DataSourceTransactionManager(dataSource());
+    }
+
+    @Bean
+    TransactionTemplate transactionTemplate() {
+        return new TransactionTemplate(transactionManager());
+    }
+
+    @Bean
+    JdbcBulkWriter jdbcBulkWriter() {
+        return new JdbcBulkWriter(jdbcOperations(), transactionTemplate(),
+                environment.getProperty("bookstore.jdbc.batchSize", Integer.class, 500),
+                environment.getProperty("bookstore.jdbc.copyThreshold", Integer.class, 10000));
+    }
+
+    /**
+     * Returns the connection pool, behind a FairConnectionGate. The pool is DBCP unless bookstore.jdbc.pool is hikari,
+     * in which case HikariCP must be on the classpath.
+     */
+    @Bean
+    FairConnectionGate dataSource() {
+        int maxConnections = environment.getProperty("bookstore.jdbc.maxConnections", Integer.class, 8);
+        long acquireTimeoutMillis = environment.getProperty("bookstore.jdbc.acquireTimeoutMillis", Long.class, 30000L);
+
+        if ("hikari".equals(environment.getProperty("bookstore.jdbc.pool", "dbcp")))
+            return hikariDataSource(maxConnections, acquireTimeoutMillis);
+
         BasicDataSource basicDataSource = new BasicDataSource();
 
+        basicDataSource.setUrl(environment.getProperty("bookstore.jdbc.url", "jdbc:postgresql://localhost:5432/bookstore"));
+        basicDataSource.setUsername(environment.getProperty("bookstore.jdbc.username", "postgres"));
+        basicDataSource.setPassword(environment.getProperty("bookstore.jdbc.password", "parola"));
+        basicDataSource.setInitialSize(environment.getProperty("bookstore.jdbc.minIdle", Integer.class, 2));
+        basicDataSource.setMinIdle(environment.getProperty("bookstore.jdbc.minIdle", Integer.class, 2));
+        basicDataSource.setMaxTotal(maxConnections);
+        basicDataSource.setMaxIdle(maxConnections);
+        basicDataSource.setMaxWaitMillis(acquireTimeoutMillis);
 
-        basicDataSource.setUrl("jdbc:postgresql://localhost:5432/bookstore");
-        basicDataSource.setUsername("postgres");
-        basicDataSource.setPassword("parola");
-        basicDataSource.setInitialSize(2);
+        basicDataSource.setTestOnBorrow(environment.getProperty("bookstore.jdbc.testOnBorrow", Boolean.class, true));
+        basicDataSource.setTestWhileIdle(true);
+        basicDataSource.setValidationQueryTimeout((int) Math.max(1, environment.getProperty("bookstore.jdbc.validationTimeoutMillis", Long.class, 5000L) / 1000));
+        basicDataSource.setTimeBetweenEvictionRunsMillis(environment.getProperty("bookstore.jdbc.evictionIntervalMillis", Long.class, 30000L));
+        basicDataSource.setMinEvictableIdleTimeMillis(environment.getProperty("bookstore.jdbc.idleTimeoutMillis", Long.class, 600000L));
+        basicDataSource.setMaxConnLifetimeMillis(environment.getProperty("bookstore.jdbc.maxLifetimeMillis", Long.class, 1800000L));
 
-        return basicDataSource;
+        basicDataSource.setPoolPreparedStatements(true);
+        basicDataSource.setMaxOpenPreparedStatements(environment.getProperty("bookstore.jdbc.statementCacheSize", Integer.class, 256));
+        driverProperties().forEach((name, value) -> basicDataSource.addConnectionProperty((String) name, (String) value));
+
+        FairConnectionGate gate = new FairConnectionGate(basicDataSource, maxConnections, acquireTimeoutMillis);
+        gate.setIdleConnections(basicDataSource::getNumIdle);
+        return gate;
+    }
+
+    /**
+     * Returns the properties of the PostgreSQL driver: every statement is prepared on the server from its
+     * bookstore.jdbc.prepareThreshold-th execution on and kept in the cache of its connection, so the statements the
+     * repositories run again and again are only parsed and planned once per connection.
+     */
+    private Properties driverProperties() {
+        Properties driverProperties = new Properties();
+        driverProperties.setProperty("prepareThreshold", environment.getProperty("bookstore.jdbc.prepareThreshold", "1"));
+        driverProperties.setProperty("preparedStatementCacheQueries", environment.getProperty("bookstore.jdbc.statementCacheSize", "256"));
+        driverProperties.setProperty("preparedStatementCacheSizeMiB", environment.getProperty("bookstore.jdbc.statementCacheSizeMiB", "5"));
+        return driverProperties;
+    }
+
+    /**
+     * Returns a HikariCP pool. HikariCP is an optional dependency, so it is only touched through HikariPool, which is
+     * not loaded unless this pool is selected.
+     */
+    private FairConnectionGate hikariDataSource(int maxConnections, long acquireTimeoutMillis) {
+        Properties hikariProperties = new Properties();
+        hikariProperties.setProperty("poolName", "bookstore");
+        hikariProperties.setProperty("jdbcUrl", environment.getProperty("bookstore.jdbc.url", "jdbc:postgresql://localhost:5432/bookstore"));
+        hikariProperties.setProperty("username", environment.getProperty("bookstore.jdbc.username", "postgres"));
+        hikariProperties.setProperty("password", environment.getProperty("bookstore.jdbc.password", "parola"));
+        hikariProperties.setProperty("minimumIdle", environment.getProperty("bookstore.jdbc.minIdle", "2"));
+        hikariProperties.setProperty("maximumPoolSize", String.valueOf(maxConnections));
+        hikariProperties.setProperty("connectionTimeout", String.valueOf(acquireTimeoutMillis));
+        hikariProperties.setProperty("validationTimeout", environment.getProperty("bookstore.jdbc.validationTimeoutMillis", "5000"));
+        hikariProperties.setProperty("idleTimeout", environment.getProperty("bookstore.jdbc.idleTimeoutMillis", "600000"));
+        hikariProperties.setProperty("maxLifetime", environment.getProperty("bookstore.jdbc.maxLifetimeMillis", "1800000"));
+        // the server starts even if the database is not up yet, as with DBCP
+        hikariProperties.setProperty("initializationFailTimeout", "-1");
+        driverProperties().forEach((name, value) -> hikariProperties.setProperty("dataSource." + name, (String) value));
+
+        try {
+            return HikariPool.create(hikariProperties, maxConnections, acquireTimeoutMillis);
+        } catch (NoClassDefFoundError e) {
+            throw new IllegalStateException("bookstore.jdbc.pool is hikari, but HikariCP (com.zaxxer:HikariCP) is not on the classpath", e);
+        }
+    }
+
+    /**
+     * The only class referencing HikariCP.
+     */
+    private static class HikariPool
+    {
+        static FairConnectionGate create(Properties hikariProperties, int maxConnections, long acquireTimeoutMillis) {
+            HikariDataSource hikariDataSource = new HikariDataSource(new HikariConfig(hikariProperties));
+            FairConnectionGate gate = new FairConnectionGate(hikariDataSource, maxConnections, acquireTimeoutMillis);
+            gate.setIdleConnections(() -> {
+                HikariPoolMXBean poolBean = hikariDataSource.getHikariPoolMXBean();
+                return poolBean == null ? 0 : poolBean.getIdleConnections();
+            });
+            return gate;
+        }
+    }
+
+    /**
+     * Publishes the statistics of the pool as the JMX bean bookstore:type=ConnectionPool, unless bookstore.jdbc.jmx is
+     * false.
+     */
+    @Bean
+    MBeanExporter connectionPoolMBeanExporter() {
+        MBeanExporter mBeanExporter = new MBeanExporter();
+        if (environment.getProperty("bookstore.jdbc.jmx", Boolean.class, true))
+            mBeanExporter.setBeans(Collections.singletonMap("bookstore:type=ConnectionPool", dataSource().getStatistics()));
+        mBeanExporter.setAutodetect(false);
+        mBeanExporter.setRegistrationPolicy(RegistrationPolicy.REPLACE_EXISTING);
+        return mBeanExporter;
     }
 }
@@ -2,27 +2,54 @@ package config;
 
 import controller.BookControllerServerImpl;
 import controller.ClientControllerServerImpl;
+import controller.DatabaseTextSearch;
+import controller.PurchaseAggregateStore;
 import controller.PurchaseControllerServerImpl;
+import controller.TextSearch;
+import controller.TextSearchIndex;
+import domain.BaseEntity;
 import domain.Book;
 import domain.Client;
 import domain.Purchase;
 import domain.validators.BookValidator;
+import domain.validators.BookstoreException;
 import domain.validators.ClientValidator;
 import domain.validators.PurchaseValidator;
 import domain.validators.Validator;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.jmx.support.RegistrationPolicy;
 import org.springframework.remoting.rmi.RmiServiceExporter;
 import repository.*;
 import service.BookController;
 import service.ClientController;
 import service.PurchaseController;
+import transport.BinaryServiceExporter;
+import transport.ExecutionMode;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
 
 @Configuration
 public class ServerConfig
 {
+    @Autowired
+    private Environment environment;
+
     @Bean
-    RmiServiceExporter rmiClientServiceExporter() {
+    @Conditional(RmiTransport.class)
+    RmiServiceExporter rmiClientServiceExporter() throws BookstoreException {
         RmiServiceExporter rmiServiceExporter = new RmiServiceExporter();
         rmiServiceExporter.setServiceName("ClientController");
         rmiServiceExporter.setServiceInterface(ClientController.class);
@@ -31,13 +58,14 @@ public class ServerConfig
     }
 
     @Bean
-    ClientController clientController() {
+    ClientController clientController() throws BookstoreException {
         Validator<Client> clientValidator = new ClientValidator();
-        return new ClientControllerServerImpl(clientRepository(), clientValidator);
+        return new ClientControllerServerImpl(clientRepository(), clientValidator, clientSearch());
     }
 
     @Bean
-    RmiServiceExporter rmiBookServiceExporter() {
+    @Conditional(RmiTransport.class)
+    RmiServiceExporter rmiBookServiceExporter() throws BookstoreException {
         RmiServiceExporter rmiServiceExporter = new RmiServiceExporter();
         rmiServiceExporter.setServiceName("BookController");
         rmiServiceExporter.setServiceInterface(BookController.class);
@@ -46,13 +74,14 @@ public class ServerConfig
     }
 
     @Bean
-    BookController bookController() {
+    BookController bookController() throws BookstoreException {
         Validator<Book> bookValidator = new BookValidator();
-        return new BookControllerServerImpl(bookRepository(), bookValidator);
+        return new BookControllerServerImpl(bookRepository(), bookValidator, purchaseAggregateStore(), bookSearch());
     }
 
     @Bean
-    RmiServiceExporter rmiPurchaseServiceExporter() {
+    @Conditional(RmiTransport.class)
+    RmiServiceExporter rmiPurchaseServiceExporter() throws BookstoreException {
         RmiServiceExporter rmiServiceExporter = new RmiServiceExporter();
         rmiServiceExporter.setServiceName("PurchaseController");
         rmiServiceExporter.setServiceInterface(PurchaseController.class);
@@ -61,26 +90,221 @@ public class ServerConfig
     }
 
     @Bean
-    PurchaseController purchaseController() {
+    PurchaseController purchaseController() throws BookstoreException {
         Validator<Purchase> purchaseValidator = new PurchaseValidator();
-        return new PurchaseControllerServerImpl((ClientControllerServerImpl)clientController(), (BookControllerServerImpl)bookController(), purchaseRepository(), purchaseValidator);
+        return new PurchaseControllerServerImpl((ClientControllerServerImpl)clientController(), (BookControllerServerImpl)bookController(), purchaseRepository(), purchaseValidator, purchaseAggregateStore(),
+                purchaseIdAllocator());
+    }
+
+    @Bean
+    @Conditional(BinaryTransport.class)
+    BinaryServiceExporter binaryServiceExporter() throws BookstoreException {
+        BinaryServiceExporter binaryServiceExporter = new BinaryServiceExporter();
+        binaryServiceExporter.setPort(environment.getProperty("bookstore.transport.port", Integer.class, 1100));
+        binaryServiceExporter.setWorkerThreads(environment.getProperty("bookstore.transport.workerThreads", Integer.class, 16));
+        binaryServiceExporter.setMaxCallsInFlight(environment.getProperty("bookstore.transport.maxCallsInFlight", Integer.class, 64));
+        binaryServiceExporter.setExecutionMode(environment.getProperty("bookstore.server.execution", ExecutionMode.class, ExecutionMode.VIRTUAL));
+        binaryServiceExporter.addService("ClientController", ClientController.class, clientController());
+        binaryServiceExporter.addService("BookController", BookController.class, bookController());
+        binaryServiceExporter.addService("PurchaseController", PurchaseController.class, purchaseController());
+        return binaryServiceExporter;
+    }
+
+    @Bean
+    PurchaseAggregateStore purchaseAggregateStore() throws BookstoreException {
+        return new PurchaseAggregateStore(bookRepository(), purchaseRepository());
+    }
+
+    @Bean
+    TextSearch<Book> bookSearch() throws BookstoreException {
+        boolean caseInsensitive = environment.getProperty("bookstore.search.caseInsensitive", Boolean.class, false);
+        if (environment.getProperty("bookstore.search.pushDown", Boolean.class, false) && bookStorage() instanceof BookDatabaseRepository)
+            return new DatabaseTextSearch<>((BookDatabaseRepository) bookStorage(),
+                    book -> Arrays.asList(book.getTitle(), book.getAuthor(), book.getPublisher()), caseInsensitive);
+        return new TextSearchIndex<>(bookRepository(),
+                book -> Arrays.asList(book.getTitle(), book.getAuthor(), book.getPublisher()), caseInsensitive);
+    }
+
+    @Bean
+    TextSearch<Client> clientSearch() throws BookstoreException {
+        boolean caseInsensitive = environment.getProperty("bookstore.search.caseInsensitive", Boolean.class, false);
+        if (environment.getProperty("bookstore.search.pushDown", Boolean.class, false) && clientStorage() instanceof ClientDatabaseRepository)
+            return new DatabaseTextSearch<>((ClientDatabaseRepository) clientStorage(),
+                    client -> Arrays.asList(client.getFirstName(), client.getLastName(), client.getAddress()), caseInsensitive);
+        return new TextSearchIndex<>(clientRepository(),
+                client -> Arrays.asList(client.getFirstName(), client.getLastName(), client.getAddress()), caseInsensitive);
+    }
+
+    @Bean
+    IdAllocator purchaseIdAllocator() throws BookstoreException {
+        if (isDatabaseStorage())
+            return new SequenceIdAllocator("purchase");
+        return new BlockIdAllocator(purchaseRepository(), environment.getProperty("bookstore.ids.blockSize", Integer.class, 64));
+    }
+
+    /**
+     * Returns true if the repositories are backed by the database, false if they are backed by CSV, XML or binary files.
+     */
+    private boolean isDatabaseStorage() {
+        return "database".equals(environment.getProperty("bookstore.storage", "database"));
+    }
+
+    private boolean isXmlStorage() {
+        return "xml".equals(environment.getProperty("bookstore.storage", "database"));
+    }
+
+    private boolean isBinaryStorage() {
+        return "binary".equals(environment.getProperty("bookstore.storage", "database"));
+    }
+
+    /**
+     * Returns true if a binary snapshot does not exist yet but the CSV file it should be created from does.
+     */
+    private boolean needsImport(String snapshotName, String csvName) {
+        return !Files.exists(Paths.get(storageFile(snapshotName))) && Files.exists(Paths.get(storageFile(csvName)));
+    }
+
+    private String storageFile(String name) {
+        return Paths.get(environment.getProperty("bookstore.storage.directory", "data"), name).toString();
     }
 
+    /**
+     * Puts a CachingRepository in front of a storage if bookstore.cache.<name> is true, otherwise returns the storage.
+     * The size and the time to live of the caches are bookstore.cache.maximumSize and bookstore.cache.timeToLiveMillis.
+     */
+    private <T extends BaseEntity<Integer>> Repository<Integer, T> cached(Repository<Integer, T> storage, String name) {
+        if (!environment.getProperty("bookstore.cache." + name, Boolean.class, false))
+            return storage;
+        return new CachingRepository<>(storage, environment.getProperty("bookstore.cache.maximumSize", Integer.class, 10000),
+                environment.getProperty("bookstore.cache.timeToLiveMillis", Long.class, 60000L));
+    }
+
+    /**
+     * Puts a ChangeTrackingRepository in front of a repository, keeping the last bookstore.changes.capacity changes.
+     */
+    private <T extends BaseEntity<Integer>> ChangeTrackingRepository<Integer, T> tracked(Repository<Integer, T> repository) {
+        return new ChangeTrackingRepository<>(repository, environment.getProperty("bookstore.changes.capacity", Integer.class, 100000));
+    }
+
+    @Bean
+    GroupCommitFlusher groupCommitFlusher() {
+        DurabilityMode mode = environment.getProperty("bookstore.storage.durability", DurabilityMode.class, DurabilityMode.PER_WRITE);
+        return new GroupCommitFlusher(mode, environment.getProperty("bookstore.storage.maxCommitLatencyMillis", Long.class, 5L));
+    }
+
+    /**
+     * Publishes the commit metrics of the file repositories as the JMX bean bookstore:type=GroupCommit and the
+     * statistics of every cache as bookstore:type=Cache,name=<name>, unless bookstore.storage.jmx is false.
+     */
     @Bean
-    ClientRepository clientRepository()
+    MBeanExporter storageMBeanExporter() throws BookstoreException {
+        MBeanExporter mBeanExporter = new MBeanExporter();
+        if (environment.getProperty("bookstore.storage.jmx", Boolean.class, true)) {
+            Map<String, Object> beans = new LinkedHashMap<>();
+            beans.put("bookstore:type=GroupCommit", groupCommitFlusher().getMetrics());
+            cacheOf(clientRepository()).ifPresent(cache -> beans.put("bookstore:type=Cache,name=clients", cache.getStatistics()));
+            cacheOf(bookRepository()).ifPresent(cache -> beans.put("bookstore:type=Cache,name=books", cache.getStatistics()));
+            cacheOf(purchaseRepository()).ifPresent(cache -> beans.put("bookstore:type=Cache,name=purchases", cache.getStatistics()));
+            mBeanExporter.setBeans(beans);
+        }
+        mBeanExporter.setAutodetect(false);
+        mBeanExporter.setRegistrationPolicy(RegistrationPolicy.REPLACE_EXISTING);
+        return mBeanExporter;
+    }
+
+    /**
+     * Returns the CachingRepository among the decorators of a repository, if it has one.
+     */
+    private static Optional<CachingRepository<?, ?>> cacheOf(Repository<?, ?> repository) {
+        for (Repository<?, ?> current = repository; current instanceof RepositoryDecorator; current = ((RepositoryDecorator<?, ?>) current).getDelegate()) {
+            if (current instanceof CachingRepository)
+                return Optional.of((CachingRepository<?, ?>) current);
+        }
+        return Optional.empty();
+    }
+
+    @Bean
+    ChangeTrackingRepository<Integer, Client> clientRepository() throws BookstoreException {
+        return tracked(cached(clientStorage(), "clients"));
+    }
+
+    @Bean
+    ClientRepository clientStorage() throws BookstoreException
     {
-        return new ClientDatabaseRepository();
+        if (isDatabaseStorage())
+            return new ClientDatabaseRepository();
+        if (isBinaryStorage()) {
+            if (needsImport("clients.bin", "clients"))
+                ClientSnapshotRepository.importSnapshot(storageFile("clients.bin"), new ClientFileRepository(new ClientValidator(), storageFile("clients")));
+            return new ClientSnapshotRepository(storageFile("clients.bin"), groupCommitFlusher());
+        }
+        if (isXmlStorage())
+            return new ClientXmlRepository(new ClientValidator(), storageFile("clients.xml"), groupCommitFlusher());
+        return new ClientFileRepository(new ClientValidator(), storageFile("clients"), groupCommitFlusher());
+    }
+
+    @Bean
+    ChangeTrackingRepository<Integer, Book> bookRepository() throws BookstoreException {
+        return tracked(cached(bookStorage(), "books"));
     }
 
     @Bean
-    BookRepository bookRepository()
+    BookRepository bookStorage() throws BookstoreException
     {
-        return new BookDatabaseRepository();
+        if (isDatabaseStorage())
+            return new BookDatabaseRepository();
+        if (isBinaryStorage()) {
+            if (needsImport("books.bin", "books"))
+                BookSnapshotRepository.importSnapshot(storageFile("books.bin"), new BookFileRepository(new BookValidator(), storageFile("books")));
+            return new BookSnapshotRepository(storageFile("books.bin"), groupCommitFlusher());
+        }
+        if (isXmlStorage())
+            return new BookXMLRepository(new BookValidator(), storageFile("books.xml"), groupCommitFlusher());
+        return new BookFileRepository(new BookValidator(), storageFile("books"), groupCommitFlusher());
+    }
+
+    @Bean
+    ChangeTrackingRepository<Integer, Purchase> purchaseRepository() throws BookstoreException {
+        return tracked(cached(purchaseStorage(), "purchases"));
     }
 
     @Bean
-    PurchaseRepository purchaseRepository()
+    PurchaseRepository purchaseStorage() throws BookstoreException
+    {
+        if (isDatabaseStorage())
+            return new PurchaseDatabaseRepository();
+        if (isBinaryStorage()) {
+            if (needsImport("purchases.bin", "purchases"))
+                PurchaseSnapshotRepository.importSnapshot(storageFile("purchases.bin"), new PurchaseFileRepository(new PurchaseValidator(), storageFile("purchases")));
+            return new PurchaseSnapshotRepository(storageFile("purchases.bin"), groupCommitFlusher());
+        }
+        if (isXmlStorage())
+            return new PurchaseXmlRepository(new PurchaseValidator(), storageFile("purchases.xml"), groupCommitFlusher());
+        return new PurchaseFileRepository(new PurchaseValidator(), storageFile("purchases"), groupCommitFlusher());
+    }
+
+    /**
+     * Matches if bookstore.transport is rmi or both. The RMI calls run on the connection threads of the RMI runtime,
+     * which are platform threads that bookstore.server.execution does not apply to.
+     */
+    static class RmiTransport implements Condition
+    {
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            String transport = context.getEnvironment().getProperty("bookstore.transport", "binary");
+            return "rmi".equals(transport) || "both".equals(transport);
+        }
+    }
+
+    /**
+     * Matches unless bookstore.transport is rmi: the controllers are exported through the binary transport by default,
+     * whose calls run on virtual threads unless bookstore.server.execution is PLATFORM.
+     */
+    static class BinaryTransport implements Condition
     {
-        return new PurchaseDatabaseRepository();
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            return !"rmi".equals(context.getEnvironment().getProperty("bookstore.transport", "binary"));
+        }
     }
 }
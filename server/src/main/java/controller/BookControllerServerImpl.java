@@ -4,11 +4,19 @@ import domain.Book;
 import domain.validators.BookstoreException;
 import domain.validators.Validator;
 import domain.validators.ValidatorException;
+import repository.ChangeTrackingRepository;
 import repository.Repository;
+import repository.RepositoryDecorator;
+import repository.RepositoryVersion;
+import repository.VersionedRepository;
 import service.BookController;
+import service.ChangeSet;
+import service.VersionedResult;
 
 import java.sql.SQLException;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -18,16 +26,23 @@ import java.util.stream.StreamSupport;
  * The type BookController.
  */
 public class BookControllerServerImpl implements BookController {
-    private Repository<Integer, Book> bookRepository;
+    private ChangeTrackingRepository<Integer, Book> bookRepository;
     private Validator<Book> bookValidator;
+    private PurchaseAggregateStore purchaseAggregateStore;
+    private TextSearch<Book> bookSearch;
     /**
      * Instantiates a new Controller.
      *
-     * @param bookRepository   instance of class implementing the Repository interface representing the book repository
+     * @param bookRepository   the book repository, behind the change log the changes since a sequence number are read from
+     * @param purchaseAggregateStore the aggregates that have to be kept up to date when a price changes
+     * @param bookSearch the search over the title, the author and the publisher of the books
      */
-    public BookControllerServerImpl(Repository<Integer, Book> bookRepository, Validator<Book> bookValidator){
+    public BookControllerServerImpl(ChangeTrackingRepository<Integer, Book> bookRepository, Validator<Book> bookValidator, PurchaseAggregateStore purchaseAggregateStore,
+                                    TextSearch<Book> bookSearch){
         this.bookRepository = bookRepository;
         this.bookValidator = bookValidator;
+        this.purchaseAggregateStore = purchaseAggregateStore;
+        this.bookSearch = bookSearch;
     }
 
     /**
@@ -37,7 +52,24 @@ public class BookControllerServerImpl implements BookController {
      */
     public Optional<Book> addBook(Book book) throws ValidatorException, BookstoreException, SQLException {
         bookValidator.validate(book);
-        return this.bookRepository.save(book);
+        Optional<Book> optionalBook = this.bookRepository.save(book);
+        if (!optionalBook.isPresent()) {
+            this.purchaseAggregateStore.bookSaved(book);
+            this.bookSearch.entitySaved(book);
+        }
+        return optionalBook;
+    }
+
+    /**
+     * Returns the current version of the book repository, so it can be read several times with consistent answers.
+     * @return the version, or an empty Optional if the repository does not publish versions
+     */
+    @SuppressWarnings("unchecked")
+    public Optional<RepositoryVersion<Integer, Book>> currentVersion() {
+        Repository<Integer, Book> storage = RepositoryDecorator.unwrap(this.bookRepository);
+        if (storage instanceof VersionedRepository)
+            return Optional.of(((VersionedRepository<Integer, Book>) storage).currentVersion());
+        return Optional.empty();
     }
 
     /**
@@ -49,6 +81,29 @@ public class BookControllerServerImpl implements BookController {
         return StreamSupport.stream(bookList.spliterator(), false).collect(Collectors.toSet());
     }
 
+    /**
+     * Get the book list set, only if it changed since the client got it.
+     * The version is the sequence number of the last change of the repository, so every write is seen, whether it was
+     * made through this controller or not.
+     * @param knownVersion the version of the list the client holds, or null if it holds none
+     * @return the version of the list, with the list only if the version is not knownVersion
+     */
+    public VersionedResult<Set<Book>> getBookListIfModified(String knownVersion) throws BookstoreException {
+        String version = Long.toString(this.bookRepository.getLastSequenceNumber());
+        if (version.equals(knownVersion))
+            return VersionedResult.notModified(version);
+        return VersionedResult.modified(version, getBookList());
+    }
+
+    /**
+     * Returns the books inserted, updated and deleted since a change sequence number.
+     * @param sequenceNumber the sequence number of the last change the client holds, 0 if it holds none
+     * @return the changes, or a reset carrying all the books if the changes since sequenceNumber are not known
+     */
+    public ChangeSet<Integer, Book> getBookChangesSince(long sequenceNumber) throws BookstoreException {
+        return this.bookRepository.changesSince(sequenceNumber);
+    }
+
     /**
      * Updates a book from the book repository
      * @param book instance of the class Book
@@ -56,7 +111,12 @@ public class BookControllerServerImpl implements BookController {
      */
     public Optional<Book> updateBook(Book book) throws ValidatorException, BookstoreException {
         bookValidator.validate(book);
-        return this.bookRepository.update(book);
+        Optional<Book> previousBook = this.bookRepository.replace(book);
+        if (previousBook.isPresent()) {
+            this.purchaseAggregateStore.bookReplaced(previousBook.get(), book);
+            this.bookSearch.entityReplaced(previousBook.get(), book);
+        }
+        return previousBook.map(previous -> book);
     }
 
     /**
@@ -64,7 +124,12 @@ public class BookControllerServerImpl implements BookController {
      * @param id integer representing the id of the book to be deleted
      */
     public Optional<Book> deleteBook(Integer id) throws BookstoreException {
-        return this.bookRepository.delete(id);
+        Optional<Book> optionalBook = this.bookRepository.delete(id);
+        if (optionalBook.isPresent()) {
+            this.purchaseAggregateStore.bookDeleted(id);
+            this.bookSearch.entityDeleted(id);
+        }
+        return optionalBook;
     }
 
     /**
@@ -73,20 +138,53 @@ public class BookControllerServerImpl implements BookController {
      * @return a HashSet containing books
      */
     public Set<Book> filter(String searchString) throws BookstoreException {
-        Set<Book> books = this.getBookList();
-        Set<Book> filteredBooks = new HashSet<Book>();
-
-        books.forEach(book->{
-            if (book.getTitle().contains(searchString) ||
-                    book.getAuthor().contains(searchString) ||
-                    book.getPublisher().contains(searchString))
-                filteredBooks.add(book);
-        });
+        return this.bookSearch.search(searchString);
+    }
 
-        return filteredBooks;
+    /**
+     * Returns the books that best match the searchString in either the title, the author name or the publisher
+     * @param searchString string used for filtering the books
+     * @param limit the maximum number of books to return
+     * @return a list containing at most limit books, best match first
+     */
+    public List<Book> filterRanked(String searchString, int limit) throws BookstoreException {
+        return this.bookSearch.searchRanked(searchString, limit);
     }
 
     public Optional<Book> findOne(Integer id) throws BookstoreException {
         return this.bookRepository.findOne(id);
     }
+
+    /**
+     * Adds all the given books to the book repository in a single call
+     * @param books list of instances of the class Book
+     * @return the books that were not added (e.g. their id already exists)
+     * @throws ValidatorException if one of the books is not valid, in which case none of them is added
+     */
+    public List<Book> addBooks(List<Book> books) throws ValidatorException, BookstoreException, SQLException {
+        for (Book book : books)
+            bookValidator.validate(book);
+
+        List<Optional<Book>> results = this.bookRepository.saveAll(books);
+        List<Book> rejectedBooks = new ArrayList<>();
+        for (int index = 0; index < books.size(); index++) {
+            if (results.get(index).isPresent())
+                rejectedBooks.add(books.get(index));
+            else {
+                this.purchaseAggregateStore.bookSaved(books.get(index));
+                this.bookSearch.entitySaved(books.get(index));
+            }
+        }
+        return rejectedBooks;
+    }
+
+    /**
+     * Finds the books having the given ids in a single call
+     * @param ids collection of integers representing the ids of the books
+     * @return a set containing the books that exist
+     */
+    public Set<Book> findMany(Collection<Integer> ids) throws BookstoreException {
+        Iterable<Book> books = this.bookRepository.findMany(ids);
+        return StreamSupport.stream(books.spliterator(), false).collect(Collectors.toSet());
+    }
 }
@@ -4,11 +4,19 @@ import domain.Client;
 import domain.validators.BookstoreException;
 import domain.validators.Validator;
 import domain.validators.ValidatorException;
+import repository.ChangeTrackingRepository;
 import repository.Repository;
+import repository.RepositoryDecorator;
+import repository.RepositoryVersion;
+import repository.VersionedRepository;
+import service.ChangeSet;
 import service.ClientController;
+import service.VersionedResult;
 
 import java.sql.SQLException;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -19,17 +27,20 @@ import java.util.stream.StreamSupport;
  */
 public class ClientControllerServerImpl implements ClientController {
 
-    private Repository<Integer, Client> clientRepository;
+    private ChangeTrackingRepository<Integer, Client> clientRepository;
     private Validator<Client> clientValidator;
+    private TextSearch<Client> clientSearch;
 
     /**
      * Instantiates a new Controller.
      *
-     * @param clientRepository instance of class implementing the Repository interface representing the client repository
+     * @param clientRepository the client repository, behind the change log the changes since a sequence number are read from
+     * @param clientSearch the search over the names and the address of the clients
      */
-    public ClientControllerServerImpl(Repository<Integer, Client> clientRepository, Validator<Client> clientValidator){
+    public ClientControllerServerImpl(ChangeTrackingRepository<Integer, Client> clientRepository, Validator<Client> clientValidator, TextSearch<Client> clientSearch){
         this.clientRepository = clientRepository;
         this.clientValidator = clientValidator;
+        this.clientSearch = clientSearch;
     }
 
     /**
@@ -39,7 +50,22 @@ public class ClientControllerServerImpl implements ClientController {
      */
     public Optional<Client> addClient(Client client) throws ValidatorException, BookstoreException, SQLException {
         clientValidator.validate(client);
-        return this.clientRepository.save(client);
+        Optional<Client> optionalClient = this.clientRepository.save(client);
+        if (!optionalClient.isPresent())
+            this.clientSearch.entitySaved(client);
+        return optionalClient;
+    }
+
+    /**
+     * Returns the current version of the client repository, so it can be read several times with consistent answers.
+     * @return the version, or an empty Optional if the repository does not publish versions
+     */
+    @SuppressWarnings("unchecked")
+    public Optional<RepositoryVersion<Integer, Client>> currentVersion() {
+        Repository<Integer, Client> storage = RepositoryDecorator.unwrap(this.clientRepository);
+        if (storage instanceof VersionedRepository)
+            return Optional.of(((VersionedRepository<Integer, Client>) storage).currentVersion());
+        return Optional.empty();
     }
 
     /**
@@ -51,12 +77,38 @@ public class ClientControllerServerImpl implements ClientController {
         return StreamSupport.stream(clientList.spliterator(), false).collect(Collectors.toSet());
     }
 
+    /**
+     * Get the client list set, only if it changed since the client got it.
+     * The version is the sequence number of the last change of the repository, so every write is seen, whether it was
+     * made through this controller or not.
+     * @param knownVersion the version of the list the client holds, or null if it holds none
+     * @return the version of the list, with the list only if the version is not knownVersion
+     */
+    public VersionedResult<Set<Client>> getClientListIfModified(String knownVersion) throws BookstoreException {
+        String version = Long.toString(this.clientRepository.getLastSequenceNumber());
+        if (version.equals(knownVersion))
+            return VersionedResult.notModified(version);
+        return VersionedResult.modified(version, getClientList());
+    }
+
+    /**
+     * Returns the clients inserted, updated and deleted since a change sequence number.
+     * @param sequenceNumber the sequence number of the last change the client holds, 0 if it holds none
+     * @return the changes, or a reset carrying all the clients if the changes since sequenceNumber are not known
+     */
+    public ChangeSet<Integer, Client> getClientChangesSince(long sequenceNumber) throws BookstoreException {
+        return this.clientRepository.changesSince(sequenceNumber);
+    }
+
     /**
      * Delete a client from the client repository
      * @param id integer representing the id of a client
      */
     public Optional<Client> deleteClient(Integer id) throws BookstoreException {
-        return this.clientRepository.delete(id);
+        Optional<Client> optionalClient = this.clientRepository.delete(id);
+        if (optionalClient.isPresent())
+            this.clientSearch.entityDeleted(id);
+        return optionalClient;
     }
 
     /**
@@ -66,7 +118,10 @@ public class ClientControllerServerImpl implements ClientController {
      */
     public Optional<Client> updateClient(Client client) throws ValidatorException, BookstoreException {
         clientValidator.validate(client);
-        return this.clientRepository.update(client);
+        Optional<Client> previousClient = this.clientRepository.replace(client);
+        if (previousClient.isPresent())
+            this.clientSearch.entityReplaced(previousClient.get(), client);
+        return previousClient.map(previous -> client);
     }
 
     /**
@@ -75,19 +130,51 @@ public class ClientControllerServerImpl implements ClientController {
      * @return a HashSet containing clients
      */
     public Set<Client> filter(String searchString) throws BookstoreException {
-        Set<Client> clients = this.getClientList();
-        Set<Client> filteredClients = new HashSet<Client>();
-        clients.forEach(client ->
-        {
-            if(client.getAddress().contains(searchString) || client.getLastName().contains(searchString) || client.getFirstName().contains(searchString))
-            {
-                filteredClients.add(client);
-            }
-        });
-        return filteredClients;
+        return this.clientSearch.search(searchString);
+    }
+
+    /**
+     * Returns the clients that best match the searchString in one or more of their attributes.
+     * @param searchString string used for filtering the clients
+     * @param limit the maximum number of clients to return
+     * @return a list containing at most limit clients, best match first
+     */
+    public List<Client> filterRanked(String searchString, int limit) throws BookstoreException {
+        return this.clientSearch.searchRanked(searchString, limit);
     }
 
     public Optional<Client> findOne(Integer id) throws BookstoreException {
         return this.clientRepository.findOne(id);
     }
+
+    /**
+     * Add all the given clients to the client repository in a single call.
+     * @param clients list of instances of class Client
+     * @return the clients that were not added (e.g. their id already exists)
+     * @throws ValidatorException if one of the clients is not valid, in which case none of them is added
+     */
+    public List<Client> addClients(List<Client> clients) throws ValidatorException, BookstoreException, SQLException {
+        for (Client client : clients)
+            clientValidator.validate(client);
+
+        List<Optional<Client>> results = this.clientRepository.saveAll(clients);
+        List<Client> rejectedClients = new ArrayList<>();
+        for (int index = 0; index < clients.size(); index++) {
+            if (results.get(index).isPresent())
+                rejectedClients.add(clients.get(index));
+            else
+                this.clientSearch.entitySaved(clients.get(index));
+        }
+        return rejectedClients;
+    }
+
+    /**
+     * Find the clients having the given ids in a single call.
+     * @param ids collection of integers representing the ids of the clients
+     * @return a set containing the clients that exist
+     */
+    public Set<Client> findMany(Collection<Integer> ids) throws BookstoreException {
+        Iterable<Client> clients = this.clientRepository.findMany(ids);
+        return StreamSupport.stream(clients.spliterator(), false).collect(Collectors.toSet());
+    }
 }
@@ -0,0 +1,69 @@
+package controller;
+
+import domain.BaseEntity;
+import domain.validators.BookstoreException;
+import repository.TextSearchRepository;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The type DatabaseTextSearch.
+ * Pushes the searches down to the database repository, which can answer them from pg_trgm indexes,
+ * so no index has to be kept in the memory of the server.
+ *
+ * @param <T> the type of the searched entities
+ */
+public class DatabaseTextSearch<T extends BaseEntity<Integer>> implements TextSearch<T>
+{
+    private TextSearchRepository<T> repository;
+    private Function<T, List<String>> textFields;
+    private boolean caseInsensitive;
+
+    /**
+     * Instantiates a new DatabaseTextSearch.
+     *
+     * @param repository      the repository the searches are run by
+     * @param textFields      returns the searchable text fields of an entity, used for ranking
+     * @param caseInsensitive whether upper and lower case letters match each other
+     */
+    public DatabaseTextSearch(TextSearchRepository<T> repository, Function<T, List<String>> textFields, boolean caseInsensitive)
+    {
+        this.repository = repository;
+        this.textFields = textFields;
+        this.caseInsensitive = caseInsensitive;
+    }
+
+    @Override
+    public Set<T> search(String text) throws BookstoreException {
+        return new LinkedHashSet<>(repository.search(text, caseInsensitive));
+    }
+
+    @Override
+    public List<T> searchRanked(String text, int limit) throws BookstoreException {
+        return TextSearchIndex.rank(repository.search(text, caseInsensitive), text, textFields, caseInsensitive, limit);
+    }
+
+    /**
+     * Nothing to do, the database indexes are kept up to date by the database.
+     */
+    @Override
+    public void entitySaved(T entity) {
+    }
+
+    /**
+     * Nothing to do, the database indexes are kept up to date by the database.
+     */
+    @Override
+    public void entityReplaced(T previousEntity, T entity) {
+    }
+
+    /**
+     * Nothing to do, the database indexes are kept up to date by the database.
+     */
+    @Override
+    public void entityDeleted(Integer id) {
+    }
+}
@@ -0,0 +1,327 @@
+package controller;
+
+import domain.Book;
+import domain.Purchase;
+import domain.validators.BookstoreException;
+import repository.Repository;
+import service.BookRankingMetric;
+import service.ClientRankingMetric;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * The type PurchaseAggregateStore.
+ * Keeps the money spent by every client and the sales of every book up to date, so the reports
+ * no longer have to rescan the purchase repository and look up a book for every purchase.
+ * The aggregates are built from the repositories the first time they are needed and are then
+ * maintained incrementally by the controllers after every successful write.
+ */
+public class PurchaseAggregateStore
+{
+    private Repository<Integer, Book> bookRepository;
+    private Repository<Integer, Purchase> purchaseRepository;
+
+    private boolean loaded;
+    private Map<Integer, PurchaseKey> purchases;
+    private Map<Integer, Double> bookPrices;
+    private Map<Integer, Map<Integer, Long>> booksBoughtByClient;
+    private Map<Integer, Map<Integer, Long>> clientsWhoBoughtBook;
+    private Map<Integer, Double> moneySpentPerClient;
+    private Map<Integer, Long> purchasesPerClient;
+    private Map<Integer, Long> salesPerBook;
+
+    /**
+     * Instantiates a new PurchaseAggregateStore.
+     *
+     * @param bookRepository     the repository the book prices are read from
+     * @param purchaseRepository the repository the purchases are read from
+     */
+    public PurchaseAggregateStore(Repository<Integer, Book> bookRepository, Repository<Integer, Purchase> purchaseRepository)
+    {
+        this.bookRepository = bookRepository;
+        this.purchaseRepository = purchaseRepository;
+        this.loaded = false;
+    }
+
+    /**
+     * Builds the aggregates from the repositories if they were not built yet.
+     * @throws BookstoreException if the repositories cannot be read
+     */
+    private void ensureLoaded() throws BookstoreException {
+        if (loaded)
+            return;
+
+        purchases = new HashMap<>();
+        bookPrices = new HashMap<>();
+        booksBoughtByClient = new HashMap<>();
+        clientsWhoBoughtBook = new HashMap<>();
+        moneySpentPerClient = new HashMap<>();
+        purchasesPerClient = new HashMap<>();
+        salesPerBook = new HashMap<>();
+
+        for (Book book : bookRepository.findAll())
+            bookPrices.put(book.getId(), priceOf(book));
+        for (Purchase purchase : purchaseRepository.findAll())
+            addPurchase(purchase.getId(), new PurchaseKey(purchase));
+        booksBoughtByClient.keySet().forEach(this::recomputeMoneySpent);
+
+        loaded = true;
+    }
+
+    /**
+     * Converts the price of a book the same way the reports always did.
+     * @param book instance of class Book
+     * @return the price of the book as a double
+     */
+    private static double priceOf(Book book) {
+        return Double.parseDouble(Float.toString(book.getPrice()));
+    }
+
+    /**
+     * Records a purchase in the counters, without touching the money spent.
+     * @param purchaseId integer representing the id of the purchase
+     * @param key the client and the book of the purchase
+     */
+    private void addPurchase(Integer purchaseId, PurchaseKey key) {
+        purchases.put(purchaseId, key);
+        booksBoughtByClient.computeIfAbsent(key.clientId, clientId -> new HashMap<>()).merge(key.bookId, 1L, Long::sum);
+        clientsWhoBoughtBook.computeIfAbsent(key.bookId, bookId -> new HashMap<>()).merge(key.clientId, 1L, Long::sum);
+        purchasesPerClient.merge(key.clientId, 1L, Long::sum);
+        salesPerBook.merge(key.bookId, 1L, Long::sum);
+    }
+
+    /**
+     * Removes a purchase from the counters, without touching the money spent.
+     * @param purchaseId integer representing the id of the purchase
+     */
+    private void removePurchase(Integer purchaseId) {
+        PurchaseKey key = purchases.remove(purchaseId);
+        if (key == null)
+            return;
+
+        decrement(booksBoughtByClient, key.clientId, key.bookId);
+        decrement(clientsWhoBoughtBook, key.bookId, key.clientId);
+        purchasesPerClient.computeIfPresent(key.clientId, (clientId, count) -> count > 1 ? count - 1 : null);
+        salesPerBook.computeIfPresent(key.bookId, (bookId, sales) -> sales > 1 ? sales - 1 : null);
+    }
+
+    private static void decrement(Map<Integer, Map<Integer, Long>> counters, Integer outerKey, Integer innerKey) {
+        Map<Integer, Long> innerCounters = counters.get(outerKey);
+        if (innerCounters == null)
+            return;
+        innerCounters.computeIfPresent(innerKey, (key, count) -> count > 1 ? count - 1 : null);
+        if (innerCounters.isEmpty())
+            counters.remove(outerKey);
+    }
+
+    /**
+     * Recomputes the money spent by a client from the books bought by the client and their current prices.
+     * Books that no longer exist are not taken into account.
+     * @param clientId integer representing the id of the client
+     */
+    private void recomputeMoneySpent(Integer clientId) {
+        Map<Integer, Long> booksBought = booksBoughtByClient.get(clientId);
+        if (booksBought == null) {
+            moneySpentPerClient.remove(clientId);
+            return;
+        }
+
+        double moneySpent = 0;
+        for (Map.Entry<Integer, Long> entry : booksBought.entrySet()) {
+            Double price = bookPrices.get(entry.getKey());
+            if (price != null)
+                moneySpent += price * entry.getValue();
+        }
+        moneySpentPerClient.put(clientId, moneySpent);
+    }
+
+    /**
+     * Recomputes the money spent by every client who bought a certain book.
+     * @param bookId integer representing the id of the book
+     */
+    private void recomputeMoneySpentForBuyersOf(Integer bookId) {
+        Map<Integer, Long> buyers = clientsWhoBoughtBook.get(bookId);
+        if (buyers != null)
+            buyers.keySet().forEach(this::recomputeMoneySpent);
+    }
+
+    /**
+     * Must be called after a purchase was saved in the purchase repository.
+     * @param purchase instance of class Purchase
+     */
+    public synchronized void purchaseSaved(Purchase purchase) {
+        if (!loaded)
+            return;
+
+        PurchaseKey newKey = new PurchaseKey(purchase);
+        PurchaseKey oldKey = purchases.get(purchase.getId());
+        if (newKey.equals(oldKey))
+            return;
+
+        removePurchase(purchase.getId());
+        addPurchase(purchase.getId(), newKey);
+        if (oldKey != null)
+            recomputeMoneySpent(oldKey.clientId);
+        recomputeMoneySpent(newKey.clientId);
+    }
+
+    /**
+     * Must be called after a purchase was updated in the purchase repository.
+     * Nothing changes if the purchase still refers to the same client and book as before the update.
+     * @param previousPurchase the purchase before the update, as returned by the repository
+     * @param purchase the purchase after the update
+     */
+    public synchronized void purchaseReplaced(Purchase previousPurchase, Purchase purchase) {
+        if (!loaded || new PurchaseKey(previousPurchase).equals(new PurchaseKey(purchase)))
+            return;
+        purchaseSaved(purchase);
+    }
+
+    /**
+     * Must be called after a purchase was deleted from the purchase repository.
+     * @param purchaseId integer representing the id of the deleted purchase
+     */
+    public synchronized void purchaseDeleted(Integer purchaseId) {
+        if (!loaded)
+            return;
+
+        PurchaseKey oldKey = purchases.get(purchaseId);
+        if (oldKey == null)
+            return;
+
+        removePurchase(purchaseId);
+        recomputeMoneySpent(oldKey.clientId);
+    }
+
+    /**
+     * Must be called after a book was added to the book repository.
+     * @param book instance of class Book
+     */
+    public synchronized void bookSaved(Book book) {
+        if (!loaded)
+            return;
+
+        Double oldPrice = bookPrices.put(book.getId(), priceOf(book));
+        if (oldPrice == null || oldPrice != priceOf(book))
+            recomputeMoneySpentForBuyersOf(book.getId());
+    }
+
+    /**
+     * Must be called after a book was updated in the book repository.
+     * The money spent by the buyers of the book is only recomputed if the update changed its price.
+     * @param previousBook the book before the update, as returned by the repository
+     * @param book the book after the update
+     */
+    public synchronized void bookReplaced(Book previousBook, Book book) {
+        if (!loaded || priceOf(previousBook) == priceOf(book))
+            return;
+        bookSaved(book);
+    }
+
+    /**
+     * Must be called after a book was deleted from the book repository.
+     * @param bookId integer representing the id of the deleted book
+     */
+    public synchronized void bookDeleted(Integer bookId) {
+        if (!loaded)
+            return;
+
+        if (bookPrices.remove(bookId) != null)
+            recomputeMoneySpentForBuyersOf(bookId);
+    }
+
+    /**
+     * Returns the total amount of money a client has spent on books.
+     * @param clientId integer representing the id of the client
+     * @return a double representing the amount of money spent
+     * @throws BookstoreException if the aggregates cannot be built
+     */
+    public synchronized double getMoneySpent(int clientId) throws BookstoreException {
+        ensureLoaded();
+        return moneySpentPerClient.getOrDefault(clientId, 0.0);
+    }
+
+    /**
+     * Returns how many times a book was sold.
+     * @param bookId integer representing the id of the book
+     * @return a long representing the sales of the book
+     * @throws BookstoreException if the aggregates cannot be built
+     */
+    public synchronized long getSales(int bookId) throws BookstoreException {
+        ensureLoaded();
+        return salesPerBook.getOrDefault(bookId, 0L);
+    }
+
+    /**
+     * Passes the score of every client who made at least one purchase to a consumer, without copying the aggregates.
+     * @param metric the metric the clients are scored by
+     * @param consumer receives the id of every client and its score
+     * @throws BookstoreException if the aggregates cannot be built
+     */
+    public synchronized void scoreClients(ClientRankingMetric metric, BiConsumer<Integer, Double> consumer) throws BookstoreException {
+        ensureLoaded();
+        switch (metric) {
+            case MONEY_SPENT:
+                moneySpentPerClient.forEach(consumer);
+                break;
+            case PURCHASES:
+                purchasesPerClient.forEach((clientId, purchaseCount) -> consumer.accept(clientId, purchaseCount.doubleValue()));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown metric " + metric);
+        }
+    }
+
+    /**
+     * Passes the score of every book that was sold at least once to a consumer, without copying the aggregates.
+     * @param metric the metric the books are scored by
+     * @param consumer receives the id of every book and its score
+     * @throws BookstoreException if the aggregates cannot be built
+     */
+    public synchronized void scoreBooks(BookRankingMetric metric, BiConsumer<Integer, Double> consumer) throws BookstoreException {
+        ensureLoaded();
+        switch (metric) {
+            case SALES:
+                salesPerBook.forEach((bookId, sales) -> consumer.accept(bookId, sales.doubleValue()));
+                break;
+            case REVENUE:
+                salesPerBook.forEach((bookId, sales) -> consumer.accept(bookId, bookPrices.getOrDefault(bookId, 0.0) * sales));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown metric " + metric);
+        }
+    }
+
+    /**
+     * The client and the book a purchase refers to, copied so later changes of the Purchase instance don't leak in.
+     */
+    private static class PurchaseKey
+    {
+        private final int clientId;
+        private final int bookId;
+
+        private PurchaseKey(Purchase purchase)
+        {
+            this.clientId = purchase.getClientId();
+            this.bookId = purchase.getBookId();
+        }
+
+        @Override
+        public boolean equals(Object object)
+        {
+            if (this == object)
+                return true;
+            if (object == null || getClass() != object.getClass())
+                return false;
+            return clientId == ((PurchaseKey) object).clientId && bookId == ((PurchaseKey) object).bookId;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * clientId + bookId;
+        }
+    }
+}
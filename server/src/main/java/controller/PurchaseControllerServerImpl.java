@@ -1,17 +1,29 @@
 package controller;
 
 
+import domain.BaseEntity;
 import domain.Book;
 import domain.Client;
 import domain.Purchase;
 import domain.validators.BookstoreException;
 import domain.validators.Validator;
 import domain.validators.ValidatorException;
+import repository.ChangeTrackingRepository;
+import repository.FieldFilter;
+import repository.IdAllocator;
+import repository.PurchaseAnalyticsRepository;
 import repository.Repository;
+import repository.RepositoryDecorator;
+import repository.RepositoryVersion;
+import service.BookRankingMetric;
+import service.ChangeSet;
+import service.ClientRankingMetric;
 import service.PurchaseController;
+import service.VersionedResult;
 
 import java.sql.SQLException;
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -20,18 +32,39 @@ import java.util.stream.StreamSupport;
  */
 public class PurchaseControllerServerImpl implements PurchaseController
 {
+    /**
+     * The greatest number of entities a report may ask for, so a single remote call cannot make the server allocate
+     * an unbounded result.
+     */
+    static final int MAX_REPORT_SIZE = 10000;
+
+    /**
+     * Orders scored ids by score, the smaller id wins when the scores are equal.
+     */
+    private static final Comparator<Map.Entry<Integer, Double>> RANKING_ORDER =
+            Map.Entry.<Integer, Double>comparingByValue().thenComparing(Map.Entry.<Integer, Double>comparingByKey().reversed());
+
     private BookControllerServerImpl bookControllerServerImpl;
     private ClientControllerServerImpl clientControllerServerImpl;
-    private Repository<Integer, Purchase> purchaseRepository;
+    private ChangeTrackingRepository<Integer, Purchase> purchaseRepository;
     private Validator<Purchase> purchaseValidator;
+    private PurchaseAggregateStore purchaseAggregateStore;
+    private PurchaseAnalyticsRepository purchaseAnalyticsRepository;
+    private IdAllocator purchaseIdAllocator;
 
-    public PurchaseControllerServerImpl(ClientControllerServerImpl clientControllerServerImpl, BookControllerServerImpl bookControllerServerImpl, Repository<Integer,
-            Purchase> purchaseRepository, Validator<Purchase> purchaseValidator)
+    public PurchaseControllerServerImpl(ClientControllerServerImpl clientControllerServerImpl, BookControllerServerImpl bookControllerServerImpl, ChangeTrackingRepository<Integer,
+            Purchase> purchaseRepository, Validator<Purchase> purchaseValidator, PurchaseAggregateStore purchaseAggregateStore,
+                                        IdAllocator purchaseIdAllocator)
     {
         this.clientControllerServerImpl = clientControllerServerImpl;
         this.bookControllerServerImpl = bookControllerServerImpl;
         this.purchaseRepository = purchaseRepository;
         this.purchaseValidator = purchaseValidator;
+        this.purchaseAggregateStore = purchaseAggregateStore;
+        this.purchaseIdAllocator = purchaseIdAllocator;
+        Repository<Integer, Purchase> purchaseStorage = RepositoryDecorator.unwrap(purchaseRepository);
+        if (purchaseStorage instanceof PurchaseAnalyticsRepository)
+            this.purchaseAnalyticsRepository = (PurchaseAnalyticsRepository) purchaseStorage;
     }
 
     /**
@@ -45,20 +78,6 @@ public class PurchaseControllerServerImpl implements PurchaseController
         return optionalClient.isPresent() && optionalBook.isPresent();
     }
 
-    /**
-     * Function returns the first available id for a new purchase
-     * @return First available id
-     */
-    private Integer getAvailableId() throws BookstoreException {
-        Set<Purchase> purchaseSet = getPurchaseList();
-        //List<Integer> purchaseIdList= purchaseSet.stream().map(Purchase::getId).collect(Collectors.toList());
-        if(purchaseSet.size() > 0)
-            return Collections.max(purchaseSet.stream().map(Purchase::getId).collect(Collectors.toList())) + 1;
-        else
-            return 1;
-    }
-
-
     /**
      * Adds a purchase from the purchase repository
      * @param purchase instance of the class Purchase
@@ -68,8 +87,11 @@ public class PurchaseControllerServerImpl implements PurchaseController
     public Optional<Purchase> add(Purchase purchase) throws BookstoreException, ValidatorException, SQLException {
         if(checkBookClientAvailability(purchase)) {
             purchaseValidator.validate(purchase);
-            purchase.setId(getAvailableId());
-            return this.purchaseRepository.save(purchase);
+            purchase.setId(this.purchaseIdAllocator.nextId());
+            Optional<Purchase> optionalPurchase = this.purchaseRepository.save(purchase);
+            if (!optionalPurchase.isPresent())
+                this.purchaseAggregateStore.purchaseSaved(purchase);
+            return optionalPurchase;
         }
         else
             throw new BookstoreException("Invalid book id and/or client id!\n");
@@ -84,6 +106,29 @@ public class PurchaseControllerServerImpl implements PurchaseController
         return StreamSupport.stream(purchaseList.spliterator(), false).collect(Collectors.toSet());
     }
 
+    /**
+     * Get the purchase list set, only if it changed since the client got it.
+     * The version is the sequence number of the last change of the repository, so every write is seen, whether it was
+     * made through this controller or not.
+     * @param knownVersion the version of the list the client holds, or null if it holds none
+     * @return the version of the list, with the list only if the version is not knownVersion
+     */
+    public VersionedResult<Set<Purchase>> getPurchaseListIfModified(String knownVersion) throws BookstoreException {
+        String version = Long.toString(this.purchaseRepository.getLastSequenceNumber());
+        if (version.equals(knownVersion))
+            return VersionedResult.notModified(version);
+        return VersionedResult.modified(version, getPurchaseList());
+    }
+
+    /**
+     * Returns the purchases inserted, updated and deleted since a change sequence number.
+     * @param sequenceNumber the sequence number of the last change the client holds, 0 if it holds none
+     * @return the changes, or a reset carrying all the purchases if the changes since sequenceNumber are not known
+     */
+    public ChangeSet<Integer, Purchase> getPurchaseChangesSince(long sequenceNumber) throws BookstoreException {
+        return this.purchaseRepository.changesSince(sequenceNumber);
+    }
+
     /**
      * Updates a purchase from the purchase repository
      * @param purchase instance of the class Purchase
@@ -93,7 +138,10 @@ public class PurchaseControllerServerImpl implements PurchaseController
     public Optional<Purchase> updatePurchase(Purchase purchase) throws ValidatorException, BookstoreException {
         if(checkBookClientAvailability(purchase)) {
             purchaseValidator.validate(purchase);
-            return this.purchaseRepository.update(purchase);
+            Optional<Purchase> previousPurchase = this.purchaseRepository.replace(purchase);
+            if (previousPurchase.isPresent())
+                this.purchaseAggregateStore.purchaseReplaced(previousPurchase.get(), purchase);
+            return previousPurchase.map(previous -> purchase);
         }
         else
             throw new BookstoreException("Invalid book id and/or client id!\n");
@@ -104,7 +152,72 @@ public class PurchaseControllerServerImpl implements PurchaseController
      * @param id integer representing the id of the purchase to be deleted
      */
     public Optional<Purchase> deletePurchase(Integer id) throws BookstoreException {
-        return this.purchaseRepository.delete(id);
+        Optional<Purchase> optionalPurchase = this.purchaseRepository.delete(id);
+        if (optionalPurchase.isPresent())
+            this.purchaseAggregateStore.purchaseDeleted(id);
+        return optionalPurchase;
+    }
+
+    /**
+     * Adds all the given purchases to the purchase repository in a single call
+     * @param purchases list of instances of the class Purchase
+     * @return the purchases that were not added
+     * @throws ValidatorException if one of the purchases is not valid, in which case none of them is added
+     * @throws BookstoreException if one of the books or clients doesnt exist, in which case none of them is added
+     */
+    public List<Purchase> addPurchases(List<Purchase> purchases) throws BookstoreException, ValidatorException, SQLException {
+        Set<Integer> clientIds = purchases.stream().map(Purchase::getClientId).collect(Collectors.toSet());
+        Set<Integer> bookIds = purchases.stream().map(Purchase::getBookId).collect(Collectors.toSet());
+        if (this.clientControllerServerImpl.findMany(clientIds).size() != clientIds.size() ||
+                this.bookControllerServerImpl.findMany(bookIds).size() != bookIds.size())
+            throw new BookstoreException("Invalid book id and/or client id!\n");
+
+        for (Purchase purchase : purchases)
+            purchaseValidator.validate(purchase);
+
+        Iterator<Integer> ids = this.purchaseIdAllocator.nextIds(purchases.size()).iterator();
+        for (Purchase purchase : purchases)
+            purchase.setId(ids.next());
+
+        List<Optional<Purchase>> results = this.purchaseRepository.saveAll(purchases);
+        List<Purchase> rejectedPurchases = new ArrayList<>();
+        for (int index = 0; index < purchases.size(); index++) {
+            if (results.get(index).isPresent())
+                rejectedPurchases.add(purchases.get(index));
+            else
+                this.purchaseAggregateStore.purchaseSaved(purchases.get(index));
+        }
+        return rejectedPurchases;
+    }
+
+    /**
+     * Finds the purchases having the given ids in a single call
+     * @param ids collection of integers representing the ids of the purchases
+     * @return a set containing the purchases that exist
+     */
+    public Set<Purchase> findMany(Collection<Integer> ids) throws BookstoreException {
+        Iterable<Purchase> purchases = this.purchaseRepository.findMany(ids);
+        return StreamSupport.stream(purchases.spliterator(), false).collect(Collectors.toSet());
+    }
+
+    /**
+     * Finds the purchases made by a client
+     * @param clientId integer representing the id of the client
+     * @return a set containing the purchases of the client
+     */
+    public Set<Purchase> findPurchasesWithClientID(int clientId) throws BookstoreException {
+        Iterable<Purchase> purchases = this.purchaseRepository.findBy(new FieldFilter<>("clientid", Purchase::getClientId, clientId));
+        return StreamSupport.stream(purchases.spliterator(), false).collect(Collectors.toSet());
+    }
+
+    /**
+     * Finds the purchases of a book
+     * @param bookId integer representing the id of the book
+     * @return a set containing the purchases of the book
+     */
+    public Set<Purchase> findPurchasesWithBookID(int bookId) throws BookstoreException {
+        Iterable<Purchase> purchases = this.purchaseRepository.findBy(new FieldFilter<>("bookid", Purchase::getBookId, bookId));
+        return StreamSupport.stream(purchases.spliterator(), false).collect(Collectors.toSet());
     }
 
     /**
@@ -112,15 +225,7 @@ public class PurchaseControllerServerImpl implements PurchaseController
      * @param clientId integer representing the id of the client to be deleted
      */
     public void deletePurchaseWithClientID(int clientId) throws BookstoreException {
-        Set<Purchase> purchaseList= getPurchaseList();
-        purchaseList.forEach(purchase ->{
-            try {
-                if (purchase.getClientId() == clientId)
-                    this.deletePurchase(purchase.getId());
-            } catch (BookstoreException e) {
-                    e.printStackTrace();
-                }
-            });
+        deletePurchases(new FieldFilter<>("clientid", Purchase::getClientId, clientId));
     }
 
     /**
@@ -128,15 +233,17 @@ public class PurchaseControllerServerImpl implements PurchaseController
      * @param bookId integer representing the id of the book to be deleted
      */
     public void deletePurchaseWithBookID(int bookId) throws BookstoreException {
-        Set<Purchase> purchaseList = getPurchaseList();
-        purchaseList.forEach(purchase ->{
-            try{
-                if (purchase.getBookId() == bookId)
-                    this.deletePurchase(purchase.getId());
-            } catch (BookstoreException e) {
-                e.printStackTrace();
-            }
-        });
+        deletePurchases(new FieldFilter<>("bookid", Purchase::getBookId, bookId));
+    }
+
+    /**
+     * Deletes all the purchases matched by a filter with a single repository call
+     * @param filter the filter the purchases to delete must match
+     */
+    private void deletePurchases(FieldFilter<Purchase> filter) throws BookstoreException {
+        List<Purchase> deletedPurchases = this.purchaseRepository.deleteAll(filter);
+        for (Purchase purchase : deletedPurchases)
+            this.purchaseAggregateStore.purchaseDeleted(purchase.getId());
     }
 
     /**
@@ -145,22 +252,9 @@ public class PurchaseControllerServerImpl implements PurchaseController
      * @return a double representing the amount of money the client with clientId has spent
      */
     public double getMoneySpentForClient(int clientId) throws BookstoreException {
-        return StreamSupport.stream(this.purchaseRepository.findAll().spliterator(), false)
-                .filter(purchase -> purchase.getClientId() == clientId)
-                .map(purchase -> purchase.getBookId())
-                .map(bookId -> {
-                    try {
-                        return this.bookControllerServerImpl.findOne(bookId);
-                    } catch (BookstoreException e) {
-                        e.printStackTrace();
-                    }
-                    return null;
-                })
-                .map(bookOptional -> bookOptional.orElse(null))
-                .filter(Objects::nonNull)
-                .map(book -> book.getPrice())
-                .mapToDouble(floatPrice -> Double.parseDouble(((Number) floatPrice).toString()))
-                .sum();
+        if (this.purchaseAnalyticsRepository != null)
+            return this.purchaseAnalyticsRepository.getMoneySpentForClient(clientId);
+        return this.purchaseAggregateStore.getMoneySpent(clientId);
     }
 
     /**
@@ -168,24 +262,7 @@ public class PurchaseControllerServerImpl implements PurchaseController
      * @return a list containing 3 clients or less than 3 if there are less than 3 clients
      */
     public List<Map.Entry<Client, Double>> reportTop3ClientsBasedOnMoneySpent() throws BookstoreException {
-        List<Map.Entry<Client, Double>> sortedClientsBasedOnMoneySpent = this.clientControllerServerImpl.getClientList().stream()
-                .map(client -> {
-                    try {
-                        return new AbstractMap.SimpleEntry<Client, Double> (client, getMoneySpentForClient(client.getId()));
-                    } catch (BookstoreException e) {
-                        e.printStackTrace();
-                    }
-                    return null;
-                })
-                .sorted(Comparator.comparingDouble(entry ->  entry.getValue()))
-                .collect(Collectors.toList());
-
-        Collections.reverse(sortedClientsBasedOnMoneySpent);
-
-        if(sortedClientsBasedOnMoneySpent.size() > 3)
-            return sortedClientsBasedOnMoneySpent.subList(0,3);
-        else
-            return sortedClientsBasedOnMoneySpent;
+        return reportTopClients(3, ClientRankingMetric.MONEY_SPENT);
     }
 
     /**
@@ -194,9 +271,9 @@ public class PurchaseControllerServerImpl implements PurchaseController
      * @return an integer representing the sales of the book with bookId
      */
     public long getBookSales(int bookId) throws BookstoreException {
-        return StreamSupport.stream(this.purchaseRepository.findAll().spliterator(), false)
-                .filter(purchase -> purchase.getBookId() == bookId)
-                .count();
+        if (this.purchaseAnalyticsRepository != null)
+            return this.purchaseAnalyticsRepository.getBookSales(bookId);
+        return this.purchaseAggregateStore.getSales(bookId);
     }
 
     /**
@@ -204,29 +281,140 @@ public class PurchaseControllerServerImpl implements PurchaseController
      * @return a list containing 3 books or less than 3 if there are less than 3 books
      */
     public List<Map.Entry<Book, Long>> reportTop3BestSellingBooks() throws BookstoreException {
-        List<Map.Entry<Book, Long>> sortedBooksBasedOnSales = this.bookControllerServerImpl.getBookList().stream()
-                .map(book -> {
-                    try {
-                        return new AbstractMap.SimpleEntry<Book, Long> (book, getBookSales(book.getId()));
-                    } catch (BookstoreException e) {
-                        e.printStackTrace();
-                    }
-                    return null;
-                })
-                .sorted(Comparator.comparingLong(entry -> {
-                    assert entry != null;
-                    return entry.getValue();
-                }))
+        return reportTopBooks(3, BookRankingMetric.SALES).stream()
+                .map(entry -> new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue().longValue()))
                 .collect(Collectors.toList());
+    }
 
-        Collections.reverse(sortedBooksBasedOnSales);
+    /**
+     * Returns the top k clients, ranked by a certain metric.
+     * If the repository publishes versions, all the clients of the report are read from the same version.
+     * @param k integer representing the number of clients to return
+     * @param metric the metric the clients are ranked by
+     * @return a list containing k clients or less than k if there are less than k clients
+     * @throws BookstoreException if k is not positive or greater than MAX_REPORT_SIZE
+     */
+    public List<Map.Entry<Client, Double>> reportTopClients(int k, ClientRankingMetric metric) throws BookstoreException {
+        if (this.purchaseAnalyticsRepository != null) {
+            checkReportSize(k);
+            return this.purchaseAnalyticsRepository.findTopClients(k, metric);
+        }
+        Optional<RepositoryVersion<Integer, Client>> clientVersion = this.clientControllerServerImpl.currentVersion();
+        if (clientVersion.isPresent())
+            return selectTop(k,
+                    consumer -> this.purchaseAggregateStore.scoreClients(metric, consumer),
+                    clientVersion.get()::findOne,
+                    () -> toSet(clientVersion.get().findAll()));
+        return selectTop(k,
+                consumer -> this.purchaseAggregateStore.scoreClients(metric, consumer),
+                this.clientControllerServerImpl::findOne,
+                this.clientControllerServerImpl::getClientList);
+    }
 
-        if(sortedBooksBasedOnSales.size() > 3) {
-            List<Map.Entry<Book, Long>> result = new ArrayList<>(sortedBooksBasedOnSales.subList(0, 3));
-            return result;
+    /**
+     * Returns the top k books, ranked by a certain metric.
+     * If the repository publishes versions, all the books of the report are read from the same version.
+     * @param k integer representing the number of books to return
+     * @param metric the metric the books are ranked by
+     * @return a list containing k books or less than k if there are less than k books
+     * @throws BookstoreException if k is not positive or greater than MAX_REPORT_SIZE
+     */
+    public List<Map.Entry<Book, Double>> reportTopBooks(int k, BookRankingMetric metric) throws BookstoreException {
+        if (this.purchaseAnalyticsRepository != null) {
+            checkReportSize(k);
+            return this.purchaseAnalyticsRepository.findTopBooks(k, metric);
+        }
+        Optional<RepositoryVersion<Integer, Book>> bookVersion = this.bookControllerServerImpl.currentVersion();
+        if (bookVersion.isPresent())
+            return selectTop(k,
+                    consumer -> this.purchaseAggregateStore.scoreBooks(metric, consumer),
+                    bookVersion.get()::findOne,
+                    () -> toSet(bookVersion.get().findAll()));
+        return selectTop(k,
+                consumer -> this.purchaseAggregateStore.scoreBooks(metric, consumer),
+                this.bookControllerServerImpl::findOne,
+                this.bookControllerServerImpl::getBookList);
+    }
+
+    private static <T> Set<T> toSet(Iterable<T> entities) {
+        return StreamSupport.stream(entities.spliterator(), false).collect(Collectors.toSet());
+    }
+
+    /**
+     * Checks the number of entities requested in a report.
+     * @param k integer representing the number of entities to return
+     * @throws BookstoreException if k is not positive or greater than MAX_REPORT_SIZE
+     */
+    private static void checkReportSize(int k) throws BookstoreException {
+        if (k <= 0)
+            throw new BookstoreException("The number of entities in a report must be positive!\n");
+        if (k > MAX_REPORT_SIZE)
+            throw new BookstoreException("The number of entities in a report must be at most " + MAX_REPORT_SIZE + "!\n");
+    }
+
+    /**
+     * Selects the k entities with the greatest scores using a bounded heap.
+     * Scored ids whose entity no longer exists are skipped, and if there are less than k scored entities
+     * the result is completed with entities that have no score yet.
+     * @param k integer representing the number of entities to return
+     * @param scoreSource streams the id and the score of every scored entity
+     * @param entityFinder finds an entity by its id
+     * @param entityLister lists all the entities
+     * @return a list containing k entities or less than k if there are less than k entities
+     * @throws BookstoreException if k is not positive or greater than MAX_REPORT_SIZE
+     */
+    private <T extends BaseEntity<Integer>> List<Map.Entry<T, Double>> selectTop(int k, ScoreSource scoreSource, EntityFinder<T> entityFinder,
+                                                                              EntityLister<T> entityLister) throws BookstoreException {
+        checkReportSize(k);
+
+        List<Map.Entry<T, Double>> topEntities = new ArrayList<>();
+        Set<Integer> reportedIds = new HashSet<>();
+        Set<Integer> missingIds = new HashSet<>();
+        boolean exhausted = false;
+
+        while (topEntities.size() < k && !exhausted) {
+            int remaining = k - topEntities.size();
+            TopKSelector<Map.Entry<Integer, Double>> selector = new TopKSelector<>(remaining, RANKING_ORDER);
+            scoreSource.score((id, score) -> {
+                if (!reportedIds.contains(id) && !missingIds.contains(id))
+                    selector.offer(new AbstractMap.SimpleEntry<>(id, score));
+            });
+
+            List<Map.Entry<Integer, Double>> selected = selector.getResult();
+            exhausted = selected.size() < remaining;
+            for (Map.Entry<Integer, Double> entry : selected) {
+                Optional<T> entity = entityFinder.findOne(entry.getKey());
+                if (entity.isPresent()) {
+                    topEntities.add(new AbstractMap.SimpleEntry<>(entity.get(), entry.getValue()));
+                    reportedIds.add(entry.getKey());
+                }
+                else
+                    missingIds.add(entry.getKey());
+            }
         }
-        else
-            return sortedBooksBasedOnSales;
 
+        if (topEntities.size() < k) {
+            entityLister.list().stream()
+                    .filter(entity -> !reportedIds.contains(entity.getId()))
+                    .limit(k - topEntities.size())
+                    .forEach(entity -> topEntities.add(new AbstractMap.SimpleEntry<>(entity, 0.0)));
+        }
+
+        return topEntities;
+    }
+
+    private interface ScoreSource
+    {
+        void score(BiConsumer<Integer, Double> consumer) throws BookstoreException;
+    }
+
+    private interface EntityFinder<T>
+    {
+        Optional<T> findOne(Integer id) throws BookstoreException;
+    }
+
+    private interface EntityLister<T>
+    {
+        Set<T> list() throws BookstoreException;
     }
 }
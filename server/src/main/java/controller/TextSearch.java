@@ -0,0 +1,52 @@
+package controller;
+
+import domain.validators.BookstoreException;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Interface for the substring searches over the text fields of the books or of the clients.
+ * The controllers tell the search about every successful write, so an implementation can keep its own index.
+ *
+ * @param <T> the type of the searched entities
+ */
+public interface TextSearch<T>
+{
+    /**
+     * Returns all the entities having at least one text field that contains the given text.
+     * @param text the searched text
+     * @return a set containing the matching entities
+     * @throws BookstoreException if the entities cannot be read
+     */
+    Set<T> search(String text) throws BookstoreException;
+
+    /**
+     * Returns the best matching entities: exact matches first, then fields starting with the text,
+     * then words starting with the text, then any other occurrence of the text.
+     * @param text the searched text
+     * @param limit the maximum number of entities to return
+     * @return a list containing at most limit entities, best match first
+     * @throws BookstoreException if the entities cannot be read
+     */
+    List<T> searchRanked(String text, int limit) throws BookstoreException;
+
+    /**
+     * Must be called after an entity was added to the repository.
+     * @param entity the new state of the entity
+     */
+    void entitySaved(T entity);
+
+    /**
+     * Must be called after an entity was updated in the repository.
+     * @param previousEntity the state of the entity before the update, as returned by the repository
+     * @param entity the new state of the entity
+     */
+    void entityReplaced(T previousEntity, T entity);
+
+    /**
+     * Must be called after an entity was deleted from the repository.
+     * @param id integer representing the id of the deleted entity
+     */
+    void entityDeleted(Integer id);
+}
@@ -0,0 +1,254 @@
+package controller;
+
+import domain.BaseEntity;
+import domain.validators.BookstoreException;
+import repository.Repository;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The type TextSearchIndex.
+ * An inverted index from every substring of at most GRAM_LENGTH characters of the text fields to the ids of the entities
+ * containing it. Texts of at most GRAM_LENGTH characters are answered with a single lookup; longer texts intersect the
+ * postings of their grams, starting with the shortest, and only check the remaining candidates.
+ * Like the purchase aggregates, the index is built from the repository the first time it is needed and is then
+ * maintained by the controllers after every successful write.
+ *
+ * @param <T> the type of the indexed entities
+ */
+public class TextSearchIndex<T extends BaseEntity<Integer>> implements TextSearch<T>
+{
+    private static final int GRAM_LENGTH = 3;
+
+    private Repository<Integer, T> repository;
+    private Function<T, List<String>> textFields;
+    private boolean caseInsensitive;
+
+    private boolean loaded;
+    private Map<Integer, T> entities;
+    private Map<String, Set<Integer>> postings;
+
+    /**
+     * Instantiates a new TextSearchIndex.
+     *
+     * @param repository      the repository the entities are read from
+     * @param textFields      returns the searchable text fields of an entity
+     * @param caseInsensitive whether upper and lower case letters match each other
+     */
+    public TextSearchIndex(Repository<Integer, T> repository, Function<T, List<String>> textFields, boolean caseInsensitive)
+    {
+        this.repository = repository;
+        this.textFields = textFields;
+        this.caseInsensitive = caseInsensitive;
+        this.loaded = false;
+    }
+
+    /**
+     * Builds the index from the repository if it was not built yet.
+     * @throws BookstoreException if the repository cannot be read
+     */
+    private void ensureLoaded() throws BookstoreException {
+        if (loaded)
+            return;
+
+        entities = new HashMap<>();
+        postings = new HashMap<>();
+        for (T entity : repository.findAll())
+            addEntity(entity);
+
+        loaded = true;
+    }
+
+    private String fold(String text) {
+        return caseInsensitive ? text.toLowerCase(Locale.ROOT) : text;
+    }
+
+    /**
+     * Returns every substring of at most GRAM_LENGTH characters of the text fields of an entity.
+     */
+    private Set<String> gramsOf(T entity) {
+        Set<String> grams = new HashSet<>();
+        for (String field : textFields.apply(entity)) {
+            String text = fold(field);
+            for (int start = 0; start < text.length(); start++)
+                for (int end = start + 1; end <= Math.min(text.length(), start + GRAM_LENGTH); end++)
+                    grams.add(text.substring(start, end));
+        }
+        return grams;
+    }
+
+    private void addEntity(T entity) {
+        entities.put(entity.getId(), entity);
+        for (String gram : gramsOf(entity))
+            postings.computeIfAbsent(gram, key -> new HashSet<>()).add(entity.getId());
+    }
+
+    private void removeEntity(Integer id) {
+        T entity = entities.remove(id);
+        if (entity == null)
+            return;
+        for (String gram : gramsOf(entity)) {
+            Set<Integer> ids = postings.get(gram);
+            ids.remove(id);
+            if (ids.isEmpty())
+                postings.remove(gram);
+        }
+    }
+
+    private boolean matches(T entity, String foldedText) {
+        for (String field : textFields.apply(entity))
+            if (fold(field).contains(foldedText))
+                return true;
+        return false;
+    }
+
+    /**
+     * Collects the entities containing the already folded text.
+     */
+    private List<T> findMatches(String foldedText) {
+        if (foldedText.isEmpty())
+            return new ArrayList<>(entities.values());
+
+        if (foldedText.length() <= GRAM_LENGTH) {
+            List<T> found = new ArrayList<>();
+            for (Integer id : postings.getOrDefault(foldedText, new HashSet<>()))
+                found.add(entities.get(id));
+            return found;
+        }
+
+        List<Set<Integer>> gramPostings = new ArrayList<>();
+        for (int start = 0; start + GRAM_LENGTH <= foldedText.length(); start++) {
+            Set<Integer> ids = postings.get(foldedText.substring(start, start + GRAM_LENGTH));
+            if (ids == null)
+                return new ArrayList<>();
+            gramPostings.add(ids);
+        }
+        gramPostings.sort(Comparator.comparingInt(Set::size));
+
+        List<T> found = new ArrayList<>();
+        for (Integer id : gramPostings.get(0)) {
+            boolean candidate = true;
+            for (int index = 1; index < gramPostings.size() && candidate; index++)
+                candidate = gramPostings.get(index).contains(id);
+            if (candidate && matches(entities.get(id), foldedText))
+                found.add(entities.get(id));
+        }
+        return found;
+    }
+
+    @Override
+    public synchronized Set<T> search(String text) throws BookstoreException {
+        ensureLoaded();
+        return new LinkedHashSet<>(findMatches(fold(text)));
+    }
+
+    @Override
+    public synchronized List<T> searchRanked(String text, int limit) throws BookstoreException {
+        ensureLoaded();
+        return rank(findMatches(fold(text)), text, textFields, caseInsensitive, limit);
+    }
+
+    /**
+     * Orders matching entities by how well they match the text and keeps the best limit of them.
+     * @param matches entities that contain the text in at least one of their fields
+     * @param text the searched text
+     * @param textFields returns the searchable text fields of an entity
+     * @param caseInsensitive whether upper and lower case letters match each other
+     * @param limit the maximum number of entities to return
+     * @return a list containing at most limit entities, best match first, the smaller id first when the scores are equal
+     */
+    static <T extends BaseEntity<Integer>> List<T> rank(Iterable<T> matches, String text, Function<T, List<String>> textFields,
+                                                         boolean caseInsensitive, int limit) {
+        if (limit <= 0)
+            throw new IllegalArgumentException("limit must be positive");
+
+        String foldedText = caseInsensitive ? text.toLowerCase(Locale.ROOT) : text;
+        TopKSelector<Map.Entry<T, Integer>> selector = new TopKSelector<>(limit, Map.Entry.<T, Integer>comparingByValue()
+                .thenComparing(Comparator.comparing((Map.Entry<T, Integer> entry) -> entry.getKey().getId()).reversed()));
+        for (T entity : matches)
+            selector.offer(new AbstractMap.SimpleEntry<>(entity, score(textFields.apply(entity), foldedText, caseInsensitive)));
+
+        List<T> ranked = new ArrayList<>();
+        selector.getResult().forEach(entry -> ranked.add(entry.getKey()));
+        return ranked;
+    }
+
+    /**
+     * Scores the fields of an entity by the best matching one: 3 for an exact match, 2 for a field starting with the text,
+     * 1 for a word starting with the text and 0 for any other occurrence.
+     */
+    private static int score(List<String> fields, String foldedText, boolean caseInsensitive) {
+        int bestScore = 0;
+        for (String field : fields) {
+            String text = caseInsensitive ? field.toLowerCase(Locale.ROOT) : field;
+            int fieldScore;
+            if (text.equals(foldedText))
+                fieldScore = 3;
+            else if (text.startsWith(foldedText))
+                fieldScore = 2;
+            else if (text.contains(" " + foldedText))
+                fieldScore = 1;
+            else
+                fieldScore = 0;
+            bestScore = Math.max(bestScore, fieldScore);
+        }
+        return bestScore;
+    }
+
+    @Override
+    public synchronized void entitySaved(T entity) {
+        if (!loaded)
+            return;
+        removeEntity(entity.getId());
+        addEntity(entity);
+    }
+
+    /**
+     * Only the grams that appear in one of the two states change their postings, so an update that does not touch the
+     * text fields (e.g. a new price) leaves the postings as they are.
+     */
+    @Override
+    public synchronized void entityReplaced(T previousEntity, T entity) {
+        if (!loaded)
+            return;
+        T indexedEntity = entities.get(entity.getId());
+        if (indexedEntity == null || !textFields.apply(indexedEntity).equals(textFields.apply(previousEntity))) {
+            removeEntity(entity.getId());
+            addEntity(entity);
+            return;
+        }
+
+        Set<String> previousGrams = gramsOf(previousEntity);
+        Set<String> grams = gramsOf(entity);
+        entities.put(entity.getId(), entity);
+        for (String gram : previousGrams) {
+            if (grams.contains(gram))
+                continue;
+            Set<Integer> ids = postings.get(gram);
+            ids.remove(entity.getId());
+            if (ids.isEmpty())
+                postings.remove(gram);
+        }
+        for (String gram : grams) {
+            if (!previousGrams.contains(gram))
+                postings.computeIfAbsent(gram, key -> new HashSet<>()).add(entity.getId());
+        }
+    }
+
+    @Override
+    public synchronized void entityDeleted(Integer id) {
+        if (!loaded)
+            return;
+        removeEntity(id);
+    }
+}
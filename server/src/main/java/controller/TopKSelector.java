@@ -0,0 +1,65 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The type TopKSelector.
+ * Keeps the k greatest items offered to it in a bounded min-heap, so selecting the top k out of n items
+ * takes O(n log k) time and O(k) memory instead of sorting all of them.
+ *
+ * @param <T> the type of the ranked items
+ */
+public class TopKSelector<T>
+{
+    /**
+     * The most items the heap is sized for up front, it grows past that only as items are actually kept, so a huge k
+     * costs nothing until that many items are offered.
+     */
+    private static final int MAX_INITIAL_CAPACITY = 1024;
+
+    private int k;
+    private Comparator<T> comparator;
+    private PriorityQueue<T> heap;
+
+    /**
+     * Instantiates a new TopKSelector.
+     *
+     * @param k          the number of items to keep, must be positive
+     * @param comparator the order of the items, the greatest items are kept
+     */
+    public TopKSelector(int k, Comparator<T> comparator)
+    {
+        if (k <= 0)
+            throw new IllegalArgumentException("k must be positive");
+        this.k = k;
+        this.comparator = comparator;
+        this.heap = new PriorityQueue<>(Math.min(k, MAX_INITIAL_CAPACITY), comparator);
+    }
+
+    /**
+     * Offers an item to the selector, it is kept only if it is among the k greatest items seen so far.
+     * @param item the offered item
+     */
+    public void offer(T item) {
+        if (heap.size() < k)
+            heap.add(item);
+        else if (comparator.compare(item, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(item);
+        }
+    }
+
+    /**
+     * Returns the selected items.
+     * @return a list containing at most k items, from the greatest to the smallest
+     */
+    public List<T> getResult() {
+        List<T> result = new ArrayList<>(heap);
+        result.sort(Collections.reverseOrder(comparator));
+        return result;
+    }
+}
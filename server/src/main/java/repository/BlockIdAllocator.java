@@ -0,0 +1,138 @@
+package repository;
+
+import domain.BaseEntity;
+import domain.validators.BookstoreException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The type BlockIdAllocator.
+ * Hands out ids for the in memory and file repositories without scanning them on every call.
+ * The biggest id of the repository is read once; after that the ids are handed out from a fixed number of blocks of
+ * blockSize ids, each reserved with a single atomic operation (hi/lo style) and refilled once used up. A thread takes
+ * its ids from the block its id maps to, so concurrent threads rarely contend, while the number of blocks, and of ids
+ * left unused in them, does not grow with the number of threads.
+ * The ids are unique and may have gaps; once the biggest int was handed out, no more ids are available.
+ */
+public class BlockIdAllocator implements IdAllocator
+{
+    private Repository<Integer, ? extends BaseEntity<Integer>> repository;
+    private int blockSize;
+    private volatile AtomicLong nextFreeId;
+    private IdBlock[] blocks;
+
+    /**
+     * Instantiates a new BlockIdAllocator.
+     *
+     * @param repository the repository the biggest existing id is read from
+     * @param blockSize  the number of ids a block reserves at once
+     */
+    public BlockIdAllocator(Repository<Integer, ? extends BaseEntity<Integer>> repository, int blockSize)
+    {
+        if (blockSize <= 0)
+            throw new IllegalArgumentException("blockSize must be positive");
+        this.repository = repository;
+        this.blockSize = blockSize;
+        this.blocks = new IdBlock[2 * Runtime.getRuntime().availableProcessors()];
+        for (int index = 0; index < blocks.length; index++)
+            blocks[index] = new IdBlock();
+    }
+
+    /**
+     * Returns the counter of the next id that was not reserved yet, reading the biggest id of the repository on first use.
+     */
+    private AtomicLong nextFreeId() throws BookstoreException {
+        AtomicLong counter = nextFreeId;
+        if (counter != null)
+            return counter;
+
+        synchronized (this) {
+            if (nextFreeId == null) {
+                int maxId = 0;
+                for (BaseEntity<Integer> entity : repository.findAll())
+                    maxId = Math.max(maxId, entity.getId());
+                nextFreeId = new AtomicLong(maxId + 1L);
+            }
+            return nextFreeId;
+        }
+    }
+
+    /**
+     * Reserves consecutive ids with a single atomic operation.
+     * @param count the number of ids wanted
+     * @param partial whether less than count ids may be reserved when the ids are running out
+     * @return the first reserved id and the id after the last one
+     * @throws BookstoreException if not enough ids are left
+     */
+    private long[] reserve(int count, boolean partial) throws BookstoreException {
+        AtomicLong counter = nextFreeId();
+        while (true) {
+            long first = counter.get();
+            long end = Math.min(first + count, Integer.MAX_VALUE + 1L);
+            if (end - first < (partial ? 1 : count))
+                throw new BookstoreException("No ids left, the biggest id " + Integer.MAX_VALUE + " was reached");
+            if (counter.compareAndSet(first, end))
+                return new long[]{first, end};
+        }
+    }
+
+    /**
+     * Returns the block the ids of the current thread are taken from.
+     */
+    private IdBlock block() {
+        return blocks[(int) (Thread.currentThread().getId() % blocks.length)];
+    }
+
+    @Override
+    public Integer nextId() throws BookstoreException {
+        IdBlock block = block();
+        synchronized (block) {
+            if (block.next >= block.end) {
+                long[] range = reserve(blockSize, true);
+                block.next = range[0];
+                block.end = range[1];
+            }
+            return (int) block.next++;
+        }
+    }
+
+    /**
+     * Takes count consecutive ids from the block of the current thread if it has enough of them left, otherwise
+     * reserves them with a single atomic operation and drops what is left of the block, whose ids are smaller than the
+     * reserved ones and so could not be handed out to this thread afterwards.
+     */
+    @Override
+    public List<Integer> nextIds(int count) throws BookstoreException {
+        if (count < 0)
+            throw new IllegalArgumentException("count must not be negative");
+
+        List<Integer> ids = new ArrayList<>(count);
+        if (count == 0)
+            return ids;
+        IdBlock block = block();
+        long first;
+        synchronized (block) {
+            if (block.end - block.next >= count) {
+                first = block.next;
+                block.next += count;
+            } else {
+                first = reserve(count, false)[0];
+                block.next = block.end;
+            }
+        }
+        for (long id = first; id < first + count; id++)
+            ids.add((int) id);
+        return ids;
+    }
+
+    /**
+     * A range of reserved ids, from next inclusive to end exclusive, guarded by its own monitor.
+     */
+    private static class IdBlock
+    {
+        private long next;
+        private long end;
+    }
+}
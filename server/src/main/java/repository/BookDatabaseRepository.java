@@ -11,20 +11,59 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 
 /**
  * The type BookDatabaseRepository
  *
  */
-public class BookDatabaseRepository implements BookRepository
+public class BookDatabaseRepository implements BookRepository, TextSearchRepository<Book>
 {
 
     @Autowired
     private JdbcOperations jdbcOperations;
 
+    @Autowired
+    private JdbcBulkWriter jdbcBulkWriter;
+
+    private static final List<String> COLUMNS = Arrays.asList("id", "title", "author", "publisher", "publicationyear", "price");
+    private static final List<String> TEXT_COLUMNS = Arrays.asList("title", "author", "publisher");
+
+    private volatile boolean textIndexesCreated;
+    private volatile String textIndexFailure;
+
+    /**
+     * Turns the current row of a result set into a book
+     * @param row the result set, positioned on a row of the book table
+     * @return an instance of class Book
+     * @throws SQLException if a column cannot be read
+     */
+    private static Book bookFromRow(ResultSet row) throws SQLException {
+        int bookId = row.getInt("id");
+        String title = row.getString("title");
+        String author = row.getString("author");
+        String publisher = row.getString("publisher");
+        int publicationYear = row.getInt("publicationyear");
+        float price = (float)row.getDouble("price");
+        Book newBook = new Book(title, author, publisher, publicationYear, price);
+        newBook.setId(bookId);
+        return newBook;
+    }
+
+    /**
+     * Turns a book into the values of its row, in the order of COLUMNS.
+     * @param entity instance of class Book
+     * @return the values of the columns
+     */
+    private static Object[] bookToRow(Book entity) {
+        return new Object[]{entity.getId(), entity.getTitle(), entity.getAuthor(), entity.getPublisher(), entity.getPublicationYear(), entity.getPrice()};
+    }
+
     /**
      * Find the book with the given id
      * @param id
@@ -38,18 +77,7 @@ public class BookDatabaseRepository implements BookRepository
 
         try
         {
-            List<Book> resultList = jdbcOperations.query(getBookSQLStatement,new Object[]{id}, (row, rowNum) ->
-            {
-                int bookId = row.getInt("id");
-                String title = row.getString("title");
-                String author = row.getString("author");
-                String publisher = row.getString("publisher");
-                int publicationYear = row.getInt("publicationyear");
-                float price = (float)row.getDouble("price");
-                Book newBook = new Book(title, author, publisher, publicationYear, price);
-                newBook.setId(bookId);
-                return newBook;
-            });
+            List<Book> resultList = jdbcOperations.query(getBookSQLStatement,new Object[]{id}, (row, rowNum) -> bookFromRow(row));
 
             if (!resultList.isEmpty()) {
                 return Optional.of(resultList.get(0));
@@ -78,18 +106,7 @@ public class BookDatabaseRepository implements BookRepository
 
         try
         {
-            return jdbcOperations.query(sqlStatement, (row, rowNum) ->
-            {
-                int bookId = row.getInt("id");
-                String title = row.getString("title");
-                String author = row.getString("author");
-                String publisher = row.getString("publisher");
-                int publicationYear = row.getInt("publicationyear");
-                float price = (float)row.getDouble("price");
-                Book newBook = new Book(title, author, publisher, publicationYear, price);
-                newBook.setId(bookId);
-                return newBook;
-            });
+            return jdbcOperations.query(sqlStatement, (row, rowNum) -> bookFromRow(row));
         }
         catch(DataAccessException databaseException){
             throw new BookstoreException(databaseException.toString());
@@ -131,21 +148,107 @@ public class BookDatabaseRepository implements BookRepository
      */
     @Override
     public Optional<Book> delete(Integer id) throws BookstoreException {
-        String deleteBookSQLStatement = "delete from book where id=?";
+        String deleteBookSQLStatement = "delete from book where id=? returning *";
 
         try
         {
-            Optional<Book> bookToDelete = this.findOne(id);
+            List<Book> deletedBooks = jdbcOperations.query(deleteBookSQLStatement, new Object[]{id}, (row, rowNum) -> bookFromRow(row));
+            return deletedBooks.stream().findFirst();
+        }
+        catch(DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
 
-            if (bookToDelete.isPresent())
-            {
-                jdbcOperations.update(deleteBookSQLStatement, id);
-                return bookToDelete;
-            }
-            else
-            {
-                return Optional.empty();
-            }
+    /**
+     * Creates the pg_trgm GIN indexes that let the database answer the LIKE and ILIKE searches without a full scan.
+     * If the extension cannot be created, the searches still work, they just scan the table, and the failure is kept
+     * for getTextIndexFailure().
+     */
+    private void createTextIndexes() {
+        if (textIndexesCreated)
+            return;
+
+        try
+        {
+            jdbcOperations.execute("create extension if not exists pg_trgm");
+            for (String column : TEXT_COLUMNS)
+                jdbcOperations.execute("create index if not exists book_" + column + "_trgm on book using gin (" + column + " gin_trgm_ops)");
+        }
+        catch(DataAccessException databaseException)
+        {
+            textIndexFailure = "pg_trgm indexes not available: " + databaseException.getMessage();
+        }
+        textIndexesCreated = true;
+    }
+
+    @Override
+    public Optional<String> getTextIndexFailure() {
+        return Optional.ofNullable(textIndexFailure);
+    }
+
+    /**
+     * Finds all the books having at least one text column that contains the given text, with a single query.
+     * @param text the searched text
+     * @param caseInsensitive whether the search uses ILIKE instead of LIKE
+     * @return the matching books
+     * @throws BookstoreException if there is any SQL database related error
+     */
+    @Override
+    public List<Book> search(String text, boolean caseInsensitive) throws BookstoreException {
+        createTextIndexes();
+        String operator = caseInsensitive ? "ilike" : "like";
+        String searchBooksSqlStatement = "select * from book where title " + operator + " ? escape '\\' or author " + operator + " ? escape '\\' or publisher " + operator + " ? escape '\\'";
+        String pattern = TextSearchRepository.containsPattern(text);
+
+        try
+        {
+            return jdbcOperations.query(searchBooksSqlStatement, new Object[]{pattern, pattern, pattern}, (row, rowNum) -> bookFromRow(row));
+        }
+        catch(DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Finds all the books matched by a filter with a single query.
+     * @param filter the filter the books must match, its column must be one of the book columns
+     * @return the books matched by the filter
+     * @throws BookstoreException if there is any SQL database related error
+     */
+    @Override
+    public List<Book> findBy(FieldFilter<Book> filter) throws BookstoreException {
+        if (!COLUMNS.contains(filter.getColumn()))
+            throw new IllegalArgumentException("unknown column " + filter.getColumn());
+        String findBooksSqlStatement = "select * from book where " + filter.getColumn() + " = ?";
+
+        try
+        {
+            return jdbcOperations.query(findBooksSqlStatement, new Object[]{filter.getValue()}, (row, rowNum) -> bookFromRow(row));
+        }
+        catch(DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Deletes all the books matched by a filter from the database with a single statement.
+     * @param filter the filter the books to delete must match, its column must be one of the book columns
+     * @return the deleted books
+     * @throws BookstoreException if there is any SQL database related error
+     */
+    @Override
+    public List<Book> deleteAll(FieldFilter<Book> filter) throws BookstoreException {
+        if (!COLUMNS.contains(filter.getColumn()))
+            throw new IllegalArgumentException("unknown column " + filter.getColumn());
+        String deleteBooksSqlStatement = "delete from book where " + filter.getColumn() + " = ? returning *";
+
+        try
+        {
+            return jdbcOperations.query(deleteBooksSqlStatement, new Object[]{filter.getValue()}, (row, rowNum) -> bookFromRow(row));
         }
         catch(DataAccessException databaseException)
         {
@@ -178,5 +281,121 @@ public class BookDatabaseRepository implements BookRepository
             throw new BookstoreException(databaseException.toString());
         }
     }
-}
 
+    /**
+     * Updates the given book and returns the state it had before, with a single statement.
+     * @param entity must not be null, instance of class Book
+     * @return an Optional - the book as it was before the update, null if there is no book with such an id
+     * @throws BookstoreException if there is any SQL database related error
+     */
+    @Override
+    public Optional<Book> replace(Book entity) throws BookstoreException {
+        String replaceSqlStatement = "update book set title=?, author=?, publisher=?, publicationyear=?, price=? " +
+                "from (select * from book where id = ? for update) previous where book.id = previous.id returning previous.*";
+
+        try
+        {
+            List<Book> previousBooks = jdbcOperations.query(replaceSqlStatement, new Object[]{entity.getTitle(), entity.getAuthor(), entity.getPublisher(), entity.getPublicationYear(), entity.getPrice(), entity.getId()},
+                    (row, rowNum) -> bookFromRow(row));
+            return previousBooks.stream().findFirst();
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Saves all the given books with multi-row inserts (or COPY for very large lists), inside a single transaction.
+     * @param entities must not be null, instances of Book
+     * @return a list with one Optional for every book - null if the book was added, the book otherwise (e.g. its id already exists)
+     * @throws BookstoreException if there is any SQL database related error, in which case none of the books is added
+     */
+    @Override
+    public List<Optional<Book>> saveAll(List<Book> entities) throws BookstoreException {
+        try
+        {
+            boolean[] inserted = jdbcBulkWriter.insertAll("book", COLUMNS, entities.stream().map(BookDatabaseRepository::bookToRow).collect(Collectors.toList()));
+            List<Optional<Book>> results = new ArrayList<>();
+            for (int index = 0; index < entities.size(); index++)
+                results.add(inserted[index] ? Optional.empty() : Optional.of(entities.get(index)));
+            return results;
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Updates all the given books with JDBC batches, inside a single transaction.
+     * @param entities must not be null, instances of Book
+     * @return a list with one Optional for every book - the book if it was updated, null otherwise
+     * @throws BookstoreException if there is any SQL database related error, in which case none of the books is updated
+     */
+    @Override
+    public List<Optional<Book>> updateAll(List<Book> entities) throws BookstoreException {
+        String updateSqlStatement = "update book set title=?, author=?, publisher=?, publicationyear=?, price=? where id=?";
+        List<Object[]> batchArguments = entities.stream()
+                .map(entity -> new Object[]{entity.getTitle(), entity.getAuthor(), entity.getPublisher(), entity.getPublicationYear(), entity.getPrice(), entity.getId()})
+                .collect(Collectors.toList());
+
+        try
+        {
+            int[] rowsUpdated = jdbcBulkWriter.batchUpdate(updateSqlStatement, batchArguments);
+            List<Optional<Book>> results = new ArrayList<>();
+            for (int index = 0; index < entities.size(); index++)
+                results.add(rowsUpdated[index] != 0 ? Optional.of(entities.get(index)) : Optional.empty());
+            return results;
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Saves all the given books with multi-row upserts, replacing the books whose id already exists, inside a single transaction.
+     * @param entities must not be null, instances of Book
+     * @return a list with one Optional for every book - null if the book was added, the book otherwise (its id already existed and it replaced that book)
+     * @throws BookstoreException if there is any SQL database related error, in which case none of the books is saved
+     */
+    @Override
+    public List<Optional<Book>> upsertAll(List<Book> entities) throws BookstoreException {
+        try
+        {
+            boolean[] inserted = jdbcBulkWriter.upsertAll("book", COLUMNS, entities.stream().map(BookDatabaseRepository::bookToRow).collect(Collectors.toList()));
+            List<Optional<Book>> results = new ArrayList<>();
+            for (int index = 0; index < entities.size(); index++)
+                results.add(inserted[index] ? Optional.empty() : Optional.of(entities.get(index)));
+            return results;
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Finds the books with the given ids with a single query
+     * @param ids
+     *            must not be null.
+     * @return a list containing the books that exist
+     * @throws BookstoreException
+     */
+    @Override
+    public Iterable<Book> findMany(Collection<Integer> ids) throws BookstoreException {
+        String sqlStatement = "select * from book where id = any(?)";
+
+        try
+        {
+            return jdbcOperations.query(sqlStatement,
+                    preparedStatement -> preparedStatement.setArray(1, preparedStatement.getConnection().createArrayOf("integer", ids.toArray())),
+                    (row, rowNum) -> bookFromRow(row));
+        }
+        catch(DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+}
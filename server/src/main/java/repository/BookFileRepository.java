@@ -6,125 +6,196 @@ import domain.validators.BookstoreException;
 import domain.validators.Validator;
 import domain.validators.ValidatorException;
 
-import java.io.FileWriter;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
 
 /**
  * The type BookFileRepository.
  *
  */
-public class BookFileRepository extends InMemoryRepository<Integer, Book> {
+public class BookFileRepository extends ConcurrentInMemoryRepository<Integer, Book> implements BookRepository {
+    /**
+     * The number of records after which the operation log is folded into a new snapshot of the CSV file.
+     */
+    protected static final int COMPACTION_THRESHOLD = 1000;
+
     protected String fileName;
+    protected OperationLog<Book> operationLog;
+    protected GroupCommitFlusher flusher;
+
+    /**
+     * Instantiates a new BookFileRepository whose writes are forced to disk one by one.
+     *
+     * @param validator instance of a class implementing the Validator interface
+     * @param fileName string representing the path to the CSV file where the books are stored
+     */
+    public BookFileRepository(Validator<Book> validator, String fileName) throws BookstoreException {
+        this(validator, fileName, new GroupCommitFlusher(DurabilityMode.PER_WRITE, 0));
+    }
 
     /**
-     * Instantiates a new BookFileRepository
+     * Instantiates a new BookFileRepository.
      *
      * @param validator instance of a class implementing the Validator interface
-     * @param fileName string representing the path to the CSV file where clients are stored
+     * @param fileName string representing the path to the CSV file where the books are stored
+     * @param flusher decides when the writes are forced to disk
      */
-    public BookFileRepository(Validator<Book> validator, String fileName) throws BookstoreException{
+    public BookFileRepository(Validator<Book> validator, String fileName, GroupCommitFlusher flusher) throws BookstoreException {
+        this.flusher = flusher;
         this.fileName = fileName;
+        this.operationLog = new OperationLog<>(fileName + ".log", BookFileRepository::bookToLine, BookFileRepository::bookFromLine,
+                COMPACTION_THRESHOLD, flusher);
 
-        this.loadData();
+        this.restore(() -> {
+            this.loadData();
+            this.replayLog();
+            return null;
+        });
     }
 
     /**
-     * Reads the data from a file into the local repository
+     * Loads data into the repository from a CSV file, parsing it in parallel.
      */
-    protected void loadData() throws BookstoreException{
-        Path path = Paths.get(fileName);
-
-        try{
-            Files.lines(path).forEach(line ->{
-                List<String> items = Arrays.asList(line.split(","));
-
-                Integer id = Integer.valueOf(items.get(0));
-                String title = items.get(1);
-                String author = items.get(2);
-                String publisher = items.get(3);
-                int publicationYear = Integer.parseInt(items.get(4));
-                float price = Float.parseFloat(items.get(5));
-
-                Book book = new Book(title, author, publisher, publicationYear, price);
-                book.setId(id);
-
-                try{
-                    super.save(book);
-                } catch (IllegalArgumentException | BookstoreException e){
-                    e.printStackTrace();
-                }
-            });
-        } catch (IOException e){
+    protected void loadData() throws BookstoreException {
+        try
+        {
+            for (Book book : CsvFileLoader.load(fileName, BookFileRepository::bookFromRecord)) {
+                if (!findOne(book.getId()).isPresent())
+                    putEntity(book);
+            }
+        }
+        catch (IOException e)
+        {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Turns a line of the CSV file into a book.
+     * @param line string containing the comma separated fields of a book
+     * @return an instance of class Book
+     */
+    protected static Book bookFromLine(String line) {
+        return bookFromRecord(CsvRecord.of(line));
+    }
+
+    /**
+     * Turns the fields of a line of the CSV file into a book.
+     * @param record the fields of a book
+     * @return an instance of class Book
+     */
+    static Book bookFromRecord(CsvRecord record) {
+        Book book = new Book(record.getString(1), record.getString(2), record.getString(3), record.getInt(4), record.getFloat(5));
+        book.setId(record.getInt(0));
+        return book;
+    }
+
+    /**
+     * Turns a book into a line of the CSV file, without the line separator.
+     * @param book instance of class Book
+     * @return string containing the comma separated fields of the book
+     */
+    protected static String bookToLine(Book book) {
+        return book.getId() + "," + CsvRecord.quote(book.getTitle()) + "," + CsvRecord.quote(book.getAuthor()) + "," +
+                CsvRecord.quote(book.getPublisher()) + "," + book.getPublicationYear() + "," + book.getPrice();
+    }
+
+    /**
+     * Applies the operation log written since the last snapshot on top of the data read by loadData.
+     */
+    protected void replayLog() throws BookstoreException {
+        this.operationLog.replay(this::putEntity, this::removeEntity);
+    }
+
     /**
      * Saves all the data from the local repository in a CSV text file.
+     * The snapshot is written to a temporary file first, forced to disk and then moved over the old one, so a crash never
+     * leaves half a file behind, and the snapshot is on disk before the operation log it replaces is cleared.
      */
     protected void saveData() throws BookstoreException {
-        try (FileWriter fileWriter = new FileWriter(fileName, false))
+        Path path = Paths.get(fileName);
+        Path temporaryPath = Paths.get(fileName + ".tmp");
+
+        try (FileOutputStream fileStream = new FileOutputStream(temporaryPath.toFile());
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(fileStream, StandardCharsets.UTF_8)))
         {
-            super.entities.forEach((key, value) -> {
-                try {
-                    fileWriter.write(
-                            value.getId() + "," + value.getTitle() + "," + value.getAuthor() + "," + value.getPublisher() +  "," + value.getPublicationYear() + "," + value.getPrice());
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            });
+            for (Book book : super.entities.values()) {
+                writer.write(bookToLine(book));
+                writer.write('\n');
+            }
+            writer.flush();
+            fileStream.getChannel().force(false);
         }
         catch(IOException e)
         {
-            e.printStackTrace();
-        };
+            throw new BookstoreException(e.toString());
+        }
+
+        try
+        {
+            DurableFiles.replace(temporaryPath, path);
+        }
+        catch(IOException e)
+        {
+            throw new BookstoreException(e.toString());
+        }
     }
 
     /**
-     * Saves an {@code entity} into the file repository
-     * @param book instance of class Book
-     * @return instance of Optional that could contain a client or null
+     * Records saved or updated books in the operation log; called while their stripes are locked.
+     * @param books the books that were saved or updated
      */
     @Override
-    public Optional<Book> save(Book book) throws BookstoreException {
-        Optional<Book> optionalBook = super.save(book);
-        if (optionalBook.isPresent())
-            return optionalBook;
-        saveData();
-        return Optional.empty();
+    protected void logSaved(List<Book> books) throws BookstoreException {
+        this.operationLog.enqueueSaved(books);
     }
 
     /**
-     * Updates a book from the file repository.
-     * @param book instance of class Book
-     * @return instance of Optional that could contain a book or null
+     * Records deleted books in the operation log; called while their stripes are locked.
+     * @param ids the ids of the deleted books
      */
     @Override
-    public Optional<Book> update(Book book) throws BookstoreException {
-        Optional<Book> optionalBook = super.update(book);
-        if (!optionalBook.isPresent())
-            return optionalBook;
-        saveData();
-        return optionalBook;
+    protected void logDeleted(List<Integer> ids) throws BookstoreException {
+        this.operationLog.enqueueDeleted(ids);
+    }
+
+    /**
+     * Waits for the logged writes to be forced to disk.
+     */
+    @Override
+    protected void commit() throws BookstoreException {
+        this.operationLog.commit();
     }
 
     /**
-     * Deletes a book from the file repository.
-     * @param id integer representing the id of a book
-     * @return instance of Optional that could contain a book or null
+     * Compacts the operation log if it grew too long.
      */
     @Override
-    public Optional<Book> delete(Integer id) throws BookstoreException {
-        Optional<Book> optionalBook = super.delete(id);
-        if (!optionalBook.isPresent())
-            return optionalBook;
+    protected void committed() throws BookstoreException {
+        if (this.operationLog.needsCompaction())
+            compactIfNeeded();
+    }
+
+    private synchronized void compactIfNeeded() throws BookstoreException {
+        if (this.operationLog.needsCompaction())
+            compact();
+    }
+
+    /**
+     * Writes a new snapshot of the CSV file and empties the operation log.
+     * The writes running meanwhile are not held back: the log is marked before the entities are read, so a write
+     * missing from the snapshot is logged after the mark and is kept in the log.
+     */
+    public synchronized void compact() throws BookstoreException {
+        long mark = this.operationLog.mark();
         saveData();
-        return optionalBook;
+        this.operationLog.clearUpTo(mark);
     }
 }
@@ -0,0 +1,38 @@
+package repository;
+
+import domain.Book;
+import domain.validators.BookstoreException;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class BookSnapshotRepository extends MappedSnapshotRepository<Book> implements BookRepository {
+    private static final List<MappedSnapshot.Column<Book>> COLUMNS = Arrays.asList(
+            MappedSnapshot.Column.string(Book::getTitle),
+            MappedSnapshot.Column.string(Book::getAuthor),
+            MappedSnapshot.Column.string(Book::getPublisher),
+            MappedSnapshot.Column.integer(Book::getPublicationYear),
+            MappedSnapshot.Column.floating(Book::getPrice));
+
+    /**
+     * Instantiates a new BookSnapshotRepository.
+     *
+     * @param fileName string representing the path to the snapshot file where books are stored
+     * @param flusher  decides when the writes are forced to disk
+     */
+    public BookSnapshotRepository(String fileName, GroupCommitFlusher flusher) throws BookstoreException {
+        super(fileName, COLUMNS,
+                row -> new Book(row.getString(0), row.getString(1), row.getString(2), row.getInt(3), row.getFloat(4)),
+                BookFileRepository::bookToLine, BookFileRepository::bookFromLine, flusher);
+    }
+
+    /**
+     * Writes the snapshot file with the books of another repository, see MappedSnapshotRepository.importSnapshot.
+     *
+     * @param fileName string representing the path to the snapshot file where books are stored
+     * @param source   the repository the books are copied from
+     */
+    public static void importSnapshot(String fileName, Repository<Integer, Book> source) throws BookstoreException {
+        importSnapshot(fileName, source, COLUMNS);
+    }
+}
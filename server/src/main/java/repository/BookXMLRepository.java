@@ -3,25 +3,25 @@ package repository;
 import domain.Book;
 import domain.validators.BookstoreException;
 import domain.validators.Validator;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.File;
+import java.io.Flushable;
 import java.io.IOException;
-import java.util.stream.IntStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class BookXMLRepository extends BookFileRepository {
+    /**
+     * Rewrites the XML file when the flusher asks for it.
+     */
+    private final Flushable snapshotWriter = () -> {
+        try {
+            saveData();
+        } catch (BookstoreException e) {
+            throw new IOException(e.getMessage());
+        }
+    };
+
     /**
      * Instantiates a new InMemoryRepository
      *
@@ -32,31 +32,23 @@ public class BookXMLRepository extends BookFileRepository {
         super(bookValidator, fileName);
     }
 
-    /**
-     * Gets the text from inside a tag name.
-     *
-     * @param parentElement instance of class Element
-     * @param tagName       string
-     * @return the text contained in a tag name
-     */
-    private static String getTextFromTagName(Element parentElement, String tagName) {
-        Node node = parentElement.getElementsByTagName(tagName).item(0);
-        return node.getTextContent();
+    public BookXMLRepository(Validator<Book> bookValidator, String fileName, GroupCommitFlusher flusher) throws BookstoreException {
+        super(bookValidator, fileName, flusher);
     }
 
     /**
-     * Turns an instance of Element into an instance of Book.
-     *
-     * @param bookElement instance of class Element
+     * Turns the fields of a book element into an instance of Book.
+     * @param fields the text of every child element of the book element, by tag name
      * @return an instance of class Book created using the information contained by the element
      */
-    private static Book createBookFromElement(Element bookElement) {
-        int id = Integer.parseInt(getTextFromTagName(bookElement, "id"));
-        String title = getTextFromTagName(bookElement, "title");
-        String author = getTextFromTagName(bookElement, "author");
-        String publisher = getTextFromTagName(bookElement, "publisher");
-        int publicationYear = Integer.parseInt(getTextFromTagName(bookElement, "publicationYear"));
-        float price = Float.parseFloat(getTextFromTagName(bookElement, "price"));
+    private static Book createBookFromFields(Map<String, String> fields)
+    {
+        int id = Integer.parseInt(fields.get("id"));
+        String title = fields.get("title");
+        String author = fields.get("author");
+        String publisher = fields.get("publisher");
+        int publicationYear = Integer.parseInt(fields.get("publicationYear"));
+        float price = Float.parseFloat(fields.get("price"));
 
         Book newBook = new Book(title, author, publisher, publicationYear, price);
         newBook.setId(id);
@@ -65,98 +57,61 @@ public class BookXMLRepository extends BookFileRepository {
     }
 
     /**
+     * Turns an instance of Book into the fields of its element.
+     * @param book instance of class Book
+     * @return the text of every child element of the book element, by tag name, in document order
+     */
+    private static Map<String, String> bookToFields(Book book)
+    {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("id", book.getId().toString());
+        fields.put("title", book.getTitle());
+        fields.put("author", book.getAuthor());
+        fields.put("publisher", book.getPublisher());
+        fields.put("publicationYear", Integer.toString(book.getPublicationYear()));
+        fields.put("price", Float.toString(book.getPrice()));
+        return fields;
+    }
+
+    /**
+     * Streams the books from the XML file.
      * @throws BookstoreException if there is any XML file related exception
      */
     @Override
     protected void loadData() throws BookstoreException {
-        try {
-            Document document = DocumentBuilderFactory
-                    .newInstance()
-                    .newDocumentBuilder()
-                    .parse(this.fileName);
-
-            Element root = document.getDocumentElement();
-
-            NodeList children = root.getChildNodes();
-
-            IntStream.range(0, children.getLength())
-                    .mapToObj(index -> children.item(index))
-                    .filter(node -> node instanceof Element)
-                    .map(node -> createBookFromElement((Element) node))
-                    .forEach(book -> {
-                        try {
-                            super.save(book);
-                        } catch (BookstoreException e) {
-                            e.printStackTrace();
-                        }
-                    });
-        } catch (ParserConfigurationException | IOException | SAXException exception) {
-            throw new BookstoreException(exception.toString());
-        }
+        new XmlRecordFile(this.fileName).read(fields -> putEntity(createBookFromFields(fields)));
     }
 
     /**
-     * Appends a child node containing text to another node.
-     *
-     * @param document    instance of class Document
-     * @param parentNode  instance of class Node
-     * @param tagName     string
-     * @param textContent string
+     * Streams all the entities to a XML file, one rewrite at a time
+     * @throws BookstoreException if there is any XML related exception
      */
-    private static void appendChildWithTextToNode(Document document, Node parentNode, String tagName, String textContent) {
-        Element element = document.createElement(tagName);
-        element.setTextContent(textContent);
-        parentNode.appendChild(element);
+    @Override
+    protected synchronized void saveData() throws BookstoreException {
+        new XmlRecordFile(this.fileName).write("books", "book", this.entities.values(), BookXMLRepository::bookToFields);
     }
 
     /**
-     * Turns an instance of Book into an instance of Node
-     *
-     * @param book     instance of class Book
-     * @param document instance of class Document
-     * @return instance of Node class representing a book
+     * The XML file is always rewritten as a whole, it is not journaled.
+     * @param books the books that were saved or updated
      */
-    private static Node bookToNode(Book book, Document document) {
-        Element bookElement = document.createElement("book");
-
-        appendChildWithTextToNode(document, bookElement, "id", book.getId().toString());
-        appendChildWithTextToNode(document, bookElement, "title", book.getTitle());
-        appendChildWithTextToNode(document, bookElement, "author", book.getAuthor());
-        appendChildWithTextToNode(document, bookElement, "publisher", book.getPublisher());
-        appendChildWithTextToNode(document, bookElement, "publicationYear", Integer.toString(book.getPublicationYear()));
-        appendChildWithTextToNode(document, bookElement, "price", Float.toString(book.getPrice()));
-
-        return bookElement;
+    @Override
+    protected void logSaved(List<Book> books) {
     }
 
     /**
-     * Saves all the entities in a XML file
-     * @throws BookstoreException if there is any XML related exception
+     * The XML file is always rewritten as a whole, it is not journaled.
+     * @param ids the ids of the deleted books
      */
     @Override
-    protected void saveData() throws BookstoreException {
-        try {
-            Document document = DocumentBuilderFactory
-                    .newInstance()
-                    .newDocumentBuilder()
-                    .newDocument();
-
-            Element root = document.createElement("books");
-            document.appendChild(root);
-            this.entities.forEach((id, book) ->
-            {
-                Node bookNode = bookToNode(book, document);
-                root.appendChild(bookNode);
-            });
-
-            Transformer transformer = TransformerFactory.newInstance().newTransformer();
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+    protected void logDeleted(List<Integer> ids) {
+    }
 
-            transformer.transform(new DOMSource(document),
-                    new StreamResult(new File(this.fileName)));
-        } catch (TransformerException | ParserConfigurationException exception) {
-            throw new BookstoreException(exception.toString());
-        }
+    /**
+     * Rewrites the XML file; the rewrites committed together are done once.
+     */
+    @Override
+    protected void commit() throws BookstoreException {
+        this.flusher.commit(this.snapshotWriter);
     }
-}
\ No newline at end of file
+}
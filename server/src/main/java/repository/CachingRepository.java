@@ -0,0 +1,386 @@
+package repository;
+
+import domain.BaseEntity;
+import domain.validators.BookstoreException;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The type CachingRepository.
+ * A read-through cache of the entities of another repository, so the lookups by id repeated by the controllers cost one
+ * query per entity instead of one per lookup. The cache holds at most maximumSize entities and evicts the least recently
+ * used one when it is full; an entity is also dropped timeToLive after it was loaded, which bounds how stale it can be
+ * when the data is changed by someone else.
+ * The writes made through this repository drop the entities they touch once the delegate has made them. A lookup that
+ * started before a write does not put what it read into the cache, so the cache never keeps an entity older than the
+ * last write.
+ * The hits, misses, evictions and expirations are recorded, see getStatistics(); the server configuration publishes
+ * them over JMX.
+ *
+ * @param <ID> the type of the ids
+ * @param <T>  the type of the entities
+ */
+public class CachingRepository<ID, T extends BaseEntity<ID>> implements RepositoryDecorator<ID, T>
+{
+    private Repository<ID, T> delegate;
+    private long timeToLiveNanos;
+    private CacheStatistics statistics;
+
+    private final Object lock = new Object();
+    private LinkedHashMap<ID, CachedEntity<T>> entries;
+    private long invalidationCount;
+
+    /**
+     * Instantiates a new CachingRepository.
+     *
+     * @param delegate          the repository the entities are read from and written to
+     * @param maximumSize       the maximum number of cached entities
+     * @param timeToLiveMillis  how long an entity stays cached after it was loaded
+     */
+    public CachingRepository(Repository<ID, T> delegate, int maximumSize, long timeToLiveMillis)
+    {
+        if (maximumSize <= 0)
+            throw new IllegalArgumentException("maximumSize must be positive");
+        if (timeToLiveMillis <= 0)
+            throw new IllegalArgumentException("timeToLiveMillis must be positive");
+        this.delegate = delegate;
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+        this.statistics = new CacheStatistics();
+        this.entries = new LinkedHashMap<ID, CachedEntity<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ID, CachedEntity<T>> eldest) {
+                if (size() <= maximumSize)
+                    return false;
+                statistics.recordEviction();
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public Repository<ID, T> getDelegate() {
+        return delegate;
+    }
+
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Returns the cached entity of an id, or null if it is not cached or expired.
+     */
+    private T cached(ID id, long now) {
+        CachedEntity<T> entry = entries.get(id);
+        if (entry == null)
+            return null;
+        if (now - entry.loadTime >= timeToLiveNanos) {
+            entries.remove(id);
+            statistics.recordExpiration();
+            return null;
+        }
+        return entry.entity;
+    }
+
+    /**
+     * Caches the entities loaded by a lookup, unless a write was made since the lookup started.
+     */
+    private void load(Collection<T> entities, long lookupInvalidationCount, long loadTime) {
+        synchronized (lock) {
+            if (invalidationCount != lookupInvalidationCount)
+                return;
+            for (T entity : entities)
+                entries.put(entity.getId(), new CachedEntity<>(entity, loadTime));
+        }
+    }
+
+    /**
+     * Drops the entities of the given ids and makes the lookups in progress forget what they read.
+     */
+    private void invalidate(Collection<ID> ids) {
+        synchronized (lock) {
+            invalidationCount++;
+            for (ID id : ids)
+                entries.remove(id);
+        }
+    }
+
+    private void invalidateEntities(Collection<T> entities) {
+        List<ID> ids = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            if (entity != null)
+                ids.add(entity.getId());
+        }
+        invalidate(ids);
+    }
+
+    /**
+     * Empties the cache.
+     */
+    public void clear() {
+        synchronized (lock) {
+            invalidationCount++;
+            entries.clear();
+        }
+    }
+
+    /**
+     * Find the entity with the given {@code id}, reading it from the delegate only if it is not cached.
+     *
+     * @param id
+     *            must be not null.
+     * @return an {@code Optional} encapsulating the entity with the given id.
+     * @throws IllegalArgumentException
+     *             if the given id is null.
+     */
+    @Override
+    public Optional<T> findOne(ID id) throws BookstoreException {
+        if (id == null) {
+            throw new IllegalArgumentException("id must not be null");
+        }
+        long lookupInvalidationCount;
+        long now = System.nanoTime();
+        synchronized (lock) {
+            T entity = cached(id, now);
+            if (entity != null) {
+                statistics.recordHits(1);
+                return Optional.of(entity);
+            }
+            lookupInvalidationCount = invalidationCount;
+        }
+        statistics.recordMisses(1);
+        Optional<T> entity = delegate.findOne(id);
+        if (entity.isPresent())
+            load(Collections.singletonList(entity.get()), lookupInvalidationCount, now);
+        return entity;
+    }
+
+    /**
+     * Find the entities with the given ids, reading the ones that are not cached from the delegate with a single call.
+     *
+     * @param ids
+     *            must not be null.
+     * @return the entities that exist, in the order of their ids; ids without an entity are skipped.
+     */
+    @Override
+    public Iterable<T> findMany(Collection<ID> ids) throws BookstoreException {
+        Map<ID, T> found = new HashMap<>();
+        List<ID> missingIds = new ArrayList<>();
+        long lookupInvalidationCount;
+        long now = System.nanoTime();
+        synchronized (lock) {
+            for (ID id : ids) {
+                T entity = cached(id, now);
+                if (entity != null)
+                    found.put(id, entity);
+                else
+                    missingIds.add(id);
+            }
+            lookupInvalidationCount = invalidationCount;
+        }
+        statistics.recordHits(found.size());
+        statistics.recordMisses(missingIds.size());
+
+        if (!missingIds.isEmpty()) {
+            List<T> loaded = new ArrayList<>();
+            for (T entity : delegate.findMany(missingIds)) {
+                found.put(entity.getId(), entity);
+                loaded.add(entity);
+            }
+            load(loaded, lookupInvalidationCount, now);
+        }
+
+        List<T> result = new ArrayList<>(found.size());
+        for (ID id : ids) {
+            T entity = found.get(id);
+            if (entity != null)
+                result.add(entity);
+        }
+        return result;
+    }
+
+    /**
+     *
+     * @return all entities, read from the delegate.
+     */
+    @Override
+    public Iterable<T> findAll() throws BookstoreException {
+        return delegate.findAll();
+    }
+
+    /**
+     * Find the entities matched by the given filter, using the query of the delegate.
+     *
+     * @param filter
+     *            must not be null.
+     * @return the entities matched by the filter.
+     */
+    @Override
+    public Iterable<T> findBy(FieldFilter<T> filter) throws BookstoreException {
+        return delegate.findBy(filter);
+    }
+
+    @Override
+    public Optional<T> save(T entity) throws BookstoreException, SQLException {
+        try {
+            return delegate.save(entity);
+        } finally {
+            invalidateEntities(Collections.singletonList(entity));
+        }
+    }
+
+    @Override
+    public Optional<T> delete(ID id) throws BookstoreException {
+        try {
+            return delegate.delete(id);
+        } finally {
+            invalidate(Collections.singletonList(id));
+        }
+    }
+
+    @Override
+    public Optional<T> update(T entity) throws BookstoreException {
+        try {
+            return delegate.update(entity);
+        } finally {
+            invalidateEntities(Collections.singletonList(entity));
+        }
+    }
+
+    @Override
+    public Optional<T> replace(T entity) throws BookstoreException {
+        try {
+            return delegate.replace(entity);
+        } finally {
+            invalidateEntities(Collections.singletonList(entity));
+        }
+    }
+
+    @Override
+    public List<Optional<T>> saveAll(List<T> entities) throws BookstoreException, SQLException {
+        try {
+            return delegate.saveAll(entities);
+        } finally {
+            invalidateEntities(entities);
+        }
+    }
+
+    @Override
+    public List<Optional<T>> updateAll(List<T> entities) throws BookstoreException {
+        try {
+            return delegate.updateAll(entities);
+        } finally {
+            invalidateEntities(entities);
+        }
+    }
+
+    @Override
+    public List<Optional<T>> upsertAll(List<T> entities) throws BookstoreException, SQLException {
+        try {
+            return delegate.upsertAll(entities);
+        } finally {
+            invalidateEntities(entities);
+        }
+    }
+
+    /**
+     * Removes all the entities matched by the given filter. The delegate only reports what it removed when it succeeds,
+     * so the whole cache is emptied if it fails.
+     */
+    @Override
+    public List<T> deleteAll(FieldFilter<T> filter) throws BookstoreException {
+        List<T> deleted;
+        try {
+            deleted = delegate.deleteAll(filter);
+        } catch (BookstoreException | RuntimeException e) {
+            clear();
+            throw e;
+        }
+        invalidateEntities(deleted);
+        return deleted;
+    }
+
+    /**
+     * An entity with the time it was loaded at.
+     */
+    private static class CachedEntity<T>
+    {
+        private final T entity;
+        private final long loadTime;
+
+        CachedEntity(T entity, long loadTime)
+        {
+            this.entity = entity;
+            this.loadTime = loadTime;
+        }
+    }
+
+    /**
+     * The type CacheStatistics.
+     * Counts the lookups answered by the cache and by the delegate, and the entities dropped because the cache was
+     * full or because they expired.
+     */
+    public static class CacheStatistics
+    {
+        private long hitCount;
+        private long missCount;
+        private long evictionCount;
+        private long expirationCount;
+
+        private synchronized void recordHits(int count) {
+            hitCount += count;
+        }
+
+        private synchronized void recordMisses(int count) {
+            missCount += count;
+        }
+
+        private synchronized void recordEviction() {
+            evictionCount++;
+        }
+
+        private synchronized void recordExpiration() {
+            expirationCount++;
+        }
+
+        public synchronized long getHitCount() {
+            return hitCount;
+        }
+
+        public synchronized long getMissCount() {
+            return missCount;
+        }
+
+        public synchronized double getHitRate() {
+            long lookupCount = hitCount + missCount;
+            return lookupCount == 0 ? 0 : (double) hitCount / lookupCount;
+        }
+
+        public synchronized long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public synchronized long getExpirationCount() {
+            return expirationCount;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "CacheStatistics{" +
+                    "hits=" + hitCount +
+                    ", misses=" + missCount +
+                    ", hitRate=" + getHitRate() +
+                    ", evictions=" + evictionCount +
+                    ", expirations=" + expirationCount +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package repository;
+
+import domain.BaseEntity;
+import domain.validators.BookstoreException;
+import service.ChangeSet;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The type ChangeTrackingRepository.
+ * Keeps a change log of the writes made through it, so a client holding the entities as they were at a change sequence
+ * number can get only what changed since, at a cost proportional to the changes instead of the size of the repository.
+ * The log records the id and the kind of every change and keeps the last capacity changes; the entities themselves are
+ * read from the delegate when the changes are asked for, so every changed entity is sent once, as it is now.
+ * A change is numbered once the delegate has made it. The sequence numbers start at the time the repository was created
+ * in microseconds, so the numbers of a previous run of the server are older than every number of the log and get a
+ * reset, as do the numbers whose changes were dropped from the log.
+ *
+ * @param <ID> the type of the ids
+ * @param <T>  the type of the entities
+ */
+public class ChangeTrackingRepository<ID, T extends BaseEntity<ID>> implements RepositoryDecorator<ID, T>
+{
+    private Repository<ID, T> delegate;
+
+    private Object[] changedIds;
+    private ChangeKind[] changeKinds;
+    private long lastSequenceNumber;
+    private int changeCount;
+
+    /**
+     * Instantiates a new ChangeTrackingRepository.
+     *
+     * @param delegate the repository the entities are read from and written to
+     * @param capacity the number of changes kept in the log
+     */
+    public ChangeTrackingRepository(Repository<ID, T> delegate, int capacity)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.delegate = delegate;
+        this.changedIds = new Object[capacity];
+        this.changeKinds = new ChangeKind[capacity];
+        this.lastSequenceNumber = System.currentTimeMillis() * 1000;
+    }
+
+    @Override
+    public Repository<ID, T> getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Returns the sequence number of the last change.
+     */
+    public synchronized long getLastSequenceNumber() {
+        return lastSequenceNumber;
+    }
+
+    private synchronized void logChanges(Collection<ID> ids, ChangeKind kind) {
+        for (ID id : ids) {
+            lastSequenceNumber++;
+            int slot = (int) (lastSequenceNumber % changedIds.length);
+            changedIds[slot] = id;
+            changeKinds[slot] = kind;
+            changeCount = Math.min(changeCount + 1, changedIds.length);
+        }
+    }
+
+    private void logChange(ID id, ChangeKind kind) {
+        logChanges(Collections.singletonList(id), kind);
+    }
+
+    /**
+     * Returns the first change of every entity changed after a sequence number, in the order of those first changes.
+     * @return the changes, or null if they are not all in the log
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized Map<ID, ChangeKind> firstChangesSince(long sequenceNumber) {
+        if (sequenceNumber > lastSequenceNumber || sequenceNumber < lastSequenceNumber - changeCount)
+            return null;
+        Map<ID, ChangeKind> firstChanges = new LinkedHashMap<>();
+        for (long change = sequenceNumber + 1; change <= lastSequenceNumber; change++) {
+            int slot = (int) (change % changedIds.length);
+            firstChanges.putIfAbsent((ID) changedIds[slot], changeKinds[slot]);
+        }
+        return firstChanges;
+    }
+
+    /**
+     * Returns the changes made after a sequence number.
+     * An entity inserted since is reported as inserted even if it was updated since, an entity inserted and deleted since
+     * is not reported.
+     * @param sequenceNumber the sequence number of the last change the caller holds, any number the caller does not
+     *                       have yet (e.g. 0) gives a reset
+     * @return the changes, or a reset with all the entities if the changes since the sequence number are not known
+     */
+    public ChangeSet<ID, T> changesSince(long sequenceNumber) throws BookstoreException {
+        long currentSequenceNumber;
+        Map<ID, ChangeKind> firstChanges;
+        synchronized (this) {
+            currentSequenceNumber = lastSequenceNumber;
+            firstChanges = firstChangesSince(sequenceNumber);
+        }
+        if (firstChanges == null) {
+            List<T> entities = new ArrayList<>();
+            delegate.findAll().forEach(entities::add);
+            return ChangeSet.reset(currentSequenceNumber, entities);
+        }
+
+        Map<ID, T> currentEntities = new HashMap<>();
+        for (T entity : delegate.findMany(firstChanges.keySet()))
+            currentEntities.put(entity.getId(), entity);
+        List<T> inserted = new ArrayList<>();
+        List<T> updated = new ArrayList<>();
+        List<ID> deletedIds = new ArrayList<>();
+        for (Map.Entry<ID, ChangeKind> firstChange : firstChanges.entrySet()) {
+            T entity = currentEntities.get(firstChange.getKey());
+            if (entity != null)
+                (firstChange.getValue() == ChangeKind.INSERTED ? inserted : updated).add(entity);
+            else if (firstChange.getValue() != ChangeKind.INSERTED)
+                deletedIds.add(firstChange.getKey());
+        }
+        return ChangeSet.of(currentSequenceNumber, inserted, updated, deletedIds);
+    }
+
+    @Override
+    public Optional<T> findOne(ID id) throws BookstoreException {
+        return delegate.findOne(id);
+    }
+
+    @Override
+    public Iterable<T> findAll() throws BookstoreException {
+        return delegate.findAll();
+    }
+
+    @Override
+    public Iterable<T> findMany(Collection<ID> ids) throws BookstoreException {
+        return delegate.findMany(ids);
+    }
+
+    @Override
+    public Iterable<T> findBy(FieldFilter<T> filter) throws BookstoreException {
+        return delegate.findBy(filter);
+    }
+
+    @Override
+    public Optional<T> save(T entity) throws BookstoreException, SQLException {
+        Optional<T> existingEntity = delegate.save(entity);
+        if (!existingEntity.isPresent())
+            logChange(entity.getId(), ChangeKind.INSERTED);
+        return existingEntity;
+    }
+
+    @Override
+    public Optional<T> delete(ID id) throws BookstoreException {
+        Optional<T> removedEntity = delegate.delete(id);
+        if (removedEntity.isPresent())
+            logChange(id, ChangeKind.DELETED);
+        return removedEntity;
+    }
+
+    @Override
+    public Optional<T> update(T entity) throws BookstoreException {
+        Optional<T> updatedEntity = delegate.update(entity);
+        if (updatedEntity.isPresent())
+            logChange(entity.getId(), ChangeKind.UPDATED);
+        return updatedEntity;
+    }
+
+    @Override
+    public Optional<T> replace(T entity) throws BookstoreException {
+        Optional<T> previousEntity = delegate.replace(entity);
+        if (previousEntity.isPresent())
+            logChange(entity.getId(), ChangeKind.UPDATED);
+        return previousEntity;
+    }
+
+    @Override
+    public List<Optional<T>> saveAll(List<T> entities) throws BookstoreException, SQLException {
+        List<Optional<T>> results = delegate.saveAll(entities);
+        List<ID> insertedIds = new ArrayList<>();
+        for (int index = 0; index < entities.size(); index++) {
+            if (!results.get(index).isPresent())
+                insertedIds.add(entities.get(index).getId());
+        }
+        logChanges(insertedIds, ChangeKind.INSERTED);
+        return results;
+    }
+
+    @Override
+    public List<Optional<T>> updateAll(List<T> entities) throws BookstoreException {
+        List<Optional<T>> results = delegate.updateAll(entities);
+        List<ID> updatedIds = new ArrayList<>();
+        for (int index = 0; index < entities.size(); index++) {
+            if (results.get(index).isPresent())
+                updatedIds.add(entities.get(index).getId());
+        }
+        logChanges(updatedIds, ChangeKind.UPDATED);
+        return results;
+    }
+
+    @Override
+    public List<Optional<T>> upsertAll(List<T> entities) throws BookstoreException, SQLException {
+        List<Optional<T>> results = delegate.upsertAll(entities);
+        List<ID> insertedIds = new ArrayList<>();
+        List<ID> updatedIds = new ArrayList<>();
+        for (int index = 0; index < entities.size(); index++) {
+            if (results.get(index).isPresent())
+                updatedIds.add(entities.get(index).getId());
+            else
+                insertedIds.add(entities.get(index).getId());
+        }
+        logChanges(insertedIds, ChangeKind.INSERTED);
+        logChanges(updatedIds, ChangeKind.UPDATED);
+        return results;
+    }
+
+    @Override
+    public List<T> deleteAll(FieldFilter<T> filter) throws BookstoreException {
+        List<T> deleted = delegate.deleteAll(filter);
+        List<ID> deletedIds = new ArrayList<>(deleted.size());
+        for (T entity : deleted)
+            deletedIds.add(entity.getId());
+        logChanges(deletedIds, ChangeKind.DELETED);
+        return deleted;
+    }
+
+    private enum ChangeKind
+    {
+        INSERTED, UPDATED, DELETED
+    }
+}
@@ -9,17 +9,54 @@ import org.springframework.jdbc.core.JdbcOperations;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * ClientDatabaseRepository class
  */
-public class ClientDatabaseRepository implements ClientRepository{
+public class ClientDatabaseRepository implements ClientRepository, TextSearchRepository<Client> {
 
     @Autowired
     private JdbcOperations jdbcOperations;
 
+    @Autowired
+    private JdbcBulkWriter jdbcBulkWriter;
+
+    private static final List<String> COLUMNS = Arrays.asList("id", "firstname", "lastname", "address");
+    private static final List<String> TEXT_COLUMNS = Arrays.asList("firstname", "lastname", "address");
+
+    private volatile boolean textIndexesCreated;
+    private volatile String textIndexFailure;
+
+    /**
+     * Turns the current row of a result set into a client.
+     * @param row the result set, positioned on a row of the client table
+     * @return an instance of class Client
+     * @throws SQLException if a column cannot be read
+     */
+    private static Client clientFromRow(ResultSet row) throws SQLException {
+        int clientId = row.getInt("id");
+        String firstName = row.getString("firstname");
+        String lastName = row.getString("lastname");
+        String address = row.getString("address");
+        Client newClient = new Client(firstName, lastName, address);
+        newClient.setId(clientId);
+        return newClient;
+    }
+
+    /**
+     * Turns a client into the values of its row, in the order of COLUMNS.
+     * @param entity instance of class Client
+     * @return the values of the columns
+     */
+    private static Object[] clientToRow(Client entity) {
+        return new Object[]{entity.getId(), entity.getFirstName(), entity.getLastName(), entity.getAddress()};
+    }
+
     /**
      * Gets the client having a certain id from the database.
      * @param id must be not null.
@@ -31,15 +68,7 @@ public class ClientDatabaseRepository implements ClientRepository{
         String getClientSqlStatement = "select * from client where id=?";
 
         try {
-            List<Client> resultList = jdbcOperations.query(getClientSqlStatement, new Object[]{id}, (row, rowNum) -> {
-                int clientId = row.getInt("id");
-                String firstName = row.getString("firstname");
-                String lastName = row.getString("lastname");
-                String address = row.getString("address");
-                Client newClient = new Client(firstName, lastName, address);
-                newClient.setId(clientId);
-                return newClient;
-            });
+            List<Client> resultList = jdbcOperations.query(getClientSqlStatement, new Object[]{id}, (row, rowNum) -> clientFromRow(row));
 
             if (!resultList.isEmpty())
             {
@@ -66,15 +95,7 @@ public class ClientDatabaseRepository implements ClientRepository{
         String sqlStatement = "select * from client";
 
         try {
-            return jdbcOperations.query(sqlStatement,(row, rowNum) -> {
-                int clientId = row.getInt("id");
-                String firstName = row.getString("firstname");
-                String lastName = row.getString("lastname");
-                String address = row.getString("address");
-                Client newClient = new Client(firstName, lastName, address);
-                newClient.setId(clientId);
-                return newClient;
-            });
+            return jdbcOperations.query(sqlStatement,(row, rowNum) -> clientFromRow(row));
         }
         catch(DataAccessException databaseException)
         {
@@ -118,21 +139,107 @@ public class ClientDatabaseRepository implements ClientRepository{
      */
     @Override
     public Optional<Client> delete(Integer id) throws BookstoreException {
-        String deleteClientSqlStatement = "delete from client where id=?";
+        String deleteClientSqlStatement = "delete from client where id=? returning *";
 
         try
         {
-            Optional<Client> clientToDelete = this.findOne(id);
+            List<Client> deletedClients = jdbcOperations.query(deleteClientSqlStatement, new Object[]{id}, (row, rowNum) -> clientFromRow(row));
+            return deletedClients.stream().findFirst();
+        }
+        catch(DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
 
-            if (clientToDelete.isPresent())
-            {
-                jdbcOperations.update(deleteClientSqlStatement, id);
-                return clientToDelete;
-            }
-            else
-            {
-                return Optional.empty();
-            }
+    /**
+     * Creates the pg_trgm GIN indexes that let the database answer the LIKE and ILIKE searches without a full scan.
+     * If the extension cannot be created, the searches still work, they just scan the table, and the failure is kept
+     * for getTextIndexFailure().
+     */
+    private void createTextIndexes() {
+        if (textIndexesCreated)
+            return;
+
+        try
+        {
+            jdbcOperations.execute("create extension if not exists pg_trgm");
+            for (String column : TEXT_COLUMNS)
+                jdbcOperations.execute("create index if not exists client_" + column + "_trgm on client using gin (" + column + " gin_trgm_ops)");
+        }
+        catch(DataAccessException databaseException)
+        {
+            textIndexFailure = "pg_trgm indexes not available: " + databaseException.getMessage();
+        }
+        textIndexesCreated = true;
+    }
+
+    @Override
+    public Optional<String> getTextIndexFailure() {
+        return Optional.ofNullable(textIndexFailure);
+    }
+
+    /**
+     * Finds all the clients having at least one text column that contains the given text, with a single query.
+     * @param text the searched text
+     * @param caseInsensitive whether the search uses ILIKE instead of LIKE
+     * @return the matching clients
+     * @throws BookstoreException if there is any SQL database related error
+     */
+    @Override
+    public List<Client> search(String text, boolean caseInsensitive) throws BookstoreException {
+        createTextIndexes();
+        String operator = caseInsensitive ? "ilike" : "like";
+        String searchClientsSqlStatement = "select * from client where firstname " + operator + " ? escape '\\' or lastname " + operator + " ? escape '\\' or address " + operator + " ? escape '\\'";
+        String pattern = TextSearchRepository.containsPattern(text);
+
+        try
+        {
+            return jdbcOperations.query(searchClientsSqlStatement, new Object[]{pattern, pattern, pattern}, (row, rowNum) -> clientFromRow(row));
+        }
+        catch(DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Finds all the clients matched by a filter with a single query.
+     * @param filter the filter the clients must match, its column must be one of the client columns
+     * @return the clients matched by the filter
+     * @throws BookstoreException if there is any SQL database related error
+     */
+    @Override
+    public List<Client> findBy(FieldFilter<Client> filter) throws BookstoreException {
+        if (!COLUMNS.contains(filter.getColumn()))
+            throw new IllegalArgumentException("unknown column " + filter.getColumn());
+        String findClientsSqlStatement = "select * from client where " + filter.getColumn() + " = ?";
+
+        try
+        {
+            return jdbcOperations.query(findClientsSqlStatement, new Object[]{filter.getValue()}, (row, rowNum) -> clientFromRow(row));
+        }
+        catch(DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Deletes all the clients matched by a filter from the database with a single statement.
+     * @param filter the filter the clients to delete must match, its column must be one of the client columns
+     * @return the deleted clients
+     * @throws BookstoreException if there is any SQL database related error
+     */
+    @Override
+    public List<Client> deleteAll(FieldFilter<Client> filter) throws BookstoreException {
+        if (!COLUMNS.contains(filter.getColumn()))
+            throw new IllegalArgumentException("unknown column " + filter.getColumn());
+        String deleteClientsSqlStatement = "delete from client where " + filter.getColumn() + " = ? returning *";
+
+        try
+        {
+            return jdbcOperations.query(deleteClientsSqlStatement, new Object[]{filter.getValue()}, (row, rowNum) -> clientFromRow(row));
         }
         catch(DataAccessException databaseException)
         {
@@ -167,4 +274,120 @@ public class ClientDatabaseRepository implements ClientRepository{
             throw new BookstoreException(databaseException.toString());
         }
     }
+
+    /**
+     * Updates the given client and returns the state it had before, with a single statement.
+     * @param entity must not be null, instance of class Client
+     * @return an Optional - the client as it was before the update, null if there is no client with such an id
+     * @throws BookstoreException if there is any SQL database related error
+     */
+    @Override
+    public Optional<Client> replace(Client entity) throws BookstoreException {
+        String replaceSqlStatement = "update client set firstname = ?, lastname = ?, address = ? " +
+                "from (select * from client where id = ? for update) previous where client.id = previous.id returning previous.*";
+
+        try
+        {
+            List<Client> previousClients = jdbcOperations.query(replaceSqlStatement, new Object[]{entity.getFirstName(), entity.getLastName(), entity.getAddress(), entity.getId()},
+                    (row, rowNum) -> clientFromRow(row));
+            return previousClients.stream().findFirst();
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Saves all the given clients with multi-row inserts (or COPY for very large lists), inside a single transaction.
+     * @param entities must not be null, instances of Client
+     * @return a list with one Optional for every client - null if the client was added, the client otherwise (e.g. its id already exists)
+     * @throws BookstoreException if there is any SQL database related error, in which case none of the clients is added
+     */
+    @Override
+    public List<Optional<Client>> saveAll(List<Client> entities) throws BookstoreException {
+        try
+        {
+            boolean[] inserted = jdbcBulkWriter.insertAll("client", COLUMNS, entities.stream().map(ClientDatabaseRepository::clientToRow).collect(Collectors.toList()));
+            List<Optional<Client>> results = new ArrayList<>();
+            for (int index = 0; index < entities.size(); index++)
+                results.add(inserted[index] ? Optional.empty() : Optional.of(entities.get(index)));
+            return results;
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Updates all the given clients with JDBC batches, inside a single transaction.
+     * @param entities must not be null, instances of Client
+     * @return a list with one Optional for every client - the client if it was updated, null otherwise
+     * @throws BookstoreException if there is any SQL database related error, in which case none of the clients is updated
+     */
+    @Override
+    public List<Optional<Client>> updateAll(List<Client> entities) throws BookstoreException {
+        String updateSqlStatement = "update client set firstname = ?, lastname = ?, address = ? where id = ?";
+        List<Object[]> batchArguments = entities.stream()
+                .map(entity -> new Object[]{entity.getFirstName(), entity.getLastName(), entity.getAddress(), entity.getId()})
+                .collect(Collectors.toList());
+
+        try
+        {
+            int[] rowsUpdated = jdbcBulkWriter.batchUpdate(updateSqlStatement, batchArguments);
+            List<Optional<Client>> results = new ArrayList<>();
+            for (int index = 0; index < entities.size(); index++)
+                results.add(rowsUpdated[index] != 0 ? Optional.of(entities.get(index)) : Optional.empty());
+            return results;
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Saves all the given clients with multi-row upserts, replacing the clients whose id already exists, inside a single transaction.
+     * @param entities must not be null, instances of Client
+     * @return a list with one Optional for every client - null if the client was added, the client otherwise (its id already existed and it replaced that client)
+     * @throws BookstoreException if there is any SQL database related error, in which case none of the clients is saved
+     */
+    @Override
+    public List<Optional<Client>> upsertAll(List<Client> entities) throws BookstoreException {
+        try
+        {
+            boolean[] inserted = jdbcBulkWriter.upsertAll("client", COLUMNS, entities.stream().map(ClientDatabaseRepository::clientToRow).collect(Collectors.toList()));
+            List<Optional<Client>> results = new ArrayList<>();
+            for (int index = 0; index < entities.size(); index++)
+                results.add(inserted[index] ? Optional.empty() : Optional.of(entities.get(index)));
+            return results;
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Gets the clients having certain ids from the database with a single query.
+     * @param ids must not be null, integers representing the ids of the clients
+     * @return a list containing the clients that exist
+     * @throws BookstoreException if there is any SQL database related error
+     */
+    @Override
+    public Iterable<Client> findMany(Collection<Integer> ids) throws BookstoreException {
+        String getClientsSqlStatement = "select * from client where id = any(?)";
+
+        try
+        {
+            return jdbcOperations.query(getClientsSqlStatement,
+                    preparedStatement -> preparedStatement.setArray(1, preparedStatement.getConnection().createArrayOf("integer", ids.toArray())),
+                    (row, rowNum) -> clientFromRow(row));
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
 }
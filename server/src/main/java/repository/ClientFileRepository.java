@@ -6,59 +6,67 @@ import domain.validators.BookstoreException;
 import domain.validators.Validator;
 import domain.validators.ValidatorException;
 
-import java.io.FileWriter;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
 
-public class ClientFileRepository extends InMemoryRepository<Integer, Client>
+public class ClientFileRepository extends ConcurrentInMemoryRepository<Integer, Client> implements ClientRepository
 {
+    /**
+     * The number of records after which the operation log is folded into a new snapshot of the CSV file.
+     */
+    protected static final int COMPACTION_THRESHOLD = 1000;
+
     protected String fileName;
+    protected OperationLog<Client> operationLog;
+    protected GroupCommitFlusher flusher;
 
     /**
-     * Instantiates a new InMemoryRepository.
+     * Instantiates a new ClientFileRepository whose writes are forced to disk one by one.
      *
      * @param validator instance of a class implementing the Validator interface
-     * @param fileName string representing the path to the CSV file where clients are stored
+     * @param fileName string representing the path to the CSV file where the clients are stored
      */
     public ClientFileRepository(Validator<Client> validator, String fileName) throws BookstoreException {
+        this(validator, fileName, new GroupCommitFlusher(DurabilityMode.PER_WRITE, 0));
+    }
+
+    /**
+     * Instantiates a new ClientFileRepository.
+     *
+     * @param validator instance of a class implementing the Validator interface
+     * @param fileName string representing the path to the CSV file where the clients are stored
+     * @param flusher decides when the writes are forced to disk
+     */
+    public ClientFileRepository(Validator<Client> validator, String fileName, GroupCommitFlusher flusher) throws BookstoreException {
+        this.flusher = flusher;
         this.fileName = fileName;
+        this.operationLog = new OperationLog<>(fileName + ".log", ClientFileRepository::clientToLine, ClientFileRepository::clientFromLine,
+                COMPACTION_THRESHOLD, flusher);
 
-        this.loadData();
+        this.restore(() -> {
+            this.loadData();
+            this.replayLog();
+            return null;
+        });
     }
 
     /**
-     * Loads data into the repository from a CSV file.
+     * Loads data into the repository from a CSV file, parsing it in parallel.
      */
     protected void loadData() throws BookstoreException {
-        Path path = Paths.get(fileName);
-
         try
         {
-            Files.lines(path).forEach(line -> {
-                if(!(line.equals("") || line.equals("\n")))
-                {
-                    List<String> items = Arrays.asList(line.split(","));
-
-                    Integer id = Integer.valueOf(items.get(0));
-                    String firstName = items.get(1);
-                    String lastName = items.get(2);
-                    String address = items.get(3);
-
-                    Client client = new Client(firstName, lastName, address);
-                    client.setId(id);
-
-                    try {
-                        super.save(client);
-                    } catch (IllegalArgumentException | BookstoreException e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
+            for (Client client : CsvFileLoader.load(fileName, ClientFileRepository::clientFromRecord)) {
+                if (!findOne(client.getId()).isPresent())
+                    putEntity(client);
+            }
         }
         catch (IOException e)
         {
@@ -66,67 +74,125 @@ public class ClientFileRepository extends InMemoryRepository<Integer, Client>
         }
     }
 
+    /**
+     * Turns a line of the CSV file into a client.
+     * @param line string containing the comma separated fields of a client
+     * @return an instance of class Client
+     */
+    protected static Client clientFromLine(String line) {
+        return clientFromRecord(CsvRecord.of(line));
+    }
+
+    /**
+     * Turns the fields of a line of the CSV file into a client.
+     * @param record the fields of a client
+     * @return an instance of class Client
+     */
+    static Client clientFromRecord(CsvRecord record) {
+        Client client = new Client(record.getString(1), record.getString(2), record.getString(3));
+        client.setId(record.getInt(0));
+        return client;
+    }
+
+    /**
+     * Turns a client into a line of the CSV file, without the line separator.
+     * @param client instance of class Client
+     * @return string containing the comma separated fields of the client
+     */
+    protected static String clientToLine(Client client) {
+        return client.getId() + "," + CsvRecord.quote(client.getFirstName()) + "," + CsvRecord.quote(client.getLastName()) + "," +
+                CsvRecord.quote(client.getAddress());
+    }
+
+    /**
+     * Applies the operation log written since the last snapshot on top of the data read by loadData.
+     */
+    protected void replayLog() throws BookstoreException {
+        this.operationLog.replay(this::putEntity, this::removeEntity);
+    }
+
     /**
      * Saves all the data from the local repository in a CSV text file.
+     * The snapshot is written to a temporary file first, forced to disk and then moved over the old one, so a crash never
+     * leaves half a file behind, and the snapshot is on disk before the operation log it replaces is cleared.
      */
     protected void saveData() throws BookstoreException {
-        try (FileWriter fileWriter = new FileWriter(fileName, false))
+        Path path = Paths.get(fileName);
+        Path temporaryPath = Paths.get(fileName + ".tmp");
+
+        try (FileOutputStream fileStream = new FileOutputStream(temporaryPath.toFile());
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(fileStream, StandardCharsets.UTF_8)))
         {
-            super.entities.forEach((key, value) -> {
-                try {
-                    fileWriter.write(
-                            value.getId() + "," + value.getFirstName() + "," + value.getLastName() + "," + value.getAddress()+"\n");
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            });
+            for (Client client : super.entities.values()) {
+                writer.write(clientToLine(client));
+                writer.write('\n');
+            }
+            writer.flush();
+            fileStream.getChannel().force(false);
         }
         catch(IOException e)
         {
-            e.printStackTrace();
+            throw new BookstoreException(e.toString());
+        }
+
+        try
+        {
+            DurableFiles.replace(temporaryPath, path);
+        }
+        catch(IOException e)
+        {
+            throw new BookstoreException(e.toString());
         }
     }
 
     /**
-     * Saves a client to the file repository.
-     * @param client instance of class Client
-     * @return instance of Optional that could contain a client or null
+     * Records saved or updated clients in the operation log; called while their stripes are locked.
+     * @param clients the clients that were saved or updated
      */
     @Override
-    public Optional<Client> save(Client client) throws BookstoreException {
-        Optional<Client> optionalClient = super.save(client);
-        if (optionalClient.isPresent())
-            return optionalClient;
-        saveData();
-        return Optional.empty();
+    protected void logSaved(List<Client> clients) throws BookstoreException {
+        this.operationLog.enqueueSaved(clients);
     }
 
     /**
-     * Deletes a client from the file repository.
-     * @param id integer representing the id of a client
-     * @return instance of Optional that could contain a client or null
+     * Records deleted clients in the operation log; called while their stripes are locked.
+     * @param ids the ids of the deleted clients
      */
     @Override
-    public Optional<Client> delete(Integer id) throws BookstoreException {
-        Optional<Client> optionalClient = super.delete(id);
-        if (!optionalClient.isPresent())
-            return optionalClient;
-        saveData();
-        return optionalClient;
+    protected void logDeleted(List<Integer> ids) throws BookstoreException {
+        this.operationLog.enqueueDeleted(ids);
     }
 
     /**
-     * Updates a client from the file repository.
-     * @param client instance of class Client
-     * @return instance of Optional that could contain a client or null
+     * Waits for the logged writes to be forced to disk.
      */
     @Override
-    public Optional<Client> update(Client client) throws BookstoreException {
-        Optional<Client> optionalClient = super.update(client);
-        if (!optionalClient.isPresent())
-            return optionalClient;
+    protected void commit() throws BookstoreException {
+        this.operationLog.commit();
+    }
+
+    /**
+     * Compacts the operation log if it grew too long.
+     */
+    @Override
+    protected void committed() throws BookstoreException {
+        if (this.operationLog.needsCompaction())
+            compactIfNeeded();
+    }
+
+    private synchronized void compactIfNeeded() throws BookstoreException {
+        if (this.operationLog.needsCompaction())
+            compact();
+    }
+
+    /**
+     * Writes a new snapshot of the CSV file and empties the operation log.
+     * The writes running meanwhile are not held back: the log is marked before the entities are read, so a write
+     * missing from the snapshot is logged after the mark and is kept in the log.
+     */
+    public synchronized void compact() throws BookstoreException {
+        long mark = this.operationLog.mark();
         saveData();
-        return optionalClient;
+        this.operationLog.clearUpTo(mark);
     }
 }
-
@@ -0,0 +1,36 @@
+package repository;
+
+import domain.Client;
+import domain.validators.BookstoreException;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class ClientSnapshotRepository extends MappedSnapshotRepository<Client> implements ClientRepository {
+    private static final List<MappedSnapshot.Column<Client>> COLUMNS = Arrays.asList(
+            MappedSnapshot.Column.string(Client::getFirstName),
+            MappedSnapshot.Column.string(Client::getLastName),
+            MappedSnapshot.Column.string(Client::getAddress));
+
+    /**
+     * Instantiates a new ClientSnapshotRepository.
+     *
+     * @param fileName string representing the path to the snapshot file where clients are stored
+     * @param flusher  decides when the writes are forced to disk
+     */
+    public ClientSnapshotRepository(String fileName, GroupCommitFlusher flusher) throws BookstoreException {
+        super(fileName, COLUMNS,
+                row -> new Client(row.getString(0), row.getString(1), row.getString(2)),
+                ClientFileRepository::clientToLine, ClientFileRepository::clientFromLine, flusher);
+    }
+
+    /**
+     * Writes the snapshot file with the clients of another repository, see MappedSnapshotRepository.importSnapshot.
+     *
+     * @param fileName string representing the path to the snapshot file where clients are stored
+     * @param source   the repository the clients are copied from
+     */
+    public static void importSnapshot(String fileName, Repository<Integer, Client> source) throws BookstoreException {
+        importSnapshot(fileName, source, COLUMNS);
+    }
+}
@@ -1,21 +1,27 @@
 package repository;
 
 import domain.validators.BookstoreException;
-import org.w3c.dom.*;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.File;
+
+import java.io.Flushable;
 import java.io.IOException;
-import java.util.stream.IntStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import domain.Client;
 import domain.validators.Validator;
 
 public class ClientXmlRepository extends ClientFileRepository {
+    /**
+     * Rewrites the XML file when the flusher asks for it.
+     */
+    private final Flushable snapshotWriter = () -> {
+        try {
+            saveData();
+        } catch (BookstoreException e) {
+            throw new IOException(e.getMessage());
+        }
+    };
+
 
     /**
      * Instantiates a new InMemoryRepository.
@@ -28,29 +34,21 @@ public class ClientXmlRepository extends ClientFileRepository {
 
     }
 
-    /**
-     * Gets the text from inside a tag name.
-     * @param parentElement instance of class Element
-     * @param tagName string
-     * @return the text contained in a tag name
-     */
-    private static String getTextFromTagName(Element parentElement, String tagName)
-    {
-        Node node = parentElement.getElementsByTagName(tagName).item(0);
-        return node.getTextContent();
+    public ClientXmlRepository(Validator<Client> validator, String fileName, GroupCommitFlusher flusher) throws BookstoreException {
+        super(validator, fileName, flusher);
     }
 
     /**
-     * Turns an instance of Element into an instance of Client.
-     * @param clientElement instance of class Element
+     * Turns the fields of a client element into an instance of Client.
+     * @param fields the text of every child element of the client element, by tag name
      * @return an instance of class Client created using the information contained by the element
      */
-    private static Client createClientFromElement(Element clientElement)
+    private static Client createClientFromFields(Map<String, String> fields)
     {
-        int id = Integer.parseInt(getTextFromTagName(clientElement, "id"));
-        String firstName = getTextFromTagName(clientElement, "firstName");
-        String lastName = getTextFromTagName(clientElement, "lastName");
-        String address = getTextFromTagName(clientElement, "address");
+        int id = Integer.parseInt(fields.get("id"));
+        String firstName = fields.get("firstName");
+        String lastName = fields.get("lastName");
+        String address = fields.get("address");
 
         Client newClient = new Client(firstName, lastName, address);
         newClient.setId(id);
@@ -59,104 +57,59 @@ public class ClientXmlRepository extends ClientFileRepository {
     }
 
     /**
+     * Turns an instance of Client into the fields of its element.
+     * @param client instance of class Client
+     * @return the text of every child element of the client element, by tag name, in document order
+     */
+    private static Map<String, String> clientToFields(Client client)
+    {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("id", client.getId().toString());
+        fields.put("firstName", client.getFirstName());
+        fields.put("lastName", client.getLastName());
+        fields.put("address", client.getAddress());
+        return fields;
+    }
+
+    /**
+     * Streams the clients from the XML file.
      * @throws BookstoreException if there is any XML file related exception
      */
     @Override
-    protected void loadData() throws BookstoreException{
-        try {
-            Document document = DocumentBuilderFactory
-                    .newInstance()
-                    .newDocumentBuilder()
-                    .parse(this.fileName);
-
-            Element root = document.getDocumentElement();
-
-            NodeList children = root.getChildNodes();
-
-            IntStream.range(0, children.getLength())
-                    .mapToObj(index -> children.item(index))
-                    .filter(node -> node instanceof Element)
-                    .map(node -> createClientFromElement((Element) node))
-                    .forEach(client -> {
-                        try {
-                            super.save(client);
-                        } catch (BookstoreException e) {
-                            e.printStackTrace();
-                        }
-                    });
-        }
-        catch(ParserConfigurationException | IOException | SAXException exception)
-        {
-            throw new BookstoreException(exception.toString());
-        }
-
+    protected void loadData() throws BookstoreException {
+        new XmlRecordFile(this.fileName).read(fields -> putEntity(createClientFromFields(fields)));
     }
 
     /**
-     * Appends a child node containing text to another node.
-     * @param document instance of class Document
-     * @param parentNode instance of class Node
-     * @param tagName string
-     * @param textContent string
+     * Streams all the entities to a XML file, one rewrite at a time
+     * @throws BookstoreException if there is any XML related exception
      */
-    private static void appendChildWithTextToNode(Document document, Node parentNode, String tagName, String textContent) {
-        Element element = document.createElement(tagName);
-        element.setTextContent(textContent);
-        parentNode.appendChild(element);
+    @Override
+    protected synchronized void saveData() throws BookstoreException {
+        new XmlRecordFile(this.fileName).write("clients", "client", this.entities.values(), ClientXmlRepository::clientToFields);
     }
 
     /**
-     * Turns an instance of Client into an instance of Node
-     * @param client instance of class Client
-     * @param document instance of class Document
-     * @return instance of Node class representing a client
+     * The XML file is always rewritten as a whole, it is not journaled.
+     * @param clients the clients that were saved or updated
      */
-    private static Node clientToNode(Client client, Document document)
-    {
-        Element clientElement = document.createElement("client");
-
-        appendChildWithTextToNode(document, clientElement, "id", client.getId().toString());
-        appendChildWithTextToNode(document, clientElement, "firstName", client.getFirstName());
-        appendChildWithTextToNode(document, clientElement, "lastName", client.getLastName());
-        appendChildWithTextToNode(document, clientElement, "address", client.getAddress());
+    @Override
+    protected void logSaved(List<Client> clients) {
+    }
 
-        return clientElement;
+    /**
+     * The XML file is always rewritten as a whole, it is not journaled.
+     * @param ids the ids of the deleted clients
+     */
+    @Override
+    protected void logDeleted(List<Integer> ids) {
     }
 
     /**
-     * Saves all the entities in a XML file
-     * @throws BookstoreException if there is any XML related exception
+     * Rewrites the XML file; the rewrites committed together are done once.
      */
     @Override
-    protected void saveData() throws BookstoreException {
-        try
-        {
-            Document document = DocumentBuilderFactory
-                    .newInstance()
-                    .newDocumentBuilder()
-                    .newDocument();
-
-            Element root = document.createElement("clients");
-            document.appendChild(root);
-            this.entities.forEach((id, client) ->
-            {
-                Node clientNode = clientToNode(client, document);
-                root.appendChild(clientNode);
-            });
-
-            //File oldFile = new File(fileName);
-            //boolean deletedOldFile = oldFile.delete();
-
-            Transformer transformer = TransformerFactory.newInstance().newTransformer();
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.setOutputProperty(OutputKeys.METHOD, "xml");
-
-            transformer.transform(new DOMSource(document),
-                    new StreamResult(new File(this.fileName)));
-        }
-        catch(TransformerException | ParserConfigurationException exception)
-        {
-            throw new BookstoreException(exception.toString());
-        }
+    protected void commit() throws BookstoreException {
+        this.flusher.commit(this.snapshotWriter);
     }
 }
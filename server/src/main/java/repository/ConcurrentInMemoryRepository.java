@@ -0,0 +1,468 @@
+package repository;
+
+import domain.BaseEntity;
+import domain.validators.BookstoreException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * The type ConcurrentInMemoryRepository.
+ * An InMemoryRepository that can be used by many threads at once, like the ones RMI dispatches the calls of the
+ * clients on. The entities are kept in a ConcurrentHashMap, so reads take no lock. A write locks the stripes of the
+ * ids it changes, so writes of different ids run in parallel, while the writes of one id, the changes of the indexes
+ * and the logging of the write happen in a single order. Before its stripes are unlocked, a write publishes a new
+ * RepositoryVersion sharing all but the changed entities with the previous one, so findAll returns the latest version
+ * in constant time, without copying the entities and without waiting for the writers.
+ * Subclasses persist the writes through logSaved, logDeleted and commit. A write is visible to the readers from the
+ * moment it is applied, but it is only kept once its commit returned: if the commit fails, it is rolled back.
+ *
+ * @param <ID> the type parameter
+ * @param <T>  the type parameter
+ */
+public class ConcurrentInMemoryRepository<ID, T extends BaseEntity<ID>> extends InMemoryRepository<ID, T>
+        implements VersionedRepository<ID, T> {
+    private static final int STRIPE_COUNT = 64;
+
+    private ReentrantLock[] stripes;
+    private AtomicReference<RepositoryVersion<ID, T>> currentVersion;
+    private boolean restoring;
+
+    /**
+     * Instantiates a new ConcurrentInMemoryRepository.
+     */
+    public ConcurrentInMemoryRepository() {
+        entities = new ConcurrentHashMap<>();
+        stripes = new ReentrantLock[STRIPE_COUNT];
+        for (int stripe = 0; stripe < STRIPE_COUNT; stripe++)
+            stripes[stripe] = new ReentrantLock();
+        currentVersion = new AtomicReference<>(new RepositoryVersion<>(0, PersistentHashMap.empty(BaseEntity::getId)));
+    }
+
+    /**
+     * A write run while the stripes of the ids it changes are locked.
+     */
+    @FunctionalInterface
+    protected interface LockedWrite<R> {
+        R run() throws BookstoreException;
+    }
+
+    /**
+     * Runs a write while the stripes of the given ids are locked, taken in ascending order so two writes never wait
+     * for each other. If changed tells from its result that the write changed something, it is committed before the
+     * stripes are unlocked, and rolled back if the commit fails.
+     */
+    protected <R> R write(Collection<ID> ids, LockedWrite<R> write, Predicate<R> changed) throws BookstoreException {
+        TreeSet<Integer> lockedStripes = new TreeSet<>();
+        for (ID id : ids) {
+            if (id == null) {
+                throw new IllegalArgumentException("id must not be null");
+            }
+            lockedStripes.add((id.hashCode() & Integer.MAX_VALUE) % STRIPE_COUNT);
+        }
+
+        R result;
+        boolean committing;
+        for (int stripe : lockedStripes)
+            stripes[stripe].lock();
+        try {
+            Map<ID, T> previousEntities = new HashMap<>();
+            for (ID id : ids)
+                previousEntities.put(id, entities.get(id));
+            result = write.run();
+            publish(ids);
+            committing = changed.test(result);
+            if (committing) {
+                try {
+                    commit();
+                } catch (BookstoreException e) {
+                    rollBack(previousEntities);
+                    throw e;
+                }
+            }
+        } finally {
+            for (int stripe : lockedStripes.descendingSet())
+                stripes[stripe].unlock();
+        }
+        if (committing)
+            committed();
+        return result;
+    }
+
+    /**
+     * Puts back the entities a write changed, when its commit failed, and logs them again, so neither the readers nor
+     * the persisted state keep a write that was never acknowledged; their stripes must still be locked.
+     */
+    private void rollBack(Map<ID, T> previousEntities) throws BookstoreException {
+        List<T> restoredEntities = new ArrayList<>();
+        List<ID> removedIds = new ArrayList<>();
+        previousEntities.forEach((id, previousEntity) -> {
+            if (entities.get(id) == previousEntity)
+                return;
+            if (previousEntity != null) {
+                putEntity(previousEntity);
+                restoredEntities.add(previousEntity);
+            }
+            else {
+                removeEntity(id);
+                removedIds.add(id);
+            }
+        });
+        if (!restoredEntities.isEmpty())
+            logSaved(restoredEntities);
+        if (!removedIds.isEmpty())
+            logDeleted(removedIds);
+    }
+
+    /**
+     * Publishes a new version with the current state of the given entities; their stripes must be locked, so the
+     * versions of an entity are published in the order of its writes.
+     */
+    private void publish(Collection<ID> ids) {
+        List<T> savedEntities = new ArrayList<>();
+        List<ID> deletedIds = new ArrayList<>();
+        for (ID id : ids) {
+            T entity = entities.get(id);
+            if (entity != null)
+                savedEntities.add(entity);
+            else
+                deletedIds.add(id);
+        }
+        currentVersion.updateAndGet(version -> version.with(savedEntities, deletedIds));
+    }
+
+    /**
+     * Returns the latest published version, which stays readable and unchanged for as long as it is referenced.
+     */
+    @Override
+    public RepositoryVersion<ID, T> currentVersion() {
+        return currentVersion.get();
+    }
+
+    /**
+     * Runs the restoring of the persisted state, before the repository is used by other threads, and publishes all the
+     * restored entities as a single version.
+     */
+    protected void restore(LockedWrite<Void> restore) throws BookstoreException {
+        restoring = true;
+        try {
+            restore.run();
+        } finally {
+            restoring = false;
+            currentVersion.set(new RepositoryVersion<>(currentVersion.get().getNumber() + 1, PersistentHashMap.of(entities.values(), BaseEntity::getId)));
+        }
+    }
+
+    /**
+     * Puts an entity in the repository outside of a write and publishes it, unless the repository is being restored.
+     *
+     * @param entity
+     *            must not be null.
+     */
+    @Override
+    protected void putEntity(T entity) {
+        super.putEntity(entity);
+        if (!restoring)
+            currentVersion.updateAndGet(version -> version.with(Collections.singletonList(entity), Collections.emptyList()));
+    }
+
+    /**
+     * Removes an entity from the repository outside of a write and publishes the removal, unless the repository is
+     * being restored.
+     *
+     * @param id
+     *            must not be null.
+     */
+    @Override
+    protected void removeEntity(ID id) {
+        super.removeEntity(id);
+        if (!restoring)
+            currentVersion.updateAndGet(version -> version.with(Collections.emptyList(), Collections.singletonList(id)));
+    }
+
+    private static <ID, T extends BaseEntity<ID>> List<ID> idsOf(Collection<T> entities) {
+        List<ID> ids = new ArrayList<>();
+        for (T entity : entities) {
+            if (entity == null) {
+                throw new IllegalArgumentException("id must not be null");
+            }
+            ids.add(entity.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Called while the stripes of the entities are still locked, right after they were saved or updated.
+     * The writes of an entity are passed in the order they happened; the default does nothing.
+     * @param entities the entities that were saved or updated
+     */
+    protected void logSaved(List<T> entities) throws BookstoreException {
+    }
+
+    /**
+     * Called while the stripes of the entities are still locked, right after they were deleted.
+     * The writes of an entity are passed in the order they happened; the default does nothing.
+     * @param ids the ids of the deleted entities
+     */
+    protected void logDeleted(List<ID> ids) throws BookstoreException {
+    }
+
+    /**
+     * Called while the stripes are still locked after a write that changed something, to wait for the logged writes
+     * to be persisted; the default does nothing. The commits of writes to other stripes can still join the same flush.
+     * If it throws, the write is rolled back: its entities are put back and logged again as they were before.
+     */
+    protected void commit() throws BookstoreException {
+    }
+
+    /**
+     * Called once the stripes are unlocked after a write was committed; the default does nothing.
+     */
+    protected void committed() throws BookstoreException {
+    }
+
+    /**
+     * Find the entities having a certain key in a secondary index.
+     *
+     * @param indexName
+     *            the name the index was declared with.
+     * @param key
+     *            the key of the entities.
+     * @return the entities having the given key.
+     * @throws IllegalArgumentException
+     *             if there is no index with the given name.
+     */
+    @Override
+    public Iterable<T> findBy(String indexName, Object key) {
+        List<T> found = new ArrayList<>();
+        for (T entity : super.findBy(indexName, key)) {
+            if (entity != null)
+                found.add(entity);
+        }
+        return found;
+    }
+
+    /**
+     *
+     * @return all entities of the latest version, without copying them.
+     */
+    @Override
+    public Iterable<T> findAll() {
+        return currentVersion.get().findAll();
+    }
+
+    /**
+     * Saves the given entity.
+     *
+     * @param entity
+     *            must not be null.
+     * @return an {@code Optional} - null if the entity was saved otherwise (e.g. id already exists) returns the entity.
+     * @throws IllegalArgumentException
+     *             if the given entity is null.
+     */
+    @Override
+    public Optional<T> save(T entity) throws BookstoreException {
+        if (entity == null) {
+            throw new IllegalArgumentException("id must not be null");
+        }
+        Optional<T> existingEntity = write(Collections.singletonList(entity.getId()), () -> {
+            Optional<T> result = super.save(entity);
+            if (!result.isPresent())
+                logSaved(Collections.singletonList(entity));
+            return result;
+        }, result -> !result.isPresent());
+        return existingEntity;
+    }
+
+    /**
+     * Removes the entity with the given id.
+     *
+     * @param id
+     *            must not be null.
+     * @return an {@code Optional} - null if there is no entity with the given id, otherwise the removed entity.
+     * @throws IllegalArgumentException
+     *             if the given id is null.
+     */
+    @Override
+    public Optional<T> delete(ID id) throws BookstoreException {
+        Optional<T> removedEntity = write(Collections.singletonList(id), () -> {
+            Optional<T> result = super.delete(id);
+            if (result.isPresent())
+                logDeleted(Collections.singletonList(id));
+            return result;
+        }, Optional::isPresent);
+        return removedEntity;
+    }
+
+    /**
+     * Updates the given entity.
+     *
+     * @param entity
+     *            must not be null.
+     * @return an {@code Optional} - null if the entity was updated otherwise (e.g. id does not exist) returns the
+     *         entity.
+     * @throws IllegalArgumentException
+     *             if the given entity is null.
+     */
+    @Override
+    public Optional<T> update(T entity) throws BookstoreException {
+        if (entity == null) {
+            throw new IllegalArgumentException("id must not be null");
+        }
+        Optional<T> updatedEntity = write(Collections.singletonList(entity.getId()), () -> {
+            Optional<T> result = super.update(entity);
+            if (result.isPresent())
+                logSaved(Collections.singletonList(entity));
+            return result;
+        }, Optional::isPresent);
+        return updatedEntity;
+    }
+
+    /**
+     * Updates the given entity and returns the state it had before the update.
+     *
+     * @param entity
+     *            must not be null.
+     * @return an {@code Optional} - null if there is no entity with the same id, otherwise the entity as it was before
+     *         the update.
+     * @throws IllegalArgumentException
+     *             if the given entity is null.
+     */
+    @Override
+    public Optional<T> replace(T entity) throws BookstoreException {
+        if (entity == null) {
+            throw new IllegalArgumentException("id must not be null");
+        }
+        Optional<T> previousEntity = write(Collections.singletonList(entity.getId()), () -> {
+            Optional<T> result = super.replace(entity);
+            if (result.isPresent())
+                logSaved(Collections.singletonList(entity));
+            return result;
+        }, Optional::isPresent);
+        return previousEntity;
+    }
+
+    /**
+     * Saves all the given entities, logging them together.
+     *
+     * @param entities
+     *            must not be null.
+     * @return a list with one Optional for every entity, that could contain the entity or null
+     */
+    @Override
+    public List<Optional<T>> saveAll(List<T> entities) throws BookstoreException {
+        List<T> savedEntities = new ArrayList<>();
+        List<Optional<T>> results = write(idsOf(entities), () -> {
+            List<Optional<T>> writeResults = new ArrayList<>();
+            for (T entity : entities) {
+                Optional<T> result = super.save(entity);
+                if (!result.isPresent())
+                    savedEntities.add(entity);
+                writeResults.add(result);
+            }
+            if (!savedEntities.isEmpty())
+                logSaved(savedEntities);
+            return writeResults;
+        }, writeResults -> !savedEntities.isEmpty());
+        return results;
+    }
+
+    /**
+     * Updates all the given entities, logging them together.
+     *
+     * @param entities
+     *            must not be null.
+     * @return a list with one Optional for every entity, that could contain the entity or null
+     */
+    @Override
+    public List<Optional<T>> updateAll(List<T> entities) throws BookstoreException {
+        List<T> updatedEntities = new ArrayList<>();
+        List<Optional<T>> results = write(idsOf(entities), () -> {
+            List<Optional<T>> writeResults = new ArrayList<>();
+            for (T entity : entities) {
+                Optional<T> result = super.update(entity);
+                if (result.isPresent())
+                    updatedEntities.add(entity);
+                writeResults.add(result);
+            }
+            if (!updatedEntities.isEmpty())
+                logSaved(updatedEntities);
+            return writeResults;
+        }, writeResults -> !updatedEntities.isEmpty());
+        return results;
+    }
+
+    /**
+     * Saves all the given entities, replacing the ones whose id already exists, logging them together.
+     *
+     * @param entities
+     *            must not be null.
+     * @return a list containing one {@code Optional} for every entity, in the same order - null if the entity was inserted,
+     *         otherwise (e.g. id already exists) the entity, which replaced the one with its id.
+     * @throws IllegalArgumentException
+     *             if one of the given entities is null.
+     */
+    @Override
+    public List<Optional<T>> upsertAll(List<T> entities) throws BookstoreException {
+        if (entities.isEmpty())
+            return new ArrayList<>();
+        List<Optional<T>> results = write(idsOf(entities), () -> {
+            List<Optional<T>> writeResults = new ArrayList<>();
+            for (T entity : entities) {
+                writeResults.add(this.entities.containsKey(entity.getId()) ? Optional.of(entity) : Optional.empty());
+                super.putEntity(entity);
+            }
+            logSaved(entities);
+            return writeResults;
+        }, writeResults -> true);
+        return results;
+    }
+
+    /**
+     * Removes all the entities matched by the given filter, logging them together.
+     * The entities are matched once more after their stripes are locked, so an entity changed in the meantime is
+     * only removed if it still matches.
+     *
+     * @param filter
+     *            must not be null.
+     * @return the removed entities.
+     */
+    @Override
+    public List<T> deleteAll(FieldFilter<T> filter) throws BookstoreException {
+        if (filter == null) {
+            throw new IllegalArgumentException("filter must not be null");
+        }
+        List<ID> candidateIds = new ArrayList<>();
+        for (T entity : findBy(filter))
+            candidateIds.add(entity.getId());
+        if (candidateIds.isEmpty())
+            return new ArrayList<>();
+
+        List<T> deleted = write(candidateIds, () -> {
+            List<T> removedEntities = new ArrayList<>();
+            List<ID> removedIds = new ArrayList<>();
+            for (ID id : candidateIds) {
+                T entity = entities.get(id);
+                if (entity != null && filter.test(entity)) {
+                    super.removeEntity(id);
+                    removedEntities.add(entity);
+                    removedIds.add(id);
+                }
+            }
+            if (!removedIds.isEmpty())
+                logDeleted(removedIds);
+            return removedEntities;
+        }, removedEntities -> !removedEntities.isEmpty());
+        return deleted;
+    }
+}
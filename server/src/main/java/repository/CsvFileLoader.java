@@ -0,0 +1,168 @@
+package repository;
+
+import domain.validators.BookstoreException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * The type CsvFileLoader.
+ * Reads the entities of a CSV file in parallel: the file is cut into ranges of bytes ending on line boundaries and
+ * every range is read and parsed by its own task of the common fork-join pool, with one CsvRecord reused for all its
+ * lines. The entities are returned in the order of the file, so the caller can merge them as a sequential reader would.
+ */
+class CsvFileLoader
+{
+    /**
+     * The size under which a file is not cut, parsing it is cheaper than handing it to other threads.
+     */
+    private static final int MINIMUM_CHUNK_LENGTH = 1 << 20;
+    /**
+     * The size above which a range is cut again, so a range always fits in a byte array.
+     */
+    private static final int MAXIMUM_CHUNK_LENGTH = 1 << 26;
+
+    private CsvFileLoader()
+    {
+    }
+
+    /**
+     * Parses every non blank line of a file.
+     * @param fileName string representing the path to the CSV file
+     * @param parser creates an entity from the fields of a line; the record is reused for the next line
+     * @return the entities, in the order of their lines
+     * @throws IOException if the file cannot be read
+     * @throws BookstoreException if a line cannot be parsed
+     */
+    static <T> List<T> load(String fileName, Function<CsvRecord, T> parser) throws IOException, BookstoreException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ))
+        {
+            long length = channel.size();
+            int parallelism = ForkJoinPool.getCommonPoolParallelism();
+            long chunkCount = Math.max(Math.min(4L * parallelism, length / MINIMUM_CHUNK_LENGTH), length / MAXIMUM_CHUNK_LENGTH + 1);
+
+            List<ChunkTask<T>> tasks = new ArrayList<>();
+            long start = 0;
+            for (long chunk = 1; chunk <= chunkCount && start < length; chunk++) {
+                long end = chunk == chunkCount ? length : nextLineStart(channel, Math.max(start, length * chunk / chunkCount));
+                if (end > start)
+                    tasks.add(new ChunkTask<>(channel, fileName, start, end, parser));
+                start = end;
+            }
+
+            if (tasks.size() == 1)
+                return tasks.get(0).compute();
+            tasks.forEach(ChunkTask::fork);
+            List<T> entities = new ArrayList<>();
+            for (ChunkTask<T> task : tasks)
+                entities.addAll(task.join());
+            return entities;
+        }
+        catch (ChunkException e)
+        {
+            throw new BookstoreException(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the position after the first line separator at or after a position, or the length of the file.
+     */
+    private static long nextLineStart(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0)
+                return channel.size();
+            for (int index = 0; index < read; index++)
+                if (buffer.get(index) == '\n')
+                    return position + index + 1;
+            position += read;
+        }
+    }
+
+    /**
+     * Thrown by a task that could not read or parse its range.
+     */
+    private static class ChunkException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        ChunkException(String message)
+        {
+            super(message);
+        }
+    }
+
+    /**
+     * Reads and parses the lines of a range of the file.
+     */
+    private static class ChunkTask<T> extends RecursiveTask<List<T>>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private FileChannel channel;
+        private String fileName;
+        private long start;
+        private long end;
+        private Function<CsvRecord, T> parser;
+
+        ChunkTask(FileChannel channel, String fileName, long start, long end, Function<CsvRecord, T> parser)
+        {
+            this.channel = channel;
+            this.fileName = fileName;
+            this.start = start;
+            this.end = end;
+            this.parser = parser;
+        }
+
+        @Override
+        protected List<T> compute() {
+            byte[] content = new byte[(int) (end - start)];
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, start + buffer.position());
+                    if (read < 0)
+                        throw new ChunkException(fileName + " was truncated while it was read");
+                }
+            } catch (IOException e) {
+                throw new ChunkException(e.toString());
+            }
+
+            List<T> entities = new ArrayList<>();
+            CsvRecord record = new CsvRecord();
+            int lineStart = 0;
+            while (lineStart < content.length) {
+                int lineEnd = lineStart;
+                while (lineEnd < content.length && content[lineEnd] != '\n')
+                    lineEnd++;
+                if (!isBlank(content, lineStart, lineEnd)) {
+                    record.parse(content, lineStart, lineEnd);
+                    try {
+                        entities.add(parser.apply(record));
+                    } catch (RuntimeException e) {
+                        throw new ChunkException("Cannot read the line at byte " + (start + lineStart) + " of " + fileName + ": " + e);
+                    }
+                }
+                lineStart = lineEnd + 1;
+            }
+            return entities;
+        }
+
+        private static boolean isBlank(byte[] content, int start, int end) {
+            for (int index = start; index < end; index++)
+                if (content[index] != ' ' && content[index] != '\r' && content[index] != '\t')
+                    return false;
+            return true;
+        }
+    }
+}
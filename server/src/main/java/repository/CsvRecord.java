@@ -0,0 +1,165 @@
+package repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The type CsvRecord.
+ * The fields of one line of a CSV file, found by scanning the bytes of the line once and kept as positions into them,
+ * so a record can be reused for every line of a file and a field is only turned into a String or a number when it is
+ * asked for. A field may be enclosed in double quotes, with a double quote inside it written twice; a record is always
+ * a single line.
+ */
+class CsvRecord
+{
+    private static final byte SEPARATOR = ',';
+    private static final byte QUOTE = '"';
+
+    private byte[] content;
+    private int fieldCount;
+    private int[] fieldStarts = new int[8];
+    private int[] fieldEnds = new int[8];
+    private boolean[] escapedQuotes = new boolean[8];
+
+    /**
+     * Returns a record holding the fields of a single line.
+     * @param line a line of a CSV file, without the line separator
+     */
+    static CsvRecord of(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        CsvRecord record = new CsvRecord();
+        record.parse(bytes, 0, bytes.length);
+        return record;
+    }
+
+    /**
+     * Finds the fields of the line held by content between start and end, replacing the previous ones.
+     * @param content the bytes of the file, or of a part of it
+     * @param start the position of the first byte of the line
+     * @param end the position after the last byte of the line, without the line separator
+     */
+    void parse(byte[] content, int start, int end) {
+        this.content = content;
+        this.fieldCount = 0;
+        if (end > start && content[end - 1] == '\r')
+            end--;
+
+        int position = start;
+        while (true) {
+            if (fieldCount == fieldStarts.length) {
+                fieldStarts = Arrays.copyOf(fieldStarts, 2 * fieldCount);
+                fieldEnds = Arrays.copyOf(fieldEnds, 2 * fieldCount);
+                escapedQuotes = Arrays.copyOf(escapedQuotes, 2 * fieldCount);
+            }
+
+            boolean escapedQuote = false;
+            int fieldStart = position;
+            int fieldEnd;
+            if (position < end && content[position] == QUOTE) {
+                fieldStart = ++position;
+                while (position < end) {
+                    if (content[position] == QUOTE) {
+                        if (position + 1 < end && content[position + 1] == QUOTE) {
+                            escapedQuote = true;
+                            position += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    position++;
+                }
+                fieldEnd = position;
+                while (position < end && content[position] != SEPARATOR)
+                    position++;
+            }
+            else {
+                while (position < end && content[position] != SEPARATOR)
+                    position++;
+                fieldEnd = position;
+            }
+
+            fieldStarts[fieldCount] = fieldStart;
+            fieldEnds[fieldCount] = fieldEnd;
+            escapedQuotes[fieldCount] = escapedQuote;
+            fieldCount++;
+
+            if (position >= end)
+                return;
+            position++;
+        }
+    }
+
+    /**
+     * Returns the number of fields.
+     */
+    int size() {
+        return fieldCount;
+    }
+
+    private void checkField(int field) {
+        if (field >= fieldCount)
+            throw new IllegalArgumentException("missing field " + field + ", the line has " + fieldCount + " fields");
+    }
+
+    /**
+     * Returns a field as a String, without its enclosing quotes.
+     */
+    String getString(int field) {
+        checkField(field);
+        String value = new String(content, fieldStarts[field], fieldEnds[field] - fieldStarts[field], StandardCharsets.UTF_8);
+        return escapedQuotes[field] ? value.replace("\"\"", "\"") : value;
+    }
+
+    /**
+     * Returns a field as an int, read straight from the bytes of the line.
+     * @throws NumberFormatException if the field is not an int
+     */
+    int getInt(int field) {
+        checkField(field);
+        int position = fieldStarts[field];
+        int end = fieldEnds[field];
+        boolean negative = position < end && content[position] == '-';
+        if (negative || (position < end && content[position] == '+'))
+            position++;
+        if (position == end)
+            throw new NumberFormatException("not a number: \"" + getString(field) + "\"");
+
+        long value = 0;
+        for (; position < end; position++) {
+            int digit = content[position] - '0';
+            if (digit < 0 || digit > 9)
+                throw new NumberFormatException("not a number: \"" + getString(field) + "\"");
+            value = 10 * value + digit;
+            if (value > (long) Integer.MAX_VALUE + 1)
+                throw new NumberFormatException("out of range: \"" + getString(field) + "\"");
+        }
+        if (negative)
+            value = -value;
+        if (value > Integer.MAX_VALUE)
+            throw new NumberFormatException("out of range: \"" + getString(field) + "\"");
+        return (int) value;
+    }
+
+    /**
+     * Returns a field as a float.
+     * @throws NumberFormatException if the field is not a float
+     */
+    float getFloat(int field) {
+        return Float.parseFloat(getString(field));
+    }
+
+    /**
+     * Returns a value as a CSV field, enclosed in quotes if it contains a separator or a quote.
+     * The validators reject line breaks, which would split the record over two lines.
+     * @throws IllegalArgumentException if the value contains a line break
+     */
+    static String quote(String value) {
+        if (value == null)
+            return "";
+        if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0)
+            throw new IllegalArgumentException("a CSV field cannot contain a line break: " + value);
+        if (value.indexOf(SEPARATOR) < 0 && value.indexOf(QUOTE) < 0)
+            return value;
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
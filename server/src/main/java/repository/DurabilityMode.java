@@ -0,0 +1,21 @@
+package repository;
+
+/**
+ * When the writes of the file repositories reach the disk.
+ */
+public enum DurabilityMode {
+    /**
+     * Every write is forced to disk before it returns.
+     */
+    PER_WRITE,
+    /**
+     * Writes wait at most the maximum commit latency so concurrent writes can be forced to disk together,
+     * and return once they are on disk.
+     */
+    GROUP_COMMIT,
+    /**
+     * Writes return at once and are forced to disk together within the maximum commit latency;
+     * the writes of the last moments before a crash can be lost.
+     */
+    ASYNC
+}
@@ -0,0 +1,59 @@
+package repository;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The type DurableFiles.
+ * Replaces and deletes files so that the change survives a power loss once the call returns: the new content must
+ * already be forced to disk, and the directory holding the file is forced after it is renamed or deleted, since the
+ * rename itself lives in the directory.
+ */
+final class DurableFiles
+{
+    private static final boolean WINDOWS = System.getProperty("os.name", "").startsWith("Windows");
+
+    private DurableFiles()
+    {
+    }
+
+    /**
+     * Moves a temporary file, whose content was forced to disk, over a file and forces the directory.
+     * @param temporaryPath the file holding the new content
+     * @param path the replaced file
+     * @throws IOException if the file cannot be moved or the directory cannot be forced
+     */
+    static void replace(Path temporaryPath, Path path) throws IOException {
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(path);
+    }
+
+    /**
+     * Deletes a file if it exists and forces the directory.
+     * @param path the deleted file
+     * @throws IOException if the file cannot be deleted or the directory cannot be forced
+     */
+    static void delete(Path path) throws IOException {
+        if (Files.deleteIfExists(path))
+            forceDirectory(path);
+    }
+
+    /**
+     * Forces the directory holding a file, so its renames and deletions reach the disk.
+     * Windows cannot open a directory and makes renames durable by itself, so there is nothing to do there.
+     * @param path a file of the directory
+     * @throws IOException if the directory cannot be forced
+     */
+    static void forceDirectory(Path path) throws IOException {
+        if (WINDOWS)
+            return;
+        Path directory = path.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package repository;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntSupplier;
+
+/**
+ * The type FairConnectionGate.
+ * Lets at most maxConnections callers hold a connection of the pool at once, and queues the others first come, first
+ * served: the pool hands out its connections in no particular order once they are all taken, so under thousands of
+ * concurrent callers some of them could wait forever. A caller that waits longer than the acquire timeout gets an
+ * SQLTransientConnectionException instead of a connection.
+ * The gate should let through as many callers as the pool has connections, so the pool itself never makes them wait.
+ * Closing a connection gives its place back to the next caller in the queue.
+ * The connections in use, the idle connections of the pool, the waits and the timeouts are recorded, see
+ * getStatistics().
+ */
+public class FairConnectionGate extends DelegatingDataSource implements AutoCloseable
+{
+    private Semaphore permits;
+    private int maxConnections;
+    private long acquireTimeoutMillis;
+    private IntSupplier idleConnections = () -> 0;
+    private PoolStatistics statistics = new PoolStatistics();
+
+    /**
+     * Instantiates a new FairConnectionGate.
+     *
+     * @param pool                 the pool the connections come from
+     * @param maxConnections       the number of callers holding a connection at once
+     * @param acquireTimeoutMillis how long a caller waits for a connection before giving up
+     */
+    public FairConnectionGate(DataSource pool, int maxConnections, long acquireTimeoutMillis)
+    {
+        super(pool);
+        if (maxConnections <= 0)
+            throw new IllegalArgumentException("maxConnections must be positive");
+        this.permits = new Semaphore(maxConnections, true);
+        this.maxConnections = maxConnections;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    /**
+     * Sets how the number of idle connections of the pool is read, which only the pool knows.
+     */
+    public void setIdleConnections(IntSupplier idleConnections) {
+        this.idleConnections = idleConnections;
+    }
+
+    /**
+     * Returns the number of callers waiting for a connection.
+     */
+    public int getQueueLength() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * Returns the live statistics of the pool.
+     */
+    public PoolStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquire();
+        try {
+            return gated(super.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquire();
+        try {
+            return gated(super.getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void acquire() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                statistics.recordTimeout();
+                throw new SQLTransientConnectionException("no connection available within " + acquireTimeoutMillis + " ms, "
+                        + permits.getQueueLength() + " callers waiting");
+            }
+            statistics.recordAcquisition(System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("interrupted while waiting for a connection", e);
+        }
+    }
+
+    /**
+     * Returns a connection that gives its permit back once closed, however many times it is closed.
+     */
+    private Connection gated(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, arguments) -> {
+            if (method.getName().equals("close") && method.getParameterCount() == 0) {
+                try {
+                    connection.close();
+                } finally {
+                    if (released.compareAndSet(false, true))
+                        permits.release();
+                }
+                return null;
+            }
+            try {
+                return method.invoke(connection, arguments);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    /**
+     * Closes the pool.
+     * @throws SQLException if the pool fails to close
+     */
+    @Override
+    public void close() throws SQLException {
+        if (!(getTargetDataSource() instanceof AutoCloseable))
+            return;
+        try {
+            ((AutoCloseable) getTargetDataSource()).close();
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException(e.toString(), e);
+        }
+    }
+
+    /**
+     * The type PoolStatistics.
+     * Counts the connections handed out, how long their callers waited for them and the callers that gave up, next to
+     * the live numbers of connections in use, idle connections and waiting callers.
+     */
+    public class PoolStatistics
+    {
+        private long acquisitionCount;
+        private long totalWaitNanos;
+        private long maxWaitNanos;
+        private long timeoutCount;
+
+        private synchronized void recordAcquisition(long waitNanos) {
+            acquisitionCount++;
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+        }
+
+        private synchronized void recordTimeout() {
+            timeoutCount++;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public int getActiveConnections() {
+            return maxConnections - permits.availablePermits();
+        }
+
+        public int getIdleConnections() {
+            return idleConnections.getAsInt();
+        }
+
+        public int getWaitingCallers() {
+            return permits.getQueueLength();
+        }
+
+        public synchronized long getAcquisitionCount() {
+            return acquisitionCount;
+        }
+
+        public synchronized double getAverageWaitMillis() {
+            return acquisitionCount == 0 ? 0 : totalWaitNanos / 1e6 / acquisitionCount;
+        }
+
+        public synchronized double getMaxWaitMillis() {
+            return maxWaitNanos / 1e6;
+        }
+
+        public synchronized long getTimeoutCount() {
+            return timeoutCount;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "PoolStatistics{" +
+                    "active=" + getActiveConnections() +
+                    ", idle=" + getIdleConnections() +
+                    ", waiting=" + getWaitingCallers() +
+                    ", acquisitions=" + acquisitionCount +
+                    ", averageWaitMillis=" + getAverageWaitMillis() +
+                    ", maxWaitMillis=" + getMaxWaitMillis() +
+                    ", timeouts=" + timeoutCount +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package repository;
+
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The type FieldFilter.
+ * Matches the entities whose field has a certain value. Besides testing entities in memory, the filter carries
+ * the name of the column the field is stored in, so the database repositories can turn it into a WHERE clause.
+ *
+ * @param <T> the type of the entities
+ */
+public class FieldFilter<T> implements Predicate<T>
+{
+    private String column;
+    private Function<T, ?> field;
+    private Object value;
+
+    /**
+     * Instantiates a new FieldFilter.
+     *
+     * @param column the name of the database column the field is stored in
+     * @param field  reads the field from an entity
+     * @param value  the value the field must have
+     */
+    public FieldFilter(String column, Function<T, ?> field, Object value)
+    {
+        this.column = column;
+        this.field = field;
+        this.value = value;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean test(T entity) {
+        return Objects.equals(field.apply(entity), value);
+    }
+}
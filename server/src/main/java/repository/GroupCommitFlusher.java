@@ -0,0 +1,289 @@
+package repository;
+
+import domain.validators.BookstoreException;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The type GroupCommitFlusher.
+ * Decides when the pending writes of the file repositories are forced to disk, according to a DurabilityMode.
+ * In the GROUP_COMMIT and ASYNC modes a single flusher thread, shared by all the repositories, collects the commits
+ * arriving within the maximum commit latency into one batch and flushes every target of the batch once, so
+ * many concurrent writes cost one write and one force() per file instead of one per write.
+ * The batch sizes, commit latencies and failed flushes are recorded, see getMetrics().
+ * An ASYNC commit cannot report its own failure, so a failed asynchronous flush is reported by the next commit.
+ */
+public class GroupCommitFlusher implements AutoCloseable
+{
+    private DurabilityMode mode;
+    private long maxLatencyNanos;
+    private CommitMetrics metrics;
+
+    private final Object lock = new Object();
+    private Batch currentBatch;
+    private Thread flusherThread;
+    private boolean closed;
+    private IOException asyncFailure;
+
+    /**
+     * Instantiates a new GroupCommitFlusher.
+     *
+     * @param mode             when the writes are forced to disk
+     * @param maxLatencyMillis how long a commit may wait for other commits to join its batch, ignored in the PER_WRITE mode
+     */
+    public GroupCommitFlusher(DurabilityMode mode, long maxLatencyMillis)
+    {
+        if (maxLatencyMillis < 0)
+            throw new IllegalArgumentException("maxLatencyMillis must not be negative");
+        this.mode = mode;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+        this.metrics = new CommitMetrics();
+    }
+
+    public DurabilityMode getMode() {
+        return mode;
+    }
+
+    public CommitMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Asks for the pending writes of a target to be forced to disk.
+     * Returns once they are on disk, except in the ASYNC mode where it returns at once.
+     * @param target flushes its pending writes and forces them to disk, a target committed several times in a batch is flushed once
+     * @throws BookstoreException if the writes cannot be flushed, an earlier asynchronous flush failed, or the flusher was closed
+     */
+    public void commit(Flushable target) throws BookstoreException {
+        long requestTime = System.nanoTime();
+        if (mode == DurabilityMode.PER_WRITE) {
+            try {
+                target.flush();
+            } catch (IOException e) {
+                throw new BookstoreException(e.toString());
+            }
+            metrics.recordBatch(1, System.nanoTime() - requestTime, System.nanoTime() - requestTime);
+            return;
+        }
+
+        Batch batch;
+        synchronized (lock) {
+            if (closed)
+                throw new BookstoreException("the flusher is closed");
+            if (asyncFailure != null) {
+                IOException failure = asyncFailure;
+                asyncFailure = null;
+                throw new BookstoreException("an asynchronous commit failed: " + failure);
+            }
+            if (flusherThread == null) {
+                flusherThread = new Thread(this::runFlusher, "group-commit-flusher");
+                flusherThread.setDaemon(true);
+                flusherThread.start();
+            }
+            if (currentBatch == null) {
+                currentBatch = new Batch(requestTime);
+                lock.notifyAll();
+            }
+            batch = currentBatch;
+            batch.targets.add(target);
+            batch.requestCount++;
+            batch.requestTimeSum += requestTime;
+
+            if (mode == DurabilityMode.ASYNC)
+                return;
+
+            while (!batch.done) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new BookstoreException("interrupted while waiting for the commit");
+                }
+            }
+        }
+        if (batch.failure != null)
+            throw new BookstoreException(batch.failure.toString());
+    }
+
+    /**
+     * The loop of the flusher thread: waits for a batch, lets it collect commits until its deadline, then flushes it.
+     */
+    private void runFlusher() {
+        while (true) {
+            Batch batch;
+            synchronized (lock) {
+                while (currentBatch == null && !closed)
+                    waitQuietly(0);
+                if (currentBatch == null)
+                    return;
+                long deadline = currentBatch.firstRequestTime + maxLatencyNanos;
+                for (long remaining = deadline - System.nanoTime(); remaining > 0 && !closed; remaining = deadline - System.nanoTime())
+                    waitQuietly(remaining);
+                batch = currentBatch;
+                currentBatch = null;
+            }
+            flush(batch);
+        }
+    }
+
+    private void waitQuietly(long nanos) {
+        try {
+            if (nanos == 0)
+                lock.wait();
+            else
+                TimeUnit.NANOSECONDS.timedWait(lock, nanos);
+        } catch (InterruptedException e) {
+            closed = true;
+        }
+    }
+
+    private void flush(Batch batch) {
+        IOException failure = null;
+        for (Flushable target : batch.targets) {
+            try {
+                target.flush();
+            } catch (IOException e) {
+                if (failure == null)
+                    failure = e;
+            } catch (RuntimeException e) {
+                if (failure == null)
+                    failure = new IOException(e);
+            }
+        }
+        long doneTime = System.nanoTime();
+        metrics.recordBatch(batch.requestCount, batch.requestCount * doneTime - batch.requestTimeSum, doneTime - batch.firstRequestTime);
+        if (failure != null)
+            metrics.recordFailure(batch.requestCount, failure);
+
+        synchronized (lock) {
+            if (failure != null && mode == DurabilityMode.ASYNC && asyncFailure == null)
+                asyncFailure = failure;
+            batch.failure = failure;
+            batch.done = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Flushes the pending batch, if any, and stops the flusher thread.
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+            thread = flusherThread;
+        }
+        if (thread == null)
+            return;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            if (currentBatch != null) {
+                Batch batch = currentBatch;
+                currentBatch = null;
+                flush(batch);
+            }
+        }
+    }
+
+    /**
+     * The commits collected while the flusher waits, and the outcome of their flush.
+     */
+    private static class Batch
+    {
+        private final long firstRequestTime;
+        private final Set<Flushable> targets = new LinkedHashSet<>();
+        private int requestCount;
+        private long requestTimeSum;
+        private boolean done;
+        private IOException failure;
+
+        private Batch(long firstRequestTime)
+        {
+            this.firstRequestTime = firstRequestTime;
+        }
+    }
+
+    /**
+     * The type CommitMetrics.
+     * Counts the flushed batches and commits, how long the commits waited to be on disk, and the commits whose flush failed.
+     * It is published over JMX by the server configuration.
+     */
+    public static class CommitMetrics
+    {
+        private long batchCount;
+        private long commitCount;
+        private int maxBatchSize;
+        private long totalLatencyNanos;
+        private long maxLatencyNanos;
+        private long failedCommitCount;
+        private String lastFailure;
+
+        private synchronized void recordBatch(int commits, long latencySumNanos, long longestLatencyNanos) {
+            batchCount++;
+            commitCount += commits;
+            maxBatchSize = Math.max(maxBatchSize, commits);
+            totalLatencyNanos += latencySumNanos;
+            maxLatencyNanos = Math.max(maxLatencyNanos, longestLatencyNanos);
+        }
+
+        private synchronized void recordFailure(int commits, IOException failure) {
+            failedCommitCount += commits;
+            lastFailure = failure.toString();
+        }
+
+        public synchronized long getBatchCount() {
+            return batchCount;
+        }
+
+        public synchronized long getCommitCount() {
+            return commitCount;
+        }
+
+        public synchronized double getAverageBatchSize() {
+            return batchCount == 0 ? 0 : (double) commitCount / batchCount;
+        }
+
+        public synchronized int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public synchronized double getAverageCommitLatencyMillis() {
+            return commitCount == 0 ? 0 : totalLatencyNanos / 1e6 / commitCount;
+        }
+
+        public synchronized double getMaxCommitLatencyMillis() {
+            return maxLatencyNanos / 1e6;
+        }
+
+        public synchronized long getFailedCommitCount() {
+            return failedCommitCount;
+        }
+
+        public synchronized String getLastFailure() {
+            return lastFailure;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "CommitMetrics{" +
+                    "batches=" + batchCount +
+                    ", commits=" + commitCount +
+                    ", averageBatchSize=" + getAverageBatchSize() +
+                    ", maxBatchSize=" + maxBatchSize +
+                    ", averageCommitLatencyMillis=" + getAverageCommitLatencyMillis() +
+                    ", maxCommitLatencyMillis=" + getMaxCommitLatencyMillis() +
+                    ", failedCommits=" + failedCommitCount +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package repository;
+
+import domain.validators.BookstoreException;
+
+import java.util.List;
+
+/**
+ * Interface for handing out ids for new entities.
+ * Every id is handed out at most once, even when several threads ask for ids at the same time.
+ * The ids are increasing for a single caller, but not necessarily consecutive.
+ */
+public interface IdAllocator {
+    /**
+     * Reserves a new id.
+     *
+     * @return an id that was never handed out before.
+     * @throws BookstoreException
+     *             if the id cannot be reserved.
+     */
+    Integer nextId() throws BookstoreException;
+
+    /**
+     * Reserves several new ids at once.
+     *
+     * @param count
+     *            the number of ids to reserve, must not be negative.
+     * @return a list of count ids that were never handed out before, in increasing order.
+     * @throws BookstoreException
+     *             if the ids cannot be reserved.
+     */
+    List<Integer> nextIds(int count) throws BookstoreException;
+}
@@ -6,7 +6,7 @@ import domain.validators.Validator;
 import domain.validators.ValidatorException;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 /**
  * The type InMemoryRepository.
@@ -18,11 +18,103 @@ public class InMemoryRepository<ID, T extends BaseEntity<ID>> implements Reposit
 
     protected Map<ID, T> entities;
 
+    private Map<String, SecondaryIndex<ID, T>> indexes;
+
     /**
      * Instantiates a new InMemoryRepository.
      */
     public InMemoryRepository(){
         entities = new HashMap<>();
+        indexes = new HashMap<>();
+    }
+
+    /**
+     * Declares a secondary index, so entities can be looked up by a field other than the id without a full scan.
+     * The index is built from the entities already in the repository and is then kept up to date on every write.
+     *
+     * @param name
+     *            the name of the index, also used for the filters whose column has the same name.
+     * @param keyExtractor
+     *            reads the indexed field from an entity.
+     */
+    public void addIndex(String name, Function<T, ?> keyExtractor) {
+        SecondaryIndex<ID, T> index = new SecondaryIndex<>(keyExtractor);
+        entities.forEach(index::put);
+        indexes.put(name, index);
+    }
+
+    /**
+     * Find the entities having a certain key in a secondary index.
+     *
+     * @param indexName
+     *            the name the index was declared with.
+     * @param key
+     *            the key of the entities.
+     * @return the entities having the given key.
+     * @throws IllegalArgumentException
+     *             if there is no index with the given name.
+     */
+    public Iterable<T> findBy(String indexName, Object key) {
+        SecondaryIndex<ID, T> index = indexes.get(indexName);
+        if (index == null) {
+            throw new IllegalArgumentException("no index named " + indexName);
+        }
+        List<T> found = new ArrayList<>();
+        for (ID id : index.get(key))
+            found.add(entities.get(id));
+        return found;
+    }
+
+    /**
+     * Find the entities matched by the given filter, using the secondary index named after its column if there is one.
+     *
+     * @param filter
+     *            must not be null.
+     * @return the entities matched by the filter.
+     */
+    @Override
+    public Iterable<T> findBy(FieldFilter<T> filter) throws BookstoreException {
+        if (indexes.containsKey(filter.getColumn()))
+            return findBy(filter.getColumn(), filter.getValue());
+        return Repository.super.findBy(filter);
+    }
+
+    /**
+     * Puts an entity in the repository, replacing the entity with the same id, and keeps the indexes up to date.
+     * Meant for subclasses restoring their own persisted state.
+     *
+     * @param entity
+     *            must not be null.
+     */
+    protected void putEntity(T entity) {
+        entities.put(entity.getId(), entity);
+        indexPut(entity.getId(), entity);
+    }
+
+    /**
+     * Removes the entity with the given id from the repository, if there is one, and keeps the indexes up to date.
+     * Meant for subclasses restoring their own persisted state.
+     *
+     * @param id
+     *            must not be null.
+     */
+    protected void removeEntity(ID id) {
+        if (entities.remove(id) != null)
+            indexRemove(id);
+    }
+
+    /**
+     * Must be called after an entity was put in the map of entities.
+     */
+    private void indexPut(ID id, T entity) {
+        indexes.values().forEach(index -> index.put(id, entity));
+    }
+
+    /**
+     * Must be called after an entity was removed from the map of entities.
+     */
+    private void indexRemove(ID id) {
+        indexes.values().forEach(index -> index.remove(id));
     }
 
     /**
@@ -48,7 +140,7 @@ public class InMemoryRepository<ID, T extends BaseEntity<ID>> implements Reposit
      */
     @Override
     public Iterable<T> findAll() {
-        return entities.entrySet().stream().map(Map.Entry::getValue).collect(Collectors.toSet());
+        return new ArrayList<>(entities.values());
     }
 
     /**
@@ -67,7 +159,10 @@ public class InMemoryRepository<ID, T extends BaseEntity<ID>> implements Reposit
         if (entity == null) {
             throw new IllegalArgumentException("id must not be null");
         }
-        return Optional.ofNullable(entities.putIfAbsent(entity.getId(), entity));
+        T existingEntity = entities.putIfAbsent(entity.getId(), entity);
+        if (existingEntity == null)
+            indexPut(entity.getId(), entity);
+        return Optional.ofNullable(existingEntity);
     }
 
 
@@ -86,7 +181,10 @@ public class InMemoryRepository<ID, T extends BaseEntity<ID>> implements Reposit
         {
             throw new IllegalArgumentException("id must not be null");
         }
-        return Optional.ofNullable(entities.remove(id));
+        T removedEntity = entities.remove(id);
+        if (removedEntity != null)
+            indexRemove(id);
+        return Optional.ofNullable(removedEntity);
     }
 
     /**
@@ -106,6 +204,90 @@ public class InMemoryRepository<ID, T extends BaseEntity<ID>> implements Reposit
         if (entity == null) {
             throw new IllegalArgumentException("id must not be null");
         }
-        return Optional.ofNullable(entities.computeIfPresent(entity.getId(), (k, v) -> entity));
+        T updatedEntity = entities.computeIfPresent(entity.getId(), (k, v) -> entity);
+        if (updatedEntity != null)
+            indexPut(entity.getId(), entity);
+        return Optional.ofNullable(updatedEntity);
+    }
+
+    /**
+     * Updates the given entity and returns the state it had before the update.
+     *
+     * @param entity
+     *            must not be null.
+     * @return an {@code Optional} - null if there is no entity with the same id, otherwise the entity as it was before
+     *         the update.
+     * @throws IllegalArgumentException
+     *             if the given entity is null.
+     */
+    @Override
+    public Optional<T> replace(T entity) throws BookstoreException {
+        if (entity == null) {
+            throw new IllegalArgumentException("id must not be null");
+        }
+        T previousEntity = entities.replace(entity.getId(), entity);
+        if (previousEntity != null)
+            indexPut(entity.getId(), entity);
+        return Optional.ofNullable(previousEntity);
+    }
+
+    /**
+     * Removes all the entities matched by the given filter in a single pass.
+     *
+     * @param filter
+     *            must not be null.
+     * @return the removed entities.
+     * @throws IllegalArgumentException
+     *             if the given filter is null.
+     */
+    @Override
+    public List<T> deleteAll(FieldFilter<T> filter) throws BookstoreException {
+        if (filter == null) {
+            throw new IllegalArgumentException("filter must not be null");
+        }
+        List<T> deleted = new ArrayList<>();
+        if (indexes.containsKey(filter.getColumn())) {
+            for (T entity : findBy(filter.getColumn(), filter.getValue()))
+                deleted.add(entity);
+            for (T entity : deleted) {
+                entities.remove(entity.getId());
+                indexRemove(entity.getId());
+            }
+            return deleted;
+        }
+
+        Iterator<T> iterator = entities.values().iterator();
+        while (iterator.hasNext()) {
+            T entity = iterator.next();
+            if (filter.test(entity)) {
+                deleted.add(entity);
+                iterator.remove();
+                indexRemove(entity.getId());
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Saves all the given entities, replacing the ones whose id already exists.
+     *
+     * @param entities
+     *            must not be null.
+     * @return a list containing one {@code Optional} for every entity, in the same order - null if the entity was inserted,
+     *         otherwise (e.g. id already exists) the entity, which replaced the one with its id.
+     * @throws IllegalArgumentException
+     *             if one of the given entities is null.
+     */
+    @Override
+    public List<Optional<T>> upsertAll(List<T> entities) throws BookstoreException {
+        List<Optional<T>> results = new ArrayList<>();
+        for (T entity : entities) {
+            if (entity == null) {
+                throw new IllegalArgumentException("id must not be null");
+            }
+            results.add(this.entities.containsKey(entity.getId()) ? Optional.of(entity) : Optional.empty());
+            putEntity(entity);
+        }
+        return results;
     }
 }
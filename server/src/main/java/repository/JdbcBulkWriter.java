@@ -0,0 +1,239 @@
+package repository;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The type JdbcBulkWriter.
+ * Writes many rows of a table with as few statements as possible: multi-row inserts and upserts of at most
+ * batchSize rows each, JDBC batches for updates, and PostgreSQL COPY once the number of rows reaches copyThreshold.
+ * Every method runs inside a single transaction. The first column of every table must be its integer primary key, id.
+ */
+public class JdbcBulkWriter
+{
+    /**
+     * PostgreSQL does not accept more bind parameters in a single statement.
+     */
+    private static final int MAX_PARAMETERS = 32767;
+
+    private JdbcOperations jdbcOperations;
+    private TransactionTemplate transactionTemplate;
+    private int batchSize;
+    private int copyThreshold;
+
+    /**
+     * Instantiates a new JdbcBulkWriter.
+     *
+     * @param jdbcOperations      used to run the statements
+     * @param transactionTemplate used to run every bulk write in a single transaction
+     * @param batchSize           the maximum number of rows written by one statement
+     * @param copyThreshold       the number of rows from which inserts go through COPY
+     */
+    public JdbcBulkWriter(JdbcOperations jdbcOperations, TransactionTemplate transactionTemplate, int batchSize, int copyThreshold)
+    {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("batchSize must be positive");
+        this.jdbcOperations = jdbcOperations;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.copyThreshold = copyThreshold;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("batchSize must be positive");
+        this.batchSize = batchSize;
+    }
+
+    public int getCopyThreshold() {
+        return copyThreshold;
+    }
+
+    public void setCopyThreshold(int copyThreshold) {
+        this.copyThreshold = copyThreshold;
+    }
+
+    /**
+     * Returns how many rows fit in one statement, given the number of columns of the table.
+     */
+    private int rowsPerStatement(int columnCount) {
+        return Math.max(1, Math.min(batchSize, MAX_PARAMETERS / columnCount));
+    }
+
+    /**
+     * Inserts the given rows, skipping the ones whose id already exists.
+     * @param table the name of the table
+     * @param columns the names of the columns, the first one being id
+     * @param rows the values of every row, in the order of the columns
+     * @return for every row, true if it was inserted and false if its id already existed
+     */
+    public boolean[] insertAll(String table, List<String> columns, List<Object[]> rows) {
+        if (rows.isEmpty())
+            return new boolean[0];
+
+        Set<Integer> insertedIds = transactionTemplate.execute(status ->
+                rows.size() >= copyThreshold ? copyInsert(table, columns, rows) : multiRowInsert(table, columns, rows));
+
+        boolean[] inserted = new boolean[rows.size()];
+        for (int index = 0; index < rows.size(); index++)
+            inserted[index] = insertedIds.remove((Integer) rows.get(index)[0]);
+        return inserted;
+    }
+
+    /**
+     * Inserts the rows with multi-row insert statements.
+     * @return the ids of the inserted rows
+     */
+    private Set<Integer> multiRowInsert(String table, List<String> columns, List<Object[]> rows) {
+        Set<Integer> insertedIds = new HashSet<>();
+        int chunkSize = rowsPerStatement(columns.size());
+
+        for (int start = 0; start < rows.size(); start += chunkSize) {
+            List<Object[]> chunk = rows.subList(start, Math.min(rows.size(), start + chunkSize));
+            String sqlStatement = "insert into " + table + " (" + String.join(", ", columns) + ") values " +
+                    valuesPlaceholders(columns.size(), chunk.size()) + " on conflict (id) do nothing returning id";
+            insertedIds.addAll(jdbcOperations.queryForList(sqlStatement, flatten(chunk), Integer.class));
+        }
+        return insertedIds;
+    }
+
+    /**
+     * Streams the rows into a temporary table with COPY, then moves them into the table with a single statement.
+     * @return the ids of the inserted rows
+     */
+    private Set<Integer> copyInsert(String table, List<String> columns, List<Object[]> rows) {
+        String stagingTable = table + "_import";
+        String columnList = String.join(", ", columns);
+        Set<Object> copiedIds = new HashSet<>();
+        List<Object[]> firstRowForEveryId = rows.stream()
+                .filter(row -> copiedIds.add(row[0]))
+                .collect(Collectors.toList());
+
+        jdbcOperations.execute("create temporary table " + stagingTable + " (like " + table + ") on commit drop");
+        jdbcOperations.execute((ConnectionCallback<Long>) connection -> {
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI()
+                    .copyIn("copy " + stagingTable + " (" + columnList + ") from stdin with (format csv)");
+            try {
+                StringBuilder line = new StringBuilder();
+                for (Object[] row : firstRowForEveryId) {
+                    line.setLength(0);
+                    appendCsvLine(line, row);
+                    byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+                    copyIn.writeToCopy(bytes, 0, bytes.length);
+                }
+                return copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive())
+                    copyIn.cancelCopy();
+            }
+        });
+
+        List<Integer> insertedIds = jdbcOperations.queryForList(
+                "insert into " + table + " (" + columnList + ") select " + columnList + " from " + stagingTable +
+                        " on conflict (id) do nothing returning id", Integer.class);
+        return new HashSet<>(insertedIds);
+    }
+
+    /**
+     * Inserts the given rows, replacing the rows whose id already exists.
+     * When the same id appears several times, the last row wins and only the first one counts as inserted.
+     * @param table the name of the table
+     * @param columns the names of the columns, the first one being id
+     * @param rows the values of every row, in the order of the columns
+     * @return for every row, true if it was inserted and false if its id already existed
+     */
+    public boolean[] upsertAll(String table, List<String> columns, List<Object[]> rows) {
+        if (rows.isEmpty())
+            return new boolean[0];
+
+        Map<Object, Object[]> lastRowForId = new LinkedHashMap<>();
+        rows.forEach(row -> lastRowForId.put(row[0], row));
+        List<Object[]> distinctRows = new ArrayList<>(lastRowForId.values());
+
+        String updates = columns.stream().skip(1)
+                .map(column -> column + " = excluded." + column)
+                .collect(Collectors.joining(", "));
+        int chunkSize = rowsPerStatement(columns.size());
+
+        Set<Integer> insertedIds = transactionTemplate.execute(status -> {
+            Set<Integer> chunkInsertedIds = new HashSet<>();
+            for (int start = 0; start < distinctRows.size(); start += chunkSize) {
+                List<Object[]> chunk = distinctRows.subList(start, Math.min(distinctRows.size(), start + chunkSize));
+                String sqlStatement = "insert into " + table + " (" + String.join(", ", columns) + ") values " +
+                        valuesPlaceholders(columns.size(), chunk.size()) + " on conflict (id) do update set " + updates +
+                        " returning id, xmax = 0 as inserted";
+                jdbcOperations.query(sqlStatement, flatten(chunk), row -> {
+                    if (row.getBoolean("inserted"))
+                        chunkInsertedIds.add(row.getInt("id"));
+                });
+            }
+            return chunkInsertedIds;
+        });
+
+        boolean[] inserted = new boolean[rows.size()];
+        for (int index = 0; index < rows.size(); index++)
+            inserted[index] = insertedIds.remove((Integer) rows.get(index)[0]);
+        return inserted;
+    }
+
+    /**
+     * Runs the same statement for all the given argument lists, in JDBC batches of at most batchSize statements.
+     * @param sqlStatement the statement to run
+     * @param arguments the bind arguments of every run
+     * @return for every run, the number of rows it affected
+     */
+    public int[] batchUpdate(String sqlStatement, List<Object[]> arguments) {
+        if (arguments.isEmpty())
+            return new int[0];
+
+        return transactionTemplate.execute(status -> {
+            int[] rowsAffected = new int[arguments.size()];
+            for (int start = 0; start < arguments.size(); start += batchSize) {
+                List<Object[]> chunk = arguments.subList(start, Math.min(arguments.size(), start + batchSize));
+                int[] chunkRowsAffected = jdbcOperations.batchUpdate(sqlStatement, chunk);
+                System.arraycopy(chunkRowsAffected, 0, rowsAffected, start, chunkRowsAffected.length);
+            }
+            return rowsAffected;
+        });
+    }
+
+    private static String valuesPlaceholders(int columnCount, int rowCount) {
+        String rowPlaceholder = "(" + String.join(", ", Collections.nCopies(columnCount, "?")) + ")";
+        return String.join(", ", Collections.nCopies(rowCount, rowPlaceholder));
+    }
+
+    private static Object[] flatten(List<Object[]> rows) {
+        return rows.stream().flatMap(Arrays::stream).toArray();
+    }
+
+    /**
+     * Appends a row in the CSV format understood by COPY, quoting every non null value.
+     */
+    private static void appendCsvLine(StringBuilder line, Object[] row) {
+        for (int index = 0; index < row.length; index++) {
+            if (index > 0)
+                line.append(',');
+            if (row[index] != null)
+                line.append('"').append(row[index].toString().replace("\"", "\"\"")).append('"');
+        }
+        line.append('\n');
+    }
+}
@@ -0,0 +1,318 @@
+package repository;
+
+import domain.BaseEntity;
+import domain.validators.BookstoreException;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * The type MappedSnapshot.
+ * A read-only binary snapshot of the entities of a repository, read through a memory mapping of the file, so opening
+ * it only reads its header and a row is only decoded when it is asked for.
+ * The file is columnar and big endian:
+ * int magic, int version, int rowCount, int columnCount, one byte with the type of every column,
+ * the ids of the rows as int[rowCount] in ascending order, then every column prefixed by the length of its content in
+ * bytes. INT and FLOAT columns hold one value per row, STRING columns hold int[rowCount + 1] offsets followed by the
+ * UTF-8 bytes the offsets point into. Since version 2, the offset ending a null string is stored as its bitwise
+ * complement, so a null reads back as null instead of as an empty string; version 1 files, which have no nulls, are
+ * still read.
+ * A mapping cannot be larger than 2 GB, so neither can a snapshot.
+ *
+ * @param <T> the type of the stored entities
+ */
+public class MappedSnapshot<T extends BaseEntity<Integer>>
+{
+    private static final int MAGIC = 0x424B534E;
+    private static final int VERSION = 2;
+    private static final int HEADER_LENGTH = 16;
+
+    /**
+     * The type of the values of a column.
+     */
+    public enum ColumnType
+    {
+        INT, FLOAT, STRING
+    }
+
+    /**
+     * A field of the entities stored as a column.
+     *
+     * @param <T> the type of the stored entities
+     */
+    public static class Column<T>
+    {
+        private ColumnType type;
+        private Function<T, ?> getter;
+
+        private Column(ColumnType type, Function<T, ?> getter)
+        {
+            this.type = type;
+            this.getter = getter;
+        }
+
+        public static <T> Column<T> integer(Function<T, Integer> getter) {
+            return new Column<>(ColumnType.INT, getter);
+        }
+
+        public static <T> Column<T> floating(Function<T, Float> getter) {
+            return new Column<>(ColumnType.FLOAT, getter);
+        }
+
+        public static <T> Column<T> string(Function<T, String> getter) {
+            return new Column<>(ColumnType.STRING, getter);
+        }
+
+        public ColumnType getType() {
+            return type;
+        }
+    }
+
+    /**
+     * A row of the snapshot, whose values are read from the mapping when they are asked for.
+     */
+    public class Row
+    {
+        private int row;
+
+        private Row(int row)
+        {
+            this.row = row;
+        }
+
+        public int getInt(int column) {
+            return buffer.getInt(columnPositions[column] + 4 * row);
+        }
+
+        public float getFloat(int column) {
+            return buffer.getFloat(columnPositions[column] + 4 * row);
+        }
+
+        /**
+         * Returns the string of a STRING column, or null if it was written as null.
+         */
+        public String getString(int column) {
+            int offsetsPosition = columnPositions[column];
+            int end = buffer.getInt(offsetsPosition + 4 * (row + 1));
+            if (end < 0)
+                return null;
+            int start = buffer.getInt(offsetsPosition + 4 * row);
+            if (start < 0)
+                start = ~start;
+            byte[] bytes = new byte[end - start];
+            ByteBuffer view = buffer.duplicate();
+            view.position(offsetsPosition + 4 * (rowCount + 1) + start);
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private MappedByteBuffer buffer;
+    private Function<Row, T> decoder;
+    private int rowCount;
+    private int[] columnPositions;
+
+    private MappedSnapshot(MappedByteBuffer buffer, Function<Row, T> decoder, int rowCount, int[] columnPositions)
+    {
+        this.buffer = buffer;
+        this.decoder = decoder;
+        this.rowCount = rowCount;
+        this.columnPositions = columnPositions;
+    }
+
+    /**
+     * Maps a snapshot file; only the header is read.
+     * @param fileName string representing the path to the snapshot file
+     * @param columns the columns the file must have
+     * @param decoder creates an entity from the values of a row, its id is set afterwards
+     * @return the mapped snapshot
+     * @throws BookstoreException if the file cannot be read or does not have the given columns
+     */
+    public static <T extends BaseEntity<Integer>> MappedSnapshot<T> open(String fileName, List<Column<T>> columns,
+                                                                          Function<MappedSnapshot<T>.Row, T> decoder) throws BookstoreException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ))
+        {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new BookstoreException("The snapshot " + fileName + " is larger than 2 GB");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        catch (IOException e)
+        {
+            throw new BookstoreException(e.toString());
+        }
+
+        if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC)
+            throw new BookstoreException(fileName + " is not a snapshot");
+        if (buffer.getInt(4) < 1 || buffer.getInt(4) > VERSION)
+            throw new BookstoreException(fileName + " has an unsupported snapshot version " + buffer.getInt(4));
+        int rowCount = buffer.getInt(8);
+        int columnCount = buffer.getInt(12);
+        if (columnCount != columns.size())
+            throw new BookstoreException(fileName + " has " + columnCount + " columns instead of " + columns.size());
+
+        int[] columnPositions = new int[columnCount];
+        int position = HEADER_LENGTH + columnCount + 4 * rowCount;
+        for (int column = 0; column < columnCount; column++) {
+            if (buffer.get(HEADER_LENGTH + column) != columns.get(column).getType().ordinal())
+                throw new BookstoreException(fileName + " has a different type for column " + column);
+            columnPositions[column] = position + 4;
+            position += 4 + buffer.getInt(position);
+        }
+        if (position != buffer.capacity())
+            throw new BookstoreException(fileName + " is truncated or damaged");
+
+        return new MappedSnapshot<>(buffer, decoder, rowCount, columnPositions);
+    }
+
+    /**
+     * Writes a snapshot of the given entities, replacing the file atomically once the new content is on disk.
+     * The snapshots already mapped from the old file stay readable.
+     * @param fileName string representing the path to the snapshot file
+     * @param entities the entities to write, with distinct ids
+     * @param columns the columns to write
+     * @throws BookstoreException if the file cannot be written
+     */
+    public static <T extends BaseEntity<Integer>> void write(String fileName, Collection<T> entities, List<Column<T>> columns)
+            throws BookstoreException {
+        List<T> rows = new ArrayList<>(entities);
+        rows.sort(Comparator.comparing(entity -> entity.getId()));
+
+        Path path = Paths.get(fileName);
+        Path temporaryPath = Paths.get(fileName + ".tmp");
+        try (FileOutputStream fileStream = new FileOutputStream(temporaryPath.toFile());
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileStream)))
+        {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(rows.size());
+            output.writeInt(columns.size());
+            for (Column<T> column : columns)
+                output.writeByte(column.getType().ordinal());
+            for (T entity : rows)
+                output.writeInt(entity.getId());
+
+            for (Column<T> column : columns) {
+                switch (column.getType()) {
+                    case INT:
+                        output.writeInt(4 * rows.size());
+                        for (T entity : rows)
+                            output.writeInt((Integer) column.getter.apply(entity));
+                        break;
+                    case FLOAT:
+                        output.writeInt(4 * rows.size());
+                        for (T entity : rows)
+                            output.writeFloat((Float) column.getter.apply(entity));
+                        break;
+                    case STRING:
+                        byte[][] values = new byte[rows.size()][];
+                        int length = 0;
+                        for (int row = 0; row < rows.size(); row++) {
+                            Object value = column.getter.apply(rows.get(row));
+                            if (value != null) {
+                                values[row] = value.toString().getBytes(StandardCharsets.UTF_8);
+                                length += values[row].length;
+                            }
+                        }
+                        output.writeInt(4 * (rows.size() + 1) + length);
+                        int offset = 0;
+                        output.writeInt(offset);
+                        for (byte[] value : values) {
+                            if (value == null)
+                                output.writeInt(~offset);
+                            else {
+                                offset += value.length;
+                                output.writeInt(offset);
+                            }
+                        }
+                        for (byte[] value : values) {
+                            if (value != null)
+                                output.write(value);
+                        }
+                        break;
+                }
+            }
+            output.flush();
+            fileStream.getChannel().force(false);
+        }
+        catch (IOException e)
+        {
+            throw new BookstoreException(e.toString());
+        }
+
+        try
+        {
+            DurableFiles.replace(temporaryPath, path);
+        }
+        catch (IOException e)
+        {
+            throw new BookstoreException(e.toString());
+        }
+    }
+
+    /**
+     * Returns the number of rows.
+     */
+    public int size() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the id of a row.
+     */
+    public int idAt(int row) {
+        return buffer.getInt(HEADER_LENGTH + columnPositions.length + 4 * row);
+    }
+
+    /**
+     * Returns the row of the entity with the given id, found by binary search over the ids, or -1 if there is none.
+     */
+    public int rowOf(int id) {
+        int low = 0;
+        int high = rowCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = idAt(middle);
+            if (middleId < id)
+                low = middle + 1;
+            else if (middleId > id)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the entity of a row.
+     */
+    public T get(int row) {
+        T entity = decoder.apply(new Row(row));
+        entity.setId(idAt(row));
+        return entity;
+    }
+
+    /**
+     * Finds and decodes the entity with the given id.
+     */
+    public Optional<T> findOne(int id) {
+        int row = rowOf(id);
+        return row < 0 ? Optional.empty() : Optional.of(get(row));
+    }
+}
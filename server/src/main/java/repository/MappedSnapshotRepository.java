@@ -0,0 +1,404 @@
+package repository;
+
+import domain.BaseEntity;
+import domain.validators.BookstoreException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The type MappedSnapshotRepository.
+ * A repository backed by a MappedSnapshot, so starting it costs a mapping of the snapshot file instead of parsing every
+ * entity. The writes since the snapshot are kept in memory on top of it and journaled in an OperationLog; once the log
+ * grows long enough they are folded into a new snapshot.
+ * The calls are serialized on the repository, the snapshot file is only replaced while no call is in progress.
+ *
+ * @param <T> the type of the stored entities
+ */
+public abstract class MappedSnapshotRepository<T extends BaseEntity<Integer>> implements Repository<Integer, T> {
+    /**
+     * The number of records after which the operation log is folded into a new snapshot.
+     */
+    protected static final int COMPACTION_THRESHOLD = 1000;
+
+    protected String fileName;
+    protected OperationLog<T> operationLog;
+
+    private List<MappedSnapshot.Column<T>> columns;
+    private Function<MappedSnapshot<T>.Row, T> decoder;
+    private MappedSnapshot<T> snapshot;
+    private Map<Integer, T> changedEntities;
+    private Set<Integer> deletedIds;
+
+    /**
+     * Instantiates a new MappedSnapshotRepository, creating an empty snapshot if the file does not exist.
+     *
+     * @param fileName string representing the path to the snapshot file
+     * @param columns the columns the entities are stored in
+     * @param decoder creates an entity from the values of a row
+     * @param encoder turns an entity into a line of the operation log
+     * @param lineDecoder turns a line of the operation log back into an entity
+     * @param flusher decides when the writes are forced to disk
+     */
+    protected MappedSnapshotRepository(String fileName, List<MappedSnapshot.Column<T>> columns, Function<MappedSnapshot<T>.Row, T> decoder,
+                                       Function<T, String> encoder, Function<String, T> lineDecoder, GroupCommitFlusher flusher)
+            throws BookstoreException {
+        this.fileName = fileName;
+        this.columns = columns;
+        this.decoder = decoder;
+        this.changedEntities = new HashMap<>();
+        this.deletedIds = new HashSet<>();
+        this.operationLog = new OperationLog<>(fileName + ".log", encoder, lineDecoder, COMPACTION_THRESHOLD, flusher);
+
+        if (!Files.exists(Paths.get(fileName)))
+            MappedSnapshot.write(fileName, Collections.emptyList(), columns);
+        this.snapshot = MappedSnapshot.open(fileName, columns, decoder);
+        this.operationLog.replay(this::putEntity, this::removeEntity);
+    }
+
+    private void putEntity(T entity) {
+        changedEntities.put(entity.getId(), entity);
+        deletedIds.remove(entity.getId());
+    }
+
+    private void removeEntity(Integer id) {
+        changedEntities.remove(id);
+        if (snapshot.rowOf(id) >= 0)
+            deletedIds.add(id);
+    }
+
+    /**
+     * Writes a new snapshot with all the entities and empties the operation log.
+     */
+    public synchronized void compact() throws BookstoreException {
+        long mark = this.operationLog.mark();
+        MappedSnapshot.write(fileName, findAll(), columns);
+        this.snapshot = MappedSnapshot.open(fileName, columns, decoder);
+        this.changedEntities.clear();
+        this.deletedIds.clear();
+        this.operationLog.clearUpTo(mark);
+    }
+
+    /**
+     * Writes the snapshot file of a repository with the entities of another repository, before the repository is opened.
+     * Used to migrate the data of the CSV or XML repositories. The snapshot is written to a temporary file and only
+     * moved into place once all the entities are written, so a failed import leaves no snapshot behind and is tried
+     * again on the next start. A log left without its snapshot is deleted first, it cannot apply to the imported data.
+     * @param fileName the path of the snapshot file
+     * @param source the repository to copy
+     * @param columns the columns the entities are stored in
+     */
+    protected static <T extends BaseEntity<Integer>> void importSnapshot(String fileName, Repository<Integer, T> source,
+                                                                        List<MappedSnapshot.Column<T>> columns) throws BookstoreException {
+        try
+        {
+            DurableFiles.delete(Paths.get(fileName + ".log"));
+        }
+        catch (IOException e)
+        {
+            throw new BookstoreException(e.toString());
+        }
+        List<T> entities = new ArrayList<>();
+        source.findAll().forEach(entities::add);
+        MappedSnapshot.write(fileName, entities, columns);
+    }
+
+    private void persistSaved(List<T> entities) throws BookstoreException {
+        if (entities.isEmpty())
+            return;
+        this.operationLog.appendSaved(entities);
+        if (this.operationLog.needsCompaction())
+            compact();
+    }
+
+    private void persistDeleted(List<Integer> ids) throws BookstoreException {
+        if (ids.isEmpty())
+            return;
+        this.operationLog.appendDeleted(ids);
+        if (this.operationLog.needsCompaction())
+            compact();
+    }
+
+    /**
+     * Find the entity with the given {@code id}, decoding it from the snapshot if it was not written since.
+     *
+     * @param id
+     *            must be not null.
+     * @return an {@code Optional} encapsulating the entity with the given id.
+     * @throws IllegalArgumentException
+     *             if the given id is null.
+     */
+    @Override
+    public synchronized Optional<T> findOne(Integer id) {
+        if (id == null) {
+            throw new IllegalArgumentException("id must not be null");
+        }
+        if (deletedIds.contains(id))
+            return Optional.empty();
+        T changedEntity = changedEntities.get(id);
+        if (changedEntity != null)
+            return Optional.of(changedEntity);
+        return snapshot.findOne(id);
+    }
+
+    /**
+     * Only the writes since the snapshot are copied under the lock, which costs at most COMPACTION_THRESHOLD entities;
+     * the rows of the snapshot are decoded while the returned collection is iterated, outside the lock. The snapshot
+     * it reads stays mapped even if a compaction replaces it meanwhile.
+     * @return all entities as they were at the call, the ones that were not written since the snapshot are decoded
+     *         from it every time they are iterated over.
+     */
+    @Override
+    public synchronized Collection<T> findAll() {
+        Set<Integer> skippedIds = new HashSet<>(deletedIds);
+        for (Integer id : changedEntities.keySet()) {
+            if (snapshot.rowOf(id) >= 0)
+                skippedIds.add(id);
+        }
+        return new EntitiesView(snapshot, skippedIds, new ArrayList<>(changedEntities.values()));
+    }
+
+    /**
+     * The entities of a snapshot, but the skipped ones, followed by the entities written since.
+     */
+    private class EntitiesView extends AbstractCollection<T>
+    {
+        private final MappedSnapshot<T> snapshot;
+        private final Set<Integer> skippedIds;
+        private final List<T> changedEntities;
+
+        EntitiesView(MappedSnapshot<T> snapshot, Set<Integer> skippedIds, List<T> changedEntities)
+        {
+            this.snapshot = snapshot;
+            this.skippedIds = skippedIds;
+            this.changedEntities = changedEntities;
+        }
+
+        @Override
+        public int size() {
+            return snapshot.size() - skippedIds.size() + changedEntities.size();
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            Iterator<T> changed = changedEntities.iterator();
+            return new Iterator<T>()
+            {
+                private int row = nextRow(0);
+
+                private int nextRow(int from) {
+                    while (from < snapshot.size() && skippedIds.contains(snapshot.idAt(from)))
+                        from++;
+                    return from;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return row < snapshot.size() || changed.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    if (row < snapshot.size()) {
+                        T entity = snapshot.get(row);
+                        row = nextRow(row + 1);
+                        return entity;
+                    }
+                    return changed.next();
+                }
+            };
+        }
+    }
+
+    /**
+     * Saves the given entity.
+     *
+     * @param entity
+     *            must not be null.
+     * @return an {@code Optional} - null if the entity was saved otherwise (e.g. id already exists) returns the entity.
+     * @throws IllegalArgumentException
+     *             if the given entity is null.
+     */
+    @Override
+    public synchronized Optional<T> save(T entity) throws BookstoreException {
+        if (entity == null) {
+            throw new IllegalArgumentException("id must not be null");
+        }
+        Optional<T> existingEntity = findOne(entity.getId());
+        if (existingEntity.isPresent())
+            return existingEntity;
+        putEntity(entity);
+        persistSaved(Collections.singletonList(entity));
+        return Optional.empty();
+    }
+
+    /**
+     * Removes the entity with the given id.
+     *
+     * @param id
+     *            must not be null.
+     * @return an {@code Optional} - null if there is no entity with the given id, otherwise the removed entity.
+     * @throws IllegalArgumentException
+     *             if the given id is null.
+     */
+    @Override
+    public synchronized Optional<T> delete(Integer id) throws BookstoreException {
+        Optional<T> removedEntity = findOne(id);
+        if (removedEntity.isPresent()) {
+            removeEntity(id);
+            persistDeleted(Collections.singletonList(id));
+        }
+        return removedEntity;
+    }
+
+    /**
+     * Updates the given entity.
+     *
+     * @param entity
+     *            must not be null.
+     * @return an {@code Optional} - null if the entity was updated otherwise (e.g. id does not exist) returns the
+     *         entity.
+     * @throws IllegalArgumentException
+     *             if the given entity is null.
+     */
+    @Override
+    public synchronized Optional<T> update(T entity) throws BookstoreException {
+        return replace(entity).map(previousEntity -> entity);
+    }
+
+    /**
+     * Updates the given entity and returns the state it had before the update.
+     *
+     * @param entity
+     *            must not be null.
+     * @return an {@code Optional} - null if there is no entity with the same id, otherwise the entity as it was before
+     *         the update.
+     * @throws IllegalArgumentException
+     *             if the given entity is null.
+     */
+    @Override
+    public synchronized Optional<T> replace(T entity) throws BookstoreException {
+        if (entity == null) {
+            throw new IllegalArgumentException("id must not be null");
+        }
+        Optional<T> previousEntity = findOne(entity.getId());
+        if (previousEntity.isPresent()) {
+            putEntity(entity);
+            persistSaved(Collections.singletonList(entity));
+        }
+        return previousEntity;
+    }
+
+    /**
+     * Saves all the given entities, with a single log write.
+     *
+     * @param entities
+     *            must not be null.
+     * @return a list with one Optional for every entity, that could contain the entity or null
+     */
+    @Override
+    public synchronized List<Optional<T>> saveAll(List<T> entities) throws BookstoreException {
+        List<Optional<T>> results = new ArrayList<>();
+        List<T> savedEntities = new ArrayList<>();
+        for (T entity : entities) {
+            if (entity == null) {
+                throw new IllegalArgumentException("id must not be null");
+            }
+            Optional<T> result = findOne(entity.getId());
+            if (!result.isPresent()) {
+                putEntity(entity);
+                savedEntities.add(entity);
+            }
+            results.add(result);
+        }
+        persistSaved(savedEntities);
+        return results;
+    }
+
+    /**
+     * Updates all the given entities, with a single log write.
+     *
+     * @param entities
+     *            must not be null.
+     * @return a list with one Optional for every entity, that could contain the entity or null
+     */
+    @Override
+    public synchronized List<Optional<T>> updateAll(List<T> entities) throws BookstoreException {
+        List<Optional<T>> results = new ArrayList<>();
+        List<T> updatedEntities = new ArrayList<>();
+        for (T entity : entities) {
+            if (entity == null) {
+                throw new IllegalArgumentException("id must not be null");
+            }
+            if (findOne(entity.getId()).isPresent()) {
+                putEntity(entity);
+                updatedEntities.add(entity);
+                results.add(Optional.of(entity));
+            }
+            else
+                results.add(Optional.empty());
+        }
+        persistSaved(updatedEntities);
+        return results;
+    }
+
+    /**
+     * Saves all the given entities, replacing the ones whose id already exists, with a single log write.
+     *
+     * @param entities
+     *            must not be null.
+     * @return a list containing one {@code Optional} for every entity, in the same order - null if the entity was inserted,
+     *         otherwise (e.g. id already exists) the entity, which replaced the one with its id.
+     */
+    @Override
+    public synchronized List<Optional<T>> upsertAll(List<T> entities) throws BookstoreException {
+        List<Optional<T>> results = new ArrayList<>();
+        for (T entity : entities) {
+            if (entity == null) {
+                throw new IllegalArgumentException("id must not be null");
+            }
+            results.add(findOne(entity.getId()).isPresent() ? Optional.of(entity) : Optional.empty());
+            putEntity(entity);
+        }
+        persistSaved(entities);
+        return results;
+    }
+
+    /**
+     * Removes all the entities matched by the given filter, with a single log write.
+     *
+     * @param filter
+     *            must not be null.
+     * @return the removed entities.
+     */
+    @Override
+    public synchronized List<T> deleteAll(FieldFilter<T> filter) throws BookstoreException {
+        if (filter == null) {
+            throw new IllegalArgumentException("filter must not be null");
+        }
+        List<T> deleted = new ArrayList<>();
+        List<Integer> removedIds = new ArrayList<>();
+        for (T entity : findAll()) {
+            if (filter.test(entity)) {
+                removeEntity(entity.getId());
+                deleted.add(entity);
+                removedIds.add(entity.getId());
+            }
+        }
+        persistDeleted(removedIds);
+        return deleted;
+    }
+}
@@ -0,0 +1,276 @@
+package repository;
+
+import domain.BaseEntity;
+import domain.validators.BookstoreException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The type OperationLog.
+ * An append-only journal of the writes of a file repository, so a write costs one appended record instead of
+ * rewriting the whole file. The records are buffered and handed to a GroupCommitFlusher, which decides when they are
+ * written and forced to disk, so the records of concurrent writers can share a single write and a single fsync.
+ * Saved entities are logged as "S,&lt;line&gt;" and deleted ids as "D,&lt;id&gt;"; replaying the records in order
+ * over the last snapshot gives the current state, even if a record is replayed twice.
+ *
+ * @param <T> the type of the logged entities
+ */
+public class OperationLog<T extends BaseEntity<Integer>> implements Flushable
+{
+    private static final String SAVED = "S,";
+    private static final String DELETED = "D,";
+
+    private Path path;
+    private Function<T, String> encoder;
+    private Function<String, T> decoder;
+    private int compactionThreshold;
+    private GroupCommitFlusher flusher;
+
+    private int recordCount;
+    private long fileLength;
+    private ByteArrayOutputStream pendingRecords;
+    private FileOutputStream outputStream;
+
+    /**
+     * Instantiates a new OperationLog.
+     *
+     * @param fileName            the path of the log file, created on the first write
+     * @param encoder             turns an entity into a single line
+     * @param decoder             turns a line back into an entity
+     * @param compactionThreshold the number of records from which the log asks to be compacted
+     * @param flusher             decides when the appended records are forced to disk
+     */
+    public OperationLog(String fileName, Function<T, String> encoder, Function<String, T> decoder, int compactionThreshold,
+                        GroupCommitFlusher flusher)
+    {
+        if (compactionThreshold <= 0)
+            throw new IllegalArgumentException("compactionThreshold must be positive");
+        this.path = Paths.get(fileName);
+        this.encoder = encoder;
+        this.decoder = decoder;
+        this.compactionThreshold = compactionThreshold;
+        this.flusher = flusher;
+        this.recordCount = 0;
+        this.fileLength = 0;
+        this.pendingRecords = new ByteArrayOutputStream();
+    }
+
+    /**
+     * Passes every record of the log, in order, to the given consumers.
+     * A last record without its line separator, left by a crash in the middle of a write, was never acknowledged: it
+     * is cut off the log, so the next records are not appended after it. A complete record that cannot be read is
+     * damaged and may be followed by saved records, so the replay fails instead of dropping them.
+     * @param saved receives every saved entity
+     * @param deleted receives the id of every deleted entity
+     * @throws BookstoreException if the log cannot be read or holds a damaged record
+     */
+    public synchronized void replay(Consumer<T> saved, Consumer<Integer> deleted) throws BookstoreException {
+        recordCount = 0;
+        fileLength = 0;
+        if (!Files.exists(path))
+            return;
+
+        try
+        {
+            byte[] content = Files.readAllBytes(path);
+            int validLength = 0;
+            for (int end = indexOf(content, validLength); end >= 0; end = indexOf(content, validLength)) {
+                String record = new String(content, validLength, end - validLength, StandardCharsets.UTF_8);
+                try {
+                    if (record.startsWith(SAVED))
+                        saved.accept(decoder.apply(record.substring(SAVED.length())));
+                    else if (record.startsWith(DELETED))
+                        deleted.accept(Integer.valueOf(record.substring(DELETED.length())));
+                    else if (!record.isEmpty())
+                        throw new IllegalArgumentException("unknown record " + record);
+                } catch (RuntimeException e) {
+                    throw new BookstoreException("damaged record " + (recordCount + 1) + " of " + path + ": " + e);
+                }
+                validLength = end + 1;
+                recordCount++;
+            }
+
+            if (validLength < content.length) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(validLength);
+                    channel.force(false);
+                }
+            }
+            fileLength = validLength;
+        }
+        catch (IOException e)
+        {
+            throw new BookstoreException(e.toString());
+        }
+    }
+
+    /**
+     * Returns the position of the first line separator at or after start, or -1 if there is none.
+     */
+    private static int indexOf(byte[] content, int start) {
+        for (int index = start; index < content.length; index++)
+            if (content[index] == '\n')
+                return index;
+        return -1;
+    }
+
+    /**
+     * Appends a record for every saved entity and commits them.
+     * @param entities the entities that were saved or updated
+     * @throws BookstoreException if the records cannot be written
+     */
+    public void appendSaved(Collection<T> entities) throws BookstoreException {
+        enqueueSaved(entities);
+        commit();
+    }
+
+    /**
+     * Appends a record for every deleted id and commits them.
+     * @param ids the ids of the deleted entities
+     * @throws BookstoreException if the records cannot be written
+     */
+    public void appendDeleted(Collection<Integer> ids) throws BookstoreException {
+        enqueueDeleted(ids);
+        commit();
+    }
+
+    /**
+     * Appends a record for every saved entity without waiting for it to be written; the records are written in the
+     * order they were appended, by the next commit of any thread.
+     * @param entities the entities that were saved or updated
+     */
+    public void enqueueSaved(Collection<T> entities) {
+        StringBuilder records = new StringBuilder();
+        for (T entity : entities)
+            records.append(SAVED).append(encoder.apply(entity)).append('\n');
+        enqueue(records, entities.size());
+    }
+
+    /**
+     * Appends a record for every deleted id without waiting for it to be written; the records are written in the
+     * order they were appended, by the next commit of any thread.
+     * @param ids the ids of the deleted entities
+     */
+    public void enqueueDeleted(Collection<Integer> ids) {
+        StringBuilder records = new StringBuilder();
+        for (Integer id : ids)
+            records.append(DELETED).append(id).append('\n');
+        enqueue(records, ids.size());
+    }
+
+    private synchronized void enqueue(CharSequence records, int count) {
+        byte[] bytes = records.toString().getBytes(StandardCharsets.UTF_8);
+        pendingRecords.write(bytes, 0, bytes.length);
+        recordCount += count;
+    }
+
+    /**
+     * Waits until the records appended so far are written, as decided by the flusher.
+     * @throws BookstoreException if the records cannot be written
+     */
+    public void commit() throws BookstoreException {
+        flusher.commit(this);
+    }
+
+    /**
+     * Writes the pending records with a single write and forces them to disk, with the directory entry of the log if
+     * this write created it; called by the flusher.
+     * @throws IOException if the records cannot be written
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (pendingRecords.size() == 0)
+            return;
+        boolean created = false;
+        if (outputStream == null) {
+            created = !Files.exists(path);
+            outputStream = new FileOutputStream(path.toFile(), true);
+        }
+        pendingRecords.writeTo(outputStream);
+        outputStream.getChannel().force(false);
+        if (created)
+            DurableFiles.forceDirectory(path);
+        fileLength += pendingRecords.size();
+        pendingRecords.reset();
+    }
+
+    /**
+     * Returns true once the log holds at least compactionThreshold records.
+     */
+    public synchronized boolean needsCompaction() {
+        return recordCount >= compactionThreshold;
+    }
+
+    /**
+     * Marks the end of the records appended so far; must be taken before writing a snapshot.
+     * @return the position of the mark, to be passed to clearUpTo once the snapshot is written
+     */
+    public synchronized long mark() {
+        return fileLength + pendingRecords.size();
+    }
+
+    /**
+     * Removes the records appended before a mark, must only be called after a snapshot containing them was written.
+     * The records appended after the mark are kept, replaying them over the snapshot is harmless.
+     * @param mark a position returned by mark()
+     * @throws BookstoreException if the log cannot be rewritten
+     */
+    public synchronized void clearUpTo(long mark) throws BookstoreException {
+        try
+        {
+            flush();
+            byte[] tail = new byte[(int) (fileLength - mark)];
+            if (tail.length > 0) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    ByteBuffer buffer = ByteBuffer.wrap(tail);
+                    long position = mark;
+                    while (buffer.hasRemaining()) {
+                        int read = channel.read(buffer, position);
+                        if (read < 0)
+                            break;
+                        position += read;
+                    }
+                }
+            }
+            if (outputStream != null) {
+                outputStream.close();
+                outputStream = null;
+            }
+
+            if (tail.length == 0)
+                DurableFiles.delete(path);
+            else {
+                Path temporaryPath = Paths.get(path + ".tmp");
+                try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    channel.write(ByteBuffer.wrap(tail));
+                    channel.force(false);
+                }
+                DurableFiles.replace(temporaryPath, path);
+            }
+
+            fileLength = tail.length;
+            recordCount = 0;
+            for (byte character : tail)
+                if (character == '\n')
+                    recordCount++;
+        }
+        catch (IOException e)
+        {
+            throw new BookstoreException(e.toString());
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package repository;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * The type PersistentHashMap.
+ * An immutable hash map that is changed by creating a new map, a hash array mapped trie branching on 5 bits of the
+ * hash at every level: a change copies only the nodes on the path to its key and shares the rest with the old map,
+ * so every map ever created stays valid and can be read without any lock while newer maps are built.
+ * The values are stored in the trie as they are and their keys are read from them, so a map costs no object per
+ * entry. Iterating over a map yields its values.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+final class PersistentHashMap<K, V> implements Iterable<V>
+{
+    private final Function<V, K> keyOf;
+    private final Node<K, V> root;
+    private final int size;
+
+    private PersistentHashMap(Function<V, K> keyOf, Node<K, V> root, int size)
+    {
+        this.keyOf = keyOf;
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns an empty map.
+     * @param keyOf reads the key of a value
+     */
+    static <K, V> PersistentHashMap<K, V> empty(Function<V, K> keyOf) {
+        return new PersistentHashMap<>(keyOf, null, 0);
+    }
+
+    /**
+     * Returns a map with the given values, whose keys must be distinct, built in a single pass over every level of the
+     * trie instead of copying the path of every key.
+     * @param values the values
+     * @param keyOf reads the key of a value
+     */
+    static <K, V> PersistentHashMap<K, V> of(Collection<V> values, Function<V, K> keyOf) {
+        if (values.isEmpty())
+            return empty(keyOf);
+        Object[] slots = values.toArray();
+        int[] hashes = new int[slots.length];
+        for (int index = 0; index < slots.length; index++)
+            hashes[index] = hash(keyOf.apply(cast(slots[index])));
+        Node<K, V> root = build(slots, hashes, new Object[slots.length], new int[slots.length], 0, slots.length, 0);
+        return new PersistentHashMap<>(keyOf, root, slots.length);
+    }
+
+    /**
+     * Builds the node of the values between from and to, which have the same bits of the hash above the level, by
+     * distributing them over the 32 values of the bits of the level.
+     */
+    private static <K, V> BitmapNode<K, V> build(Object[] values, int[] hashes, Object[] scratchValues, int[] scratchHashes,
+                                                 int from, int to, int shift) {
+        int[] starts = new int[33];
+        for (int index = from; index < to; index++)
+            starts[((hashes[index] >>> shift) & 31) + 1]++;
+        int bitmap = 0;
+        for (int bucket = 0; bucket < 32; bucket++) {
+            if (starts[bucket + 1] > 0)
+                bitmap |= 1 << bucket;
+            starts[bucket + 1] += starts[bucket];
+        }
+        int[] next = Arrays.copyOf(starts, 32);
+        for (int index = from; index < to; index++) {
+            int position = from + next[(hashes[index] >>> shift) & 31]++;
+            scratchValues[position] = values[index];
+            scratchHashes[position] = hashes[index];
+        }
+        System.arraycopy(scratchValues, from, values, from, to - from);
+        System.arraycopy(scratchHashes, from, hashes, from, to - from);
+
+        Object[] slots = new Object[Integer.bitCount(bitmap)];
+        int slot = 0;
+        for (int bucket = 0; bucket < 32; bucket++) {
+            int bucketFrom = from + starts[bucket];
+            int bucketTo = from + starts[bucket + 1];
+            if (bucketTo - bucketFrom == 1)
+                slots[slot++] = values[bucketFrom];
+            else if (bucketTo > bucketFrom) {
+                boolean sameHash = true;
+                for (int index = bucketFrom + 1; index < bucketTo && sameHash; index++)
+                    sameHash = hashes[index] == hashes[bucketFrom];
+                slots[slot++] = sameHash
+                        ? new CollisionNode<K, V>(hashes[bucketFrom], Arrays.copyOfRange(values, bucketFrom, bucketTo))
+                        : build(values, hashes, scratchValues, scratchHashes, bucketFrom, bucketTo, shift + 5);
+            }
+        }
+        return new BitmapNode<>(bitmap, slots);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value of a key, or null if the map does not contain it.
+     */
+    V get(K key) {
+        return root == null ? null : root.get(hash(key), key, 0, keyOf);
+    }
+
+    /**
+     * Returns a map containing the given value for its key and the values of this map for the other keys.
+     */
+    PersistentHashMap<K, V> plus(V value) {
+        Node<K, V> currentRoot = root == null ? new BitmapNode<>(0, new Object[0]) : root;
+        boolean[] added = new boolean[1];
+        Node<K, V> newRoot = currentRoot.plus(value, hash(keyOf.apply(value)), 0, keyOf, added);
+        return newRoot == root ? this : new PersistentHashMap<>(keyOf, newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Returns a map containing the values of this map except the one of the key.
+     */
+    PersistentHashMap<K, V> minus(K key) {
+        if (root == null)
+            return this;
+        Node<K, V> newRoot = root.minus(hash(key), key, 0, keyOf);
+        if (newRoot == root)
+            return this;
+        return new PersistentHashMap<>(keyOf, newRoot, size - 1);
+    }
+
+    private static int hash(Object key) {
+        int hash = Objects.hashCode(key);
+        return hash ^ (hash >>> 16);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V cast(Object slot) {
+        return (V) slot;
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+        return new ValueIterator<>(root);
+    }
+
+    /**
+     * A node of the trie, whose slots are values and child nodes.
+     */
+    private interface Node<K, V>
+    {
+        V get(int hash, K key, int shift, Function<V, K> keyOf);
+
+        /**
+         * Returns this node if the value is already in it, sets added[0] if its key was not in it.
+         */
+        Node<K, V> plus(V value, int hash, int shift, Function<V, K> keyOf, boolean[] added);
+
+        /**
+         * Returns this node if the key is not in it, null if the node would be left empty.
+         */
+        Node<K, V> minus(int hash, K key, int shift, Function<V, K> keyOf);
+
+        Object[] slots();
+    }
+
+    /**
+     * A node whose slots are the values and child nodes of the hashes having one of the 32 values of the 5 bits of the
+     * level, in the order of those values; the bitmap tells which values have a slot.
+     */
+    private static final class BitmapNode<K, V> implements Node<K, V>
+    {
+        private final int bitmap;
+        private final Object[] slots;
+
+        BitmapNode(int bitmap, Object[] slots)
+        {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & 31);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(int hash, K key, int shift, Function<V, K> keyOf) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0)
+                return null;
+            Object slot = slots[index(bit)];
+            if (slot instanceof Node)
+                return ((Node<K, V>) slot).get(hash, key, shift + 5, keyOf);
+            V value = cast(slot);
+            return Objects.equals(keyOf.apply(value), key) ? value : null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Node<K, V> plus(V value, int hash, int shift, Function<V, K> keyOf, boolean[] added) {
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, index);
+                newSlots[index] = value;
+                System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+                added[0] = true;
+                return new BitmapNode<>(bitmap | bit, newSlots);
+            }
+
+            Object slot = slots[index];
+            Object newSlot;
+            if (slot instanceof Node) {
+                newSlot = ((Node<K, V>) slot).plus(value, hash, shift + 5, keyOf, added);
+                if (newSlot == slot)
+                    return this;
+            }
+            else {
+                V existing = cast(slot);
+                if (existing == value)
+                    return this;
+                K existingKey = keyOf.apply(existing);
+                if (Objects.equals(existingKey, keyOf.apply(value)))
+                    newSlot = value;
+                else {
+                    newSlot = merge(existing, hash(existingKey), value, hash, shift + 5);
+                    added[0] = true;
+                }
+            }
+            Object[] newSlots = slots.clone();
+            newSlots[index] = newSlot;
+            return new BitmapNode<>(bitmap, newSlots);
+        }
+
+        /**
+         * Returns a node holding two values with different keys whose hashes have the same bits above the level.
+         */
+        private static <K, V> Node<K, V> merge(V first, int firstHash, V second, int secondHash, int shift) {
+            if (firstHash == secondHash)
+                return new CollisionNode<>(firstHash, new Object[]{first, second});
+            int firstBit = bit(firstHash, shift);
+            int secondBit = bit(secondHash, shift);
+            if (firstBit == secondBit)
+                return new BitmapNode<>(firstBit, new Object[]{merge(first, firstHash, second, secondHash, shift + 5)});
+            return new BitmapNode<>(firstBit | secondBit,
+                    Integer.compareUnsigned(firstBit, secondBit) < 0 ? new Object[]{first, second} : new Object[]{second, first});
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Node<K, V> minus(int hash, K key, int shift, Function<V, K> keyOf) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0)
+                return this;
+            int index = index(bit);
+            Object slot = slots[index];
+            if (slot instanceof Node) {
+                Node<K, V> newChild = ((Node<K, V>) slot).minus(hash, key, shift + 5, keyOf);
+                if (newChild == slot)
+                    return this;
+                if (newChild != null) {
+                    Object[] newSlots = slots.clone();
+                    newSlots[index] = newChild;
+                    return new BitmapNode<>(bitmap, newSlots);
+                }
+            }
+            else if (!Objects.equals(keyOf.apply(cast(slot)), key))
+                return this;
+
+            if (bitmap == bit)
+                return null;
+            Object[] newSlots = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, newSlots, 0, index);
+            System.arraycopy(slots, index + 1, newSlots, index, slots.length - index - 1);
+            return new BitmapNode<>(bitmap & ~bit, newSlots);
+        }
+
+        @Override
+        public Object[] slots() {
+            return slots;
+        }
+    }
+
+    /**
+     * A node holding the values of different keys with the same hash.
+     */
+    private static final class CollisionNode<K, V> implements Node<K, V>
+    {
+        private final int hash;
+        private final Object[] values;
+
+        CollisionNode(int hash, Object[] values)
+        {
+            this.hash = hash;
+            this.values = values;
+        }
+
+        private int indexOf(K key, Function<V, K> keyOf) {
+            for (int index = 0; index < values.length; index++)
+                if (Objects.equals(keyOf.apply(cast(values[index])), key))
+                    return index;
+            return -1;
+        }
+
+        @Override
+        public V get(int hash, K key, int shift, Function<V, K> keyOf) {
+            if (hash != this.hash)
+                return null;
+            int index = indexOf(key, keyOf);
+            return index < 0 ? null : cast(values[index]);
+        }
+
+        @Override
+        public Node<K, V> plus(V value, int hash, int shift, Function<V, K> keyOf, boolean[] added) {
+            if (hash != this.hash)
+                return new BitmapNode<K, V>(BitmapNode.bit(this.hash, shift), new Object[]{this}).plus(value, hash, shift, keyOf, added);
+            int index = indexOf(keyOf.apply(value), keyOf);
+            if (index >= 0) {
+                if (values[index] == value)
+                    return this;
+                Object[] newValues = values.clone();
+                newValues[index] = value;
+                return new CollisionNode<>(hash, newValues);
+            }
+            Object[] newValues = Arrays.copyOf(values, values.length + 1);
+            newValues[values.length] = value;
+            added[0] = true;
+            return new CollisionNode<>(hash, newValues);
+        }
+
+        @Override
+        public Node<K, V> minus(int hash, K key, int shift, Function<V, K> keyOf) {
+            int index = hash == this.hash ? indexOf(key, keyOf) : -1;
+            if (index < 0)
+                return this;
+            if (values.length == 1)
+                return null;
+            Object[] newValues = new Object[values.length - 1];
+            System.arraycopy(values, 0, newValues, 0, index);
+            System.arraycopy(values, index + 1, newValues, index, values.length - index - 1);
+            return new CollisionNode<>(hash, newValues);
+        }
+
+        @Override
+        public Object[] slots() {
+            return values;
+        }
+    }
+
+    /**
+     * Walks the trie depth first, with a stack of the slots of the nodes on the path to the current value.
+     */
+    private static final class ValueIterator<K, V> implements Iterator<V>
+    {
+        private final Deque<Object[]> slotStack = new ArrayDeque<>();
+        private final Deque<Integer> indexStack = new ArrayDeque<>();
+        private Object next;
+
+        ValueIterator(Node<K, V> root)
+        {
+            if (root != null) {
+                slotStack.push(root.slots());
+                indexStack.push(0);
+            }
+            advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (!slotStack.isEmpty()) {
+                Object[] slots = slotStack.peek();
+                int index = indexStack.pop();
+                if (index == slots.length) {
+                    slotStack.pop();
+                    continue;
+                }
+                indexStack.push(index + 1);
+                Object slot = slots[index];
+                if (!(slot instanceof Node)) {
+                    next = slot;
+                    return;
+                }
+                slotStack.push(((Node<K, V>) slot).slots());
+                indexStack.push(0);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public V next() {
+            if (next == null)
+                throw new NoSuchElementException();
+            V value = cast(next);
+            advance();
+            return value;
+        }
+    }
+}
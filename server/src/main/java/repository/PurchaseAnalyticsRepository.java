@@ -0,0 +1,50 @@
+package repository;
+
+import domain.Book;
+import domain.Client;
+import domain.validators.BookstoreException;
+import service.BookRankingMetric;
+import service.ClientRankingMetric;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregate queries over the purchases that a repository can answer itself, close to the data,
+ * instead of having every purchase shipped to the controller.
+ */
+public interface PurchaseAnalyticsRepository {
+    /**
+     * Returns the top k clients, ranked by a certain metric.
+     * @param k integer representing the number of clients to return, must be positive
+     * @param metric the metric the clients are ranked by
+     * @return a list containing k clients or less than k if there are less than k clients
+     * @throws BookstoreException if the query fails
+     */
+    List<Map.Entry<Client, Double>> findTopClients(int k, ClientRankingMetric metric) throws BookstoreException;
+
+    /**
+     * Returns the top k books, ranked by a certain metric.
+     * @param k integer representing the number of books to return, must be positive
+     * @param metric the metric the books are ranked by
+     * @return a list containing k books or less than k if there are less than k books
+     * @throws BookstoreException if the query fails
+     */
+    List<Map.Entry<Book, Double>> findTopBooks(int k, BookRankingMetric metric) throws BookstoreException;
+
+    /**
+     * Returns the total amount of money a client has spent on books.
+     * @param clientId integer representing the id of the client
+     * @return a double representing the amount of money spent
+     * @throws BookstoreException if the query fails
+     */
+    double getMoneySpentForClient(int clientId) throws BookstoreException;
+
+    /**
+     * Returns how many times a book was sold.
+     * @param bookId integer representing the id of the book
+     * @return a long representing the sales of the book
+     * @throws BookstoreException if the query fails
+     */
+    long getBookSales(int bookId) throws BookstoreException;
+}
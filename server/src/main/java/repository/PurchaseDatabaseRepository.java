@@ -1,27 +1,66 @@
 package repository;
 
+import domain.Book;
 import domain.Client;
 import domain.Purchase;
 import domain.validators.BookstoreException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcOperations;
+import service.BookRankingMetric;
+import service.ClientRankingMetric;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * PurchaseDatabaseRepository class
  */
-public class PurchaseDatabaseRepository implements PurchaseRepository{
+public class PurchaseDatabaseRepository implements PurchaseRepository, PurchaseAnalyticsRepository {
 
     @Autowired
     private JdbcOperations jdbcOperations;
+
+    @Autowired
+    private JdbcBulkWriter jdbcBulkWriter;
+
+    private static final List<String> COLUMNS = Arrays.asList("id", "clientid", "bookid", "library");
+
+    /**
+     * Turns the current row of a result set into a purchase.
+     * @param row the result set, positioned on a row of the purchase table
+     * @return an instance of class Purchase
+     * @throws SQLException if a column cannot be read
+     */
+    private static Purchase purchaseFromRow(ResultSet row) throws SQLException {
+        int purchaseId = row.getInt("id");
+        int clientId = row.getInt("clientid");
+        int bookId = row.getInt("bookid");
+        String library = row.getString("library");
+        Purchase newPurchase = new Purchase(clientId, bookId, library);
+        newPurchase.setId(purchaseId);
+        return newPurchase;
+    }
+
+    /**
+     * Turns a purchase into the values of its row, in the order of COLUMNS.
+     * @param entity instance of class Purchase
+     * @return the values of the columns
+     */
+    private static Object[] purchaseToRow(Purchase entity) {
+        return new Object[]{entity.getId(), entity.getClientId(), entity.getBookId(), entity.getLibrary()};
+    }
+
     /**
      * Gets the purchase having a certain id from the database.
      * @param id must be not null.
@@ -33,16 +72,7 @@ public class PurchaseDatabaseRepository implements PurchaseRepository{
         String getPurchaseSqlStatement = "select * from purchase where id=?";
 
         try {
-            List<Purchase> resultList = jdbcOperations.query(getPurchaseSqlStatement, new Object[]{id}, (row, rowNum) ->
-            {
-                int purchaseId = row.getInt("id");
-                int clientId = row.getInt("clientid");
-                int bookId = row.getInt("bookid");
-                String library = row.getString("library");
-                Purchase newPurchase = new Purchase(clientId, bookId, library);
-                newPurchase.setId(purchaseId);
-                return newPurchase;
-            });
+            List<Purchase> resultList = jdbcOperations.query(getPurchaseSqlStatement, new Object[]{id}, (row, rowNum) -> purchaseFromRow(row));
 
             if (!resultList.isEmpty())
             {
@@ -72,16 +102,7 @@ public class PurchaseDatabaseRepository implements PurchaseRepository{
 
         try
         {
-            return jdbcOperations.query(sqlStatement,  (row, rowNum) ->
-            {
-                int purchaseId = row.getInt("id");
-                int clientId = row.getInt("clientid");
-                int bookId = row.getInt("bookid");
-                String library = row.getString("library");
-                Purchase newPurchase = new Purchase(clientId, bookId, library);
-                newPurchase.setId(purchaseId);
-                return newPurchase;
-            });
+            return jdbcOperations.query(sqlStatement,  (row, rowNum) -> purchaseFromRow(row));
         }
         catch(DataAccessException databaseException)
         {
@@ -126,21 +147,35 @@ public class PurchaseDatabaseRepository implements PurchaseRepository{
      */
     @Override
     public Optional<Purchase> delete(Integer id) throws BookstoreException {
-        String deletePurchaseSqlStatement = "delete from purchase where id=?";
+        String deletePurchaseSqlStatement = "delete from purchase where id=? returning *";
 
         try
         {
-            Optional<Purchase> purchaseToDelete = this.findOne(id);
+            List<Purchase> deletedPurchases = jdbcOperations.query(deletePurchaseSqlStatement, new Object[]{id}, (row, rowNum) -> purchaseFromRow(row));
+            return deletedPurchases.stream().findFirst();
+        }
+        catch(DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
 
-            if (purchaseToDelete.isPresent())
-            {
-                jdbcOperations.update(deletePurchaseSqlStatement, id);
-                return purchaseToDelete;
-            }
-            else
-            {
-                return Optional.empty();
-            }
+
+    /**
+     * Finds all the purchases matched by a filter with a single query.
+     * @param filter the filter the purchases must match, its column must be one of the purchase columns
+     * @return the purchases matched by the filter
+     * @throws BookstoreException if there is any SQL database related error
+     */
+    @Override
+    public List<Purchase> findBy(FieldFilter<Purchase> filter) throws BookstoreException {
+        if (!COLUMNS.contains(filter.getColumn()))
+            throw new IllegalArgumentException("unknown column " + filter.getColumn());
+        String findPurchasesSqlStatement = "select * from purchase where " + filter.getColumn() + " = ?";
+
+        try
+        {
+            return jdbcOperations.query(findPurchasesSqlStatement, new Object[]{filter.getValue()}, (row, rowNum) -> purchaseFromRow(row));
         }
         catch(DataAccessException databaseException)
         {
@@ -148,6 +183,27 @@ public class PurchaseDatabaseRepository implements PurchaseRepository{
         }
     }
 
+    /**
+     * Deletes all the purchases matched by a filter from the database with a single statement.
+     * @param filter the filter the purchases to delete must match, its column must be one of the purchase columns
+     * @return the deleted purchases
+     * @throws BookstoreException if there is any SQL database related error
+     */
+    @Override
+    public List<Purchase> deleteAll(FieldFilter<Purchase> filter) throws BookstoreException {
+        if (!COLUMNS.contains(filter.getColumn()))
+            throw new IllegalArgumentException("unknown column " + filter.getColumn());
+        String deletePurchasesSqlStatement = "delete from purchase where " + filter.getColumn() + " = ? returning *";
+
+        try
+        {
+            return jdbcOperations.query(deletePurchasesSqlStatement, new Object[]{filter.getValue()}, (row, rowNum) -> purchaseFromRow(row));
+        }
+        catch(DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
 
     /**
      * Updates a purchase from the database.
@@ -177,4 +233,245 @@ public class PurchaseDatabaseRepository implements PurchaseRepository{
             throw new BookstoreException(databaseException.toString());
         }
     }
+
+    /**
+     * Updates the given purchase and returns the state it had before, with a single statement.
+     * @param entity must not be null, instance of class Purchase
+     * @return an Optional - the purchase as it was before the update, null if there is no purchase with such an id
+     * @throws BookstoreException if there is any SQL database related error
+     */
+    @Override
+    public Optional<Purchase> replace(Purchase entity) throws BookstoreException {
+        String replaceSqlStatement = "update purchase set clientid = ?, bookid = ?, library = ? " +
+                "from (select * from purchase where id = ? for update) previous where purchase.id = previous.id returning previous.*";
+
+        try
+        {
+            List<Purchase> previousPurchases = jdbcOperations.query(replaceSqlStatement, new Object[]{entity.getClientId(), entity.getBookId(), entity.getLibrary(), entity.getId()},
+                    (row, rowNum) -> purchaseFromRow(row));
+            return previousPurchases.stream().findFirst();
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Saves all the given purchases with multi-row inserts (or COPY for very large lists), inside a single transaction.
+     * @param entities must not be null, instances of Purchase
+     * @return a list with one Optional for every purchase - null if the purchase was added, the purchase otherwise (e.g. its id already exists)
+     * @throws BookstoreException if there is any SQL database related error, in which case none of the purchases is added
+     */
+    @Override
+    public List<Optional<Purchase>> saveAll(List<Purchase> entities) throws BookstoreException {
+        try
+        {
+            boolean[] inserted = jdbcBulkWriter.insertAll("purchase", COLUMNS, entities.stream().map(PurchaseDatabaseRepository::purchaseToRow).collect(Collectors.toList()));
+            List<Optional<Purchase>> results = new ArrayList<>();
+            for (int index = 0; index < entities.size(); index++)
+                results.add(inserted[index] ? Optional.empty() : Optional.of(entities.get(index)));
+            return results;
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Updates all the given purchases with JDBC batches, inside a single transaction.
+     * @param entities must not be null, instances of Purchase
+     * @return a list with one Optional for every purchase - the purchase if it was updated, null otherwise
+     * @throws BookstoreException if there is any SQL database related error, in which case none of the purchases is updated
+     */
+    @Override
+    public List<Optional<Purchase>> updateAll(List<Purchase> entities) throws BookstoreException {
+        String updateSqlStatement = "update purchase set clientid = ?, bookid = ?, library = ? where id = ?";
+        List<Object[]> batchArguments = entities.stream()
+                .map(entity -> new Object[]{entity.getClientId(), entity.getBookId(), entity.getLibrary(), entity.getId()})
+                .collect(Collectors.toList());
+
+        try
+        {
+            int[] rowsUpdated = jdbcBulkWriter.batchUpdate(updateSqlStatement, batchArguments);
+            List<Optional<Purchase>> results = new ArrayList<>();
+            for (int index = 0; index < entities.size(); index++)
+                results.add(rowsUpdated[index] != 0 ? Optional.of(entities.get(index)) : Optional.empty());
+            return results;
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Saves all the given purchases with multi-row upserts, replacing the purchases whose id already exists, inside a single transaction.
+     * @param entities must not be null, instances of Purchase
+     * @return a list with one Optional for every purchase - null if the purchase was added, the purchase otherwise (its id already existed and it replaced that purchase)
+     * @throws BookstoreException if there is any SQL database related error, in which case none of the purchases is saved
+     */
+    @Override
+    public List<Optional<Purchase>> upsertAll(List<Purchase> entities) throws BookstoreException {
+        try
+        {
+            boolean[] inserted = jdbcBulkWriter.upsertAll("purchase", COLUMNS, entities.stream().map(PurchaseDatabaseRepository::purchaseToRow).collect(Collectors.toList()));
+            List<Optional<Purchase>> results = new ArrayList<>();
+            for (int index = 0; index < entities.size(); index++)
+                results.add(inserted[index] ? Optional.empty() : Optional.of(entities.get(index)));
+            return results;
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Gets the purchases having certain ids from the database with a single query.
+     * @param ids must not be null, integers representing the ids of the purchases
+     * @return a list containing the purchases that exist
+     * @throws BookstoreException if there is any SQL database related error
+     */
+    @Override
+    public Iterable<Purchase> findMany(Collection<Integer> ids) throws BookstoreException {
+        String getPurchasesSqlStatement = "select * from purchase where id = any(?)";
+
+        try
+        {
+            return jdbcOperations.query(getPurchasesSqlStatement,
+                    preparedStatement -> preparedStatement.setArray(1, preparedStatement.getConnection().createArrayOf("integer", ids.toArray())),
+                    (row, rowNum) -> purchaseFromRow(row));
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Ranks the clients inside the database, joining the purchases to the books and keeping only the first k rows.
+     * Clients without purchases are ranked too, with a score of 0.
+     * @param k integer representing the number of clients to return, must be positive
+     * @param metric the metric the clients are ranked by
+     * @return a list containing k clients or less than k if there are less than k clients
+     * @throws BookstoreException if there is any SQL database related error
+     */
+    @Override
+    public List<Map.Entry<Client, Double>> findTopClients(int k, ClientRankingMetric metric) throws BookstoreException {
+        String scoreExpression;
+        switch (metric) {
+            case MONEY_SPENT:
+                scoreExpression = "coalesce(sum(b.price), 0)";
+                break;
+            case PURCHASES:
+                scoreExpression = "count(p.id)";
+                break;
+            default:
+                throw new BookstoreException("Unknown client ranking metric " + metric + "!\n");
+        }
+
+        String topClientsSqlStatement = "select c.id, c.firstname, c.lastname, c.address, " + scoreExpression + " as score " +
+                "from client c left join purchase p on p.clientid = c.id left join book b on b.id = p.bookid " +
+                "group by c.id, c.firstname, c.lastname, c.address " +
+                "order by score desc, c.id limit ?";
+
+        try
+        {
+            return jdbcOperations.query(topClientsSqlStatement, new Object[]{k}, (row, rowNum) ->
+            {
+                Client client = new Client(row.getString("firstname"), row.getString("lastname"), row.getString("address"));
+                client.setId(row.getInt("id"));
+                return new AbstractMap.SimpleEntry<>(client, row.getDouble("score"));
+            });
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Ranks the books inside the database, joining them to their purchases and keeping only the first k rows.
+     * Books that were never sold are ranked too, with a score of 0.
+     * @param k integer representing the number of books to return, must be positive
+     * @param metric the metric the books are ranked by
+     * @return a list containing k books or less than k if there are less than k books
+     * @throws BookstoreException if there is any SQL database related error
+     */
+    @Override
+    public List<Map.Entry<Book, Double>> findTopBooks(int k, BookRankingMetric metric) throws BookstoreException {
+        String scoreExpression;
+        switch (metric) {
+            case SALES:
+                scoreExpression = "count(p.id)";
+                break;
+            case REVENUE:
+                scoreExpression = "b.price * count(p.id)";
+                break;
+            default:
+                throw new BookstoreException("Unknown book ranking metric " + metric + "!\n");
+        }
+
+        String topBooksSqlStatement = "select b.id, b.title, b.author, b.publisher, b.publicationyear, b.price, " + scoreExpression + " as score " +
+                "from book b left join purchase p on p.bookid = b.id " +
+                "group by b.id, b.title, b.author, b.publisher, b.publicationyear, b.price " +
+                "order by score desc, b.id limit ?";
+
+        try
+        {
+            return jdbcOperations.query(topBooksSqlStatement, new Object[]{k}, (row, rowNum) ->
+            {
+                Book book = new Book(row.getString("title"), row.getString("author"), row.getString("publisher"),
+                        row.getInt("publicationyear"), (float)row.getDouble("price"));
+                book.setId(row.getInt("id"));
+                return new AbstractMap.SimpleEntry<>(book, row.getDouble("score"));
+            });
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Sums the prices of the books bought by a client inside the database.
+     * @param clientId integer representing the id of the client
+     * @return a double representing the amount of money spent
+     * @throws BookstoreException if there is any SQL database related error
+     */
+    @Override
+    public double getMoneySpentForClient(int clientId) throws BookstoreException {
+        String moneySpentSqlStatement = "select coalesce(sum(b.price), 0) from purchase p join book b on b.id = p.bookid where p.clientid = ?";
+
+        try
+        {
+            return jdbcOperations.queryForObject(moneySpentSqlStatement, new Object[]{clientId}, Double.class);
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Counts the purchases of a book inside the database.
+     * @param bookId integer representing the id of the book
+     * @return a long representing the sales of the book
+     * @throws BookstoreException if there is any SQL database related error
+     */
+    @Override
+    public long getBookSales(int bookId) throws BookstoreException {
+        String bookSalesSqlStatement = "select count(*) from purchase where bookid = ?";
+
+        try
+        {
+            return jdbcOperations.queryForObject(bookSalesSqlStatement, new Object[]{bookId}, Long.class);
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
 }
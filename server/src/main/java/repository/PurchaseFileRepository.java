@@ -5,52 +5,68 @@ import domain.validators.BookstoreException;
 import domain.validators.Validator;
 import domain.validators.ValidatorException;
 
-import java.io.FileWriter;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
 
-public class PurchaseFileRepository extends InMemoryRepository<Integer, Purchase> {
+public class PurchaseFileRepository extends ConcurrentInMemoryRepository<Integer, Purchase> implements PurchaseRepository {
+    /**
+     * The number of records after which the operation log is folded into a new snapshot of the CSV file.
+     */
+    protected static final int COMPACTION_THRESHOLD = 1000;
+
     protected String fileName;
+    protected OperationLog<Purchase> operationLog;
+    protected GroupCommitFlusher flusher;
 
+    /**
+     * Instantiates a new PurchaseFileRepository whose writes are forced to disk one by one.
+     *
+     * @param validator instance of a class implementing the Validator interface
+     * @param fileName string representing the path to the CSV file where the purchases are stored
+     */
     public PurchaseFileRepository(Validator<Purchase> validator, String fileName) throws BookstoreException {
+        this(validator, fileName, new GroupCommitFlusher(DurabilityMode.PER_WRITE, 0));
+    }
+
+    /**
+     * Instantiates a new PurchaseFileRepository.
+     *
+     * @param validator instance of a class implementing the Validator interface
+     * @param fileName string representing the path to the CSV file where the purchases are stored
+     * @param flusher decides when the writes are forced to disk
+     */
+    public PurchaseFileRepository(Validator<Purchase> validator, String fileName, GroupCommitFlusher flusher) throws BookstoreException {
+        this.flusher = flusher;
         this.fileName = fileName;
+        this.addIndex("clientid", Purchase::getClientId);
+        this.addIndex("bookid", Purchase::getBookId);
+        this.operationLog = new OperationLog<>(fileName + ".log", PurchaseFileRepository::purchaseToLine, PurchaseFileRepository::purchaseFromLine,
+                COMPACTION_THRESHOLD, flusher);
 
-        this.loadData();
+        this.restore(() -> {
+            this.loadData();
+            this.replayLog();
+            return null;
+        });
     }
 
     /**
-     * Loads data into the repository from a CSV file.
+     * Loads data into the repository from a CSV file, parsing it in parallel.
      */
     protected void loadData() throws BookstoreException {
-        Path path = Paths.get(fileName);
-
         try
         {
-            Files.lines(path).forEach(line -> {
-                if(!(line.equals("") || line.equals("\n")))
-                {
-                    List<String> items = Arrays.asList(line.split(","));
-
-                    Integer id = Integer.valueOf(items.get(0));
-                    int idClient = Integer.valueOf(items.get(1));
-                    int idBook = Integer.valueOf(items.get(2));
-                    String library = items.get(3);
-
-                    Purchase purchase = new Purchase(idClient, idBook, library);
-                    purchase.setId(id);
-
-                    try {
-                        super.save(purchase);
-                    } catch (IllegalArgumentException | BookstoreException e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
+            for (Purchase purchase : CsvFileLoader.load(fileName, PurchaseFileRepository::purchaseFromRecord)) {
+                if (!findOne(purchase.getId()).isPresent())
+                    putEntity(purchase);
+            }
         }
         catch (IOException e)
         {
@@ -58,68 +74,124 @@ public class PurchaseFileRepository extends InMemoryRepository<Integer, Purchase
         }
     }
 
+    /**
+     * Turns a line of the CSV file into a purchase.
+     * @param line string containing the comma separated fields of a purchase
+     * @return an instance of class Purchase
+     */
+    protected static Purchase purchaseFromLine(String line) {
+        return purchaseFromRecord(CsvRecord.of(line));
+    }
+
+    /**
+     * Turns the fields of a line of the CSV file into a purchase.
+     * @param record the fields of a purchase
+     * @return an instance of class Purchase
+     */
+    static Purchase purchaseFromRecord(CsvRecord record) {
+        Purchase purchase = new Purchase(record.getInt(1), record.getInt(2), record.getString(3));
+        purchase.setId(record.getInt(0));
+        return purchase;
+    }
+
+    /**
+     * Turns a purchase into a line of the CSV file, without the line separator.
+     * @param purchase instance of class Purchase
+     * @return string containing the comma separated fields of the purchase
+     */
+    protected static String purchaseToLine(Purchase purchase) {
+        return purchase.getId() + "," + purchase.getClientId() + "," + purchase.getBookId() + "," + CsvRecord.quote(purchase.getLibrary());
+    }
+
+    /**
+     * Applies the operation log written since the last snapshot on top of the data read by loadData.
+     */
+    protected void replayLog() throws BookstoreException {
+        this.operationLog.replay(this::putEntity, this::removeEntity);
+    }
+
     /**
      * Saves all the data from the local repository in a CSV text file.
+     * The snapshot is written to a temporary file first, forced to disk and then moved over the old one, so a crash never
+     * leaves half a file behind, and the snapshot is on disk before the operation log it replaces is cleared.
      */
     protected void saveData() throws BookstoreException {
-        try (FileWriter fileWriter = new FileWriter(fileName, false))
+        Path path = Paths.get(fileName);
+        Path temporaryPath = Paths.get(fileName + ".tmp");
+
+        try (FileOutputStream fileStream = new FileOutputStream(temporaryPath.toFile());
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(fileStream, StandardCharsets.UTF_8)))
         {
-            super.entities.forEach((key, value) -> {
-                try {
-                    fileWriter.write(
-                            value.getId() + "," + value.getClientId() + "," + value.getBookId() + "," + value.getLibrary()+"\n");
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            });
+            for (Purchase purchase : super.entities.values()) {
+                writer.write(purchaseToLine(purchase));
+                writer.write('\n');
+            }
+            writer.flush();
+            fileStream.getChannel().force(false);
         }
         catch(IOException e)
         {
-            e.printStackTrace();
-        };
+            throw new BookstoreException(e.toString());
+        }
+
+        try
+        {
+            DurableFiles.replace(temporaryPath, path);
+        }
+        catch(IOException e)
+        {
+            throw new BookstoreException(e.toString());
+        }
     }
 
     /**
-     * Saves a purchase to the file repository
-     * @param purchase instance of class Purchase
-     * @return instance of Optional that could contain a purchase or null
-     * @throws domain.validators.ValidatorException if the purchase is not valid
+     * Records saved or updated purchases in the operation log; called while their stripes are locked.
+     * @param purchases the purchases that were saved or updated
      */
     @Override
-    public Optional<Purchase> save(Purchase purchase) throws BookstoreException {
-        Optional<Purchase> optionalPurchase = super.save(purchase);
-        if (optionalPurchase.isPresent())
-            return optionalPurchase;
-        saveData();
-        return Optional.empty();
+    protected void logSaved(List<Purchase> purchases) throws BookstoreException {
+        this.operationLog.enqueueSaved(purchases);
     }
 
     /**
-     * Deletes a purchase from the file repository
-     * @param id integer representing the id of a purchase
-     * @return instance of Optional that could contain a purchase or null
+     * Records deleted purchases in the operation log; called while their stripes are locked.
+     * @param ids the ids of the deleted purchases
      */
     @Override
-    public Optional<Purchase> delete(Integer id) throws BookstoreException {
-        Optional<Purchase> optionalPurchase = super.delete(id);
-        if (!optionalPurchase.isPresent())
-            return optionalPurchase;
-        saveData();
-        return optionalPurchase;
+    protected void logDeleted(List<Integer> ids) throws BookstoreException {
+        this.operationLog.enqueueDeleted(ids);
     }
 
     /**
-     * Updates a purchase from the file repository.
-     * @param purchase instance of class Purchase
-     * @return instance of Optional that could contain a Purchase or null
+     * Waits for the logged writes to be forced to disk.
      */
     @Override
-    public Optional<Purchase> update(Purchase purchase) throws BookstoreException {
-        Optional<Purchase> optionalPurchase = super.update(purchase);
-        if (!optionalPurchase.isPresent())
-            return optionalPurchase;
-        saveData();
-        return optionalPurchase;
+    protected void commit() throws BookstoreException {
+        this.operationLog.commit();
+    }
+
+    /**
+     * Compacts the operation log if it grew too long.
+     */
+    @Override
+    protected void committed() throws BookstoreException {
+        if (this.operationLog.needsCompaction())
+            compactIfNeeded();
     }
 
+    private synchronized void compactIfNeeded() throws BookstoreException {
+        if (this.operationLog.needsCompaction())
+            compact();
+    }
+
+    /**
+     * Writes a new snapshot of the CSV file and empties the operation log.
+     * The writes running meanwhile are not held back: the log is marked before the entities are read, so a write
+     * missing from the snapshot is logged after the mark and is kept in the log.
+     */
+    public synchronized void compact() throws BookstoreException {
+        long mark = this.operationLog.mark();
+        saveData();
+        this.operationLog.clearUpTo(mark);
+    }
 }
@@ -0,0 +1,36 @@
+package repository;
+
+import domain.Purchase;
+import domain.validators.BookstoreException;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class PurchaseSnapshotRepository extends MappedSnapshotRepository<Purchase> implements PurchaseRepository {
+    private static final List<MappedSnapshot.Column<Purchase>> COLUMNS = Arrays.asList(
+            MappedSnapshot.Column.integer(Purchase::getClientId),
+            MappedSnapshot.Column.integer(Purchase::getBookId),
+            MappedSnapshot.Column.string(Purchase::getLibrary));
+
+    /**
+     * Instantiates a new PurchaseSnapshotRepository.
+     *
+     * @param fileName string representing the path to the snapshot file where purchases are stored
+     * @param flusher  decides when the writes are forced to disk
+     */
+    public PurchaseSnapshotRepository(String fileName, GroupCommitFlusher flusher) throws BookstoreException {
+        super(fileName, COLUMNS,
+                row -> new Purchase(row.getInt(0), row.getInt(1), row.getString(2)),
+                PurchaseFileRepository::purchaseToLine, PurchaseFileRepository::purchaseFromLine, flusher);
+    }
+
+    /**
+     * Writes the snapshot file with the purchases of another repository, see MappedSnapshotRepository.importSnapshot.
+     *
+     * @param fileName string representing the path to the snapshot file where purchases are stored
+     * @param source   the repository the purchases are copied from
+     */
+    public static void importSnapshot(String fileName, Repository<Integer, Purchase> source) throws BookstoreException {
+        importSnapshot(fileName, source, COLUMNS);
+    }
+}
@@ -1,17 +1,12 @@
 package repository;
 
 import domain.validators.BookstoreException;
-import org.w3c.dom.*;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.File;
+import java.io.Flushable;
 import java.io.IOException;
-import java.util.stream.IntStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import domain.Client;
 import domain.validators.Validator;
 
@@ -19,33 +14,36 @@ import domain.Purchase;
 
 public class PurchaseXmlRepository extends PurchaseFileRepository
 {
+    /**
+     * Rewrites the XML file when the flusher asks for it.
+     */
+    private final Flushable snapshotWriter = () -> {
+        try {
+            saveData();
+        } catch (BookstoreException e) {
+            throw new IOException(e.getMessage());
+        }
+    };
+
     public PurchaseXmlRepository(Validator<Purchase> validator, String fileName) throws BookstoreException {
         super(validator, fileName);
     }
 
-    /**
-     * Gets the text from inside a tag name.
-     * @param parentElement instance of class Element
-     * @param tagName string
-     * @return the text contained in a tag name
-     */
-    private static String getTextFromTagName(Element parentElement, String tagName)
-    {
-        Node node = parentElement.getElementsByTagName(tagName).item(0);
-        return node.getTextContent();
+    public PurchaseXmlRepository(Validator<Purchase> validator, String fileName, GroupCommitFlusher flusher) throws BookstoreException {
+        super(validator, fileName, flusher);
     }
 
     /**
-     * Turns an instance of Element into an instance of Purchase.
-     * @param purchaseElement instance of class Element
+     * Turns the fields of a purchase element into an instance of Purchase.
+     * @param fields the text of every child element of the purchase element, by tag name
      * @return an instance of class Purchase created using the information contained by the element
      */
-    private static Purchase createPurchaseFromElement(Element purchaseElement)
+    private static Purchase createPurchaseFromFields(Map<String, String> fields)
     {
-        int id = Integer.parseInt(getTextFromTagName(purchaseElement, "id"));
-        int clientId = Integer.parseInt(getTextFromTagName(purchaseElement, "clientId"));
-        int bookId = Integer.parseInt(getTextFromTagName(purchaseElement, "bookId"));
-        String library = getTextFromTagName(purchaseElement, "library");
+        int id = Integer.parseInt(fields.get("id"));
+        int clientId = Integer.parseInt(fields.get("clientId"));
+        int bookId = Integer.parseInt(fields.get("bookId"));
+        String library = fields.get("library");
 
         Purchase newPurchase = new Purchase(clientId, bookId, library);
         newPurchase.setId(id);
@@ -54,101 +52,59 @@ public class PurchaseXmlRepository extends PurchaseFileRepository
     }
 
     /**
+     * Turns an instance of Purchase into the fields of its element.
+     * @param purchase instance of class Purchase
+     * @return the text of every child element of the purchase element, by tag name, in document order
+     */
+    private static Map<String, String> purchaseToFields(Purchase purchase)
+    {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("id", purchase.getId().toString());
+        fields.put("clientId", String.valueOf(purchase.getClientId()));
+        fields.put("bookId", String.valueOf(purchase.getBookId()));
+        fields.put("library", purchase.getLibrary());
+        return fields;
+    }
+
+    /**
+     * Streams the purchases from the XML file.
      * @throws BookstoreException if there is any XML file related exception
      */
     @Override
-    protected void loadData() throws BookstoreException{
-        try {
-            Document document = DocumentBuilderFactory
-                    .newInstance()
-                    .newDocumentBuilder()
-                    .parse(this.fileName);
-
-            Element root = document.getDocumentElement();
-
-            NodeList children = root.getChildNodes();
-
-            IntStream.range(0, children.getLength())
-                    .mapToObj(index -> children.item(index))
-                    .filter(node -> node instanceof Element)
-                    .map(node -> createPurchaseFromElement((Element) node))
-                    .forEach(purchase -> {
-                        try {
-                            super.save(purchase);
-                        } catch (BookstoreException e) {
-                            e.printStackTrace();
-                        }
-                    });
-        }
-        catch(ParserConfigurationException | IOException | SAXException exception)
-        {
-            throw new BookstoreException(exception.toString());
-        }
-
+    protected void loadData() throws BookstoreException {
+        new XmlRecordFile(this.fileName).read(fields -> putEntity(createPurchaseFromFields(fields)));
     }
 
     /**
-     * Appends a child node containing text to another node.
-     * @param document instance of class Document
-     * @param parentNode instance of class Node
-     * @param tagName string
-     * @param textContent string
+     * Streams all the entities to a XML file, one rewrite at a time
+     * @throws BookstoreException if there is any XML related exception
      */
-    private static void appendChildWithTextToNode(Document document, Node parentNode, String tagName, String textContent) {
-        Element element = document.createElement(tagName);
-        element.setTextContent(textContent);
-        parentNode.appendChild(element);
+    @Override
+    protected synchronized void saveData() throws BookstoreException {
+        new XmlRecordFile(this.fileName).write("purchases", "purchase", this.entities.values(), PurchaseXmlRepository::purchaseToFields);
     }
 
     /**
-     * Turns an instance of Purchase into an instance of Node
-     * @param purchase instance of class Purchase
-     * @param document instance of class Document
-     * @return instance of Node class representing a purchase
+     * The XML file is always rewritten as a whole, it is not journaled.
+     * @param purchases the purchases that were saved or updated
      */
-    private static Node purchaseToNode(Purchase purchase, Document document)
-    {
-        Element purchaseElement = document.createElement("purchase");
-
-        appendChildWithTextToNode(document, purchaseElement, "id", purchase.getId().toString());
-        appendChildWithTextToNode(document, purchaseElement, "clientId", String.valueOf(purchase.getClientId()));
-        appendChildWithTextToNode(document, purchaseElement, "bookId", String.valueOf(purchase.getBookId()));
-        appendChildWithTextToNode(document, purchaseElement, "library", purchase.getLibrary());
-
-        return purchaseElement;
+    @Override
+    protected void logSaved(List<Purchase> purchases) {
     }
 
     /**
-     * Saves all the entities in a XML file
-     * @throws BookstoreException if there is any XML related exception
+     * The XML file is always rewritten as a whole, it is not journaled.
+     * @param ids the ids of the deleted purchases
      */
     @Override
-    protected void saveData() throws BookstoreException {
-        try
-        {
-            Document document = DocumentBuilderFactory
-                    .newInstance()
-                    .newDocumentBuilder()
-                    .newDocument();
-
-            Element root = document.createElement("purchases");
-            document.appendChild(root);
-            this.entities.forEach((id, purchase) ->
-            {
-                Node purchaseNode = purchaseToNode(purchase, document);
-                root.appendChild(purchaseNode);
-            });
-
-            Transformer transformer = TransformerFactory.newInstance().newTransformer();
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+    protected void logDeleted(List<Integer> ids) {
+    }
 
-            transformer.transform(new DOMSource(document),
-                    new StreamResult(new File(this.fileName)));
-        }
-        catch(TransformerException | ParserConfigurationException exception)
-        {
-            throw new BookstoreException(exception.toString());
-        }
+    /**
+     * Rewrites the XML file; the rewrites committed together are done once.
+     */
+    @Override
+    protected void commit() throws BookstoreException {
+        this.flusher.commit(this.snapshotWriter);
     }
 }
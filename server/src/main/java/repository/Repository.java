@@ -5,6 +5,9 @@ import domain.validators.BookstoreException;
 import domain.validators.ValidatorException;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface Repository<ID, T extends BaseEntity<ID>> {
@@ -62,4 +65,122 @@ public interface Repository<ID, T extends BaseEntity<ID>> {
      *             if the entity is not valid.
      */
     Optional<T> update(T entity) throws BookstoreException;
+
+    /**
+     * Updates the given entity and returns the state it had before the update.
+     *
+     * @param entity
+     *            must not be null.
+     * @return an {@code Optional} - null if there is no entity with the same id, otherwise the entity as it was before
+     *         the update.
+     * @throws IllegalArgumentException
+     *             if the given entity is null.
+     */
+    default Optional<T> replace(T entity) throws BookstoreException {
+        Optional<T> previous = findOne(entity.getId());
+        if (previous.isPresent())
+            update(entity);
+        return previous;
+    }
+
+    /**
+     * Saves all the given entities.
+     *
+     * @param entities
+     *            must not be null.
+     * @return a list containing one {@code Optional} for every entity, in the same order - null if the entity was saved
+     *         otherwise (e.g. id already exists) the entity.
+     * @throws IllegalArgumentException
+     *             if one of the given entities is null.
+     */
+    default List<Optional<T>> saveAll(List<T> entities) throws BookstoreException, SQLException {
+        List<Optional<T>> results = new ArrayList<>();
+        for (T entity : entities)
+            results.add(save(entity));
+        return results;
+    }
+
+    /**
+     * Updates all the given entities.
+     *
+     * @param entities
+     *            must not be null.
+     * @return a list containing one {@code Optional} for every entity, in the same order, with the same meaning as
+     *         the result of {@link #update(BaseEntity)}.
+     * @throws IllegalArgumentException
+     *             if one of the given entities is null.
+     */
+    default List<Optional<T>> updateAll(List<T> entities) throws BookstoreException {
+        List<Optional<T>> results = new ArrayList<>();
+        for (T entity : entities)
+            results.add(update(entity));
+        return results;
+    }
+
+    /**
+     * Saves all the given entities, replacing the entities whose id already exists.
+     *
+     * @param entities
+     *            must not be null.
+     * @return a list containing one {@code Optional} for every entity, in the same order - null if the entity was inserted,
+     *         otherwise (e.g. id already exists) the entity, which replaced the one with its id.
+     * @throws IllegalArgumentException
+     *             if one of the given entities is null.
+     */
+    default List<Optional<T>> upsertAll(List<T> entities) throws BookstoreException, SQLException {
+        List<Optional<T>> results = new ArrayList<>();
+        for (T entity : entities) {
+            Optional<T> existingEntity = save(entity);
+            if (existingEntity.isPresent())
+                update(entity);
+            results.add(existingEntity);
+        }
+        return results;
+    }
+
+    /**
+     * Find the entities with the given ids.
+     *
+     * @param ids
+     *            must not be null.
+     * @return the entities that exist, ids without an entity are skipped.
+     */
+    default Iterable<T> findMany(Collection<ID> ids) throws BookstoreException {
+        List<T> found = new ArrayList<>();
+        for (ID id : ids)
+            findOne(id).ifPresent(found::add);
+        return found;
+    }
+
+    /**
+     * Find the entities matched by the given filter.
+     *
+     * @param filter
+     *            must not be null.
+     * @return the entities matched by the filter.
+     */
+    default Iterable<T> findBy(FieldFilter<T> filter) throws BookstoreException {
+        List<T> found = new ArrayList<>();
+        for (T entity : findAll()) {
+            if (filter.test(entity))
+                found.add(entity);
+        }
+        return found;
+    }
+
+    /**
+     * Removes all the entities matched by the given filter.
+     *
+     * @param filter
+     *            must not be null.
+     * @return the removed entities.
+     */
+    default List<T> deleteAll(FieldFilter<T> filter) throws BookstoreException {
+        List<T> deleted = new ArrayList<>();
+        for (T entity : findAll()) {
+            if (filter.test(entity))
+                delete(entity.getId()).ifPresent(deleted::add);
+        }
+        return deleted;
+    }
 }
@@ -0,0 +1,27 @@
+package repository;
+
+import domain.BaseEntity;
+
+/**
+ * A repository adding a behaviour to another repository and forwarding the calls to it.
+ *
+ * @param <ID> the type of the ids
+ * @param <T>  the type of the entities
+ */
+public interface RepositoryDecorator<ID, T extends BaseEntity<ID>> extends Repository<ID, T> {
+    /**
+     * Returns the decorated repository.
+     */
+    Repository<ID, T> getDelegate();
+
+    /**
+     * Returns the repository at the end of a chain of decorators, or the repository itself if it is not a decorator, so
+     * the optional interfaces of a storage (versions, text search, analytics) can still be found behind its decorators.
+     */
+    @SuppressWarnings("unchecked")
+    static <ID, T extends BaseEntity<ID>> Repository<ID, T> unwrap(Repository<ID, T> repository) {
+        while (repository instanceof RepositoryDecorator)
+            repository = ((RepositoryDecorator<ID, T>) repository).getDelegate();
+        return repository;
+    }
+}
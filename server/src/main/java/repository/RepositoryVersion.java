@@ -0,0 +1,79 @@
+package repository;
+
+import domain.BaseEntity;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * The type RepositoryVersion.
+ * An immutable state of the entities of a VersionedRepository, as it was after one of its writes.
+ * Reading it takes no lock and never sees the writes made after it was published, so a report can read several
+ * times from the same version and get answers consistent with each other.
+ *
+ * @param <ID> the type of the ids
+ * @param <T>  the type of the entities
+ */
+public class RepositoryVersion<ID, T extends BaseEntity<ID>>
+{
+    private final long number;
+    private final PersistentHashMap<ID, T> entities;
+
+    RepositoryVersion(long number, PersistentHashMap<ID, T> entities)
+    {
+        this.number = number;
+        this.entities = entities;
+    }
+
+    /**
+     * Returns a version with the given entities saved or deleted, in this order.
+     * @param savedEntities the entities that were saved or updated
+     * @param deletedIds the ids of the entities that were deleted
+     */
+    RepositoryVersion<ID, T> with(Collection<T> savedEntities, Collection<ID> deletedIds) {
+        PersistentHashMap<ID, T> newEntities = entities;
+        for (T entity : savedEntities)
+            newEntities = newEntities.plus(entity);
+        for (ID id : deletedIds)
+            newEntities = newEntities.minus(id);
+        return newEntities == entities ? this : new RepositoryVersion<>(number + 1, newEntities);
+    }
+
+    /**
+     * Returns the number of the version, increasing with every write that changed the repository.
+     */
+    public long getNumber() {
+        return number;
+    }
+
+    /**
+     * Returns the number of entities.
+     */
+    public int size() {
+        return entities.size();
+    }
+
+    /**
+     * Find the entity with the given {@code id}.
+     *
+     * @param id
+     *            must be not null.
+     * @return an {@code Optional} encapsulating the entity with the given id.
+     * @throws IllegalArgumentException
+     *             if the given id is null.
+     */
+    public Optional<T> findOne(ID id) {
+        if (id == null) {
+            throw new IllegalArgumentException("id must not be null");
+        }
+        return Optional.ofNullable(entities.get(id));
+    }
+
+    /**
+     *
+     * @return all entities of the version, without copying them.
+     */
+    public Iterable<T> findAll() {
+        return entities;
+    }
+}
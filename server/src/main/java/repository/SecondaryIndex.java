@@ -0,0 +1,90 @@
+package repository;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The type SecondaryIndex.
+ * A hash multimap from the key extracted from every entity to the ids of the entities having that key,
+ * used by the in memory repositories to answer lookups by a field other than the id without a full scan.
+ * The key every id was indexed under is remembered, so an entity can be moved or removed even if it was changed in place.
+ * Entities with different ids can be indexed and looked up concurrently; the changes of a single id must not run concurrently.
+ *
+ * @param <ID> the type of the ids
+ * @param <T>  the type of the indexed entities
+ */
+class SecondaryIndex<ID, T>
+{
+    /**
+     * Stands for the null key, which the concurrent maps cannot hold.
+     */
+    private static final Object NULL_KEY = new Object();
+
+    private Function<T, ?> keyExtractor;
+    private Map<Object, Set<ID>> idsByKey;
+    private Map<ID, Object> keyById;
+
+    /**
+     * Instantiates a new, empty SecondaryIndex.
+     *
+     * @param keyExtractor reads the key of an entity
+     */
+    SecondaryIndex(Function<T, ?> keyExtractor)
+    {
+        this.keyExtractor = keyExtractor;
+        this.idsByKey = new ConcurrentHashMap<>();
+        this.keyById = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Indexes an entity under its current key, replacing the key it was indexed under before, if any.
+     * @param id the id of the entity
+     * @param entity must not be null
+     */
+    void put(ID id, T entity) {
+        Object key = maskNull(keyExtractor.apply(entity));
+        if (keyById.containsKey(id)) {
+            if (Objects.equals(keyById.get(id), key))
+                return;
+            remove(id);
+        }
+        keyById.put(id, key);
+        idsByKey.compute(key, (ignored, ids) -> {
+            if (ids == null)
+                ids = ConcurrentHashMap.newKeySet();
+            ids.add(id);
+            return ids;
+        });
+    }
+
+    /**
+     * Removes an entity from the index.
+     * @param id the id of the entity
+     */
+    void remove(ID id) {
+        if (!keyById.containsKey(id))
+            return;
+        Object key = keyById.remove(id);
+        idsByKey.computeIfPresent(key, (ignored, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /**
+     * Returns the ids of the entities having a certain key.
+     * @param key the key, may be null
+     * @return an unmodifiable view of the ids, empty if there are none
+     */
+    Set<ID> get(Object key) {
+        return Collections.unmodifiableSet(idsByKey.getOrDefault(maskNull(key), Collections.emptySet()));
+    }
+
+    private static Object maskNull(Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+}
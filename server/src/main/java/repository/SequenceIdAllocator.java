@@ -0,0 +1,131 @@
+package repository;
+
+import domain.validators.BookstoreException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcOperations;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The type SequenceIdAllocator.
+ * Hands out ids from a PostgreSQL sequence, so concurrent servers sharing the database never get the same id.
+ * The sequence is created on first use, and every server moves it past the biggest id already in the table when it
+ * starts using it.
+ */
+public class SequenceIdAllocator implements IdAllocator
+{
+    @Autowired
+    private JdbcOperations jdbcOperations;
+
+    private String table;
+    private String sequence;
+    private volatile boolean initialized;
+
+    /**
+     * Instantiates a new SequenceIdAllocator for the ids of a table.
+     *
+     * @param table the name of the table, whose sequence is named table_id_allocator_seq; not table_id_seq, which is
+     *              the name PostgreSQL gives to the own sequence of a serial id column
+     */
+    public SequenceIdAllocator(String table)
+    {
+        this.table = table;
+        this.sequence = table + "_id_allocator_seq";
+        this.initialized = false;
+    }
+
+    /**
+     * Creates the sequence if it does not exist yet, then moves it past the biggest id of the table, so ids inserted
+     * without the sequence (e.g. by a bulk load or a restore) are not handed out again. The sequence is only ever moved
+     * forward: a sequence that may already have handed out ids is never wound back.
+     * The lookup, the creation and the move run in one transaction holding an advisory lock named after the sequence,
+     * so a server starting at the same time waits for them. The sequence is looked up with to_regclass, which follows
+     * the search_path like the unqualified name used by nextval does.
+     */
+    private synchronized void initialize() throws BookstoreException {
+        if (initialized)
+            return;
+
+        try
+        {
+            jdbcOperations.execute((ConnectionCallback<Void>) connection -> {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try {
+                    try (PreparedStatement lock = connection.prepareStatement("select pg_advisory_xact_lock(hashtext(?))")) {
+                        lock.setString(1, sequence);
+                        lock.execute();
+                    }
+                    boolean exists;
+                    try (PreparedStatement query = connection.prepareStatement("select to_regclass(?) is not null")) {
+                        query.setString(1, sequence);
+                        try (ResultSet resultSet = query.executeQuery()) {
+                            exists = resultSet.next() && resultSet.getBoolean(1);
+                        }
+                    }
+                    try (Statement statement = connection.createStatement()) {
+                        if (!exists)
+                            statement.execute("create sequence " + sequence);
+                        // the next id becomes the greater of the next id of the sequence and max(id) + 1
+                        statement.execute("select setval('" + sequence + "', greatest(last_value, max_id), is_called or max_id >= last_value) " +
+                                "from " + sequence + ", (select coalesce(max(id), 0) as max_id from " + table + ") ids");
+                    }
+                    connection.commit();
+                } catch (SQLException | RuntimeException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+                return null;
+            });
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+        initialized = true;
+    }
+
+    @Override
+    public Integer nextId() throws BookstoreException {
+        initialize();
+        try
+        {
+            return jdbcOperations.queryForObject("select nextval('" + sequence + "')::int", Integer.class);
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+
+    /**
+     * Reserves all the ids in a single round trip.
+     */
+    @Override
+    public List<Integer> nextIds(int count) throws BookstoreException {
+        if (count < 0)
+            throw new IllegalArgumentException("count must not be negative");
+        if (count == 0)
+            return Collections.emptyList();
+
+        initialize();
+        try
+        {
+            return jdbcOperations.queryForList(
+                    "select nextval('" + sequence + "')::int from generate_series(1, ?) order by 1", Integer.class, count);
+        }
+        catch (DataAccessException databaseException)
+        {
+            throw new BookstoreException(databaseException.toString());
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package repository;
+
+import domain.validators.BookstoreException;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Interface for repositories that can run the substring searches over the text fields of their entities themselves.
+ *
+ * @param <T> the type of the searched entities
+ */
+public interface TextSearchRepository<T> {
+    /**
+     * Find the entities having at least one text field that contains the given text.
+     *
+     * @param text
+     *            must not be null.
+     * @param caseInsensitive
+     *            whether upper and lower case letters match each other.
+     * @return the matching entities.
+     */
+    List<T> search(String text, boolean caseInsensitive) throws BookstoreException;
+
+    /**
+     * Tells why the indexes backing the searches could not be created, if they could not.
+     * The searches still work without them, only slower.
+     *
+     * @return the reason, or empty if the indexes exist or were not created yet.
+     */
+    Optional<String> getTextIndexFailure();
+
+    /**
+     * Turns a text into a LIKE pattern matching every string that contains it, escaping the wildcards with a backslash.
+     *
+     * @param text
+     *            must not be null.
+     * @return the pattern.
+     */
+    static String containsPattern(String text) {
+        return "%" + text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+}
@@ -0,0 +1,17 @@
+package repository;
+
+import domain.BaseEntity;
+
+/**
+ * A repository publishing an immutable version of its entities after every write, so its readers never wait for its
+ * writers.
+ *
+ * @param <ID> the type of the ids
+ * @param <T>  the type of the entities
+ */
+public interface VersionedRepository<ID, T extends BaseEntity<ID>> extends Repository<ID, T> {
+    /**
+     * Returns the latest published version, which stays readable and unchanged for as long as it is referenced.
+     */
+    RepositoryVersion<ID, T> currentVersion();
+}
@@ -0,0 +1,149 @@
+package repository;
+
+import domain.validators.BookstoreException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The type XmlRecordFile.
+ * Reads and writes the files of the XML repositories, shaped as &lt;root&gt;&lt;record&gt;&lt;field&gt;text&lt;/field&gt;...&lt;/record&gt;...&lt;/root&gt;,
+ * with StAX, so only one record is held in memory at a time whatever the size of the file.
+ * The StAX factories are looked up once and shared, they are thread safe once configured.
+ */
+class XmlRecordFile
+{
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+    private static final String INDENT = "    ";
+
+    private String fileName;
+
+    /**
+     * Instantiates a new XmlRecordFile.
+     *
+     * @param fileName string representing the path to the XML file
+     */
+    XmlRecordFile(String fileName)
+    {
+        this.fileName = fileName;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * Streams the records of the file to a consumer.
+     * @param recordConsumer receives the text of every field of a record, by tag name; the map is reused for the next record
+     * @throws BookstoreException if the file cannot be read or is not well formed
+     */
+    void read(Consumer<Map<String, String>> recordConsumer) throws BookstoreException {
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(Paths.get(fileName))))
+        {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+            try {
+                Map<String, String> fields = new HashMap<>();
+                int depth = 0;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        if (depth == 3) {
+                            fields.put(reader.getLocalName(), reader.getElementText());
+                            depth--;
+                        }
+                    }
+                    else if (event == XMLStreamConstants.END_ELEMENT) {
+                        if (depth == 2) {
+                            recordConsumer.accept(fields);
+                            fields.clear();
+                        }
+                        depth--;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        catch (IOException | XMLStreamException exception)
+        {
+            throw new BookstoreException(exception.toString());
+        }
+    }
+
+    /**
+     * Writes all the given entities to the file, replacing it atomically once the new content is forced to disk.
+     * @param rootTag the tag of the root element
+     * @param recordTag the tag of the element of every entity
+     * @param entities the entities to write
+     * @param fields returns the text of every field of an entity, by tag name, in the order they are written
+     * @throws BookstoreException if the file cannot be written
+     */
+    <T> void write(String rootTag, String recordTag, Iterable<T> entities, Function<T, Map<String, String>> fields) throws BookstoreException {
+        Path path = Paths.get(fileName);
+        Path temporaryPath = Paths.get(fileName + ".tmp");
+
+        try (FileOutputStream fileStream = new FileOutputStream(temporaryPath.toFile());
+             OutputStream outputStream = new BufferedOutputStream(fileStream))
+        {
+            XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(outputStream, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeCharacters("\n");
+            writer.writeStartElement(rootTag);
+            for (T entity : entities) {
+                writer.writeCharacters("\n" + INDENT);
+                writer.writeStartElement(recordTag);
+                for (Map.Entry<String, String> field : fields.apply(entity).entrySet()) {
+                    writer.writeCharacters("\n" + INDENT + INDENT);
+                    writer.writeStartElement(field.getKey());
+                    writer.writeCharacters(field.getValue());
+                    writer.writeEndElement();
+                }
+                writer.writeCharacters("\n" + INDENT);
+                writer.writeEndElement();
+            }
+            writer.writeCharacters("\n");
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.writeCharacters("\n");
+            writer.close();
+            outputStream.flush();
+            fileStream.getChannel().force(false);
+        }
+        catch (IOException | XMLStreamException exception)
+        {
+            throw new BookstoreException(exception.toString());
+        }
+
+        try
+        {
+            DurableFiles.replace(temporaryPath, path);
+        }
+        catch (IOException exception)
+        {
+            throw new BookstoreException(exception.toString());
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package transport;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The type BinaryServiceExporter.
+ * Exports services through the binary transport, as an alternative to RmiServiceExporter: a single selector thread
+ * accepts the connections, reads the request frames and writes the response frames of every connection, while the
+ * calls themselves run on a pool of worker threads. A client can therefore send many calls over one connection
+ * without waiting for the previous ones, and a slow call does not hold up the other calls of its connection.
+ * With the VIRTUAL execution mode every call gets its own virtual thread, so the calls waiting on the database do not
+ * bound the number of calls in progress.
+ * A connection with maxCallsInFlight calls in progress is not read until one of them is answered, so a client sending
+ * calls faster than they are answered is held back by TCP instead of queueing an unbounded number of calls.
+ * If the selector fails, it is replaced by a new one watching the same connections; if that fails too, the exporter
+ * stops and closes every connection, so the clients see their calls fail instead of hanging.
+ * See BinaryProtocol for the frames.
+ */
+public class BinaryServiceExporter implements InitializingBean, DisposableBean
+{
+    /**
+     * The size of the read buffer of a connection; a larger frame gets a buffer of its own size until it is read.
+     */
+    static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_FAILED_SELECTS = 3;
+    private static final int DEFAULT_MAX_CALLS_IN_FLIGHT = 64;
+
+    private int port;
+    private int workerThreads;
+    private ExecutionMode executionMode = ExecutionMode.VIRTUAL;
+    private int maxCallsInFlight = DEFAULT_MAX_CALLS_IN_FLIGHT;
+    private Map<String, Map<String, Method>> methodsByService = new HashMap<>();
+    private Map<String, Object> services = new HashMap<>();
+
+    private ServerSocketChannel serverChannel;
+    private volatile Selector selector;
+    private ExecutorService workers;
+    private Thread selectorThread;
+    private Queue<Connection> connectionsToFlush = new ConcurrentLinkedQueue<>();
+    private volatile boolean running;
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Sets the number of threads the calls run on in the PLATFORM execution mode.
+     */
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * Sets the number of calls of a connection that may be in progress at once, 64 by default.
+     */
+    public void setMaxCallsInFlight(int maxCallsInFlight) {
+        if (maxCallsInFlight <= 0)
+            throw new IllegalArgumentException("maxCallsInFlight must be positive");
+        this.maxCallsInFlight = maxCallsInFlight;
+    }
+
+    /**
+     * Returns the port the exporter listens on, the one chosen by the system if the port was set to 0.
+     */
+    public int getLocalPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Exports a service; only the methods of its interface can be called.
+     * @param serviceName the name the clients call the service by
+     * @param serviceInterface the interface of the service
+     * @param service the implementation of the interface
+     */
+    public void addService(String serviceName, Class<?> serviceInterface, Object service) {
+        Map<String, Method> methods = new HashMap<>();
+        for (Method method : serviceInterface.getMethods())
+            methods.put(BinaryProtocol.methodKey(method), method);
+        methodsByService.put(serviceName, methods);
+        services.put(serviceName, service);
+    }
+
+    /**
+     * Starts listening on the port.
+     * @throws IOException if the port cannot be bound
+     */
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        workers = executionMode.newExecutor(workerThreads, "binary-transport-worker");
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        // not a daemon, so the server keeps running while it listens, as it does with the RMI registry
+        selectorThread = new Thread(this::runSelector, "binary-transport-selector");
+        selectorThread.start();
+    }
+
+    /**
+     * Stops listening and closes every connection; the calls in progress are not answered.
+     */
+    @Override
+    public void destroy() throws IOException, InterruptedException {
+        running = false;
+        selector.wakeup();
+        selectorThread.join();
+        workers.shutdownNow();
+    }
+
+    /**
+     * The loop of the selector thread. A selector failing again right after it was replaced ends the loop, and the
+     * exporter with it.
+     */
+    private void runSelector() {
+        int failedSelects = 0;
+        try {
+            while (running) {
+                try {
+                    selector.select();
+                    failedSelects = 0;
+                } catch (IOException e) {
+                    if (++failedSelects > MAX_FAILED_SELECTS)
+                        throw e;
+                    replaceSelector();
+                    continue;
+                }
+                handleSelectedKeys();
+            }
+        } catch (IOException e) {
+            // the selector cannot be replaced, the exporter stops
+        } finally {
+            running = false;
+            closeAll();
+        }
+    }
+
+    /**
+     * Registers the listening channel and every open connection with a new selector, and closes the failed one.
+     * @throws IOException if the new selector cannot be opened or a channel cannot be registered
+     */
+    private void replaceSelector() throws IOException {
+        Selector failedSelector = selector;
+        Selector newSelector = Selector.open();
+        try {
+            for (SelectionKey key : failedSelector.keys()) {
+                if (!key.isValid() || !key.channel().isOpen())
+                    continue;
+                SelectionKey newKey = key.channel().register(newSelector, key.interestOps(), key.attachment());
+                if (key.attachment() != null)
+                    ((Connection) key.attachment()).key = newKey;
+            }
+        } catch (IOException | RuntimeException e) {
+            newSelector.close();
+            throw e;
+        }
+        selector = newSelector;
+        try {
+            failedSelector.close();
+        } catch (IOException e) {
+            // the channels are registered with the new selector already
+        }
+    }
+
+    /**
+     * Closes the listening channel, every connection and the selector, once the selector loop has ended.
+     */
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                // the channel is dropped anyway
+            }
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            // nothing is listening any more
+        }
+    }
+
+    /**
+     * Writes the queued responses and resumes the reading of the connections they made room for, then accepts, reads
+     * and writes on the channels that are ready.
+     */
+    private void handleSelectedKeys() {
+        Connection connection;
+        while ((connection = connectionsToFlush.poll()) != null) {
+            connection.flush();
+            connection.resumeReading();
+        }
+
+        for (SelectionKey key : selector.selectedKeys()) {
+            if (!key.isValid())
+                continue;
+            if (key.isAcceptable())
+                accept();
+            else {
+                Connection keyConnection = (Connection) key.attachment();
+                if (key.isReadable())
+                    keyConnection.read();
+                if (key.isValid() && key.isWritable())
+                    keyConnection.flush();
+            }
+        }
+        selector.selectedKeys().clear();
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null)
+                return;
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        } catch (IOException e) {
+            // the client sees its connection dropped and can connect again
+        }
+    }
+
+    /**
+     * Runs a call on a worker thread and queues its response.
+     */
+    private void call(Connection connection, byte[] message) {
+        long callId = 0;
+        byte[] response;
+        try {
+            callId = BinaryProtocol.callIdOf(message);
+            BinaryProtocol.Request request = BinaryProtocol.decodeRequest(message);
+            Map<String, Method> methods = methodsByService.get(request.getServiceName());
+            if (methods == null)
+                throw new IllegalArgumentException("unknown service " + request.getServiceName());
+            Method method = methods.get(request.getMethodKey());
+            if (method == null)
+                throw new IllegalArgumentException("unknown method " + request.getMethodKey() + " of " + request.getServiceName());
+
+            try {
+                Object result = method.invoke(services.get(request.getServiceName()), request.getArguments());
+                response = BinaryProtocol.encodeResult(callId, result);
+            } catch (InvocationTargetException e) {
+                response = BinaryProtocol.encodeException(callId, e.getCause());
+            }
+        } catch (Exception e) {
+            try {
+                response = BinaryProtocol.encodeException(callId, new IllegalStateException(e.toString()));
+            } catch (IOException encodingException) {
+                connection.close();
+                return;
+            }
+        }
+        connection.send(response);
+    }
+
+    /**
+     * The state of a client connection; read and flushed by the selector thread only.
+     */
+    private class Connection
+    {
+        private SocketChannel channel;
+        private volatile SelectionKey key;
+        private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private Queue<ByteBuffer> pendingFrames = new ConcurrentLinkedQueue<>();
+        private AtomicInteger callsInFlight = new AtomicInteger();
+        private boolean readingPaused;
+
+        Connection(SocketChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        /**
+         * Reads what arrived and hands the complete frames to the workers.
+         */
+        void read() {
+            try {
+                if (channel.read(readBuffer) < 0) {
+                    close();
+                    return;
+                }
+                dispatchFrames();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * Reads the frames already received once a call in progress was answered, if the reading was paused.
+         */
+        void resumeReading() {
+            if (!readingPaused || !key.isValid() || callsInFlight.get() >= maxCallsInFlight)
+                return;
+            readingPaused = false;
+            try {
+                dispatchFrames();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * Hands every complete frame of the read buffer to a worker, until maxCallsInFlight calls are in progress; the
+         * channel is then no longer read, and the remaining frames stay in the buffer, until resumeReading.
+         * A buffer grown for a large frame is given up once the frame is read, so an idle connection keeps only
+         * READ_BUFFER_SIZE bytes.
+         * @throws IOException if a frame has an invalid length
+         */
+        private void dispatchFrames() throws IOException {
+            readBuffer.flip();
+            while (readBuffer.remaining() >= 4) {
+                if (callsInFlight.get() >= maxCallsInFlight) {
+                    readingPaused = true;
+                    break;
+                }
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length < 8 || length > BinaryProtocol.MAX_FRAME_LENGTH)
+                    throw new IOException("invalid frame length " + length);
+                if (readBuffer.remaining() < 4 + length) {
+                    if (readBuffer.capacity() < 4 + length) {
+                        ByteBuffer largerBuffer = ByteBuffer.allocate(4 + length);
+                        largerBuffer.put(readBuffer);
+                        readBuffer = largerBuffer;
+                        return;
+                    }
+                    break;
+                }
+                byte[] message = new byte[length];
+                readBuffer.position(readBuffer.position() + 4);
+                readBuffer.get(message);
+                callsInFlight.incrementAndGet();
+                workers.execute(() -> call(this, message));
+            }
+            if (readBuffer.capacity() > READ_BUFFER_SIZE && readBuffer.remaining() <= READ_BUFFER_SIZE) {
+                ByteBuffer smallerBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+                smallerBuffer.put(readBuffer);
+                readBuffer = smallerBuffer;
+            }
+            else
+                readBuffer.compact();
+            if (readingPaused)
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            else
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+
+        /**
+         * Queues the response frame of a call, the selector thread writes it.
+         */
+        void send(byte[] frame) {
+            callsInFlight.decrementAndGet();
+            pendingFrames.add(ByteBuffer.wrap(frame));
+            connectionsToFlush.add(this);
+            selector.wakeup();
+        }
+
+        /**
+         * Writes the queued frames until the socket is full, then waits for it to be writable again.
+         */
+        void flush() {
+            if (!key.isValid())
+                return;
+            try {
+                ByteBuffer frame;
+                while ((frame = pendingFrames.peek()) != null) {
+                    channel.write(frame);
+                    if (frame.hasRemaining()) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    pendingFrames.poll();
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // the connection is dropped anyway
+            }
+        }
+    }
+}
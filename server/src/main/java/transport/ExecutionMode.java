@@ -0,0 +1,39 @@
+package transport;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * What the calls received by the server run on.
+ */
+public enum ExecutionMode {
+    /**
+     * A fixed pool of platform threads: at most as many calls run at once as there are threads, the others wait for one
+     * of them in the order they arrived.
+     */
+    PLATFORM,
+    /**
+     * A new virtual thread for every call, so a call blocked on the database holds no platform thread and the number of
+     * calls in progress is not bounded by a pool. This is the default.
+     */
+    VIRTUAL;
+
+    /**
+     * Returns a new executor for the calls.
+     * @param platformThreads the number of threads of the PLATFORM pool
+     * @param threadName the prefix of the names of the PLATFORM threads
+     */
+    public ExecutorService newExecutor(int platformThreads, String threadName) {
+        if (this == VIRTUAL)
+            return Executors.newVirtualThreadPerTaskExecutor();
+        if (platformThreads <= 0)
+            throw new IllegalArgumentException("platformThreads must be positive");
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(platformThreads, runnable -> {
+            Thread thread = new Thread(runnable, threadName + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
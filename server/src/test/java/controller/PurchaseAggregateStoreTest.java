@@ -0,0 +1,160 @@
+package controller;
+
+import domain.Book;
+import domain.Purchase;
+import org.junit.Before;
+import org.junit.Test;
+import repository.InMemoryRepository;
+import repository.Repository;
+import service.BookRankingMetric;
+import service.ClientRankingMetric;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class PurchaseAggregateStoreTest
+{
+    private static final double DELTA = 1e-9;
+
+    private Repository<Integer, Book> bookRepository;
+    private Repository<Integer, Purchase> purchaseRepository;
+    private PurchaseAggregateStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        bookRepository = new InMemoryRepository<>();
+        purchaseRepository = new InMemoryRepository<>();
+        store = new PurchaseAggregateStore(bookRepository, purchaseRepository);
+    }
+
+    private static Book book(int id, float price) {
+        Book book = new Book("title " + id, "author", "publisher", 2000, price);
+        book.setId(id);
+        return book;
+    }
+
+    private static Purchase purchase(int id, int clientId, int bookId) {
+        Purchase purchase = new Purchase(clientId, bookId, "library");
+        purchase.setId(id);
+        return purchase;
+    }
+
+    private void saveBook(Book book) throws Exception {
+        bookRepository.save(book);
+        store.bookSaved(book);
+    }
+
+    private void savePurchase(Purchase purchase) throws Exception {
+        purchaseRepository.save(purchase);
+        store.purchaseSaved(purchase);
+    }
+
+    private static Map<Integer, Double> clientScores(PurchaseAggregateStore store, ClientRankingMetric metric) throws Exception {
+        Map<Integer, Double> scores = new HashMap<>();
+        store.scoreClients(metric, scores::put);
+        return scores;
+    }
+
+    private static Map<Integer, Double> bookScores(PurchaseAggregateStore store, BookRankingMetric metric) throws Exception {
+        Map<Integer, Double> scores = new HashMap<>();
+        store.scoreBooks(metric, scores::put);
+        return scores;
+    }
+
+    @Test
+    public void theAggregatesAreBuiltFromTheRepositoriesOnTheFirstRead() throws Exception {
+        bookRepository.save(book(1, 10));
+        bookRepository.save(book(2, 2.5f));
+        purchaseRepository.save(purchase(1, 7, 1));
+        purchaseRepository.save(purchase(2, 7, 2));
+        purchaseRepository.save(purchase(3, 8, 2));
+
+        assertEquals(12.5, store.getMoneySpent(7), DELTA);
+        assertEquals(2.5, store.getMoneySpent(8), DELTA);
+        assertEquals(0.0, store.getMoneySpent(9), DELTA);
+        assertEquals(1, store.getSales(1));
+        assertEquals(2, store.getSales(2));
+    }
+
+    @Test
+    public void theWritesAreAppliedOnceTheAggregatesAreBuilt() throws Exception {
+        saveBook(book(1, 10));
+        saveBook(book(2, 4));
+        savePurchase(purchase(1, 7, 1));
+        assertEquals(10.0, store.getMoneySpent(7), DELTA);
+
+        savePurchase(purchase(2, 7, 2));
+        savePurchase(purchase(3, 8, 2));
+        assertEquals(14.0, store.getMoneySpent(7), DELTA);
+        assertEquals(2, store.getSales(2));
+
+        Book cheaperBook = book(2, 1);
+        Optional<Book> previousBook = bookRepository.replace(cheaperBook);
+        store.bookReplaced(previousBook.get(), cheaperBook);
+        assertEquals(11.0, store.getMoneySpent(7), DELTA);
+        assertEquals(1.0, store.getMoneySpent(8), DELTA);
+
+        Purchase movedPurchase = purchase(1, 8, 1);
+        Optional<Purchase> previousPurchase = purchaseRepository.replace(movedPurchase);
+        store.purchaseReplaced(previousPurchase.get(), movedPurchase);
+        assertEquals(1.0, store.getMoneySpent(7), DELTA);
+        assertEquals(11.0, store.getMoneySpent(8), DELTA);
+
+        purchaseRepository.delete(2);
+        store.purchaseDeleted(2);
+        assertEquals(0.0, store.getMoneySpent(7), DELTA);
+        assertEquals(1, store.getSales(2));
+
+        bookRepository.delete(1);
+        store.bookDeleted(1);
+        assertEquals(1.0, store.getMoneySpent(8), DELTA);
+    }
+
+    @Test
+    public void theIncrementalAggregatesMatchTheOnesRebuiltFromTheRepositories() throws Exception {
+        Random random = new Random(42);
+        for (int bookId = 1; bookId <= 20; bookId++)
+            saveBook(book(bookId, 1 + random.nextInt(50)));
+        store.getSales(1);
+
+        int nextPurchaseId = 1;
+        for (int step = 0; step < 2000; step++) {
+            int operation = random.nextInt(10);
+            if (operation < 5)
+                savePurchase(purchase(nextPurchaseId++, random.nextInt(30), 1 + random.nextInt(20)));
+            else if (operation < 7) {
+                int purchaseId = 1 + random.nextInt(nextPurchaseId);
+                if (purchaseRepository.delete(purchaseId).isPresent())
+                    store.purchaseDeleted(purchaseId);
+            }
+            else if (operation < 9) {
+                Book book = book(1 + random.nextInt(20), 1 + random.nextInt(50));
+                Optional<Book> previousBook = bookRepository.replace(book);
+                if (previousBook.isPresent())
+                    store.bookReplaced(previousBook.get(), book);
+                else
+                    saveBook(book);
+            }
+            else {
+                Purchase purchase = purchase(1 + random.nextInt(nextPurchaseId), random.nextInt(30), 1 + random.nextInt(20));
+                Optional<Purchase> previousPurchase = purchaseRepository.replace(purchase);
+                if (previousPurchase.isPresent())
+                    store.purchaseReplaced(previousPurchase.get(), purchase);
+            }
+        }
+
+        PurchaseAggregateStore rebuilt = new PurchaseAggregateStore(bookRepository, purchaseRepository);
+        for (ClientRankingMetric metric : ClientRankingMetric.values()) {
+            Map<Integer, Double> expected = clientScores(rebuilt, metric);
+            Map<Integer, Double> actual = clientScores(store, metric);
+            assertEquals(expected.keySet(), actual.keySet());
+            expected.forEach((clientId, score) -> assertEquals(score, actual.get(clientId), 1e-6));
+        }
+        for (BookRankingMetric metric : BookRankingMetric.values())
+            assertEquals(bookScores(rebuilt, metric), bookScores(store, metric));
+    }
+}
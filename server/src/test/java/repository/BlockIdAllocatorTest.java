@@ -0,0 +1,123 @@
+package repository;
+
+import domain.Book;
+import domain.validators.BookstoreException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BlockIdAllocatorTest
+{
+    private static final int THREADS = 8;
+
+    private Repository<Integer, Book> repository;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = new ConcurrentInMemoryRepository<>();
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private static Book book(int id) {
+        Book book = new Book("title " + id, "author", "publisher", 2000, 1);
+        book.setId(id);
+        return book;
+    }
+
+    @Test
+    public void theIdsStartAfterTheBiggestIdOfTheRepository() throws Exception {
+        repository.save(book(3));
+        repository.save(book(41));
+        IdAllocator allocator = new BlockIdAllocator(repository, 16);
+
+        assertEquals(Integer.valueOf(42), allocator.nextId());
+        List<Integer> ids = allocator.nextIds(3);
+        assertEquals(3, ids.size());
+        assertTrue(ids.get(0) > 42);
+        assertEquals(ids.get(0) + 1, (int) ids.get(1));
+        assertEquals(ids.get(0) + 2, (int) ids.get(2));
+        assertTrue(allocator.nextIds(0).isEmpty());
+    }
+
+    @Test
+    public void concurrentCallersGetUniqueIncreasingIds() throws Exception {
+        repository.save(book(1000));
+        IdAllocator allocator = new BlockIdAllocator(repository, 8);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<List<Integer>>> results = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int seed = thread;
+            results.add(executor.submit(() -> {
+                List<Integer> ids = new ArrayList<>();
+                start.await();
+                for (int call = 0; call < 5000; call++) {
+                    if ((call + seed) % 10 == 0)
+                        ids.addAll(allocator.nextIds(1 + call % 7));
+                    else
+                        ids.add(allocator.nextId());
+                }
+                return ids;
+            }));
+        }
+        start.countDown();
+
+        Set<Integer> allIds = new HashSet<>();
+        for (Future<List<Integer>> result : results) {
+            List<Integer> ids = result.get(30, TimeUnit.SECONDS);
+            for (int index = 0; index < ids.size(); index++) {
+                assertTrue(ids.get(index) > 1000);
+                if (index > 0)
+                    assertTrue(ids.get(index - 1) < ids.get(index));
+                assertTrue("id " + ids.get(index) + " was handed out twice", allIds.add(ids.get(index)));
+            }
+        }
+    }
+
+    @Test
+    public void noIdsAreHandedOutPastTheBiggestInt() throws Exception {
+        repository.save(book(Integer.MAX_VALUE - 5));
+        IdAllocator allocator = new BlockIdAllocator(repository, 4);
+
+        try {
+            allocator.nextIds(6);
+            fail("six ids were reserved while only five are left");
+        } catch (BookstoreException e) {
+            // the ids left are not touched by a failed reservation
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (int call = 0; call < 5; call++)
+            ids.add(allocator.nextId());
+        assertEquals(5, ids.size());
+        assertTrue(ids.contains(Integer.MAX_VALUE));
+        assertTrue(ids.contains(Integer.MAX_VALUE - 4));
+
+        try {
+            allocator.nextId();
+            fail("an id was handed out past the biggest int");
+        } catch (BookstoreException e) {
+            // expected
+        }
+    }
+}
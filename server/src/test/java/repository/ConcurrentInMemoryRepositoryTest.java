@@ -0,0 +1,255 @@
+package repository;
+
+import domain.Book;
+import domain.validators.BookValidator;
+import domain.validators.BookstoreException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentInMemoryRepositoryTest
+{
+    private static final int THREADS = 8;
+    private static final int WRITES_PER_THREAD = 3000;
+    private static final int IDS_PER_THREAD = 500;
+
+    private Path directory;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("bookstore-test");
+        executor = Executors.newFixedThreadPool(THREADS + 1);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static Book book(int id, int version) {
+        Book book = new Book("title " + id, "author " + id, "publisher", 1900 + version % 100, version);
+        book.setId(id);
+        return book;
+    }
+
+    /**
+     * Runs the same task on every thread at once and rethrows the first failure.
+     */
+    private <R> List<R> runOnAllThreads(ThreadTask<R> task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<R>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int threadIndex = thread;
+            futures.add(executor.submit((Callable<R>) () -> {
+                start.await();
+                return task.run(threadIndex);
+            }));
+        }
+        start.countDown();
+        List<R> results = new ArrayList<>();
+        for (Future<R> future : futures)
+            results.add(future.get());
+        return results;
+    }
+
+    @FunctionalInterface
+    private interface ThreadTask<R> {
+        R run(int thread) throws Exception;
+    }
+
+    /**
+     * Saves, updates and deletes random books among the ids of a thread, and returns the books the thread left behind.
+     */
+    private static Map<Integer, Book> mixedWrites(Repository<Integer, Book> repository, int thread) throws Exception {
+        Random random = new Random(thread);
+        Map<Integer, Book> expected = new HashMap<>();
+        for (int write = 0; write < WRITES_PER_THREAD; write++) {
+            int id = thread * IDS_PER_THREAD + random.nextInt(IDS_PER_THREAD);
+            Book book = book(id, write);
+            switch (random.nextInt(4)) {
+                case 0:
+                    assertEquals(expected.containsKey(id), repository.delete(id).isPresent());
+                    expected.remove(id);
+                    break;
+                case 1:
+                    assertEquals(expected.containsKey(id), repository.update(book).isPresent());
+                    if (expected.containsKey(id))
+                        expected.put(id, book);
+                    break;
+                default:
+                    Optional<Book> notSaved = repository.save(book);
+                    assertEquals(expected.containsKey(id), notSaved.isPresent());
+                    expected.putIfAbsent(id, book);
+                    break;
+            }
+        }
+        return expected;
+    }
+
+    private static Map<Integer, Book> merge(List<Map<Integer, Book>> parts) {
+        Map<Integer, Book> merged = new HashMap<>();
+        for (Map<Integer, Book> part : parts)
+            merged.putAll(part);
+        return merged;
+    }
+
+    private static void assertContains(Map<Integer, Book> expected, Repository<Integer, Book> repository) throws BookstoreException {
+        Map<Integer, Book> found = new HashMap<>();
+        for (Book book : repository.findAll())
+            found.put(book.getId(), book);
+        assertEquals(expected.keySet(), found.keySet());
+        for (Book book : expected.values()) {
+            Book foundBook = found.get(book.getId());
+            assertEquals(book, foundBook);
+            assertEquals(book.getPrice(), foundBook.getPrice(), 0);
+            assertEquals(book, repository.findOne(book.getId()).get());
+        }
+    }
+
+    @Test
+    public void concurrentWritesOfDifferentIdsAreAllKept() throws Exception {
+        ConcurrentInMemoryRepository<Integer, Book> repository = new ConcurrentInMemoryRepository<>();
+
+        Map<Integer, Book> expected = merge(runOnAllThreads(thread -> mixedWrites(repository, thread)));
+
+        assertContains(expected, repository);
+        assertEquals(expected.size(), repository.currentVersion().size());
+    }
+
+    @Test
+    public void concurrentWritesOfTheSameIdsKeepTheVersionInStepWithTheEntities() throws Exception {
+        ConcurrentInMemoryRepository<Integer, Book> repository = new ConcurrentInMemoryRepository<>();
+
+        runOnAllThreads(thread -> {
+            Random random = new Random(thread);
+            for (int write = 0; write < WRITES_PER_THREAD; write++) {
+                int id = random.nextInt(50);
+                if (random.nextBoolean())
+                    repository.delete(id);
+                else if (repository.save(book(id, write)).isPresent())
+                    repository.update(book(id, write));
+            }
+            return null;
+        });
+
+        RepositoryVersion<Integer, Book> version = repository.currentVersion();
+        int found = 0;
+        for (int id = 0; id < 50; id++) {
+            Optional<Book> book = repository.findOne(id);
+            assertEquals(book, version.findOne(id));
+            if (book.isPresent())
+                found++;
+        }
+        assertEquals(found, version.size());
+    }
+
+    @Test
+    public void upsertAllTellsTheInsertedEntitiesFromTheReplacedOnes() throws Exception {
+        ConcurrentInMemoryRepository<Integer, Book> repository = new ConcurrentInMemoryRepository<>();
+        repository.save(book(1, 0));
+
+        List<Optional<Book>> results = repository.upsertAll(Arrays.asList(book(1, 1), book(2, 1)));
+
+        assertEquals(Optional.of(book(1, 1)), results.get(0));
+        assertEquals(Optional.empty(), results.get(1));
+        assertEquals(2, repository.currentVersion().size());
+        assertEquals(1901, repository.findOne(1).get().getPublicationYear());
+    }
+
+    @Test
+    public void versionsReadDuringWritesAreConsistent() throws Exception {
+        ConcurrentInMemoryRepository<Integer, Book> repository = new ConcurrentInMemoryRepository<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Future<Integer> reader = executor.submit(() -> {
+            int versionsRead = 0;
+            while (writing.get()) {
+                RepositoryVersion<Integer, Book> version = repository.currentVersion();
+                int size = 0;
+                for (Book book : version.findAll())
+                    size++;
+                assertEquals(version.size(), size);
+                versionsRead++;
+            }
+            return versionsRead;
+        });
+
+        try {
+            runOnAllThreads(thread -> mixedWrites(repository, thread));
+        } finally {
+            writing.set(false);
+        }
+
+        assertTrue(reader.get() > 0);
+    }
+
+    @Test
+    public void concurrentWritesOfAFileRepositorySurviveAReload() throws Exception {
+        String fileName = directory.resolve("books").toString();
+        Files.createFile(directory.resolve("books"));
+        GroupCommitFlusher flusher = new GroupCommitFlusher(DurabilityMode.GROUP_COMMIT, 1);
+        BookFileRepository repository = new BookFileRepository(new BookValidator(), fileName, flusher);
+
+        Map<Integer, Book> expected = merge(runOnAllThreads(thread -> mixedWrites(repository, thread)));
+        flusher.close();
+
+        assertContains(expected, repository);
+        assertContains(expected, new BookFileRepository(new BookValidator(), fileName));
+    }
+
+    @Test
+    public void concurrentBatchWritesSurviveAReload() throws Exception {
+        String fileName = directory.resolve("books").toString();
+        Files.createFile(directory.resolve("books"));
+        GroupCommitFlusher flusher = new GroupCommitFlusher(DurabilityMode.GROUP_COMMIT, 1);
+        BookFileRepository repository = new BookFileRepository(new BookValidator(), fileName, flusher);
+
+        Map<Integer, Book> expected = merge(runOnAllThreads(thread -> {
+            Map<Integer, Book> saved = new HashMap<>();
+            for (int batch = 0; batch < 50; batch++) {
+                List<Book> books = new ArrayList<>();
+                for (int index = 0; index < 10; index++) {
+                    Book book = book(thread * IDS_PER_THREAD + batch * 10 + index, batch);
+                    if (book.getId() % 7 == 0)
+                        book.setPublisher("obsolete " + thread);
+                    books.add(book);
+                }
+                repository.saveAll(books);
+                for (Book book : books)
+                    saved.put(book.getId(), book);
+            }
+            repository.deleteAll(new FieldFilter<>("publisher", Book::getPublisher, "obsolete " + thread));
+            saved.keySet().removeIf(id -> id % 7 == 0);
+            return saved;
+        }));
+        flusher.close();
+
+        assertContains(expected, repository);
+        assertContains(expected, new BookFileRepository(new BookValidator(), fileName));
+    }
+}
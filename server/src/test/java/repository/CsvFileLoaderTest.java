@@ -0,0 +1,142 @@
+package repository;
+
+import domain.Book;
+import domain.validators.BookstoreException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CsvFileLoaderTest
+{
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("bookstore-test");
+        file = directory.resolve("books");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static String title(int id) {
+        return "Title " + id + ", \"vol\u00e9\" " + (id % 7 == 0 ? "" : "\u4e2d");
+    }
+
+    private static Book book(int id) {
+        Book book = new Book(title(id), "author " + id, "publisher", 1900 + id % 100, id % 1000 / 4f);
+        book.setId(id);
+        return book;
+    }
+
+    private List<Book> load() throws IOException, BookstoreException {
+        return CsvFileLoader.load(file.toString(), BookFileRepository::bookFromRecord);
+    }
+
+    @Test
+    public void theLinesAreParsedInOrderSkippingTheBlankOnes() throws Exception {
+        Files.write(file, ("1,plain,author,publisher,2001,1.5\r\n" +
+                "\n" +
+                "2,\"comma, and \"\"quotes\"\"\",\"\",publisher,2002,2.5\n" +
+                "   \t\n" +
+                "3,last line,author,publisher,2003,3.5").getBytes(StandardCharsets.UTF_8));
+
+        List<Book> books = load();
+
+        assertEquals(3, books.size());
+        assertEquals("plain", books.get(0).getTitle());
+        assertEquals(1.5f, books.get(0).getPrice(), 0);
+        assertEquals("comma, and \"quotes\"", books.get(1).getTitle());
+        assertEquals("", books.get(1).getAuthor());
+        assertEquals(2, (int) books.get(1).getId());
+        assertEquals("last line", books.get(2).getTitle());
+        assertEquals(2003, books.get(2).getPublicationYear());
+    }
+
+    @Test
+    public void anEmptyFileHasNoEntities() throws Exception {
+        Files.createFile(file);
+
+        assertTrue(load().isEmpty());
+    }
+
+    @Test
+    public void aFileCutIntoSeveralChunksIsReadWholeAndInOrder() throws Exception {
+        int count = 200000;
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int id = 1; id <= count; id++) {
+                writer.write(BookFileRepository.bookToLine(book(id)));
+                writer.write('\n');
+            }
+        }
+        assertTrue("the file is too small to be cut", Files.size(file) > 4 << 20);
+
+        List<Book> books = load();
+
+        assertEquals(count, books.size());
+        for (int index = 0; index < count; index++) {
+            Book expected = book(index + 1);
+            Book actual = books.get(index);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getTitle(), actual.getTitle());
+            assertEquals(expected.getAuthor(), actual.getAuthor());
+            assertEquals(expected.getPublicationYear(), actual.getPublicationYear());
+            assertEquals(expected.getPrice(), actual.getPrice(), 0);
+        }
+    }
+
+    @Test
+    public void aMalformedLineInAnyChunkFailsTheLoadAndIsLocated() throws Exception {
+        String malformedLine = "12345,title,author,publisher,not a year,1.0\n";
+        long malformedPosition = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int id = 1; id <= 150000; id++) {
+                String line = BookFileRepository.bookToLine(book(id)) + "\n";
+                if (id == 140000) {
+                    writer.write(malformedLine);
+                    writer.flush();
+                    malformedPosition = Files.size(file) - malformedLine.length();
+                }
+                writer.write(line);
+            }
+        }
+
+        try {
+            load();
+            fail("a malformed line was loaded");
+        } catch (BookstoreException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("at byte " + malformedPosition + " of " + file));
+            assertTrue(e.getMessage(), e.getMessage().contains("not a number"));
+        }
+    }
+
+    @Test
+    public void aLineWithMissingFieldsFailsTheLoad() throws Exception {
+        Files.write(file, "1,title,author\n".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            load();
+            fail("a line with missing fields was loaded");
+        } catch (BookstoreException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("missing field 3"));
+        }
+    }
+}
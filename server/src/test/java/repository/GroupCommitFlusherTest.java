@@ -0,0 +1,219 @@
+package repository;
+
+import domain.Book;
+import domain.validators.BookValidator;
+import domain.validators.BookstoreException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GroupCommitFlusherTest
+{
+    private static final int THREADS = 8;
+
+    private Path directory;
+    private ExecutorService executor;
+    private GroupCommitFlusher flusher;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("bookstore-test");
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (flusher != null)
+            flusher.close();
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * A target counting its flushes, failing them while failing is set.
+     */
+    private static class CountingTarget implements Flushable
+    {
+        private final AtomicInteger flushCount = new AtomicInteger();
+        private volatile boolean failing;
+
+        @Override
+        public void flush() throws IOException {
+            flushCount.incrementAndGet();
+            if (failing)
+                throw new IOException("disk full");
+        }
+    }
+
+    private static Book book(int id) {
+        Book book = new Book("title " + id, "author", "publisher", 2000, 1);
+        book.setId(id);
+        return book;
+    }
+
+    /**
+     * Commits every target from its own thread, all starting at the same time, and returns the outcome of each commit.
+     */
+    private List<Future<Void>> commitConcurrently(List<? extends Flushable> targets) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> results = new ArrayList<>();
+        for (Flushable target : targets) {
+            results.add(executor.submit(() -> {
+                start.await();
+                flusher.commit(target);
+                return null;
+            }));
+        }
+        start.countDown();
+        return results;
+    }
+
+    @Test
+    public void concurrentCommitsShareABatchAndATargetIsFlushedOncePerBatch() throws Exception {
+        flusher = new GroupCommitFlusher(DurabilityMode.GROUP_COMMIT, 200);
+        CountingTarget target = new CountingTarget();
+        List<CountingTarget> targets = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++)
+            targets.add(target);
+
+        for (Future<Void> result : commitConcurrently(targets))
+            result.get(10, TimeUnit.SECONDS);
+
+        GroupCommitFlusher.CommitMetrics metrics = flusher.getMetrics();
+        assertEquals(THREADS, metrics.getCommitCount());
+        assertTrue(metrics.getBatchCount() < THREADS);
+        assertTrue(metrics.getMaxBatchSize() > 1);
+        assertEquals(metrics.getBatchCount(), target.flushCount.get());
+        assertEquals(0, metrics.getFailedCommitCount());
+    }
+
+    @Test
+    public void aFailedFlushFailsEveryCommitOfItsBatch() throws Exception {
+        flusher = new GroupCommitFlusher(DurabilityMode.GROUP_COMMIT, 500);
+        CountingTarget failingTarget = new CountingTarget();
+        failingTarget.failing = true;
+        List<CountingTarget> targets = new ArrayList<>();
+        targets.add(failingTarget);
+        for (int thread = 1; thread < THREADS; thread++)
+            targets.add(new CountingTarget());
+
+        for (Future<Void> result : commitConcurrently(targets)) {
+            try {
+                result.get(10, TimeUnit.SECONDS);
+                fail("a commit of the failed batch succeeded");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof BookstoreException);
+                assertTrue(e.getCause().getMessage().contains("disk full"));
+            }
+        }
+        assertEquals(1, flusher.getMetrics().getBatchCount());
+        for (CountingTarget target : targets)
+            assertEquals(1, target.flushCount.get());
+        assertEquals(THREADS, flusher.getMetrics().getFailedCommitCount());
+
+        failingTarget.failing = false;
+        flusher.commit(failingTarget);
+    }
+
+    @Test
+    public void aFailedAsynchronousFlushIsReportedByTheNextCommit() throws Exception {
+        flusher = new GroupCommitFlusher(DurabilityMode.ASYNC, 0);
+        CountingTarget failingTarget = new CountingTarget();
+        failingTarget.failing = true;
+
+        flusher.commit(failingTarget);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (flusher.getMetrics().getFailedCommitCount() == 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(1, flusher.getMetrics().getFailedCommitCount());
+
+        CountingTarget target = new CountingTarget();
+        try {
+            flusher.commit(target);
+            fail("the failed asynchronous flush was not reported");
+        } catch (BookstoreException e) {
+            assertTrue(e.getMessage().contains("disk full"));
+        }
+        assertEquals(0, target.flushCount.get());
+
+        flusher.commit(target);
+    }
+
+    @Test
+    public void closeFlushesThePendingBatch() throws Exception {
+        flusher = new GroupCommitFlusher(DurabilityMode.ASYNC, 60000);
+        CountingTarget target = new CountingTarget();
+
+        flusher.commit(target);
+        flusher.close();
+
+        assertEquals(1, target.flushCount.get());
+        try {
+            flusher.commit(target);
+            fail("a closed flusher accepted a commit");
+        } catch (BookstoreException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void aWriteWhoseCommitFailedIsRolledBack() throws Exception {
+        String fileName = directory.resolve("books").toString();
+        Files.createFile(directory.resolve("books"));
+        flusher = new GroupCommitFlusher(DurabilityMode.GROUP_COMMIT, 0);
+        BookFileRepository repository = new BookFileRepository(new BookValidator(), fileName, flusher);
+        repository.save(book(1));
+        repository.compact();
+
+        // once compacted the log is closed, and it cannot be opened again while a directory takes its place
+        Path log = directory.resolve("books.log");
+        Files.deleteIfExists(log);
+        Files.createDirectory(log);
+        try {
+            repository.save(book(2));
+            fail("a write whose log could not be written succeeded");
+        } catch (BookstoreException e) {
+            // expected
+        }
+        assertFalse(repository.findOne(2).isPresent());
+        try {
+            repository.delete(1);
+            fail("a write whose log could not be written succeeded");
+        } catch (BookstoreException e) {
+            // expected
+        }
+        assertTrue(repository.findOne(1).isPresent());
+
+        Files.delete(log);
+        repository.save(book(3));
+
+        BookFileRepository reopened = new BookFileRepository(new BookValidator(), fileName, flusher);
+        assertTrue(reopened.findOne(1).isPresent());
+        assertFalse(reopened.findOne(2).isPresent());
+        assertTrue(reopened.findOne(3).isPresent());
+    }
+}
@@ -0,0 +1,218 @@
+package repository;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class PersistentHashMapTest
+{
+    /**
+     * A value of the map, whose key is read from it.
+     */
+    private static final class Entry
+    {
+        private final Object key;
+        private final int value;
+
+        private Entry(Object key, int value)
+        {
+            this.key = key;
+            this.value = value;
+        }
+
+        private Object getKey() {
+            return key;
+        }
+    }
+
+    /**
+     * A key whose hash is shared by all the keys with the same remainder, so the map has to keep colliding keys apart.
+     */
+    private static final class CollidingKey
+    {
+        private final int id;
+
+        private CollidingKey(int id)
+        {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            return object instanceof CollidingKey && ((CollidingKey) object).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id % 3;
+        }
+    }
+
+    private static PersistentHashMap<Object, Entry> empty() {
+        return PersistentHashMap.empty(Entry::getKey);
+    }
+
+    private static Map<Object, Integer> contentOf(PersistentHashMap<Object, Entry> map) {
+        Map<Object, Integer> content = new HashMap<>();
+        for (Entry entry : map)
+            assertNull("a key is iterated twice", content.put(entry.key, entry.value));
+        assertEquals(map.size(), content.size());
+        return content;
+    }
+
+    @Test
+    public void plusAddsNewKeysAndReplacesExistingOnes() {
+        PersistentHashMap<Object, Entry> empty = empty();
+        PersistentHashMap<Object, Entry> one = empty.plus(new Entry(1, 10));
+        PersistentHashMap<Object, Entry> two = one.plus(new Entry(2, 20));
+        PersistentHashMap<Object, Entry> replaced = two.plus(new Entry(1, 11));
+
+        assertEquals(0, empty.size());
+        assertEquals(1, one.size());
+        assertEquals(2, two.size());
+        assertEquals(2, replaced.size());
+        assertEquals(10, one.get(1).value);
+        assertEquals(10, two.get(1).value);
+        assertEquals(11, replaced.get(1).value);
+        assertEquals(20, replaced.get(2).value);
+        assertNull(empty.get(1));
+        assertNull(one.get(2));
+    }
+
+    @Test
+    public void plusOfTheSameValueReturnsTheSameMap() {
+        Entry entry = new Entry(1, 10);
+        PersistentHashMap<Object, Entry> map = empty().plus(entry);
+
+        assertSame(map, map.plus(entry));
+    }
+
+    @Test
+    public void minusRemovesTheKeyAndKeepsTheOldMap() {
+        PersistentHashMap<Object, Entry> map = empty();
+        for (int key = 0; key < 100; key++)
+            map = map.plus(new Entry(key, key));
+
+        PersistentHashMap<Object, Entry> removed = map.minus(42);
+
+        assertEquals(99, removed.size());
+        assertNull(removed.get(42));
+        assertEquals(100, map.size());
+        assertEquals(42, map.get(42).value);
+        assertSame(removed, removed.minus(42));
+        assertEquals(0, empty().minus(1).size());
+    }
+
+    @Test
+    public void minusOfEveryKeyLeavesAnEmptyMap() {
+        PersistentHashMap<Object, Entry> map = empty();
+        for (int key = 0; key < 1000; key++)
+            map = map.plus(new Entry(key, key));
+        for (int key = 0; key < 1000; key++)
+            map = map.minus(key);
+
+        assertEquals(0, map.size());
+        assertFalse(map.iterator().hasNext());
+    }
+
+    @Test
+    public void collidingKeysAreKeptApart() {
+        PersistentHashMap<Object, Entry> map = empty();
+        for (int id = 0; id < 30; id++)
+            map = map.plus(new Entry(new CollidingKey(id), id));
+
+        assertEquals(30, map.size());
+        for (int id = 0; id < 30; id++)
+            assertEquals(id, map.get(new CollidingKey(id)).value);
+        assertNull(map.get(new CollidingKey(30)));
+
+        PersistentHashMap<Object, Entry> replaced = map.plus(new Entry(new CollidingKey(4), 40));
+        assertEquals(30, replaced.size());
+        assertEquals(40, replaced.get(new CollidingKey(4)).value);
+        assertEquals(4, map.get(new CollidingKey(4)).value);
+
+        PersistentHashMap<Object, Entry> removed = map;
+        for (int id = 0; id < 30; id += 3)
+            removed = removed.minus(new CollidingKey(id));
+        assertEquals(20, removed.size());
+        assertSame(removed, removed.minus(new CollidingKey(0)));
+        for (int id = 0; id < 30; id++) {
+            Entry entry = removed.get(new CollidingKey(id));
+            if (id % 3 == 0)
+                assertNull(entry);
+            else
+                assertEquals(id, entry.value);
+        }
+        assertEquals(20, contentOf(removed).size());
+    }
+
+    @Test
+    public void iterationYieldsEveryValueOnce() {
+        PersistentHashMap<Object, Entry> map = empty();
+        Set<Integer> expected = new HashSet<>();
+        for (int key = 0; key < 10000; key++) {
+            map = map.plus(new Entry(key * 7919, key));
+            expected.add(key);
+        }
+
+        assertEquals(expected, new HashSet<>(contentOf(map).values()));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void nextOfAnExhaustedIteratorThrows() {
+        Iterator<Entry> iterator = empty().plus(new Entry(1, 10)).iterator();
+        iterator.next();
+
+        assertFalse(iterator.hasNext());
+        iterator.next();
+    }
+
+    @Test
+    public void ofBuildsTheSameMapAsPlus() {
+        List<Entry> entries = new ArrayList<>();
+        for (int key = 0; key < 5000; key++)
+            entries.add(new Entry(key % 2 == 0 ? (Object) key : new CollidingKey(key), key));
+
+        PersistentHashMap<Object, Entry> built = PersistentHashMap.of(entries, Entry::getKey);
+        PersistentHashMap<Object, Entry> added = empty();
+        for (Entry entry : entries)
+            added = added.plus(entry);
+
+        assertEquals(contentOf(added), contentOf(built));
+        for (Entry entry : entries)
+            assertSame(entry, built.get(entry.key));
+        assertEquals(0, PersistentHashMap.of(new ArrayList<Entry>(), Entry::getKey).size());
+    }
+
+    @Test
+    public void randomChangesMatchAHashMap() {
+        Random random = new Random(17);
+        Map<Object, Integer> expected = new HashMap<>();
+        PersistentHashMap<Object, Entry> map = empty();
+        for (int change = 0; change < 50000; change++) {
+            Object key = random.nextBoolean() ? (Object) random.nextInt(2000) : new CollidingKey(random.nextInt(300));
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                expected.put(key, change);
+                map = map.plus(new Entry(key, change));
+            }
+        }
+
+        assertEquals(expected, contentOf(map));
+    }
+}
@@ -0,0 +1,105 @@
+package repository;
+
+import domain.Book;
+import domain.validators.BookValidator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class UpsertAllTest
+{
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("bookstore-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static Book book(int id, float price) {
+        Book book = new Book("title " + id, "author", "publisher", 2000, price);
+        book.setId(id);
+        return book;
+    }
+
+    /**
+     * Returns every kind of repository that does not need a database, each holding books 2 and 4.
+     */
+    private List<Repository<Integer, Book>> repositories() throws Exception {
+        List<Repository<Integer, Book>> repositories = new ArrayList<>();
+        repositories.add(new InMemoryRepository<>());
+        repositories.add(new ConcurrentInMemoryRepository<>());
+        Files.createFile(directory.resolve("books"));
+        repositories.add(new BookFileRepository(new BookValidator(), directory.resolve("books").toString()));
+        repositories.add(new BookSnapshotRepository(directory.resolve("books.bin").toString(),
+                new GroupCommitFlusher(DurabilityMode.PER_WRITE, 0)));
+        repositories.add(new CachingRepository<>(new ConcurrentInMemoryRepository<>(), 100, 60000));
+        repositories.add(new ChangeTrackingRepository<>(new ConcurrentInMemoryRepository<>(), 100));
+        for (Repository<Integer, Book> repository : repositories) {
+            repository.save(book(2, 1));
+            repository.save(book(4, 1));
+        }
+        return repositories;
+    }
+
+    @Test
+    public void upsertAllReturnsOneResultPerEntityInTheOrderOfTheEntities() throws Exception {
+        for (Repository<Integer, Book> repository : repositories()) {
+            List<Book> books = Arrays.asList(book(5, 2), book(4, 2), book(1, 2), book(2, 2), book(3, 2));
+
+            List<Optional<Book>> results = repository.upsertAll(books);
+
+            String name = repository.getClass().getSimpleName();
+            assertEquals(name, books.size(), results.size());
+            for (int index = 0; index < books.size(); index++) {
+                Book book = books.get(index);
+                if (book.getId() == 2 || book.getId() == 4)
+                    assertSame(name, book, results.get(index).get());
+                else
+                    assertFalse(name, results.get(index).isPresent());
+                assertEquals(name, 2, repository.findOne(book.getId()).get().getPrice(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void aRepeatedIdIsInsertedOnceAndThenReplaced() throws Exception {
+        for (Repository<Integer, Book> repository : repositories()) {
+            List<Book> books = Arrays.asList(book(7, 2), book(7, 3));
+
+            List<Optional<Book>> results = repository.upsertAll(books);
+
+            String name = repository.getClass().getSimpleName();
+            assertFalse(name, results.get(0).isPresent());
+            assertTrue(name, results.get(1).isPresent());
+            assertEquals(name, 3, repository.findOne(7).get().getPrice(), 0);
+        }
+    }
+
+    @Test
+    public void upsertAllOfNothingReturnsNothing() throws Exception {
+        for (Repository<Integer, Book> repository : repositories())
+            assertTrue(repository.getClass().getSimpleName(), repository.upsertAll(new ArrayList<>()).isEmpty());
+    }
+}
@@ -0,0 +1,147 @@
+package repository;
+
+import domain.Book;
+import domain.validators.BookValidator;
+import domain.validators.BookstoreException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class XmlRecordFileTest
+{
+    private static final String AWKWARD_TEXT = "Tom & Jerry <\"quoted\"> 'single' ]]> \u00e9\u4e2d\ud83d\udcda";
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("bookstore-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static Map<String, String> fields(String... keysAndValues) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (int index = 0; index < keysAndValues.length; index += 2)
+            fields.put(keysAndValues[index], keysAndValues[index + 1]);
+        return fields;
+    }
+
+    private static List<Map<String, String>> readAll(XmlRecordFile file) throws BookstoreException {
+        List<Map<String, String>> records = new ArrayList<>();
+        file.read(fields -> records.add(new HashMap<>(fields)));
+        return records;
+    }
+
+    private static Book book(int id, String title) {
+        Book book = new Book(title, "author", "publisher", 2000, 9.5f);
+        book.setId(id);
+        return book;
+    }
+
+    @Test
+    public void theWrittenRecordsAreReadBackInOrderWithTheirTextUnescaped() throws Exception {
+        List<Map<String, String>> records = Arrays.asList(
+                fields("id", "1", "title", AWKWARD_TEXT),
+                fields("id", "2", "title", ""),
+                fields("id", "3", "title", "  spaces kept  \n  and lines  "));
+        XmlRecordFile file = new XmlRecordFile(directory.resolve("records.xml").toString());
+
+        file.write("records", "record", records, record -> record);
+
+        assertEquals(records, readAll(file));
+        assertFalse(Files.exists(directory.resolve("records.xml.tmp")));
+    }
+
+    @Test
+    public void aFileWithoutRecordsIsReadAsNoRecords() throws Exception {
+        XmlRecordFile file = new XmlRecordFile(directory.resolve("records.xml").toString());
+
+        file.write("records", "record", Collections.<Map<String, String>>emptyList(), record -> record);
+
+        assertTrue(readAll(file).isEmpty());
+    }
+
+    @Test
+    public void aRewriteReplacesTheWholeFile() throws Exception {
+        XmlRecordFile file = new XmlRecordFile(directory.resolve("records.xml").toString());
+        file.write("records", "record", Arrays.asList(fields("id", "1"), fields("id", "2")), record -> record);
+
+        file.write("records", "record", Collections.singletonList(fields("id", "3")), record -> record);
+
+        assertEquals(Collections.singletonList(fields("id", "3")), readAll(file));
+    }
+
+    @Test
+    public void aFileThatIsNotWellFormedIsRefused() throws Exception {
+        Path path = directory.resolve("records.xml");
+        Files.write(path, "<records><record><id>1</id></record>".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            readAll(new XmlRecordFile(path.toString()));
+            fail("a truncated file was read");
+        } catch (BookstoreException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void externalEntitiesAreNotResolved() throws Exception {
+        Path secret = directory.resolve("secret");
+        Files.write(secret, "secret".getBytes(StandardCharsets.UTF_8));
+        Path path = directory.resolve("records.xml");
+        Files.write(path, ("<?xml version=\"1.0\"?>\n<!DOCTYPE records [<!ENTITY leak SYSTEM \"" + secret.toUri() + "\">]>\n" +
+                "<records><record><title>&leak;</title></record></records>").getBytes(StandardCharsets.UTF_8));
+
+        try {
+            for (Map<String, String> record : readAll(new XmlRecordFile(path.toString())))
+                assertFalse(String.valueOf(record.get("title")).contains("secret"));
+        } catch (BookstoreException e) {
+            // refusing the entity is as good as ignoring it
+        }
+    }
+
+    @Test
+    public void theBooksOfAnXmlRepositorySurviveAReopen() throws Exception {
+        String fileName = directory.resolve("books.xml").toString();
+        new XmlRecordFile(fileName).write("books", "book", Collections.<Book>emptyList(), book -> null);
+        BookXMLRepository repository = new BookXMLRepository(new BookValidator(), fileName);
+        repository.save(book(1, AWKWARD_TEXT));
+        repository.save(book(2, "plain"));
+        repository.save(book(3, "deleted"));
+        repository.delete(3);
+
+        BookXMLRepository reopened = new BookXMLRepository(new BookValidator(), fileName);
+
+        Book first = reopened.findOne(1).get();
+        assertEquals(AWKWARD_TEXT, first.getTitle());
+        assertEquals(9.5f, first.getPrice(), 0);
+        assertEquals(2000, first.getPublicationYear());
+        assertEquals("plain", reopened.findOne(2).get().getTitle());
+        assertFalse(reopened.findOne(3).isPresent());
+    }
+}
@@ -0,0 +1,231 @@
+package transport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryServiceExporterTest
+{
+    /**
+     * The service exported in the tests.
+     */
+    public interface EchoService
+    {
+        String echo(String text);
+
+        String echoAfter(long delayMillis, String text) throws InterruptedException;
+
+        String fail(String message);
+    }
+
+    private static class Echo implements EchoService
+    {
+        @Override
+        public String echo(String text) {
+            return text;
+        }
+
+        @Override
+        public String echoAfter(long delayMillis, String text) throws InterruptedException {
+            Thread.sleep(delayMillis);
+            return text;
+        }
+
+        @Override
+        public String fail(String message) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    private BinaryServiceExporter exporter;
+    private Socket socket;
+    private DataInputStream in;
+    private OutputStream out;
+
+    @Before
+    public void setUp() throws Exception {
+        exporter = new BinaryServiceExporter();
+        exporter.setPort(0);
+        exporter.setWorkerThreads(4);
+        exporter.setMaxCallsInFlight(2);
+        exporter.addService("EchoService", EchoService.class, new Echo());
+        exporter.afterPropertiesSet();
+
+        socket = new Socket("localhost", exporter.getLocalPort());
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(10000);
+        in = new DataInputStream(socket.getInputStream());
+        out = socket.getOutputStream();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        socket.close();
+        exporter.destroy();
+    }
+
+    private static String methodKey(String name) {
+        for (Method method : EchoService.class.getMethods()) {
+            if (method.getName().equals(name))
+                return BinaryProtocol.methodKey(method);
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    private static byte[] request(long callId, String methodName, Object... arguments) throws IOException {
+        return BinaryProtocol.encodeRequest(callId, "EchoService", methodKey(methodName), arguments);
+    }
+
+    private BinaryProtocol.Response readResponse() throws Exception {
+        byte[] message = new byte[in.readInt()];
+        in.readFully(message);
+        return BinaryProtocol.decodeResponse(message);
+    }
+
+    private static String text(int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int index = 0; index < length; index++)
+            text.append((char) ('a' + index % 26));
+        return text.toString();
+    }
+
+    @Test
+    public void aFrameSplitAcrossWritesIsReadWhole() throws Exception {
+        byte[] frame = request(1, "echo", "split");
+        for (byte frameByte : frame) {
+            out.write(frameByte);
+            out.flush();
+        }
+
+        BinaryProtocol.Response response = readResponse();
+        assertEquals(1L, response.getCallId());
+        assertEquals("split", response.getValue());
+    }
+
+    @Test
+    public void severalFramesInOneWriteAreAllAnswered() throws Exception {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        for (long callId = 1; callId <= 50; callId++)
+            frames.write(request(callId, "echo", "call " + callId));
+        out.write(frames.toByteArray());
+        out.flush();
+
+        Set<Long> answered = new HashSet<>();
+        for (int index = 0; index < 50; index++) {
+            BinaryProtocol.Response response = readResponse();
+            assertEquals("call " + response.getCallId(), response.getValue());
+            assertTrue(answered.add(response.getCallId()));
+        }
+        assertEquals(50, answered.size());
+    }
+
+    @Test
+    public void framesLargerThanTheReadBufferAreRead() throws Exception {
+        String large = text(4 * BinaryServiceExporter.READ_BUFFER_SIZE);
+        for (long callId = 1; callId <= 3; callId++) {
+            out.write(request(callId, "echo", large));
+            out.write(request(callId + 100, "echo", "small"));
+            out.flush();
+
+            Set<Object> values = new HashSet<>();
+            values.add(readResponse().getValue());
+            values.add(readResponse().getValue());
+            assertTrue(values.contains(large));
+            assertTrue(values.contains("small"));
+        }
+    }
+
+    @Test
+    public void aSlowCallDoesNotHoldUpTheNextCallsOfItsConnection() throws Exception {
+        out.write(request(1, "echoAfter", 2000L, "slow"));
+        out.write(request(2, "echo", "fast"));
+        out.flush();
+
+        BinaryProtocol.Response first = readResponse();
+        BinaryProtocol.Response second = readResponse();
+        assertEquals(2L, first.getCallId());
+        assertEquals("fast", first.getValue());
+        assertEquals(1L, second.getCallId());
+        assertEquals("slow", second.getValue());
+    }
+
+    @Test
+    public void aThrownExceptionIsSentBack() throws Exception {
+        out.write(request(7, "fail", "refused"));
+        out.write(BinaryProtocol.encodeRequest(8, "EchoService", "missing()", new Object[0]));
+        out.flush();
+
+        for (int index = 0; index < 2; index++) {
+            BinaryProtocol.Response response = readResponse();
+            assertTrue(response.isException());
+            if (response.getCallId() == 7)
+                assertEquals("refused", ((IllegalArgumentException) response.getValue()).getMessage());
+            else
+                assertEquals(8L, response.getCallId());
+        }
+    }
+
+    @Test
+    public void aRequestWithAClassOutsideTheFilterIsRefusedAndTheConnectionKept() throws Exception {
+        out.write(BinaryProtocol.encodeRequest(3, "EchoService", methodKey("echo"), new Object[] { new AtomicInteger(1) }));
+        out.write(request(4, "echo", "still open"));
+        out.flush();
+
+        for (int index = 0; index < 2; index++) {
+            BinaryProtocol.Response response = readResponse();
+            if (response.getCallId() == 3)
+                assertTrue(response.isException());
+            else
+                assertEquals("still open", response.getValue());
+        }
+    }
+
+    @Test
+    public void theCallsBeyondTheLimitInFlightWaitForAnAnswer() throws Exception {
+        long start = System.nanoTime();
+        for (long callId = 1; callId <= 3; callId++)
+            out.write(request(callId, "echoAfter", 500L, "call " + callId));
+        out.flush();
+
+        for (int index = 0; index < 3; index++) {
+            BinaryProtocol.Response response = readResponse();
+            assertEquals("call " + response.getCallId(), response.getValue());
+            if (response.getCallId() == 3)
+                assertTrue((System.nanoTime() - start) / 1_000_000 >= 900);
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void anInvalidFrameLengthClosesTheConnection() throws Exception {
+        out.write(ByteBuffer.allocate(4).putInt(3).array());
+        out.flush();
+
+        readResponse();
+    }
+
+    @Test
+    public void destroyClosesTheConnections() throws Exception {
+        out.write(request(1, "echo", "connected"));
+        out.flush();
+        assertEquals("connected", readResponse().getValue());
+
+        exporter.destroy();
+
+        assertEquals(-1, in.read());
+    }
+}